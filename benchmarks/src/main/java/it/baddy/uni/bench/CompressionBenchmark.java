@@ -0,0 +1,59 @@
+package it.baddy.uni.bench;
+
+import it.baddy.uni.storage.Blobs;
+import it.baddy.uni.storage.DeflateCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//costo della compressione di un file per livello deflate: testo ripetitivo (il caso
+//normale del dataset) e byte casuali, che la policy scarta dopo il campione
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+
+    @Param({"1", "6"})
+    public int level;
+
+    @Param({"text", "random"})
+    public String data;
+
+    @Param({"1048576"})
+    public int size;
+
+    private DeflateCodec codec;
+    private byte[] content;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        codec = new DeflateCodec(level);
+        content = new byte[size];
+        SplittableRandom random = new SplittableRandom(42);
+        if (data.equals("text")) {
+            byte[] words = "chord ring node file key successor finger replica ".getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < size; i++) {
+                content[i] = words[(i + random.nextInt(4)) % words.length];
+            }
+        } else {
+            random.nextBytes(content);
+        }
+        encoded = Blobs.encode(content, codec, 90);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return Blobs.encode(content, codec, 90);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Blobs.decode(encoded);
+    }
+}
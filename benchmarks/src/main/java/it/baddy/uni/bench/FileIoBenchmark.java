@@ -0,0 +1,57 @@
+package it.baddy.uni.bench;
+
+import it.baddy.uni.utils.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//lettura e scrittura di un file intero per dimensione: byte/s = ops/s * size
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FileIoBenchmark {
+
+    @Param({"4096", "1048576", "67108864"})
+    public int size;
+
+    private Path dir;
+    private Path readTarget;
+    private Path writeTarget;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chord-io-bench");
+        content = new byte[size];
+        new SplittableRandom(42).nextBytes(content);
+        readTarget = dir.resolve("read.bin");
+        writeTarget = dir.resolve("write.bin");
+        Files.write(readTarget, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(readTarget);
+        Files.deleteIfExists(writeTarget);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public byte[] readFile() {
+        return FileUtils.readFile(readTarget);
+    }
+
+    //sovrascrive ogni volta lo stesso file, come un update dal client
+    @Benchmark
+    public Path writeFile() {
+        FileUtils.writeFile(writeTarget, content);
+        return writeTarget;
+    }
+}
@@ -0,0 +1,53 @@
+package it.baddy.uni.bench;
+
+import it.baddy.uni.chord.IdSpace;
+import it.baddy.uni.utils.FileUtils;
+import it.baddy.uni.utils.KeyHash;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+//calcolo della chiave di un file: hash SHA-1 e posizione sul ring
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashingBenchmark {
+
+    private static final BigInteger RING_SIZE = BigInteger.valueOf(40);
+
+    @Param({"photo.png", "a/rather/long/path/to/some/report-of-the-year-2024-final-v2.pdf"})
+    public String fileName;
+
+    private final IdSpace ring40 = IdSpace.ofSize(40);
+    private final IdSpace ring64 = IdSpace.ofBits(64);
+
+    @Benchmark
+    public BigInteger hashFilename() {
+        return FileUtils.hashFilename(fileName);
+    }
+
+    //derivazione della chiave com'era prima di IdSpace
+    @Benchmark
+    public int hashFilenameMod() {
+        return FileUtils.hashFilename(fileName).mod(RING_SIZE).intValue();
+    }
+
+    @Benchmark
+    public KeyHash keyHash() {
+        return KeyHash.of(fileName);
+    }
+
+    @Benchmark
+    public long ringIdArbitrarySize() {
+        return ring40.ringId(fileName);
+    }
+
+    @Benchmark
+    public long ringId64Bits() {
+        return ring64.ringId(fileName);
+    }
+}
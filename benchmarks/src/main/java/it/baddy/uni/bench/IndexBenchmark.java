@@ -0,0 +1,58 @@
+package it.baddy.uni.bench;
+
+import it.baddy.uni.storage.KeyIndex;
+import it.baddy.uni.utils.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//indicizzazione della cartella del nodo all'avvio; con un milione di file la
+//preparazione della cartella richiede qualche minuto
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int files;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        dir = Files.createTempDirectory("chord-index-bench");
+        byte[] content = new byte[16];
+        for (int i = 0; i < files; i++) {
+            Files.write(dir.resolve("file-" + i + ".txt"), content);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Map<BigInteger, Path> indexFiles() {
+        return FileUtils.indexFiles(dir);
+    }
+
+    @Benchmark
+    public int keyIndexBuild() {
+        KeyIndex index = new KeyIndex(dir);
+        index.build();
+        return index.entries().size();
+    }
+}
@@ -0,0 +1,82 @@
+package it.baddy.uni.chord;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//decisioni di routing locali: costruzione della finger table, scelta del finger
+//e controllo di responsabilità (stesso package di ChordNode per i metodi non pubblici)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoutingBenchmark {
+
+    private static final int KEYS = 4096;
+
+    @Param({"8", "64", "1024"})
+    public int nodes;
+
+    @Param({"32", "64"})
+    public int bits;
+
+    private IdSpace idSpace;
+    private List<Long> nodeIds;
+    private long self;
+    private ChordNode node;
+    private final long[] keys = new long[KEYS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        //il nodo stampa ogni modifica della finger table: qui conta solo il calcolo
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        idSpace = IdSpace.ofBits(bits);
+        SplittableRandom random = new SplittableRandom(42);
+        nodeIds = new ArrayList<>();
+        while (nodeIds.size() < nodes) {
+            long id = idSpace.ringId("node-" + random.nextLong());
+            if (!nodeIds.contains(id))
+                nodeIds.add(id);
+        }
+        nodeIds.sort(Long::compareUnsigned);
+        self = nodeIds.get(nodes / 2);
+        node = new ChordNode(self, nodeIds, idSpace);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = idSpace.ringId("file-" + i);
+        }
+    }
+
+    private long nextKey() {
+        next = (next + 1) & (KEYS - 1);
+        return keys[next];
+    }
+
+    @Benchmark
+    public FingerTable fingerTableConstruction() {
+        return new FingerTable(self, nodeIds, idSpace);
+    }
+
+    @Benchmark
+    public long closestPrecedingFinger() {
+        return node.closestPrecedingFinger(nextKey());
+    }
+
+    //ricerca binaria nella vista dei nodi (usata per ogni entry della finger table)
+    @Benchmark
+    public long membershipSuccessor() {
+        return node.routingState().members().successor(nextKey());
+    }
+
+    @Benchmark
+    public boolean isResponsible() {
+        return node.isResponsible(nextKey());
+    }
+}
@@ -1,64 +1,175 @@
 package it.baddy.uni;
 
 import it.baddy.uni.chord.ChordNode;
+import it.baddy.uni.chord.IdSpace;
+import it.baddy.uni.chord.Stabilizer;
+import it.baddy.uni.chord.VirtualNodes;
+import it.baddy.uni.metrics.MetricsHttpServer;
 import it.baddy.uni.rmi.bootstrap.RmiBootstrap;
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.NioTransport;
+import it.baddy.uni.rmi.client.NodeDirectory;
+import it.baddy.uni.rmi.client.TimeoutSocketFactory;
+import it.baddy.uni.rmi.nio.NioServer;
 import it.baddy.uni.rmi.server.ChordRemoteServer;
 
 import java.nio.file.Path;
 import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import static it.baddy.uni.config.AppManagements.DATA_DIR;
+import static it.baddy.uni.config.AppManagements.METRICS_PORT;
+import static it.baddy.uni.config.AppManagements.NIO_PORT;
+import static it.baddy.uni.config.AppManagements.STABILIZE_INTERVAL_MS;
+import static it.baddy.uni.config.AppManagements.VIRTUAL_NODES;
+
 public class Main {
     public static void main(String[] args) {
 
         String nodeIdEnv = System.getenv("NODE_ID");
-        //per restrizione di chord deve essere conosciuto altrimenti non posso calcolare m=log(n)
+        //ring statico: tutti i nodi elencati in ALL_NODES
         String allNodesEnv = System.getenv("ALL_NODES");
+        //join dinamico: il nodo entra nel ring passando da BOOTSTRAP_NODE (es. node0)
+        String bootstrapEnv = System.getenv("BOOTSTRAP_NODE");
         String nodePortEnv = System.getenv("NODE_PORT");
         String hostname = System.getenv("NODE_HOSTNAME");
-        checkEnvVariable(nodeIdEnv, allNodesEnv, nodePortEnv, hostname);
+        checkEnvVariable(nodeIdEnv, Objects.requireNonNullElse(allNodesEnv, bootstrapEnv), nodePortEnv, hostname);
 
-        int nodeId = Integer.parseInt(nodeIdEnv);
+        long nodeId = Long.parseUnsignedLong(nodeIdEnv);
+        //i timeout valgono solo se impostati prima di creare registry e stub
+        TimeoutSocketFactory.install();
+        //chiamate tra nodi sul protocollo binario, anche verso il bootstrap
+        if (NIO_PORT > 0)
+            ChordRemoteClient.setTransport(NioTransport.containers(NIO_PORT));
+        IdSpace idSpace = IdSpace.configured();
 
-        // Estrae solo gli ID numerici da nodeX
-        List<Integer> allNodes = Arrays.stream(allNodesEnv.split(","))
-                .map(name -> name.replace("node", "")) // X
-                .map(Integer::parseInt)
-                .sorted()
+        // Estrae solo gli ID numerici da nodeX (con il bootstrap si parte da soli)
+        List<Long> physicalNodes = bootstrapEnv != null ? List.of(nodeId) : Arrays.stream(allNodesEnv.split(","))
+                .map(Main::parseNodeId)
+                .sorted(Long::compareUnsigned)
                 .collect(Collectors.toList());
 
+        //posizioni sul ring di ogni processo: tutti i nodi le calcolano allo stesso modo
+        long[] localIds;
+        List<Long> allNodes = new ArrayList<>();
+        try {
+            if (bootstrapEnv != null) {
+                //con il join si saltano gli id già presenti nel ring
+                Set<Long> taken = new HashSet<>(ChordRemoteClient.connect(parseNodeId(bootstrapEnv)).getKnownNodes());
+                localIds = VirtualNodes.idsFor(nodeId, VIRTUAL_NODES, idSpace, taken);
+            } else {
+                Map<Long, long[]> assignment = VirtualNodes.assign(physicalNodes, VIRTUAL_NODES, idSpace);
+                assignment.forEach((physical, ids) -> {
+                    for (long id : ids) {
+                        NodeDirectory.register(id, physical);
+                        allNodes.add(id);
+                    }
+                });
+                localIds = assignment.get(nodeId);
+            }
+        } catch (Exception e) {
+            System.err.println("cannot reach bootstrap node " + bootstrapEnv + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        allNodes.sort(Long::compareUnsigned);
+
         System.out.println("=================================");
         System.out.println("Starting Chord node " + nodeId);
-        System.out.println("All nodes: " + allNodes);
+        System.out.println("All nodes: " + (bootstrapEnv != null ? physicalNodes : allNodes));
+        if (localIds.length > 1)
+            System.out.println("Virtual nodes: " + Arrays.toString(localIds));
         System.out.println("=================================");
 
-        ChordNode chordNode = new ChordNode(nodeId, allNodes);
+        ChordNode chordNode = new ChordNode(nodeId, bootstrapEnv != null ? List.of(nodeId) : allNodes, idSpace);
         //stampa finger table del nodo
         chordNode.getFingerTable().print();
-        //cartella separata per ogni nodo
-        chordNode.printResponsibleKeys(Path.of("/data"));
+        //cartella separata per ogni nodo: indice dallo snapshot (riconciliato in background)
+        //oppure da una scansione completa se lo snapshot manca
+        chordNode.initStorage(Path.of(DATA_DIR));
+        //alla chiusura (docker stop, leave) l'indice viene salvato per il prossimo avvio
+        Runtime.getRuntime().addShutdownHook(new Thread(chordNode.getStorage()::saveSnapshot, "index-snapshot-on-exit"));
+        //i nodi virtuali condividono cartella e metriche del processo
+        List<ChordNode> localNodes = new ArrayList<>();
+        localNodes.add(chordNode);
+        for (int i = 1; i < localIds.length; i++) {
+            ChordNode virtualNode = new ChordNode(localIds[i], nodeId,
+                    bootstrapEnv != null ? List.of(localIds[i]) : allNodes, idSpace, chordNode.getMetrics());
+            virtualNode.useStorage(chordNode.getStorage());
+            localNodes.add(virtualNode);
+        }
 
         int port = Integer.parseInt(nodePortEnv);
         try{
-            ChordRemoteServer remoteServer = new ChordRemoteServer(chordNode);
-            RmiBootstrap.start(port, hostname, remoteServer);
+            ChordRemoteServer remoteServer = new ChordRemoteServer(chordNode, localNodes);
+            Registry registry = RmiBootstrap.start(port, hostname, remoteServer);
+            List<ChordRemoteServer> servers = new ArrayList<>();
+            servers.add(remoteServer);
+            for (ChordNode virtualNode : localNodes.subList(1, localNodes.size())) {
+                ChordRemoteServer virtualServer = new ChordRemoteServer(virtualNode, localNodes);
+                registry.rebind(RmiBootstrap.bindingFor(virtualNode.getFingerTable().getNodeId()), virtualServer);
+                servers.add(virtualServer);
+            }
+            //gli stessi server anche sul trasporto binario, un'unica porta per tutti i nodi virtuali
+            if (NIO_PORT > 0) {
+                NioServer nioServer = NioServer.start(NIO_PORT);
+                for (int i = 0; i < servers.size(); i++) {
+                    nioServer.register(localNodes.get(i).getFingerTable().getNodeId(), servers.get(i));
+                }
+            }
+            //il server è già registrato: il successore può mandarci le chiavi
+            if (bootstrapEnv != null) {
+                for (ChordNode node : localNodes) {
+                    long id = node.getFingerTable().getNodeId();
+                    long successor = node.join(ChordRemoteClient.connect(parseNodeId(bootstrapEnv)));
+                    int keys = ChordRemoteClient.connect(successor).acceptJoin(id, nodeId);
+                    System.out.println("received " + keys + " keys from successor " + successor + " for node " + id);
+                }
+                chordNode.getFingerTable().print();
+            }
+            chordNode.printResponsibleKeys();
+            for (ChordNode node : localNodes) {
+                if (STABILIZE_INTERVAL_MS > 0) {
+                    new Stabilizer(node, STABILIZE_INTERVAL_MS).start();
+                }
+                node.getFailureDetector().start();
+            }
+            if (METRICS_PORT > 0) {
+                MetricsHttpServer.start(METRICS_PORT, chordNode.getMetrics());
+            }
+            //opzionale: risolve subito gli stub dei nodi della finger table
+            if (Boolean.parseBoolean(System.getenv("RMI_WARMUP"))) {
+                for (ChordNode node : localNodes) {
+                    ChordRemoteClient.warmUp(node.getFingerTable().getFingers());
+                }
+            }
         } catch (RemoteException re){
-            System.err.println("error during remote execution");
+            System.err.println("error during remote execution: " + re.getMessage());
         } catch (Exception e){
             System.err.println("generic error occurred trying to start rmi service");
         }
 
     }
 
+    private static long parseNodeId(String name) {
+        return Long.parseUnsignedLong(name.trim().replace("node", "")); // X
+    }
+
     private static void checkEnvVariable(String nodeId, String allNodesEnv, String nodePortEnv, String hostNameEnv){
         if (nodeId == null) {
             System.err.println("NODE_ID not set");
             System.exit(1);
         }
         if (allNodesEnv == null) {
-            System.err.println("ALL_NODES not set");
+            System.err.println("ALL_NODES or BOOTSTRAP_NODE not set");
             System.exit(1);
         }
         if(nodePortEnv == null){
@@ -0,0 +1,90 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.interfaces.BatchResult;
+import it.baddy.uni.rmi.interfaces.NodeAction;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//instradamento di più chiavi insieme: raggruppa le azioni per responsabile secondo la vista
+//locale del ring (senza lookup remote) e invia un solo batch per nodo, tutti in parallelo;
+//le chiavi che il nodo non ha più vengono instradate da lui con il routing normale
+public class BatchRouter {
+
+    private final ChordNode node;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public BatchRouter(ChordNode node) {
+        this.node = node;
+    }
+
+    //i risultati sono nello stesso ordine delle azioni
+    public <T> List<BatchResult<T>> route(long[] keyIds, List<NodeAction<T>> actions, String actionName) {
+        Map<Long, List<Integer>> byOwner = groupByOwner(keyIds);
+        System.out.println("batch " + actionName + " of " + keyIds.length + " keys split across " + byOwner.size() + " nodes");
+
+        Map<Long, Future<List<BatchResult<T>>>> pending = new HashMap<>();
+        byOwner.forEach((owner, indexes) ->
+                pending.put(owner, executor.submit(() -> sendBatch(owner, indexes, keyIds, actions, actionName))));
+
+        List<BatchResult<T>> results = new ArrayList<>(Collections.nCopies(keyIds.length, null));
+        pending.forEach((owner, future) -> {
+            List<Integer> indexes = byOwner.get(owner);
+            List<BatchResult<T>> ownerResults = await(future, indexes.size());
+            for (int i = 0; i < indexes.size(); i++) {
+                results.set(indexes.get(i), ownerResults.get(i));
+            }
+        });
+        return results;
+    }
+
+    private Map<Long, List<Integer>> groupByOwner(long[] keyIds) {
+        Map<Long, List<Integer>> byOwner = new LinkedHashMap<>();
+        for (int i = 0; i < keyIds.length; i++) {
+            long owner = node.ownerInView(keyIds[i]);
+            byOwner.computeIfAbsent(owner, o -> new ArrayList<>()).add(i);
+        }
+        return byOwner;
+    }
+
+    private <T> List<BatchResult<T>> sendBatch(long owner, List<Integer> indexes, long[] keyIds,
+                                               List<NodeAction<T>> actions, String actionName) {
+        long[] ownerKeys = new long[indexes.size()];
+        List<NodeAction<T>> ownerActions = new ArrayList<>(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            ownerKeys[i] = keyIds[indexes.get(i)];
+            ownerActions.add(actions.get(indexes.get(i)));
+        }
+
+        //chiavi locali o di un nodo che non risponde: il nodo le gestisce da solo (il routing lo salta)
+        if (owner == node.getFingerTable().getNodeId() || node.getFailureDetector().isUnreachable(owner)) {
+            return node.executeBatch(ownerKeys, ownerActions, actionName);
+        }
+        try {
+            return ChordRemoteClient.connect(owner).executeBatch(ownerKeys, ownerActions, actionName);
+        } catch (Exception e) {
+            if (ChordRemoteClient.isSafeToRetry(e)) {
+                //batch sicuramente non consegnato: ogni chiave segue il routing normale
+                System.out.println("batch to node " + owner + " not delivered (" + e.getMessage() + "), routing keys one by one");
+                node.getFailureDetector().reportFailure(owner);
+                return node.executeBatch(ownerKeys, ownerActions, actionName);
+            }
+            //il nodo potrebbe averlo già eseguito: ripeterlo cambierebbe i risultati (es. delete)
+            String error = ChordNode.rootCause(e).getMessage();
+            System.err.println("batch to node " + owner + " failed: " + error);
+            return new ArrayList<>(Collections.nCopies(indexes.size(), BatchResult.failed(error)));
+        }
+    }
+
+    private static <T> List<BatchResult<T>> await(Future<List<BatchResult<T>>> future, int size) {
+        try {
+            return future.get();
+        } catch (Exception e) {
+            String error = ChordNode.rootCause(e).getMessage();
+            return new ArrayList<>(Collections.nCopies(size, BatchResult.failed(error)));
+        }
+    }
+}
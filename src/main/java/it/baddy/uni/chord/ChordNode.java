@@ -1,38 +1,83 @@
 package it.baddy.uni.chord;
 
+import it.baddy.uni.metrics.NodeMetrics;
+import it.baddy.uni.rmi.interfaces.BatchResult;
 import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
 import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.NodeDirectory;
 import it.baddy.uni.rmi.interfaces.NodeAction;
-import it.baddy.uni.utils.FileUtils;
+import it.baddy.uni.rmi.interfaces.RouteResult;
+import it.baddy.uni.storage.KeyIndex;
+import it.baddy.uni.storage.LocalStorage;
+import it.baddy.uni.utils.KeyHash;
 
-import java.math.BigInteger;
 import java.nio.file.Path;
 import java.rmi.RemoteException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static it.baddy.uni.config.AppManagements.FILE_NOT_FOUND_EXCEPTION_STRING;
+import static it.baddy.uni.config.AppManagements.HEARTBEAT_INTERVAL_MS;
+import static it.baddy.uni.config.AppManagements.LOCATION_CACHE_SIZE;
+import static it.baddy.uni.config.AppManagements.NOT_RESPONSIBLE_EXCEPTION_STRING;
+import static it.baddy.uni.config.AppManagements.PHI_SUSPECT_THRESHOLD;
+import static it.baddy.uni.config.AppManagements.REPLICATION_FACTOR;
+import static it.baddy.uni.config.AppManagements.SUCCESSOR_LIST_SIZE;
+import static it.baddy.uni.config.AppManagements.SUSPECT_REMOVE_MS;
 
 public class ChordNode {
     private static final int MAX_RETRY = 10;
+    //risposta di lookup quando il responsabile non è stato trovato
+    public static final long UNKNOWN_NODE = -1;
+
+    private final long nodeId;
+    //processo che ospita il nodo: diverso da nodeId per i nodi virtuali
+    private final long physicalId;
+
+    private final IdSpace idSpace;
+    //nodi conosciuti, finger table e predecessore in un'unica vista immutabile: il routing la legge
+    //senza lock, join e leave (serializzati da synchronized) ne pubblicano una nuova
+    private final AtomicReference<RoutingState> routing;
+    //le azioni locali girano sotto il read lock, la cessione di un intervallo a un nodo
+    //che entra sotto il write lock: nessuna scrittura va persa durante il passaggio
+    private final ReadWriteLock rangeLock = new ReentrantReadWriteLock();
+    //il nodo ha ceduto l'intervallo con un leave
+    private volatile boolean left;
+    private LocalStorage storage;
+    private final LocationCache locationCache = new LocationCache(LOCATION_CACHE_SIZE);
+    private volatile ReplicaManager replicas = new ReplicaManager(this, REPLICATION_FACTOR);
+    private final NodeMetrics metrics;
+    private final FailureDetector failureDetector =
+            new FailureDetector(this, HEARTBEAT_INTERVAL_MS, PHI_SUSPECT_THRESHOLD, SUSPECT_REMOVE_MS);
+
+    public ChordNode(long nodeId, List<Long> allNodes) {
+        this(nodeId, allNodes, IdSpace.configured());
+    }
 
-    private final int nodeId;
-
-    private final List<Integer> allNodes;
-    private final FingerTable fingerTable;
-    private int predecessor;
+    public ChordNode(long nodeId, List<Long> allNodes, IdSpace idSpace) {
+        this(nodeId, nodeId, allNodes, idSpace, new NodeMetrics(nodeId));
+    }
 
-    public ChordNode(int nodeId, List<Integer> allNodes) {
+    //nodo virtuale ospitato dal processo physicalId, con le metriche del processo
+    public ChordNode(long nodeId, long physicalId, List<Long> allNodes, IdSpace idSpace, NodeMetrics metrics) {
         this.nodeId = nodeId;
-        this.allNodes = allNodes;
-        this.fingerTable = new FingerTable(nodeId, allNodes);
-        this.predecessor = computePredecessor();
+        this.physicalId = physicalId;
+        this.metrics = metrics;
+        NodeDirectory.register(nodeId, physicalId);
+        this.idSpace = idSpace;
+        Membership members = Membership.of(allNodes).with(nodeId);
+        this.routing = new AtomicReference<>(new RoutingState(members, new FingerTable(nodeId, members, idSpace), members.predecessor(nodeId)));
     }
 
-    //predeccessor per facilitare responsabilità ed eventuali leave
-    private int computePredecessor() {
-        int idx = allNodes.indexOf(nodeId);
-        return idx == 0 ? allNodes.getLast()
-                : allNodes.get(idx - 1);
+    //vista del ring usata da una decisione di routing: nodi, finger e predecessore sempre coerenti tra loro
+    record RoutingState(Membership members, FingerTable fingers, long predecessor) {
+    }
+
+    RoutingState routingState() {
+        return routing.get();
     }
 
     //capire se il nodo è responsabile per quella chiave
@@ -41,19 +86,27 @@ public class ChordNode {
     // 2. nel caso in cui il precedente di lui è maggiore(il nodeId è il primo):
     //      2a. se la chiave è minore di lui
     //      2b. la chiave è maggiore del predecessor(nessuno più grande di lui può diventare responsabile))
-    private boolean isResponsible(int keyId) {
-        if (predecessor < nodeId) {
-            return keyId > predecessor && keyId <= nodeId;
+    //visibile nel package per i benchmark di routing
+    boolean isResponsible(long keyId) {
+        if (left)
+            return false;
+        //il predecessore resta quello della vista finché non viene tolto, anche se sospetto:
+        //altrimenti per un nodo solo lento ci sarebbero due responsabili dello stesso intervallo
+        long predecessor = routing.get().predecessor();
+        //id senza segno: con 64 bit metà del ring è negativa come long
+        if (Long.compareUnsigned(predecessor, nodeId) < 0) {
+            return Long.compareUnsigned(keyId, predecessor) > 0 && Long.compareUnsigned(keyId, nodeId) <= 0;
         } else {
-            return keyId > predecessor || keyId <= nodeId;
+            return Long.compareUnsigned(keyId, predecessor) > 0 || Long.compareUnsigned(keyId, nodeId) <= 0;
         }
     }
 
-    private int closestPrecedingFinger(int id) {
-        int[] fingers = fingerTable.getFingers();
+    long closestPrecedingFinger(long id) {
+        long[] fingers = routing.get().fingers().getFingers();
         //parto dalla fine e trovo il primo nodeId tra il mio e la chiave
+        //i nodi sospetti o irraggiungibili vengono saltati senza aspettare il timeout
         for (int i = fingers.length - 1; i >= 0; i--) {
-            if (isInInterval(fingers[i], nodeId, id)) {
+            if (isInInterval(fingers[i], nodeId, id) && !failureDetector.isUnreachable(fingers[i])) {
                 return fingers[i];
             }
         }
@@ -61,77 +114,182 @@ public class ChordNode {
         return nodeId;
     }
 
-    private boolean isInInterval(int id, int start, int end) {
-        // intervallo normale
-        if (start < end) {
-            //es key=5 start=3 end=7
-            return id > start && id <= end;
-        } else if (start > end) { // intervallo con wrap
-            //es key=7(o 1) start=5 end=2
-            return id > start || id <= end;
-        } else {
-            // start == end, il nodo è l'unico nel ring
-            return true;
+    private boolean isInInterval(long id, long start, long end) {
+        return IdSpace.inInterval(id, start, end);
+    }
+
+
+    public long getPredecessor() {
+        return routing.get().predecessor();
+    }
+
+    //i successori che prendono il posto di quello diretto se cade
+    public List<Long> getSuccessorList() {
+        return successorsOf(nodeId, SUCCESSOR_LIST_SIZE);
+    }
+
+    //primo successore non sospetto né irraggiungibile, nodeId se il nodo è solo nel ring
+    public long getLiveSuccessor() {
+        for (long successor : getSuccessorList()) {
+            if (!failureDetector.isUnreachable(successor))
+                return successor;
         }
+        return routing.get().fingers().getSuccessor();
     }
 
+    public NodeMetrics getMetrics() {
+        return metrics;
+    }
 
-    public int getPredecessor() {
-        return predecessor;
+    public FailureDetector getFailureDetector() {
+        return failureDetector;
     }
 
-    public void printResponsibleKeys(Path filesDir) {
+    //i count nodi che seguono id nel ring (id escluso)
+    public List<Long> successorsOf(long id, int count) {
+        List<Long> successors = new ArrayList<>();
+        Membership members = routing.get().members();
+        int idx = members.indexOf(id);
+        if (idx == -1)
+            return successors;
+        for (int i = 1; i <= count && i < members.size(); i++) {
+            successors.add(members.get((idx + i) % members.size()));
+        }
+        return successors;
+    }
 
-        Map<BigInteger, Path> index = FileUtils.indexFiles(filesDir);
+    public int getMembershipSize() {
+        return routing.get().members().size();
+    }
 
-        System.out.println("Node " + nodeId + " predecessor = " + predecessor);
+    public long getPhysicalId() {
+        return physicalId;
+    }
 
-        index.forEach((key, path) -> {
-            int keyId = key.mod(BigInteger.valueOf(fingerTable.getRingSize())).intValue();
+    //nodi fisici distinti nella vista del ring
+    public int getPhysicalCount() {
+        Set<Long> hosts = new HashSet<>();
+        for (long id : routing.get().members().asList())
+            hosts.add(NodeDirectory.physicalOf(id));
+        return hosts.size();
+    }
 
-            if (isResponsible(keyId)) {
-                System.out.println("  responsible for key " + keyId +
-                        " (file " + path.getFileName() + ")");
-            }
-            else {
-                System.out.println("NOT responsible for keyId: "+keyId);
+    //primo nodo dopo id che sta su un altro processo (con un nodo virtuale per processo è il successore),
+    //id stesso se non ce ne sono; skipSuspects salta i nodi sospetti o irraggiungibili come getLiveSuccessor
+    public long nextHostSuccessor(long id, boolean skipSuspects) {
+        Membership members = routing.get().members();
+        int idx = members.indexOf(id);
+        if (idx == -1)
+            return id;
+        long host = NodeDirectory.physicalOf(id);
+        int size = members.size();
+        for (int i = 1; i < size; i++) {
+            long candidate = members.get((idx + i) % size);
+            if (NodeDirectory.physicalOf(candidate) != host && !(skipSuspects && failureDetector.isUnreachable(candidate)))
+                return candidate;
+        }
+        return id;
+    }
+
+    public ReplicaManager getReplicas() {
+        return replicas;
+    }
+
+    //replica con parametri diversi da quelli configurati (simulazioni e test), prima che il nodo serva richieste
+    public void useReplicas(ReplicaManager replicas) {
+        this.replicas = replicas;
+    }
+
+    //costruisce l'indice dei file del nodo e avvia il watcher sulla cartella
+    public void initStorage(Path filesDir) {
+        initStorage(filesDir, true);
+    }
+
+    public void initStorage(Path filesDir, boolean watchChanges) {
+        this.storage = new LocalStorage(nodeId, filesDir, metrics, watchChanges);
+    }
+
+    //i nodi virtuali di un processo condividono la cartella e l'indice:
+    //ognuno considera suoi solo i file del proprio intervallo
+    public void useStorage(LocalStorage shared) {
+        this.storage = shared;
+    }
+
+    public LocalStorage getStorage() {
+        if (storage == null)
+            throw new IllegalStateException("storage not initialized on node " + nodeId);
+        return storage;
+    }
+
+    public KeyIndex getKeyIndex() {
+        return getStorage().getIndex();
+    }
+
+    public Path getDataDir() {
+        return getStorage().getRoot();
+    }
+
+    //solo i conteggi: con milioni di file una riga per chiave rallenta l'avvio
+    public void printResponsibleKeys() {
+
+        System.out.println("Node " + nodeId + " predecessor = " + getPredecessor());
+
+        long responsible = getKeyIndex().entries().keySet().stream()
+                .filter(key -> isResponsible(idSpace.ringId(key)))
+                .count();
+        System.out.println("  responsible for " + responsible + " of " + getKeyIndex().size() + " local keys"
+                + (getKeyIndex().isReconciling() ? " (index still being reconciled)" : ""));
+    }
+
+    //file locali con chiave nell'intervallo (start, end] del ring
+    public Map<KeyHash, Path> getFilesInRange(long start, long end) {
+        Map<KeyHash, Path> files = new HashMap<>();
+        getKeyIndex().entries().forEach((key, entry) -> {
+            if (isInInterval(idSpace.ringId(key), start, end)) {
+                files.put(key, entry.getPath());
             }
         });
+        return files;
     }
 
     //restituisce i file per cui il NodeID è responsabile del KeyID
-    public Map<BigInteger, Path> getResponsibleFiles(Path filesDir) {
-        Map<BigInteger, Path> index = FileUtils.indexFiles(filesDir);
-        Map<BigInteger, Path> responsibleFiles = new HashMap<>();
-        index.forEach((key, path) -> {
-            int keyId = key.mod(BigInteger.valueOf(fingerTable.getRingSize())).intValue();
+    public Map<KeyHash, Path> getResponsibleFiles() {
+        Map<KeyHash, Path> responsibleFiles = new HashMap<>();
+        getKeyIndex().entries().forEach((key, entry) -> {
+            long keyId = idSpace.ringId(key);
 
             if (isResponsible(keyId)) {
-                responsibleFiles.put(key, path);
+                responsibleFiles.put(key, entry.getPath());
             }
 
         });
         return responsibleFiles;
     }
 
+    //la tabella pubblicata in questo momento: non cambia anche se il ring cambia
     public FingerTable getFingerTable() {
-        return fingerTable;
+        return routing.get().fingers();
+    }
+
+    public IdSpace getIdSpace() {
+        return idSpace;
     }
 
-    public int lookup(int id) {
+    public long lookup(long id) {
 
         //se appartiene al nodo risponde subito
         if(isResponsible(id))
             return nodeId;
 
         //anche il successore può essere ritornato
-        int successor = fingerTable.getSuccessor();
+        long successor = getLiveSuccessor();
         if (isInInterval(id, nodeId, successor)) {
             return successor;
         }
 
-
-        int nextNode = closestPrecedingFinger(id);
+        //la location cache non si usa qui: una voce vecchia finirebbe ai client e nelle finger
+        //(fix_fingers); è solo un suggerimento per route, dove il nodo la verifica prima di eseguire
+        long nextNode = closestPrecedingFinger(id);
 
         //se non sono stati trovati nodi
         if (nextNode == nodeId) {
@@ -141,32 +299,97 @@ public class ChordNode {
         //manda richiesta al nodo più vicino sulla finger table
         try {
             System.out.println("calling lookup on remote node: "+ nextNode);
-            ChordRemoteInterface remote = ChordRemoteClient.connect("node" + nextNode, 1099);
-            return remote.lookup(id);
+            ChordRemoteInterface remote = ChordRemoteClient.connect(nextNode);
+            long owner = remote.lookup(id);
+            Membership members = routing.get().members();
+            if (owner != UNKNOWN_NODE && members.contains(owner)) {
+                locationCache.put(members.predecessor(owner), owner);
+            }
+            return owner;
         } catch (RemoteException re){
             System.err.println("error during remote lookup call: " + re.detail);
         }
         catch (Exception e) {
             throw new RuntimeException(e);
         }
-        return -1; //error
+        return UNKNOWN_NODE; //error
+    }
+
+    //responsabile di id secondo la vista locale del ring, senza chiamate remote
+    public long ownerInView(long id) {
+        return routing.get().members().successor(id);
+    }
+
+    public List<Long> getKnownNodes() {
+        return routing.get().members().asList();
+    }
+
+    public boolean isKnown(long id) {
+        return routing.get().members().contains(id);
+    }
+
+    //entra nel ring passando da un nodo già presente: prende da lui la vista dei nodi
+    //e restituisce il successore, che dovrà poi passare le chiavi con acceptJoin
+    public long join(ChordRemoteInterface bootstrap) throws RemoteException {
+        NodeDirectory.merge(bootstrap.getNodeDirectory());
+        List<Long> known = bootstrap.getKnownNodes();
+        if (known.contains(nodeId))
+            throw new IllegalStateException("node id " + Long.toUnsignedString(nodeId) + " is already in the ring");
+        long successor = bootstrap.lookup(nodeId);
+        if (successor == UNKNOWN_NODE)
+            throw new IllegalStateException("bootstrap node could not find the successor of " + Long.toUnsignedString(nodeId));
+        for (long id : known) {
+            checkNodesAndAdd(id);
+        }
+        System.out.println("joined ring through bootstrap, successor is " + successor + ", predecessor is " + getPredecessor());
+        return successor;
+    }
+
+    //aggiunge un nodo entrato nel ring, false se era già conosciuto
+    public synchronized boolean checkNodesAndAdd(long nodeId) {
+        RoutingState state = routing.get();
+        if (state.members().contains(nodeId))
+            return false;
+        System.out.println("adding node " + nodeId + " to list");
+        Membership members = state.members().with(nodeId);
+        //il nuovo nodo prende parte dell'intervallo del suo successore
+        int idx = members.indexOf(nodeId);
+        locationCache.invalidateOwner(members.get((idx + 1) % members.size()));
+        routing.set(new RoutingState(members, state.fingers().rebuild(members), members.predecessor(this.nodeId)));
+        return true;
     }
 
-    public void checkNodesAndRemove(int nodeId){
-        int idx = allNodes.indexOf(nodeId);
-        if(idx!=-1){
+    public synchronized void checkNodesAndRemove(long nodeId){
+        RoutingState state = routing.get();
+        Membership members = state.members();
+        if(members.contains(nodeId) && nodeId != this.nodeId){
             System.out.println("removing node "+nodeId+" from list");
-            allNodes.remove(idx);
+            members = members.without(nodeId);
         }
-        //controlla se devi aggiornare il predecessor
-        this.predecessor = computePredecessor();
+        //lo stub del nodo rimosso non serve più e le sue chiavi passano al successore
+        ChordRemoteClient.invalidate(nodeId);
+        locationCache.invalidateOwner(nodeId);
+        //predecessore e finger che puntavano al nodo uscito vengono ricalcolati nella nuova vista
+        long predecessor = members.predecessor(this.nodeId);
         System.out.println("new predecessor is: "+predecessor);
-        //aggiorna se necessario il successor
-        fingerTable.updateFingersChecked(nodeId, allNodes);
+        routing.set(new RoutingState(members, state.fingers().without(nodeId, members), predecessor));
+    }
+
+    //entry corretta da fix_fingers, pubblicata come una nuova tabella
+    synchronized void updateFinger(int index, long owner) {
+        RoutingState state = routing.get();
+        FingerTable updated = state.fingers().withFinger(index, owner);
+        if (updated != state.fingers())
+            routing.set(new RoutingState(state.members(), updated, state.predecessor()));
+    }
 
+    public <T> T routeToResponsible(long keyId, NodeAction<T> action, String actionName, int depth) throws RemoteException {
+        RouteResult<T> result = route(keyId, action, actionName, depth);
+        metrics.recordHops(result.getHops());
+        return result.getValue();
     }
 
-    public <T> T routeToResponsible(int keyId, NodeAction<T> action, String actionName, int depth) throws RemoteException {
+    public <T> RouteResult<T> route(long keyId, NodeAction<T> action, String actionName, int depth) throws RemoteException {
         if (depth > MAX_RETRY) {
             throw new RuntimeException("Max routing retries exceeded");
         }
@@ -174,56 +397,187 @@ public class ChordNode {
         System.out.println("routing to responsible node for keyId: " + keyId + " with action: " + actionName);
         if (isResponsible(keyId)) {
             // sono responsabile, eseguo direttamente
-            return action.execute(this);
+            RouteResult<T> local = executeLocally(keyId, action);
+            if (local != null)
+                return local;
         }
 
-        int successor = fingerTable.getSuccessor();
+        //prova prima il proprietario in cache, in un solo hop
+        RouteResult<T> cached = routeToCachedOwner(keyId, action, actionName);
+        if (cached != null) {
+            return cached;
+        }
+
+        long successor = getLiveSuccessor();
         if (isInInterval(keyId, nodeId, successor)) {
             try {
                 System.out.println("sending routeToResponsible request to successor: " + successor + " for action: " + actionName);
-                ChordRemoteInterface remote = ChordRemoteClient.connect("node" + successor, 1099);
-                return remote.routeToResponsible(keyId, action, actionName);
+                ChordRemoteInterface remote = ChordRemoteClient.connect(successor);
+                return remember(remote.routeToResponsible(keyId, action, actionName));
             } catch (RemoteException e) {
+                if (ChordRemoteClient.isTransportFailure(e) && !isFileNotFoundException(e)) {
+                    //successore caduto: il routing lo salta e si riprova con il prossimo della lista
+                    System.out.println("successor " + successor + " unreachable, trying the next one");
+                    failureDetector.reportFailure(successor);
+                    return route(keyId, action, actionName, depth + 1);
+                }
                 throw new RuntimeException("Routing failed to successor " + successor, e);
             } catch (Exception e){
                 throw new RuntimeException("Generic error during execution: ", e);
             }
         }
 
-        int nextNode = closestPrecedingFinger(keyId);
+        long nextNode = closestPrecedingFinger(keyId);
         if (nextNode == nodeId) {
             nextNode = successor; // fallback
         }
 
         try {
             System.out.println("sending routeToResponsible request to node: " + nextNode + " for action: " + actionName);
-            ChordRemoteInterface remote = ChordRemoteClient.connect("node" + nextNode, 1099);
-            return remote.routeToResponsible(keyId, action, actionName);
+            ChordRemoteInterface remote = ChordRemoteClient.connect(nextNode);
+            return remember(remote.routeToResponsible(keyId, action, actionName));
         } catch (RemoteException e) {
-            if (isFileNotFoundException(e)) {
-                // errore applicativo, NON rimuovere nodo
+            if (!ChordRemoteClient.isTransportFailure(e) || isFileNotFoundException(e)) {
+                // errore applicativo: il nodo ha risposto, NON va tolto dalla vista
                 throw e;
             }
-            //se un nodo non risponde, lo rimuovo dalla finger table
-            System.out.println("Node " + nextNode + " unreachable. Removing from finger table.");
-            checkNodesAndRemove(nextNode);
-
-            //riprova dopo aver aggiornato la finger table
-            return routeToResponsible(keyId, action, actionName,depth + 1);
+            //nodo irraggiungibile: il routing lo salta, la vista la aggiorna il failure detector
+            System.out.println("Node " + nextNode + " unreachable, trying another route.");
+            failureDetector.reportFailure(nextNode);
+            return route(keyId, action, actionName,depth + 1);
 
         }catch (Exception e){
             throw new RuntimeException("Generic error during execution: ", e);
         }
     }
 
+    //esegue un gruppo di azioni: quelle di cui il nodo è responsabile localmente,
+    //le altre (es. il ring è cambiato dopo il raggruppamento) con il routing normale
+    public <T> List<BatchResult<T>> executeBatch(long[] keyIds, List<NodeAction<T>> actions, String actionName) {
+        List<BatchResult<T>> results = new ArrayList<>(keyIds.length);
+        for (int i = 0; i < keyIds.length; i++) {
+            try {
+                results.add(BatchResult.ok(route(keyIds[i], actions.get(i), actionName, 0).getValue()));
+            } catch (Exception e) {
+                results.add(BatchResult.failed(rootCause(e).getMessage()));
+            }
+        }
+        return results;
+    }
+
+    //esegue l'azione solo se questo nodo è responsabile, altrimenti segnala la rotta sbagliata
+    public <T> RouteResult<T> executeIfResponsible(long keyId, NodeAction<T> action, String actionName) throws RemoteException {
+        if (!isResponsible(keyId)) {
+            System.out.println("not responsible for keyId: " + keyId + " requested by cached route, action: " + actionName);
+            throw new RemoteException(NOT_RESPONSIBLE_EXCEPTION_STRING);
+        }
+        RouteResult<T> local = executeLocally(keyId, action);
+        if (local == null)
+            throw new RemoteException(NOT_RESPONSIBLE_EXCEPTION_STRING);
+        return local;
+    }
+
+    //null se nel frattempo l'intervallo della chiave è passato a un nodo entrato nel ring
+    private <T> RouteResult<T> executeLocally(long keyId, NodeAction<T> action) throws RemoteException {
+        rangeLock.readLock().lock();
+        try {
+            if (!isResponsible(keyId))
+                return null;
+            RouteResult<T> result = new RouteResult<>(action.execute(this), nodeId, 0);
+            metrics.servedLocally();
+            return result;
+        } finally {
+            rangeLock.readLock().unlock();
+        }
+    }
+
+    //cede l'intervallo al nodo che entra: finalPass (es. ultimo invio dei file cambiati)
+    //gira senza azioni locali in corso, poi il nodo viene aggiunto alla vista
+    public <T> T handOverRange(long newNodeId, Callable<T> finalPass) throws Exception {
+        rangeLock.writeLock().lock();
+        try {
+            T result = finalPass.call();
+            checkNodesAndAdd(newNodeId);
+            return result;
+        } finally {
+            rangeLock.writeLock().unlock();
+        }
+    }
+
+    //cede tutto l'intervallo al successore (leave): se finalPass riesce il nodo non è più
+    //responsabile di nulla e le azioni rimaste in attesa vengono instradate al successore
+    public <T> T handOverRange(Callable<T> finalPass) throws Exception {
+        rangeLock.writeLock().lock();
+        try {
+            T result = finalPass.call();
+            left = true;
+            return result;
+        } finally {
+            rangeLock.writeLock().unlock();
+        }
+    }
+
+    //null se non c'è una rotta in cache o se era sbagliata: in quel caso si usa il routing normale
+    private <T> RouteResult<T> routeToCachedOwner(long keyId, NodeAction<T> action, String actionName) throws RemoteException {
+        Long owner = locationCache.get(keyId);
+        if (owner == null || owner == nodeId || failureDetector.isUnreachable(owner)) {
+            return null;
+        }
+        try {
+            System.out.println("sending request for keyId: " + keyId + " to cached owner: " + owner + " for action: " + actionName);
+            RouteResult<T> result = ChordRemoteClient.connect(owner).executeIfResponsible(keyId, action, actionName);
+            metrics.forwarded();
+            return result.forwarded();
+        } catch (RemoteException e) {
+            if (hasRootMessage(e, NOT_RESPONSIBLE_EXCEPTION_STRING) || ChordRemoteClient.isSafeToRetry(e)) {
+                //rotta in cache non più valida o nodo non raggiunto: l'azione non è stata eseguita
+                System.out.println("cached route to node " + owner + " failed, falling back to finger routing");
+                locationCache.recordMisdirected(owner);
+                if (ChordRemoteClient.isSafeToRetry(e))
+                    failureDetector.reportFailure(owner);
+                return null;
+            }
+            //errore dell'azione, o timeout quando l'azione può essere già stata eseguita:
+            //ripeterla con il routing normale potrebbe applicare due volte una scrittura
+            throw e;
+        } catch (Exception e) {
+            //connessione non aperta, la richiesta non è partita
+            locationCache.recordMisdirected(owner);
+        }
+        return null;
+    }
+
+    //memorizza nella location cache l'intervallo del nodo che ha servito la richiesta
+    private <T> RouteResult<T> remember(RouteResult<T> result) {
+        metrics.forwarded();
+        long owner = result.getOwnerId();
+        Membership members = routing.get().members();
+        if (owner != nodeId && members.contains(owner)) {
+            locationCache.put(members.predecessor(owner), owner);
+        }
+        return result.forwarded();
+    }
+
+    public LocationCache getLocationCache() {
+        return locationCache;
+    }
+
     public boolean isFileNotFoundException(Throwable e) {
+        return hasRootMessage(e, FILE_NOT_FOUND_EXCEPTION_STRING);
+    }
+
+    private static boolean hasRootMessage(Throwable e, String message) {
+        Throwable cause = rootCause(e);
+        return cause instanceof RemoteException &&
+                message.equals(cause.getMessage());
+    }
+
+    public static Throwable rootCause(Throwable e) {
         Throwable cause = e;
         while (cause.getCause() != null) {
             cause = cause.getCause();
         }
-
-        return cause instanceof RemoteException &&
-                FILE_NOT_FOUND_EXCEPTION_STRING.equals(cause.getMessage());
+        return cause;
     }
 
 }
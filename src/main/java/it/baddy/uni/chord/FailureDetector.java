@@ -0,0 +1,170 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//failure detector phi accrual sui nodi che il routing usa (successori, predecessore e finger):
+//un heartbeat per intervallo, il sospetto cresce con il tempo dall'ultima risposta
+//in rapporto all'intervallo medio osservato. I nodi sospetti vengono saltati dal routing
+//e, se restano sospetti troppo a lungo, tolti dalla vista del ring. Un errore di trasporto
+//fa solo saltare il nodo al routing finché non risponde di nuovo: la vista cambia soltanto con phi
+public class FailureDetector {
+
+    //log10(e): con arrivi esponenziali phi = tempo trascorso / intervallo medio * log10(e)
+    private static final double LOG10_E = Math.log10(Math.E);
+
+    private final ChordNode node;
+    private final long intervalMillis;
+    private final double suspectPhi;
+    private final long removeAfterMillis;
+    private final Map<Long, Heartbeats> monitored = new ConcurrentHashMap<>();
+    private final ExecutorService pings = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "chord-failure-detector");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public FailureDetector(ChordNode node, long intervalMillis, double suspectPhi, long removeAfterMillis) {
+        this.node = node;
+        this.intervalMillis = intervalMillis;
+        this.suspectPhi = suspectPhi;
+        this.removeAfterMillis = removeAfterMillis;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::round, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        System.out.println("failure detector started, heartbeat every " + intervalMillis + " ms, suspect at phi " + suspectPhi);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+        pings.shutdownNow();
+    }
+
+    //nodi mai controllati non sono sospetti: il routing li prova normalmente
+    public boolean isSuspect(long nodeId) {
+        Heartbeats state = monitored.get(nodeId);
+        return state != null && state.suspectSince(System.currentTimeMillis()) != 0;
+    }
+
+    //il routing salta i nodi sospetti e quelli che dall'ultimo errore non hanno ancora risposto
+    public boolean isUnreachable(long nodeId) {
+        Heartbeats state = monitored.get(nodeId);
+        return state != null && (state.failedAt != 0 || state.suspectSince(System.currentTimeMillis()) != 0);
+    }
+
+    public double phi(long nodeId) {
+        Heartbeats state = monitored.get(nodeId);
+        return state == null ? 0 : state.phi(System.currentTimeMillis());
+    }
+
+    //un errore di trasporto visto dal routing: il nodo viene saltato fino alla prossima risposta,
+    //ma diventa sospetto (e poi viene tolto) solo se phi supera la soglia
+    public void reportFailure(long nodeId) {
+        long now = System.currentTimeMillis();
+        monitored.computeIfAbsent(nodeId, id -> new Heartbeats(now)).failedAt = now;
+    }
+
+    private void round() {
+        try {
+            long now = System.currentTimeMillis();
+            Set<Long> targets = targets();
+            monitored.keySet().retainAll(targets);
+            for (long target : targets) {
+                Heartbeats state = monitored.computeIfAbsent(target, id -> new Heartbeats(now));
+                checkAndPing(target, state, now);
+            }
+        } catch (Exception e) {
+            System.err.println("failure detector round failed: " + e.getMessage());
+        }
+    }
+
+    private Set<Long> targets() {
+        long self = node.getFingerTable().getNodeId();
+        Set<Long> targets = new LinkedHashSet<>(node.getSuccessorList());
+        targets.add(node.getPredecessor());
+        for (long finger : node.getFingerTable().getFingers()) {
+            targets.add(finger);
+        }
+        targets.remove(self);
+        return targets;
+    }
+
+    private void checkAndPing(long target, Heartbeats state, long now) {
+        long suspectSince = state.suspectSince(now);
+        if (suspectSince != 0 && !state.reported) {
+            state.reported = true;
+            System.out.println("node " + target + " is suspect (phi " + String.format("%.1f", state.phi(now)) + ")");
+        }
+        if (suspectSince != 0 && now - suspectSince >= removeAfterMillis) {
+            System.out.println("node " + target + " suspect for " + (now - suspectSince) + " ms, removing it from the ring view");
+            monitored.remove(target);
+            node.checkNodesAndRemove(target);
+            return;
+        }
+        //ping precedente ancora senza risposta: è un heartbeat perso, lastArrival resta
+        //indietro e phi continua a crescere (un nodo solo lento torna a posto quando risponde)
+        if (state.pendingSince != 0)
+            return;
+
+        state.pendingSince = now;
+        pings.submit(() -> {
+            try {
+                ChordRemoteClient.connect(target).ping();
+                state.arrived(System.currentTimeMillis());
+                if (state.reported) {
+                    System.out.println("node " + target + " answers again, no longer suspect");
+                    state.reported = false;
+                }
+            } catch (Exception e) {
+                state.failedAt = System.currentTimeMillis();
+            } finally {
+                state.pendingSince = 0;
+            }
+        });
+    }
+
+    private final class Heartbeats {
+        private volatile long lastArrival;
+        //media mobile degli intervalli tra due risposte
+        private volatile double meanInterval = intervalMillis;
+        private volatile long pendingSince;
+        //ultimo errore di trasporto, azzerato dalla risposta successiva
+        private volatile long failedAt;
+        private volatile long firstSuspect;
+        private volatile boolean reported;
+
+        private Heartbeats(long now) {
+            this.lastArrival = now;
+        }
+
+        private void arrived(long now) {
+            meanInterval = 0.9 * meanInterval + 0.1 * Math.max(intervalMillis, now - lastArrival);
+            lastArrival = now;
+            failedAt = 0;
+            firstSuspect = 0;
+        }
+
+        private double phi(long now) {
+            return (now - lastArrival) / meanInterval * LOG10_E;
+        }
+
+        //0 se il nodo non è sospetto, altrimenti da quando lo è
+        private long suspectSince(long now) {
+            if (phi(now) < suspectPhi)
+                return 0;
+            if (firstSuspect == 0)
+                firstSuspect = now;
+            return firstSuspect;
+        }
+    }
+}
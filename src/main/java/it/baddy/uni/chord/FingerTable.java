@@ -1,15 +1,15 @@
 package it.baddy.uni.chord;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
+//immutabile: le modifiche (join, leave, fix_fingers) restituiscono una nuova tabella,
+//che il nodo pubblica insieme alla vista dei nodi (vedi ChordNode.RoutingState)
 public class FingerTable {
 
-    private final int nodeId;
+    private final long nodeId;
     private final int m;
-    private final int ringSize=40;
-    private final int[] fingers;
+    private final IdSpace idSpace;
+    private final long[] fingers;
 
     //crea la finger table per m=3 si ha max ringsize=8
     //0: nodeId+2^0 mod 8= 1
@@ -18,36 +18,64 @@ public class FingerTable {
     //0: nodeId+2^0 mod 8= 0
     //1: nodeId+2^1 mod 8= 1
     //2: nodeId+2^2 mod 8= 3
-    public FingerTable(int nodeId, List<Integer> allNodeIds) {
+    public FingerTable(long nodeId, List<Long> allNodeIds) {
+        this(nodeId, allNodeIds, IdSpace.configured());
+    }
+
+    public FingerTable(long nodeId, List<Long> allNodeIds, IdSpace idSpace) {
+        this(nodeId, Membership.of(allNodeIds), idSpace);
+    }
+
+    public FingerTable(long nodeId, Membership members, IdSpace idSpace) {
+        this(nodeId, idSpace, new long[idSpace.getBits()]);
+        System.out.println("m is equal to:" + m);
+        fill(members);
+    }
+
+    private FingerTable(long nodeId, IdSpace idSpace, long[] fingers) {
         this.nodeId = nodeId;
+        this.idSpace = idSpace;
         //numero di bit necessari
-        this.m = (int) Math.ceil(Math.log(ringSize) / Math.log(2));
-        System.out.println("m is equal to:" + m);
-        this.fingers = new int[m];
+        this.m = idSpace.getBits();
+        this.fingers = fingers;
+    }
 
+    //ogni entry è il successore della sua partenza: una ricerca binaria per entry
+    private void fill(Membership members) {
         for (int i = 0; i < m; i++) {
-            fingers[i] = successor((nodeId + (1 << i)) % ringSize, allNodeIds);
+            fingers[i] = members.successor(idSpace.fingerStart(nodeId, i));
         }
     }
 
-    //dato il valore di un entry della finger trova il primo nodo con id maggiore nel sistema
-    private int successor(int id, List<Integer> nodes) {
-        return nodes.stream()
-                .filter(n -> n >= id)
-                .findFirst()
-                .orElse(nodes.getFirst());
+    //tabella ricalcolata dai nodi conosciuti (es. dopo un join)
+    public FingerTable rebuild(Membership members) {
+        FingerTable rebuilt = new FingerTable(nodeId, idSpace, new long[m]);
+        rebuilt.fill(members);
+        return rebuilt;
+    }
+
+    //tabella con una sola entry cambiata, con il responsabile trovato da fix_fingers
+    public FingerTable withFinger(int index, long node) {
+        if (fingers[index] == node)
+            return this;
+        System.out.println("fix fingers: entry " + index + " moved from " + Long.toUnsignedString(fingers[index])
+                + " to " + Long.toUnsignedString(node));
+        long[] updated = fingers.clone();
+        updated[index] = node;
+        return new FingerTable(nodeId, idSpace, updated);
     }
 
-    public int getSuccessor() {
+    public long getSuccessor() {
         return fingers[0];
     }
 
-    public int[] getFingers() {
+    //la tabella è condivisa tra i thread: l'array va solo letto
+    public long[] getFingers() {
         return fingers;
     }
 
 
-    public int getNodeId() {
+    public long getNodeId() {
         return nodeId;
     }
 
@@ -55,18 +83,18 @@ public class FingerTable {
         return m;
     }
 
-    public int getRingSize() {
-        return ringSize;
+    public IdSpace getIdSpace() {
+        return idSpace;
     }
 
     public void print() {
-        System.out.println("Finger table for node " + nodeId +" with m: " + m);
+        System.out.println("Finger table for node " + Long.toUnsignedString(nodeId) + " with m: " + m);
         System.out.println("-------------------------------------------");
 
         for (int i = 0; i < m; i++) {
             System.out.println(
                     "Entry " + i +
-                            " | related node = " + fingers[i]
+                            " | related node = " + Long.toUnsignedString(fingers[i])
             );
         }
 
@@ -77,7 +105,7 @@ public class FingerTable {
         StringBuilder sb = new StringBuilder();
 
         sb.append("Finger table for node ")
-                .append(nodeId)
+                .append(Long.toUnsignedString(nodeId))
                 .append(" with m: ")
                 .append(m)
                 .append("\n");
@@ -88,7 +116,7 @@ public class FingerTable {
             sb.append("Entry ")
                     .append(i)
                     .append(" | related node = ")
-                    .append(fingers[i])
+                    .append(Long.toUnsignedString(fingers[i]))
                     .append("\n");
         }
 
@@ -97,31 +125,15 @@ public class FingerTable {
         return sb.toString();
     }
 
-    //aggiorna il successor della finger table se necessario
-    public void updateFingersChecked(int nodeId, List<Integer> allNodeIds) {
-        System.out.println("allNodeIds is: " + allNodeIds);
-        int[] indexes = getEntries(nodeId);
-        for (int index : indexes) {
-            //ricalcola l'entry della finger table
-            fingers[index] = successor((this.nodeId +  (1 << index)) % ringSize, allNodeIds);
-            System.out.println("Updated finger table entry " + index + " to " + fingers[index]);
-        }
-
-    }
-
-    //ritorna gli indici delle entry della finger table che devono essere aggiornate
-    private int[] getEntries(int nodeId) {
-        //init a -1
-        int[] temp = new int[m];
-        Arrays.fill(temp, -1);
-        int count = 0;
-        //trova gli indici delle entry che devono essere aggiornate
+    //tabella senza il nodo uscito: ricalcola solo le entry che puntavano a lui
+    public FingerTable without(long nodeId, Membership members) {
+        long[] updated = fingers.clone();
         for (int i = 0; i < m; i++) {
-            if (nodeId == this.fingers[i]) {
-                temp[count++] = i;
+            if (updated[i] == nodeId) {
+                updated[i] = members.successor(idSpace.fingerStart(this.nodeId, i));
+                System.out.println("Updated finger table entry " + i + " to " + Long.toUnsignedString(updated[i]));
             }
         }
-        //ritorna solo quelli da aggiornare
-        return Arrays.copyOf(temp, count);
+        return new FingerTable(this.nodeId, idSpace, updated);
     }
 }
@@ -0,0 +1,99 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.utils.KeyHash;
+
+import static it.baddy.uni.config.AppManagements.RING_BITS;
+import static it.baddy.uni.config.AppManagements.RING_SIZE;
+
+//spazio degli identificatori del ring: 2^bits posizioni (fino a 64 bit, id come long senza segno)
+//oppure una dimensione arbitraria, come il ring da 40 posizioni usato finora
+public final class IdSpace {
+
+    //oltre questa dimensione il modulo a byte del digest andrebbe in overflow
+    private static final long MAX_ARBITRARY_SIZE = 1L << 55;
+
+    private static final IdSpace CONFIGURED = RING_BITS > 0 ? ofBits(RING_BITS) : ofSize(RING_SIZE);
+
+    private final int bits;
+    //dimensione del ring, 0 significa 2^64
+    private final long size;
+    private final long mask;
+    private final boolean powerOfTwo;
+
+    private IdSpace(int bits, long size, boolean powerOfTwo) {
+        this.bits = bits;
+        this.size = size;
+        this.powerOfTwo = powerOfTwo;
+        this.mask = bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    public static IdSpace configured() {
+        return CONFIGURED;
+    }
+
+    public static IdSpace ofBits(int bits) {
+        if (bits < 1 || bits > 64)
+            throw new IllegalArgumentException("ring bits must be between 1 and 64, got " + bits);
+        return new IdSpace(bits, bits == 64 ? 0 : 1L << bits, true);
+    }
+
+    public static IdSpace ofSize(long size) {
+        if (size < 2)
+            throw new IllegalArgumentException("ring size must be at least 2, got " + size);
+        if (Long.bitCount(size) == 1)
+            return ofBits(Long.numberOfTrailingZeros(size));
+        if (size > MAX_ARBITRARY_SIZE)
+            throw new IllegalArgumentException("ring sizes above 2^55 must be a power of two, got " + size);
+        //numero di bit necessari
+        return new IdSpace(64 - Long.numberOfLeadingZeros(size - 1), size, false);
+    }
+
+    //posizione sul ring della chiave: equivale a SHA-1 mod size senza creare BigInteger
+    public long ringId(KeyHash key) {
+        if (powerOfTwo)
+            return key.low64() & mask;
+        long r = 0;
+        for (int i = 0; i < KeyHash.LENGTH; i++) {
+            r = ((r << 8) | key.byteAt(i)) % size;
+        }
+        return r;
+    }
+
+    public long ringId(String fileName) {
+        return ringId(KeyHash.of(fileName));
+    }
+
+    //(id + 2^i) mod size, la partenza della i-esima entry della finger table
+    public long fingerStart(long id, int i) {
+        if (powerOfTwo)
+            return (id + (1L << i)) & mask;
+        return (id + (1L << i)) % size;
+    }
+
+    //vero se id è nell'intervallo (start, end] del ring
+    public static boolean inInterval(long id, long start, long end) {
+        int cmp = Long.compareUnsigned(start, end);
+        if (cmp < 0) {
+            //es key=5 start=3 end=7
+            return Long.compareUnsigned(id, start) > 0 && Long.compareUnsigned(id, end) <= 0;
+        } else if (cmp > 0) {
+            //es key=7(o 1) start=5 end=2
+            return Long.compareUnsigned(id, start) > 0 || Long.compareUnsigned(id, end) <= 0;
+        }
+        // start == end, il nodo è l'unico nel ring
+        return true;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    //dimensione del ring come stringa senza segno (2^64 non sta in un long)
+    public String describeSize() {
+        return size == 0 ? "2^64" : Long.toUnsignedString(size);
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
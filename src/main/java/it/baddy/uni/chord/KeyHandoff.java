@@ -0,0 +1,123 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.ChunkedTransfer;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+import it.baddy.uni.storage.LocalStorage;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+//trasferimento di tutte le chiavi di un nodo al successore quando lascia la rete:
+//pochi stream paralleli a chunk (memoria limitata a un chunk per stream) e
+//conferma finale del successore con i nomi dei file salvati
+public class KeyHandoff {
+
+    private static final int PROGRESS_INTERVAL_SEC = 2;
+
+    private final long nodeId;
+    private final int streams;
+    //i file piccoli possono stare in un segmento invece che nel loro path
+    private final LocalStorage storage;
+
+    public KeyHandoff(long nodeId, int streams, LocalStorage storage) {
+        this.nodeId = nodeId;
+        this.streams = Math.max(1, streams);
+        this.storage = storage;
+    }
+
+    //ritorna solo quando il successore ha confermato tutti i file, altrimenti lancia eccezione
+    public void transferAll(ChordRemoteInterface successor, Collection<Path> files) throws Exception {
+        long totalBytes = 0;
+        for (Path file : files) {
+            totalBytes += storage.sizeOf(file);
+        }
+        long handoffId = successor.beginHandoff(nodeId, files.size());
+        System.out.println("handoff " + handoffId + ": sending " + files.size() + " files (" + totalBytes
+                + " bytes) to successor over " + streams + " streams");
+
+        Queue<Path> queue = new ConcurrentLinkedQueue<>(files);
+        Queue<Path> failed = new ConcurrentLinkedQueue<>();
+        AtomicLong sentFiles = new AtomicLong();
+        AtomicLong sentBytes = new AtomicLong();
+
+        long total = totalBytes;
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> printProgress(handoffId, sentFiles.get(), files.size(), sentBytes.get(), total),
+                PROGRESS_INTERVAL_SEC, PROGRESS_INTERVAL_SEC, TimeUnit.SECONDS);
+        ExecutorService pool = Executors.newFixedThreadPool(streams);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < streams; i++) {
+                workers.add(pool.submit(() -> {
+                    Path file;
+                    while ((file = queue.poll()) != null) {
+                        if (sendWithRetry(successor, handoffId, file)) {
+                            sentFiles.incrementAndGet();
+                            sentBytes.addAndGet(sizeOf(file));
+                        } else {
+                            //il commit potrebbe essere arrivato lo stesso: decide la conferma finale
+                            failed.add(file);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdownNow();
+            reporter.shutdownNow();
+        }
+        printProgress(handoffId, sentFiles.get(), files.size(), sentBytes.get(), total);
+
+        //si confrontano i nomi e non un contatore: un commit ripetuto non conta due volte
+        Set<String> acknowledged = new HashSet<>(successor.completeHandoff(handoffId));
+        List<String> missing = new ArrayList<>();
+        for (Path file : files) {
+            if (!acknowledged.contains(file.getFileName().toString()))
+                missing.add(file.getFileName().toString());
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("successor acknowledged " + (files.size() - missing.size()) + " of "
+                    + files.size() + " files, first missing: " + missing.get(0));
+        }
+        if (!failed.isEmpty())
+            System.out.println("handoff " + handoffId + ": " + failed.size() + " files reported an error but were saved");
+        System.out.println("handoff " + handoffId + " acknowledged by successor");
+    }
+
+    //si riprova solo se la chiamata sicuramente non è arrivata: dopo un timeout il file
+    //può essere già salvato, lo dice la conferma finale
+    private boolean sendWithRetry(ChordRemoteInterface successor, long handoffId, Path file) {
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            try (InputStream in = storage.openStream(file)) {
+                TransferHandle handle = successor.openHandoffUpload(handoffId, file.getFileName().toString());
+                ChunkedTransfer.push(successor, handle, in);
+                return true;
+            } catch (Exception e) {
+                System.err.println("handoff of " + file + " failed (attempt " + attempt + "): " + e.getMessage());
+                if (!ChordRemoteClient.isSafeToRetry(e))
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    private long sizeOf(Path file) {
+        try {
+            return storage.sizeOf(file);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static void printProgress(long handoffId, long files, long totalFiles, long bytes, long totalBytes) {
+        System.out.println("handoff " + handoffId + " progress: " + files + "/" + totalFiles + " files, "
+                + bytes + "/" + totalBytes + " bytes");
+    }
+}
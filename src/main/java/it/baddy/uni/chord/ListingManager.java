@@ -0,0 +1,233 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.interfaces.FileInfo;
+import it.baddy.uni.rmi.interfaces.ListingPage;
+import it.baddy.uni.storage.FileEntry;
+import it.baddy.uni.utils.KeyHash;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static it.baddy.uni.config.AppManagements.LISTING_PARALLELISM;
+import static it.baddy.uni.config.AppManagements.TRANSFER_IDLE_TIMEOUT_SEC;
+
+//elenco distribuito dei file del ring. Il nodo di ingresso apre una scansione su ogni nodo con un
+//broadcast lungo le finger (ogni finger copre l'arco fino alla finger successiva, quindi profondità
+//log N e nessun giro dei successori), poi legge le pagine da più nodi in parallelo e le passa al
+//client una alla volta. Ogni nodo scorre il suo indice in memoria senza copiarlo e senza toccare il disco
+public class ListingManager {
+
+    //scansione mancata: il nodo (e l'arco che doveva coprire) non ha risposto
+    public static final long UNREACHABLE = -1;
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ChordNode node;
+    private final long idleTimeoutMillis = TRANSFER_IDLE_TIMEOUT_SEC * 1000L;
+    //scansioni locali aperte da un broadcast
+    private final Map<Long, Scan> scans = new ConcurrentHashMap<>();
+    //elenchi serviti a un client da questo nodo di ingresso
+    private final Map<Long, Listing> listings = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE / 2));
+
+    public ListingManager(ChordNode node) {
+        this.node = node;
+    }
+
+    //nodo di ingresso: cursor 0 apre un nuovo elenco
+    public ListingPage next(long cursor, int maxFiles) throws InterruptedException {
+        if (maxFiles <= 0)
+            throw new IllegalArgumentException("invalid page size " + maxFiles);
+        Listing listing;
+        if (cursor == 0) {
+            closeIdle();
+            long self = node.getFingerTable().getNodeId();
+            listing = new Listing(nextId.getAndIncrement(), openScan(self));
+            listings.put(listing.id, listing);
+        } else {
+            listing = listings.get(cursor);
+            if (listing == null)
+                throw new IllegalStateException("unknown listing cursor " + cursor);
+        }
+        return listing.next(maxFiles);
+    }
+
+    //apre la scansione locale e la propaga alle finger nell'arco (nodo, limit):
+    //restituisce nodo -> scansione di tutto l'arco (UNREACHABLE per i nodi che non hanno risposto)
+    public Map<Long, Long> openScan(long limit) {
+        closeIdle();
+        long self = node.getFingerTable().getNodeId();
+        Map<Long, Long> opened = new HashMap<>();
+        Scan scan = new Scan(nextId.getAndIncrement());
+        scans.put(scan.id, scan);
+        opened.put(self, scan.id);
+
+        List<Long> targets = fingersBefore(self, limit);
+        List<Future<Map<Long, Long>>> children = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            long target = targets.get(i);
+            long subLimit = i + 1 < targets.size() ? targets.get(i + 1) : limit;
+            children.add(EXECUTOR.submit(() -> ChordRemoteClient.connect(target).openScan(subLimit)));
+        }
+        for (int i = 0; i < children.size(); i++) {
+            try {
+                opened.putAll(children.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                opened.put(targets.get(i), UNREACHABLE);
+            } catch (ExecutionException e) {
+                System.err.println("listing: node " + targets.get(i) + " did not open its scan: " + ChordNode.rootCause(e).getMessage());
+                opened.put(targets.get(i), UNREACHABLE);
+            }
+        }
+        return opened;
+    }
+
+    //prossimi file della scansione locale, meno di maxFiles quando è finita
+    public List<FileInfo> scanPage(long scanId, int maxFiles) {
+        Scan scan = scans.get(scanId);
+        if (scan == null)
+            throw new IllegalStateException("unknown scan " + scanId);
+        List<FileInfo> page = scan.next(maxFiles);
+        if (page.size() < maxFiles)
+            scans.remove(scanId);
+        return page;
+    }
+
+    //finger distinte strettamente dentro (self, limit), in ordine di distanza da self
+    private List<Long> fingersBefore(long self, long limit) {
+        Set<Long> distinct = new LinkedHashSet<>();
+        for (long finger : node.getFingerTable().getFingers()) {
+            if (finger != self && finger != limit && IdSpace.inInterval(finger, self, limit))
+                distinct.add(finger);
+        }
+        List<Long> targets = new ArrayList<>(distinct);
+        //distanza in senso orario: la sottrazione senza segno mantiene l'ordine anche oltre lo zero
+        targets.sort((a, b) -> Long.compareUnsigned(a - self, b - self));
+        return targets;
+    }
+
+    private void closeIdle() {
+        long now = System.currentTimeMillis();
+        scans.values().removeIf(scan -> now - scan.lastAccess > idleTimeoutMillis);
+        listings.values().removeIf(listing -> now - listing.lastAccess > idleTimeoutMillis);
+    }
+
+    //i file di cui il nodo è responsabile (le copie di replica le elenca il loro responsabile)
+    private final class Scan {
+        final long id;
+        final Iterator<Map.Entry<KeyHash, FileEntry>> entries = node.getStorage().getIndex().entries().entrySet().iterator();
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Scan(long id) {
+            this.id = id;
+        }
+
+        synchronized List<FileInfo> next(int maxFiles) {
+            lastAccess = System.currentTimeMillis();
+            long self = node.getFingerTable().getNodeId();
+            List<FileInfo> page = new ArrayList<>(Math.min(maxFiles, 1024));
+            while (page.size() < maxFiles && entries.hasNext()) {
+                Map.Entry<KeyHash, FileEntry> entry = entries.next();
+                long keyId = node.getIdSpace().ringId(entry.getKey());
+                if (node.isResponsible(keyId))
+                    page.add(new FileInfo(entry.getValue().getFileName(), entry.getValue().getSize(), keyId, self));
+            }
+            return page;
+        }
+    }
+
+    //elenco lato nodo di ingresso: fino a LISTING_PARALLELISM nodi letti insieme, le loro pagine
+    //restano in un buffer finché il client non le chiede (memoria limitata a poche pagine per nodo letto)
+    private final class Listing {
+        final long id;
+        final Deque<long[]> waiting = new ArrayDeque<>();
+        final CompletionService<Batch> reads = new ExecutorCompletionService<>(EXECUTOR);
+        final Deque<FileInfo> buffer = new ArrayDeque<>();
+        //lock e non synchronized: next aspetta le letture, e un virtual thread fermo dentro
+        //synchronized blocca il suo carrier (con un solo core anche le letture che aspetta)
+        final ReentrantLock lock = new ReentrantLock();
+        int running;
+        boolean incomplete;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Listing(long id, Map<Long, Long> opened) {
+            this.id = id;
+            opened.forEach((nodeId, scanId) -> {
+                if (scanId == UNREACHABLE)
+                    incomplete = true;
+                else
+                    waiting.add(new long[]{nodeId, scanId});
+            });
+        }
+
+        ListingPage next(int maxFiles) throws InterruptedException {
+            lock.lock();
+            try {
+                return nextLocked(maxFiles);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private ListingPage nextLocked(int maxFiles) throws InterruptedException {
+            lastAccess = System.currentTimeMillis();
+            List<FileInfo> page = new ArrayList<>(maxFiles);
+            while (page.size() < maxFiles) {
+                if (!buffer.isEmpty()) {
+                    page.add(buffer.poll());
+                    continue;
+                }
+                while (running < LISTING_PARALLELISM && !waiting.isEmpty()) {
+                    long[] scan = waiting.poll();
+                    reads.submit(() -> read(scan, maxFiles));
+                    running++;
+                }
+                if (running == 0)
+                    break;
+                Batch batch = reads.take().resultNow();
+                running--;
+                if (batch.files == null) {
+                    incomplete = true;
+                    continue;
+                }
+                buffer.addAll(batch.files);
+                //pagina piena: il nodo ha ancora file, torna in coda dietro agli altri
+                if (batch.files.size() == batch.requested)
+                    waiting.add(batch.scan);
+            }
+            boolean done = buffer.isEmpty() && running == 0 && waiting.isEmpty();
+            if (done)
+                listings.remove(id);
+            lastAccess = System.currentTimeMillis();
+            return new ListingPage(page, done ? 0 : id, incomplete);
+        }
+
+        private Batch read(long[] scan, int maxFiles) {
+            long nodeId = scan[0];
+            try {
+                List<FileInfo> files = nodeId == node.getFingerTable().getNodeId()
+                        ? scanPage(scan[1], maxFiles)
+                        : ChordRemoteClient.connect(nodeId).scanPage(scan[1], maxFiles);
+                return new Batch(scan, files, maxFiles);
+            } catch (Exception e) {
+                System.err.println("listing: cannot read from node " + nodeId + ": " + ChordNode.rootCause(e).getMessage());
+                return new Batch(scan, null, maxFiles);
+            }
+        }
+    }
+
+    private record Batch(long[] scan, List<FileInfo> files, int requested) {
+    }
+}
@@ -0,0 +1,102 @@
+package it.baddy.uni.chord;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+//cache LRU limitata che associa intervalli di chiavi (start, owner] all'ultimo nodo
+//responsabile conosciuto, così le richieste ripetute vanno al proprietario in un solo hop
+public class LocationCache {
+
+    private final int capacity;
+    //fine intervallo (owner) -> inizio intervallo escluso, ordinati come id senza segno
+    private final TreeMap<Long, Long> ranges = new TreeMap<>(Long::compareUnsigned);
+    //ordine di accesso per l'eviction LRU
+    private final LinkedHashMap<Long, Boolean> recency = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong misdirected = new AtomicLong();
+
+    public LocationCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    //restituisce il nodo responsabile in cache per la chiave, null se non presente
+    public synchronized Long get(long keyId) {
+        Long owner = findOwner(keyId);
+        if (owner == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        recency.get(owner);
+        hits.incrementAndGet();
+        return owner;
+    }
+
+    public synchronized void put(long start, long owner) {
+        if (capacity <= 0)
+            return;
+        ranges.put(owner, start);
+        recency.put(owner, Boolean.TRUE);
+        if (recency.size() > capacity) {
+            Long eldest = recency.keySet().iterator().next();
+            recency.remove(eldest);
+            ranges.remove(eldest);
+        }
+    }
+
+    //il nodo non è più responsabile (ha lasciato la rete o la rotta era sbagliata)
+    public synchronized void invalidateOwner(long owner) {
+        ranges.remove(owner);
+        recency.remove(owner);
+    }
+
+    public void recordMisdirected(long owner) {
+        misdirected.incrementAndGet();
+        invalidateOwner(owner);
+    }
+
+    public synchronized void clear() {
+        ranges.clear();
+        recency.clear();
+    }
+
+    public synchronized int size() {
+        return ranges.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getMisdirected() {
+        return misdirected.get();
+    }
+
+    public String printStats() {
+        return "Location cache: size=" + size() + "/" + capacity
+                + " hits=" + getHits()
+                + " misses=" + getMisses()
+                + " misdirected=" + getMisdirected() + "\n";
+    }
+
+    private Long findOwner(long keyId) {
+        //primo owner >= chiave, altrimenti l'intervallo che fa il giro del ring
+        Map.Entry<Long, Long> candidate = ranges.ceilingEntry(keyId);
+        if (candidate != null && contains(candidate.getValue(), candidate.getKey(), keyId))
+            return candidate.getKey();
+        Map.Entry<Long, Long> first = ranges.firstEntry();
+        if (first != null && contains(first.getValue(), first.getKey(), keyId))
+            return first.getKey();
+        return null;
+    }
+
+    private static boolean contains(long start, long end, long keyId) {
+        //start == end significa un solo nodo, che però non finisce mai in cache
+        return start != end && IdSpace.inInterval(keyId, start, end);
+    }
+}
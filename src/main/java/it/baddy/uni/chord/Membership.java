@@ -0,0 +1,108 @@
+package it.baddy.uni.chord;
+
+import java.util.Arrays;
+import java.util.List;
+
+//vista immutabile dei nodi del ring: id ordinati senza segno in un long[], le ricerche sono
+//binarie. Join e leave creano una nuova vista, chi legge usa quella che aveva senza lock
+public final class Membership {
+
+    private final long[] nodes;
+
+    private Membership(long[] sortedNodes) {
+        this.nodes = sortedNodes;
+    }
+
+    public static Membership of(List<Long> nodeIds) {
+        long[] ids = nodeIds.stream().mapToLong(Long::longValue).toArray();
+        //ordine senza segno: con il bit di segno invertito basta l'ordinamento dei long
+        for (int i = 0; i < ids.length; i++)
+            ids[i] ^= Long.MIN_VALUE;
+        Arrays.sort(ids);
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (size == 0 || ids[size - 1] != ids[i])
+                ids[size++] = ids[i];
+        }
+        ids = Arrays.copyOf(ids, size);
+        for (int i = 0; i < ids.length; i++)
+            ids[i] ^= Long.MIN_VALUE;
+        return new Membership(ids);
+    }
+
+    //posizione di id, oppure -(punto di inserimento) - 1 come Arrays.binarySearch
+    private int search(long id) {
+        int low = 0;
+        int high = nodes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(nodes[mid], id);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    public int indexOf(long id) {
+        int idx = search(id);
+        return idx < 0 ? -1 : idx;
+    }
+
+    public boolean contains(long id) {
+        return search(id) >= 0;
+    }
+
+    //primo nodo con id >= id, ripartendo dall'inizio del ring
+    public long successor(long id) {
+        int idx = search(id);
+        if (idx < 0)
+            idx = -idx - 1;
+        return nodes[idx == nodes.length ? 0 : idx];
+    }
+
+    //nodo che precede id nel ring (id può anche non essere un nodo)
+    public long predecessor(long id) {
+        int idx = search(id);
+        if (idx < 0)
+            idx = -idx - 1;
+        return nodes[idx == 0 ? nodes.length - 1 : idx - 1];
+    }
+
+    public long get(int index) {
+        return nodes[index];
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public Membership with(long id) {
+        int idx = search(id);
+        if (idx >= 0)
+            return this;
+        int at = -idx - 1;
+        long[] updated = new long[nodes.length + 1];
+        System.arraycopy(nodes, 0, updated, 0, at);
+        updated[at] = id;
+        System.arraycopy(nodes, at, updated, at + 1, nodes.length - at);
+        return new Membership(updated);
+    }
+
+    public Membership without(long id) {
+        int idx = search(id);
+        if (idx < 0)
+            return this;
+        long[] updated = new long[nodes.length - 1];
+        System.arraycopy(nodes, 0, updated, 0, idx);
+        System.arraycopy(nodes, idx + 1, updated, idx, nodes.length - idx - 1);
+        return new Membership(updated);
+    }
+
+    public List<Long> asList() {
+        return Arrays.stream(nodes).boxed().toList();
+    }
+}
@@ -0,0 +1,292 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.NodeDirectory;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+import it.baddy.uni.storage.FileEntry;
+import it.baddy.uni.storage.ReplicaSink;
+import it.baddy.uni.utils.KeyHash;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static it.baddy.uni.config.AppManagements.REPLICA_REPAIR_INTERVAL_MS;
+
+//replica di ogni chiave sui successori del nodo responsabile: le scritture scendono
+//lungo la catena (ogni nodo inoltra al successivo mentre scrive in locale) e le letture
+//possono essere servite da una qualunque delle copie. Se la replica successiva non riceve
+//una scrittura o una cancellazione, il nodo gliela rimanda finché non arriva
+public class ReplicaManager {
+
+    //un solo thread per la JVM, come per gli snapshot dell'indice
+    private static final ScheduledExecutorService REPAIRS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "replica-repair");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ChordNode node;
+    //numero totale di copie, compresa quella del responsabile
+    private final int replicationFactor;
+    private final long repairIntervalMs;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    //file da rimandare alla replica successiva, con le copie che la catena doveva ancora ricevere
+    private final Map<String, Integer> pendingRepairs = new ConcurrentHashMap<>();
+    private final AtomicBoolean repairScheduled = new AtomicBoolean();
+
+    public ReplicaManager(ChordNode node, int replicationFactor) {
+        this(node, replicationFactor, REPLICA_REPAIR_INTERVAL_MS);
+    }
+
+    public ReplicaManager(ChordNode node, int replicationFactor, long repairIntervalMs) {
+        this.node = node;
+        this.replicationFactor = Math.max(1, replicationFactor);
+        this.repairIntervalMs = repairIntervalMs;
+    }
+
+    public int getReplicationFactor() {
+        return replicationFactor;
+    }
+
+    //quante copie deve ricevere la catena dopo il responsabile (mai più dei nodi fisici nel ring)
+    public int chainLength() {
+        return Math.min(replicationFactor - 1, node.getPhysicalCount() - 1);
+    }
+
+    //scrive in locale e intanto inoltra la copia ai copies successori, ritorna true se il file è stato creato;
+    //aspetta la risposta della catena, se non arriva la copia viene rimandata più tardi
+    public boolean write(String fileName, byte[] content, int copies) {
+        Future<?> forward = forward(copies, (next, remaining) -> next.replicateWrite(fileName, content, remaining));
+        boolean created = node.getStorage().write(fileName, content);
+        if (!await(forward, "write of " + fileName))
+            queueRepair(fileName, copies);
+        return created;
+    }
+
+    //cancella in locale e sulle copies repliche successive, false se il file non c'era in locale
+    public boolean delete(String fileName, KeyHash key, int copies) {
+        Future<?> forward = forward(copies, (next, remaining) -> next.replicateDelete(fileName, remaining));
+        boolean deleted = node.getStorage().delete(key);
+        if (!await(forward, "delete of " + fileName))
+            queueRepair(fileName, copies);
+        return deleted;
+    }
+
+    //apre sulla replica successiva una sessione che riceverà gli stessi chunk, null se non serve;
+    //se la sessione non si apre il file viene rimandato dopo il commit locale
+    public ReplicaSink openChain(String fileName, int copies) {
+        Long next = nextReplica(copies);
+        if (next == null)
+            return null;
+        try {
+            ChordRemoteInterface remote = ChordRemoteClient.connect(next);
+            TransferHandle handle = remote.openReplicaUpload(fileName, copies - 1);
+            return new RemoteSink(remote, handle, fileName, copies);
+        } catch (Exception e) {
+            System.err.println("cannot open replica session on node " + next + " for " + fileName + ": " + e.getMessage());
+            return new RemoteSink(null, null, fileName, copies);
+        }
+    }
+
+    //file che aspettano di essere rimandati alla replica successiva
+    public int pendingRepairs() {
+        return pendingRepairs.size();
+    }
+
+    //legge il file da una copia della catena calcolata sulla vista locale, senza lookup: prima quella
+    //del processo se c'è, poi le altre dalla meno carica; ogni copia verifica di stare nella catena.
+    //null se nessuna copia lo ha servito (chi chiama usa il routing normale)
+    public byte[] read(String fileName, long keyId, KeyHash key) {
+        List<Long> chain = chainOf(keyId);
+        long host = node.getPhysicalId();
+        if (chain.stream().anyMatch(id -> NodeDirectory.physicalOf(id) == host)) {
+            byte[] content = node.getStorage().read(key);
+            if (content != null)
+                return content;
+        }
+        //le copie su nodi sospetti o irraggiungibili non vengono nemmeno provate
+        chain.removeIf(id -> NodeDirectory.physicalOf(id) == host || node.getFailureDetector().isUnreachable(id));
+        chain.sort(Comparator.comparingDouble(ChordRemoteClient::loadScore));
+
+        for (long candidate : chain) {
+            try {
+                byte[] content = ChordRemoteClient.connect(candidate).readReplica(fileName);
+                System.out.println("file " + fileName + " served by replica on node " + candidate);
+                return content;
+            } catch (Exception e) {
+                if (ChordRemoteClient.isSafeToRetry(e))
+                    node.getFailureDetector().reportFailure(candidate);
+                System.out.println("replica on node " + candidate + " could not serve " + fileName + ": " + ChordNode.rootCause(e).getMessage());
+            }
+        }
+        return null;
+    }
+
+    //true se questo processo tiene una copia delle chiavi in keyId secondo la propria vista
+    public boolean holdsCopy(long keyId) {
+        long host = node.getPhysicalId();
+        return chainOf(keyId).stream().anyMatch(id -> NodeDirectory.physicalOf(id) == host);
+    }
+
+    //responsabile e successori che ricevono le copie delle scritture: ogni copia sta sul primo
+    //nodo di un altro processo, come in nextReplica
+    private List<Long> chainOf(long keyId) {
+        long owner = node.ownerInView(keyId);
+        List<Long> chain = new ArrayList<>();
+        chain.add(owner);
+        long replica = owner;
+        for (int i = 0; i < chainLength(); i++) {
+            replica = node.nextHostSuccessor(replica, false);
+            if (chain.contains(replica))
+                break;
+            chain.add(replica);
+        }
+        return chain;
+    }
+
+    //i nodi virtuali dello stesso processo condividono i file: la copia va su un altro processo
+    private Long nextReplica(int copies) {
+        if (copies <= 0)
+            return null;
+        long self = node.getFingerTable().getNodeId();
+        long successor = node.nextHostSuccessor(self, true);
+        return successor == self ? null : successor;
+    }
+
+    private void queueRepair(String fileName, int copies) {
+        pendingRepairs.merge(fileName, copies, Math::max);
+        scheduleRepairs();
+    }
+
+    private void scheduleRepairs() {
+        if (!pendingRepairs.isEmpty() && repairScheduled.compareAndSet(false, true))
+            REPAIRS.schedule(this::runRepairs, repairIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void runRepairs() {
+        repairScheduled.set(false);
+        pendingRepairs.forEach((fileName, copies) -> {
+            try {
+                if (repair(fileName, copies))
+                    pendingRepairs.remove(fileName, copies);
+            } catch (Exception e) {
+                System.err.println("replica repair of " + fileName + " failed: " + ChordNode.rootCause(e).getMessage());
+            }
+        });
+        scheduleRepairs();
+    }
+
+    //rimanda alla replica successiva lo stato locale del file: il contenuto se c'è, altrimenti la cancellazione.
+    //Una scrittura arrivata nel frattempo può essere stata superata da questa copia: la versione
+    //nell'indice dice se serve un altro giro
+    private boolean repair(String fileName, int copies) throws Exception {
+        KeyHash key = KeyHash.of(fileName);
+        //la chiave non è più di questo nodo: la catena ora la tiene qualcun altro
+        if (!holdsCopy(node.getIdSpace().ringId(key)))
+            return true;
+        Long next = nextReplica(copies);
+        if (next == null)
+            return true;
+        FileEntry before = node.getStorage().find(key);
+        if (before == null) {
+            ChordRemoteClient.connect(next).replicateDelete(fileName, copies - 1);
+        } else {
+            byte[] content = node.getStorage().read(key);
+            if (content == null)
+                return false;
+            ChordRemoteClient.connect(next).replicateWrite(fileName, content, copies - 1);
+        }
+        FileEntry after = node.getStorage().find(key);
+        boolean current = before == null ? after == null : after != null && after.getVersion() == before.getVersion();
+        if (current)
+            System.out.println("replica of " + fileName + " repaired on node " + next);
+        return current;
+    }
+
+    private Future<?> forward(int copies, ChainCall call) {
+        Long next = nextReplica(copies);
+        if (next == null)
+            return null;
+        return executor.submit(() -> {
+            call.send(ChordRemoteClient.connect(next), copies - 1);
+            return null;
+        });
+    }
+
+    //false se la replica successiva potrebbe non aver ricevuto l'operazione
+    private static boolean await(Future<?> forward, String what) {
+        if (forward == null)
+            return true;
+        try {
+            forward.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("replica " + what + " interrupted");
+            return false;
+        } catch (Exception e) {
+            System.err.println("replica " + what + " failed: " + ChordNode.rootCause(e).getMessage());
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChainCall {
+        void send(ChordRemoteInterface next, int remaining) throws Exception;
+    }
+
+    //sessione sulla replica successiva; remote è null se non si è potuta aprire
+    //e allora il commit fallisce sempre, così il file viene rimandato
+    private final class RemoteSink implements ReplicaSink {
+        private final ChordRemoteInterface remote;
+        private final TransferHandle handle;
+        private final String fileName;
+        private final int copies;
+
+        private RemoteSink(ChordRemoteInterface remote, TransferHandle handle, String fileName, int copies) {
+            this.remote = remote;
+            this.handle = handle;
+            this.fileName = fileName;
+            this.copies = copies;
+        }
+
+        @Override
+        public void write(byte[] chunk) throws Exception {
+            if (remote != null)
+                remote.writeChunk(handle.getSessionId(), chunk);
+        }
+
+        @Override
+        public void commit() throws Exception {
+            if (remote == null)
+                throw new IllegalStateException("replica session for " + fileName + " was never opened");
+            remote.commitUpload(handle.getSessionId());
+        }
+
+        @Override
+        public void abort() {
+            if (remote == null)
+                return;
+            try {
+                remote.abortTransfer(handle.getSessionId());
+            } catch (Exception e) {
+                System.err.println("error aborting replica session " + handle.getSessionId());
+            }
+        }
+
+        @Override
+        public void lost() {
+            queueRepair(fileName, copies);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.NodeDirectory;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//manutenzione periodica del ring (stabilize/notify/fix_fingers del protocollo chord):
+//scopre i nodi entrati tra noi e il successore e corregge una entry della finger table per giro
+public class Stabilizer {
+
+    private final ChordNode node;
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "chord-stabilizer");
+        t.setDaemon(true);
+        return t;
+    });
+    //prossima entry della finger table da controllare
+    private int nextFinger;
+
+    public Stabilizer(ChordNode node, long intervalMillis) {
+        this.node = node;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::runOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        System.out.println("stabilizer started, every " + intervalMillis + " ms");
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    //un errore non deve fermare i giri successivi
+    private void runOnce() {
+        try {
+            stabilize();
+        } catch (Exception e) {
+            System.err.println("stabilize failed: " + e.getMessage());
+        }
+        try {
+            fixFingers();
+        } catch (Exception e) {
+            System.err.println("fix fingers failed: " + e.getMessage());
+        }
+    }
+
+    //chiede al successore il suo predecessore: se sta tra noi e lui è un nodo appena entrato
+    //e diventa il nostro successore; poi si notifica al successore come possibile predecessore
+    void stabilize() throws Exception {
+        long self = node.getFingerTable().getNodeId();
+        long successor = node.getLiveSuccessor();
+        if (successor == self)
+            return;
+        ChordRemoteInterface remote = ChordRemoteClient.connect(successor);
+        long candidate = remote.getPredecessor();
+        if (candidate != self && candidate != successor && IdSpace.inInterval(candidate, self, successor)
+                && !node.isKnown(candidate)) {
+            //serve sapere su che processo sta, se è un nodo virtuale
+            NodeDirectory.merge(remote.getNodeDirectory());
+            node.checkNodesAndAdd(candidate);
+            System.out.println("stabilize: learned new successor " + candidate);
+            successor = candidate;
+        }
+        ChordRemoteClient.connect(successor).notifyPredecessor(self, node.getPhysicalId());
+    }
+
+    //ricerca il responsabile dell'inizio di una entry e aggiorna la finger table
+    void fixFingers() {
+        FingerTable fingers = node.getFingerTable();
+        int index = nextFinger;
+        nextFinger = (nextFinger + 1) % fingers.getM();
+        long owner = node.lookup(fingers.getIdSpace().fingerStart(fingers.getNodeId(), index));
+        if (owner == ChordNode.UNKNOWN_NODE)
+            return;
+        if (!node.isKnown(owner)) {
+            //il responsabile è un nodo che non conoscevamo: lo aggiungiamo alla vista
+            node.checkNodesAndAdd(owner);
+        }
+        node.updateFinger(index, owner);
+    }
+}
@@ -0,0 +1,47 @@
+package it.baddy.uni.chord;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//posizioni sul ring dei nodi virtuali di un processo: la prima è l'id del processo,
+//le altre l'hash di "node<id>#<i>"; gli id già presi da altri nodi vengono saltati
+public final class VirtualNodes {
+
+    //tentativi massimi per nodo virtuale quando il ring è quasi pieno
+    private static final int ATTEMPTS_PER_NODE = 64;
+
+    private VirtualNodes() {
+    }
+
+    //taken viene aggiornato con gli id assegnati; possono essere meno di count se il ring è pieno
+    public static long[] idsFor(long physicalId, int count, IdSpace idSpace, Set<Long> taken) {
+        List<Long> ids = new ArrayList<>();
+        ids.add(physicalId);
+        taken.add(physicalId);
+        for (int i = 1; ids.size() < count && i < count * ATTEMPTS_PER_NODE; i++) {
+            long id = idSpace.ringId("node" + Long.toUnsignedString(physicalId) + "#" + i);
+            if (taken.add(id))
+                ids.add(id);
+        }
+        if (ids.size() < count)
+            System.err.println("only " + ids.size() + " of " + count + " virtual nodes fit in the ring for node " + physicalId);
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    //stessa assegnazione su tutti i nodi che partono dalla stessa lista di processi
+    public static Map<Long, long[]> assign(List<Long> physicalIds, int count, IdSpace idSpace) {
+        List<Long> sorted = new ArrayList<>(physicalIds);
+        sorted.sort(Long::compareUnsigned);
+        //gli id dei processi hanno la precedenza sugli hash dei nodi virtuali
+        Set<Long> taken = new HashSet<>(sorted);
+        Map<Long, long[]> assignment = new LinkedHashMap<>();
+        for (long physicalId : sorted) {
+            assignment.put(physicalId, idsFor(physicalId, count, idSpace, taken));
+        }
+        return assignment;
+    }
+}
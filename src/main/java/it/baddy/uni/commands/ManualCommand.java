@@ -1,31 +1,23 @@
 package it.baddy.uni.commands;
 
 import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.interfaces.FileInfo;
+import it.baddy.uni.rmi.interfaces.ListingPage;
 import it.baddy.uni.chord.ChordNode;
-import it.baddy.uni.utils.FileUtils;
+import it.baddy.uni.rmi.client.ChunkedTransfer;
 
 import java.rmi.Naming;
 import java.rmi.RemoteException;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Scanner;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.stream.Collectors;
 
 public class ManualCommand {
 
     private static final int PORT = 1099;
-    private static final String allNodesEnv = System.getenv().get("ALL_NODES");
 
     public static void main(String[] args) throws Exception {
 
         Scanner scanner = new Scanner(System.in);
-        List<Integer> allNodes = Arrays.stream(allNodesEnv.split(","))
-                .map(name -> name.replace("node", "")) // X
-                .map(Integer::parseInt)
-                .sorted()
-                .collect(Collectors.toList());
         System.out.println("=== CHORD CLI ===");
 
         while (true) {
@@ -39,7 +31,8 @@ public class ManualCommand {
             ChordRemoteInterface rmiNode =
                     (ChordRemoteInterface) Naming.lookup("//" + host + ":" + PORT + "/ChordNode");
 
-            ChordNode chordNode = new ChordNode(rmiNode.getNodeId(), allNodes );
+            //la vista dei nodi viene dal nodo contattato: con il join dinamico cambia nel tempo
+            ChordNode chordNode = new ChordNode(rmiNode.getNodeId(), rmiNode.getKnownNodes());
             System.out.println("\nChoose operation:");
             System.out.println("1 - Search file");
             System.out.println("2 - Insert file");
@@ -47,6 +40,9 @@ public class ManualCommand {
             System.out.println("4 - Delete file");
             System.out.println("5 - Print finger table");
             System.out.println("6 - Controlled leave");
+            System.out.println("7 - Print location cache stats");
+            System.out.println("8 - Print node metrics");
+            System.out.println("9 - List files");
             System.out.println("0 - Back");
 
             String choice = scanner.nextLine();
@@ -75,6 +71,18 @@ public class ManualCommand {
                     handleLeave(rmiNode);
                     break;
 
+                case "7":
+                    handlePrintCache(rmiNode);
+                    break;
+
+                case "8":
+                    System.out.println(rmiNode.getMetrics());
+                    break;
+
+                case "9":
+                    handleList(rmiNode);
+                    break;
+
                 case "0":
                     break;
 
@@ -90,10 +98,10 @@ public class ManualCommand {
         System.out.print("File name: ");
         String fileName = scanner.nextLine();
         try {
-            byte[] content = rmiNode.getFile(fileName);
+            //download a chunk: il file non viene mai tenuto tutto in memoria
             Path output = Path.of(fileName);
-            FileUtils.writeFile(output, content);
-            System.out.println("File saved in " + output.toAbsolutePath());
+            long received = ChunkedTransfer.download(rmiNode, fileName, output);
+            System.out.println("File saved in " + output.toAbsolutePath() + " (" + received + " bytes)");
 
         } catch (Exception e) {
             //se è remote di file not found non esiste
@@ -115,12 +123,10 @@ public class ManualCommand {
                 System.out.print("Local file path to update: ");
             String localPath = scanner.nextLine();
             Path path = Path.of(localPath);
-            byte[] fileBytes = Files.readAllBytes(path);
+            boolean created = ChunkedTransfer.upload(rmiNode, path, path.getFileName().toString());
             if (to_create) {
-                rmiNode.uploadFile(path.getFileName().toString(), fileBytes);
                 System.out.println("File inserted in distributed system.");
             } else {
-                boolean created = rmiNode.updateFile(path.getFileName().toString(), fileBytes);
                 if (created)
                     System.out.println("File created because it was not present on distributed system.");
                 else
@@ -154,6 +160,27 @@ public class ManualCommand {
         System.out.println(rmiNode.printFingerTable());
     }
 
+    public static void handlePrintCache(ChordRemoteInterface rmiNode) throws RemoteException{
+        System.out.println(rmiNode.printLocationCache());
+    }
+
+    //le pagine arrivano mentre il nodo legge le successive dagli altri nodi
+    public static void handleList(ChordRemoteInterface rmiNode) throws RemoteException{
+        long count = 0;
+        boolean incomplete = false;
+        long cursor = 0;
+        do {
+            ListingPage page = rmiNode.listFiles(cursor, 1000);
+            for (FileInfo file : page.getFiles()) {
+                System.out.println(file.getKeyId() + "\t" + file.getSize() + "\t" + file.getFileName());
+            }
+            count += page.getFiles().size();
+            incomplete |= page.isIncomplete();
+            cursor = page.getCursor();
+        } while (cursor != 0);
+        System.out.println(count + " files" + (incomplete ? " (some nodes did not answer, list is incomplete)" : ""));
+    }
+
     public static void handleLeave(ChordRemoteInterface rmiNode) throws RemoteException{
         rmiNode.controlledLeave();
         System.out.println("Node leave triggered.");
@@ -2,4 +2,117 @@ package it.baddy.uni.config;
 
 public class AppManagements {
     public static final String FILE_NOT_FOUND_EXCEPTION_STRING = "File not found";
+    //il nodo contattato non è (più) responsabile della chiave
+    public static final String NOT_RESPONSIBLE_EXCEPTION_STRING = "Node not responsible";
+    //il nodo ha già troppe richieste in corso sulla connessione (trasporto NIO)
+    public static final String NODE_BUSY_EXCEPTION_STRING = "Node busy";
+    //cartella montata nel container con i file del nodo
+    public static final String DATA_DIR = "/data";
+    //sottocartella di DATA_DIR riservata al nodo (file temporanei ecc.), esclusa dall'indice
+    public static final String INTERNAL_DIR = ".chord";
+    //spazio degli id: RING_BITS (1-64) ha la precedenza, altrimenti RING_SIZE posizioni
+    public static final int RING_BITS = envInt("RING_BITS", 0);
+    public static final long RING_SIZE = envLong("RING_SIZE", 40);
+    //posizioni sul ring per ogni processo: più nodi virtuali dividono le chiavi in modo più uniforme
+    //(deve essere uguale su tutti i nodi, come RING_BITS)
+    public static final int VIRTUAL_NODES = envInt("VIRTUAL_NODES", 1);
+    //copie di ogni file: il responsabile più REPLICATION_FACTOR-1 successori
+    public static final int REPLICATION_FACTOR = envInt("REPLICATION_FACTOR", 1);
+    //ogni quanti ms si rimanda alle repliche una scrittura o cancellazione che la catena non ha ricevuto
+    public static final int REPLICA_REPAIR_INTERVAL_MS = envInt("REPLICA_REPAIR_INTERVAL_MS", 2000);
+    //numero massimo di intervalli tenuti nella location cache
+    public static final int LOCATION_CACHE_SIZE = envInt("LOCATION_CACHE_SIZE", 1024);
+    //dimensione massima di un chunk nei trasferimenti a sessione
+    public static final int TRANSFER_CHUNK_SIZE = envInt("TRANSFER_CHUNK_SIZE", 1024 * 1024);
+    //byte di contenuto dei file più letti tenuti in memoria dal nodo responsabile, 0 per disattivare
+    public static final long CONTENT_CACHE_BYTES = envLong("CONTENT_CACHE_BYTES", 64L * 1024 * 1024);
+    //cache delle letture sul nodo di ingresso: una copia vale al più ENTRY_CACHE_TTL_MS
+    //(gli update fatti da altri nodi si vedono dopo quel tempo), 0 per disattivarla
+    public static final int ENTRY_CACHE_TTL_MS = envInt("ENTRY_CACHE_TTL_MS", 0);
+    public static final long ENTRY_CACHE_BYTES = envLong("ENTRY_CACHE_BYTES", 16L * 1024 * 1024);
+    //livello deflate (1-9) dei file salvati e degli upload in rete, 0 per disattivare la compressione
+    public static final int COMPRESSION_LEVEL = envInt("COMPRESSION_LEVEL", 0);
+    //un file viene salvato compresso solo se scende almeno a questa percentuale della dimensione originale
+    public static final int COMPRESSION_MAX_RATIO = envInt("COMPRESSION_MAX_RATIO", 90);
+    //sotto questa dimensione la compressione non conviene
+    public static final int COMPRESSION_MIN_SIZE = envInt("COMPRESSION_MIN_SIZE", 512);
+    //i file con lo stesso contenuto e almeno questa dimensione condividono un blob su disco
+    //(hard link in .chord/blobs), 0 per disattivare la deduplicazione
+    public static final int DEDUP_MIN_SIZE = envInt("DEDUP_MIN_SIZE", 0);
+    //i file salvati fino a questa dimensione vanno in coda a file di segmento (.chord/segments)
+    //invece di avere un file ciascuno, 0 per disattivare
+    public static final int SEGMENT_MAX_RECORD = envInt("SEGMENT_MAX_RECORD", 0);
+    //dimensione oltre la quale si apre un nuovo segmento
+    public static final long SEGMENT_SIZE = envLong("SEGMENT_SIZE", 64L * 1024 * 1024);
+    //un segmento chiuso viene compattato quando almeno questa percentuale è occupata da record superati
+    public static final int SEGMENT_COMPACT_PERCENT = envInt("SEGMENT_COMPACT_PERCENT", 50);
+    //ogni quanti secondi si cercano segmenti da compattare
+    public static final int SEGMENT_COMPACT_INTERVAL_SEC = envInt("SEGMENT_COMPACT_INTERVAL_SEC", 30);
+    //finestra in cui le scritture contemporanee si raggruppano in un solo fsync (file di segmento,
+    //cartelle dopo i rename); 0 per disattivare gli fsync (le scritture restano comunque atomiche)
+    public static final int COMMIT_INTERVAL_MS = envInt("COMMIT_INTERVAL_MS", 2);
+    //byte di buffer diretti liberi tenuti per l'I/O di rete (NIO) e dei segmenti,
+    //0 per disattivare il pool (buffer nell'heap)
+    public static final long BUFFER_POOL_BYTES = envLong("BUFFER_POOL_BYTES", 64L * 1024 * 1024);
+    //ogni quanti secondi l'indice dei file viene salvato in .chord/index.snapshot (e alla chiusura):
+    //all'avvio il nodo lo carica invece di scansionare tutta la cartella, 0 per disattivare
+    public static final int INDEX_SNAPSHOT_INTERVAL_SEC = envInt("INDEX_SNAPSHOT_INTERVAL_SEC", 300);
+    //numero di regioni mappate in memoria tenute aperte per le letture a intervalli
+    public static final int MAPPED_REGION_CACHE_SIZE = envInt("MAPPED_REGION_CACHE_SIZE", 16);
+    //dimensione di ogni regione mappata
+    public static final int MAPPED_WINDOW_SIZE = envInt("MAPPED_WINDOW_SIZE", 64 * 1024 * 1024);
+    //massimo numero di byte restituiti da una singola getFileRange
+    public static final int MAX_RANGE_SIZE = envInt("MAX_RANGE_SIZE", 8 * 1024 * 1024);
+    //stream paralleli usati per passare le chiavi al successore durante il leave
+    public static final int HANDOFF_STREAMS = envInt("HANDOFF_STREAMS", 4);
+    //richieste contemporanee massime di un AsyncChordClient
+    public static final int ASYNC_MAX_IN_FLIGHT = envInt("ASYNC_MAX_IN_FLIGHT", 256);
+    //intervallo tra due giri di stabilize/fix_fingers, 0 per disattivarli
+    public static final int STABILIZE_INTERVAL_MS = envInt("STABILIZE_INTERVAL_MS", 1000);
+    //failure detector: un heartbeat per intervallo verso successori, predecessore e finger
+    public static final int HEARTBEAT_INTERVAL_MS = envInt("HEARTBEAT_INTERVAL_MS", 500);
+    //soglia phi oltre la quale un nodo è sospetto e il routing lo salta
+    public static final int PHI_SUSPECT_THRESHOLD = envInt("PHI_SUSPECT_THRESHOLD", 5);
+    //un nodo sospetto per così tanto viene tolto dalla vista del ring
+    public static final int SUSPECT_REMOVE_MS = envInt("SUSPECT_REMOVE_MS", 5000);
+    //successori tenuti pronti per sostituire quello diretto
+    public static final int SUCCESSOR_LIST_SIZE = envInt("SUCCESSOR_LIST_SIZE", 3);
+    //porta del trasporto binario NIO usato tra i nodi al posto di RMI, 0 per usare RMI
+    //(uguale su tutti i nodi; la CLI continua a usare RMI)
+    public static final int NIO_PORT = envInt("NIO_PORT", 0);
+    //frame più grande accettato dal trasporto NIO: un chunk o un intervallo ci stanno con margine,
+    //i file più grandi vanno caricati a chunk (le chiamate con frame più grandi falliscono)
+    public static final int NIO_MAX_FRAME = envInt("NIO_MAX_FRAME", 4 * Math.max(TRANSFER_CHUNK_SIZE, MAX_RANGE_SIZE));
+    //richieste in esecuzione per connessione NIO: quelle in più vengono rifiutate subito con un errore,
+    //così un client non può occupare thread e memoria senza limite (sospendere la lettura bloccherebbe
+    //anche le chiamate annidate lungo la rotta, che passano dalla stessa connessione)
+    public static final int NIO_MAX_IN_FLIGHT = envInt("NIO_MAX_IN_FLIGHT", 256);
+    //timeout delle chiamate tra nodi (connessione e attesa della risposta), anche con NIO
+    public static final int RMI_CONNECT_TIMEOUT_MS = envInt("RMI_CONNECT_TIMEOUT_MS", 2000);
+    public static final int RMI_READ_TIMEOUT_MS = envInt("RMI_READ_TIMEOUT_MS", 30000);
+    //porta dell'endpoint http /metrics in formato prometheus, 0 per disattivarlo
+    public static final int METRICS_PORT = envInt("METRICS_PORT", 9100);
+    //dopo quanti secondi di inattività una sessione di trasferimento (o di elenco dei file) viene chiusa
+    public static final int TRANSFER_IDLE_TIMEOUT_SEC = envInt("TRANSFER_IDLE_TIMEOUT_SEC", 120);
+    //nodi letti in parallelo dal nodo di ingresso durante un elenco dei file
+    public static final int LISTING_PARALLELISM = envInt("LISTING_PARALLELISM", 8);
+    //file massimi per pagina di elenco
+    public static final int LISTING_MAX_PAGE = envInt("LISTING_MAX_PAGE", 10000);
+
+    //legge un intero dalle variabili d'ambiente, con valore di default
+    public static int envInt(String name, int defaultValue) {
+        return (int) envLong(name, defaultValue);
+    }
+
+    public static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank())
+            return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println(name + " is not a valid number, using default " + defaultValue);
+            return defaultValue;
+        }
+    }
 }
@@ -0,0 +1,87 @@
+package it.baddy.uni.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//istogramma delle latenze in microsecondi a bucket log-lineari (come HdrHistogram):
+//8 bucket lineari per ogni potenza di due, errore relativo entro il 12.5%,
+//memoria fissa e registrazione senza lock
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sum.sum();
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    public double getMeanMicros() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSumMicros() / n;
+    }
+
+    //limite superiore del bucket che contiene il quantile q (0-1)
+    public long percentile(double q) {
+        long total = getCount();
+        if (total == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(upperBound(i), getMaxMicros());
+        }
+        return getMaxMicros();
+    }
+
+    //quante registrazioni valgono al più limitMicros (per i bucket cumulativi di prometheus)
+    public long countAtMost(long limitMicros) {
+        long seen = 0;
+        for (int i = 0; i < BUCKETS && upperBound(i) <= limitMicros; i++) {
+            seen += counts.get(i);
+        }
+        return seen;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long bound = ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+        //l'ultimo bucket arriva fino a Long.MAX_VALUE
+        return bound < 0 ? Long.MAX_VALUE : bound;
+    }
+}
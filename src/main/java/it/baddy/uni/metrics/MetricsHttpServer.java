@@ -0,0 +1,42 @@
+package it.baddy.uni.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+//endpoint http locale /metrics con le metriche del nodo in formato prometheus
+public class MetricsHttpServer {
+
+    private final HttpServer server;
+
+    private MetricsHttpServer(HttpServer server) {
+        this.server = server;
+    }
+
+    public static MetricsHttpServer start(int port, NodeMetrics metrics) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, metrics.toPrometheus()));
+        //un solo thread: lo scrape è raro e la risposta si costruisce in pochi microsecondi
+        server.setExecutor(null);
+        server.start();
+        System.out.println("metrics endpoint started on port " + port);
+        return new MetricsHttpServer(server);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,183 @@
+package it.baddy.uni.metrics;
+
+import it.baddy.uni.rmi.interfaces.MetricsSnapshot;
+import it.baddy.uni.utils.BufferPool;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//metriche di un nodo: latenze per operazione, hop del routing, richieste servite
+//in locale o inoltrate, byte di rete e tempo passato sul disco
+public class NodeMetrics {
+
+    public static final String GET_FILE = "GET_FILE";
+    public static final String UPLOAD_FILE = "UPLOAD_FILE";
+    public static final String UPDATE_FILE = "UPDATE_FILE";
+    public static final String DELETE_FILE = "DELETE_FILE";
+    public static final String LOOKUP = "LOOKUP";
+    //cache dei contenuti sul responsabile e cache delle letture sul nodo di ingresso
+    public static final String CONTENT_CACHE = "content";
+    public static final String ENTRY_CACHE = "entry";
+
+    //oltre questo numero di hop le richieste finiscono nell'ultimo bucket
+    private static final int MAX_HOPS = 16;
+    //limiti dei bucket esportati a prometheus, in secondi
+    private static final double[] EXPORT_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final long nodeId;
+    private final long startMillis = System.currentTimeMillis();
+    private final Map<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+    private final AtomicLongArray hops = new AtomicLongArray(MAX_HOPS + 1);
+    private final LongAdder servedLocally = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder diskReads = new LongAdder();
+    private final LongAdder diskReadNanos = new LongAdder();
+    private final LongAdder diskWrites = new LongAdder();
+    private final LongAdder diskWriteNanos = new LongAdder();
+    private final Map<String, LongAdder> cacheHits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> cacheMisses = new ConcurrentHashMap<>();
+
+    public NodeMetrics(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    //latenza di un'operazione iniziata a startNanos (System.nanoTime)
+    public void recordOperation(String operation, long startNanos) {
+        operations.computeIfAbsent(operation, op -> new LatencyHistogram())
+                .record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public void recordHops(int count) {
+        hops.incrementAndGet(Math.min(Math.max(count, 0), MAX_HOPS));
+    }
+
+    public void servedLocally() {
+        servedLocally.increment();
+    }
+
+    public void forwarded() {
+        forwarded.increment();
+    }
+
+    public void bytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void bytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public void diskRead(long startNanos) {
+        diskReads.increment();
+        diskReadNanos.add(System.nanoTime() - startNanos);
+    }
+
+    public void diskWrite(long startNanos) {
+        diskWrites.increment();
+        diskWriteNanos.add(System.nanoTime() - startNanos);
+    }
+
+    public void cacheHit(String cache) {
+        cacheHits.computeIfAbsent(cache, c -> new LongAdder()).increment();
+    }
+
+    public void cacheMiss(String cache) {
+        cacheMisses.computeIfAbsent(cache, c -> new LongAdder()).increment();
+    }
+
+    public LatencyHistogram getOperation(String operation) {
+        return operations.get(operation);
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, MetricsSnapshot.OperationStats> stats = new TreeMap<>();
+        operations.forEach((name, h) -> stats.put(name, new MetricsSnapshot.OperationStats(h.getCount(), h.getMeanMicros(),
+                h.percentile(0.5), h.percentile(0.9), h.percentile(0.99), h.getMaxMicros())));
+        long[] hopCounts = new long[hops.length()];
+        for (int i = 0; i < hopCounts.length; i++) {
+            hopCounts[i] = hops.get(i);
+        }
+        return new MetricsSnapshot(nodeId, System.currentTimeMillis() - startMillis, stats, hopCounts,
+                servedLocally.sum(), forwarded.sum(), bytesIn.sum(), bytesOut.sum(),
+                diskReads.sum(), diskReadNanos.sum() / 1000, diskWrites.sum(), diskWriteNanos.sum() / 1000,
+                sums(cacheHits), sums(cacheMisses));
+    }
+
+    //formato testuale di prometheus (text exposition format 0.0.4)
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        String node = "node=\"" + Long.toUnsignedString(nodeId) + "\"";
+
+        sb.append("# HELP chord_operation_seconds Latency of client operations served by the node.\n");
+        sb.append("# TYPE chord_operation_seconds histogram\n");
+        new TreeMap<>(operations).forEach((name, h) -> {
+            String labels = node + ",operation=\"" + name + "\"";
+            for (double le : EXPORT_BUCKETS) {
+                sb.append("chord_operation_seconds_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                        .append(h.countAtMost((long) (le * 1_000_000))).append('\n');
+            }
+            sb.append("chord_operation_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(h.getCount()).append('\n');
+            sb.append("chord_operation_seconds_sum{").append(labels).append("} ").append(h.getSumMicros() / 1_000_000.0).append('\n');
+            sb.append("chord_operation_seconds_count{").append(labels).append("} ").append(h.getCount()).append('\n');
+        });
+
+        sb.append("# HELP chord_route_hops_total Requests by number of routing hops.\n");
+        sb.append("# TYPE chord_route_hops_total counter\n");
+        for (int i = 0; i < hops.length(); i++) {
+            sb.append("chord_route_hops_total{").append(node).append(",hops=\"").append(i)
+                    .append(i == MAX_HOPS ? "+" : "").append("\"} ").append(hops.get(i)).append('\n');
+        }
+
+        counter(sb, "chord_requests_served_locally_total", "Routed requests executed on this node.", node, servedLocally.sum());
+        counter(sb, "chord_requests_forwarded_total", "Routed requests forwarded to another node.", node, forwarded.sum());
+        counter(sb, "chord_network_bytes_in_total", "File bytes received from clients and other nodes.", node, bytesIn.sum());
+        counter(sb, "chord_network_bytes_out_total", "File bytes sent to clients and other nodes.", node, bytesOut.sum());
+        counter(sb, "chord_disk_reads_total", "Disk read operations.", node, diskReads.sum());
+        counter(sb, "chord_disk_read_seconds_total", "Time spent reading from disk.", node, diskReadNanos.sum() / 1e9);
+        counter(sb, "chord_disk_writes_total", "Disk write operations.", node, diskWrites.sum());
+        counter(sb, "chord_disk_write_seconds_total", "Time spent writing to disk.", node, diskWriteNanos.sum() / 1e9);
+        cacheCounter(sb, "chord_cache_hits_total", "Reads served from a cache.", node, cacheHits);
+        cacheCounter(sb, "chord_cache_misses_total", "Reads not found in a cache.", node, cacheMisses);
+        //il pool è unico per il processo: i nodi virtuali riportano gli stessi valori
+        BufferPool pool = BufferPool.shared();
+        gauge(sb, "chord_buffer_pool_direct_bytes", "Direct memory held by the buffer pool, free or in use.", node, pool.getDirectBytes());
+        gauge(sb, "chord_buffer_pool_free_bytes", "Direct memory free in the buffer pool.", node, pool.getPooledBytes());
+        gauge(sb, "chord_buffer_pool_in_use", "Pooled buffers acquired and not yet released.", node, pool.getInUse());
+        counter(sb, "chord_buffer_pool_hits_total", "Buffers reused from the pool.", node, pool.getHits());
+        counter(sb, "chord_buffer_pool_misses_total", "Buffers newly allocated by the pool.", node, pool.getMisses());
+        counter(sb, "chord_buffer_pool_leaks_total", "Pooled buffers garbage collected without being released.", node, pool.getLeaks());
+        return sb.toString();
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+        Map<String, Long> sums = new TreeMap<>();
+        counters.forEach((name, adder) -> sums.put(name, adder.sum()));
+        return sums;
+    }
+
+    private static void cacheCounter(StringBuilder sb, String name, String help, String node, Map<String, LongAdder> counters) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sums(counters).forEach((cache, value) ->
+                sb.append(name).append('{').append(node).append(",cache=\"").append(cache).append("\"} ").append(value).append('\n'));
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, String labels, Number value) {
+        metric(sb, name, "counter", help, labels, value);
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, String labels, Number value) {
+        metric(sb, name, "gauge", help, labels, value);
+    }
+
+    private static void metric(StringBuilder sb, String name, String type, String help, String labels, Number value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        sb.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+}
@@ -8,14 +8,23 @@ import java.rmi.registry.Registry;
 
 public class RmiBootstrap {
 
-    public static void start(int port, String hostname, ChordRemoteInterface remote) throws Exception {
+    //nome del nodo nel registry quando c'è un registry per nodo
+    public static final String BINDING_NAME = "ChordNode";
+
+    public static Registry start(int port, String hostname, ChordRemoteInterface remote) throws Exception {
 
         System.setProperty("java.rmi.server.hostname", hostname);
 
         Registry registry = LocateRegistry.createRegistry(port);
 
-        registry.rebind("ChordNode", remote);
+        registry.rebind(BINDING_NAME, remote);
 
         System.out.println("RMI registry started on " + hostname + ":" + port);
+        return registry;
+    }
+
+    //nome del nodo in un registry condiviso da più nodi (nodi virtuali, simulatore in loopback)
+    public static String bindingFor(long nodeId) {
+        return BINDING_NAME + "-" + Long.toUnsignedString(nodeId);
     }
-}
\ No newline at end of file
+}
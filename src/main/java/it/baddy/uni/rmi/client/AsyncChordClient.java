@@ -0,0 +1,104 @@
+package it.baddy.uni.rmi.client;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+
+import java.util.concurrent.*;
+
+import static it.baddy.uni.config.AppManagements.ASYNC_MAX_IN_FLIGHT;
+
+//facciata asincrona sopra un nodo di ingresso: ogni chiamata gira su un virtual thread
+//e un semaforo limita quante richieste sono davvero in volo verso il ring
+public class AsyncChordClient implements AutoCloseable {
+
+    private final ChordRemoteInterface entryNode;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    public AsyncChordClient(ChordRemoteInterface entryNode) {
+        this(entryNode, ASYNC_MAX_IN_FLIGHT);
+    }
+
+    public AsyncChordClient(ChordRemoteInterface entryNode, int maxInFlight) {
+        if (maxInFlight <= 0)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        this.entryNode = entryNode;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public static AsyncChordClient connect(long nodeId) throws Exception {
+        return new AsyncChordClient(ChordRemoteClient.connect(nodeId));
+    }
+
+    public CompletableFuture<Long> lookup(long id) {
+        return submit(() -> entryNode.lookup(id));
+    }
+
+    public CompletableFuture<byte[]> get(String fileName) {
+        return submit(() -> entryNode.getFile(fileName));
+    }
+
+    public CompletableFuture<Void> put(String fileName, byte[] content) {
+        return submit(() -> {
+            entryNode.uploadFile(fileName, content);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> update(String fileName, byte[] content) {
+        return submit(() -> entryNode.updateFile(fileName, content));
+    }
+
+    public CompletableFuture<Void> delete(String fileName) {
+        return submit(() -> {
+            entryNode.deleteFile(fileName);
+            return null;
+        });
+    }
+
+    //richieste in volo in questo momento
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                //il virtual thread aspetta il permesso senza occupare un thread di piattaforma
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(e);
+                    return;
+                }
+                //il permesso torna prima di completare: le callback girano su questo thread
+                //e possono fare altre richieste (con un solo permesso resterebbero bloccate)
+                T value;
+                try {
+                    value = call.call();
+                } catch (Throwable t) {
+                    inFlight.release();
+                    result.completeExceptionally(t);
+                    return;
+                }
+                inFlight.release();
+                result.complete(value);
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -1,14 +1,196 @@
 package it.baddy.uni.rmi.client;
 
+import it.baddy.uni.rmi.bootstrap.RmiBootstrap;
 import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChordRemoteClient {
 
+    public static final int DEFAULT_PORT = 1099;
+    //dopo quanti errori di trasporto consecutivi lo stub viene scartato
+    private static final int MAX_FAILURES = 1;
+
+    //stub già risolti dal registry, uno per nodo
+    private static final Map<Long, CachedStub> stubs = new ConcurrentHashMap<>();
+    //come vengono raggiunti i nodi, di default un container RMI per nodo
+    private static volatile Transport transport = RmiTransport.containers();
+
+    static {
+        TimeoutSocketFactory.install();
+    }
+
     public static ChordRemoteInterface connect(String host, int port) throws Exception {
+        return connect(host, port, RmiBootstrap.BINDING_NAME);
+    }
+
+    public static ChordRemoteInterface connect(String host, int port, String bindingName) throws Exception {
         Registry registry = LocateRegistry.getRegistry(host, port);
-        return (ChordRemoteInterface) registry.lookup("ChordNode");
+        return (ChordRemoteInterface) registry.lookup(bindingName);
+    }
+
+    //cambia il modo di raggiungere i nodi (es. simulatore): gli stub già risolti vengono scartati
+    public static void setTransport(Transport newTransport) {
+        transport = newTransport;
+        stubs.clear();
+    }
+
+    public static Transport getTransport() {
+        return transport;
+    }
+
+    //restituisce lo stub in cache del nodo, facendo la lookup sul registry solo la prima volta
+    public static ChordRemoteInterface connect(long nodeId) throws Exception {
+        CachedStub cached = stubs.get(nodeId);
+        if (cached != null && cached.isHealthy()) {
+            return cached.proxy;
+        }
+        return resolve(nodeId).proxy;
+    }
+
+    public static String hostFor(long nodeId) {
+        return "node" + Long.toUnsignedString(nodeId);
+    }
+
+    //scarta lo stub del nodo (es. il nodo ha lasciato la rete)
+    public static void invalidate(long nodeId) {
+        if (stubs.remove(nodeId) != null) {
+            System.out.println("invalidated cached stub of node " + nodeId);
+        }
+    }
+
+    //stima del costo di una chiamata al nodo: latenza media pesata per le chiamate in corso
+    //(nodi mai contattati valgono 0, così vengono provati almeno una volta)
+    public static double loadScore(long nodeId) {
+        CachedStub cached = stubs.get(nodeId);
+        if (cached == null)
+            return 0;
+        if (!cached.isHealthy())
+            return Double.MAX_VALUE;
+        return cached.latencyMillis * (1 + cached.inFlight.get());
+    }
+
+    public static boolean isCached(long nodeId) {
+        CachedStub cached = stubs.get(nodeId);
+        return cached != null && cached.isHealthy();
+    }
+
+    //risolve in anticipo gli stub dei nodi indicati, gli errori vengono ignorati
+    public static void warmUp(long[] nodeIds) {
+        for (long nodeId : nodeIds) {
+            if (isCached(nodeId))
+                continue;
+            try {
+                resolve(nodeId);
+                System.out.println("warmed up stub of node " + nodeId);
+            } catch (Exception e) {
+                System.err.println("warm up of node " + nodeId + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static CachedStub resolve(long nodeId) throws Exception {
+        ChordRemoteInterface stub = transport.connect(nodeId);
+        CachedStub cached = new CachedStub(nodeId, stub);
+        stubs.put(nodeId, cached);
+        return cached;
+    }
+
+    //errore di trasporto: la chiamata non è arrivata o non è tornata dal nodo
+    //(le eccezioni lanciate dal server arrivano come ServerException)
+    public static boolean isTransportFailure(Throwable t) {
+        return t instanceof RemoteException
+                && !(t instanceof ServerException)
+                && !(t instanceof ServerError);
+    }
+
+    //errore per cui la chiamata sicuramente non è stata eseguita, quindi si può ripetere
+    public static boolean isSafeToRetry(Throwable t) {
+        return t instanceof ConnectException || t instanceof NoSuchObjectException;
+    }
+
+    private static final class CachedStub implements InvocationHandler {
+        private final long nodeId;
+        private final ChordRemoteInterface stub;
+        private final ChordRemoteInterface proxy;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long lastSuccess;
+        //media mobile esponenziale della latenza delle chiamate
+        private volatile double latencyMillis;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private CachedStub(long nodeId, ChordRemoteInterface stub) {
+            this.nodeId = nodeId;
+            this.stub = stub;
+            this.proxy = (ChordRemoteInterface) Proxy.newProxyInstance(
+                    ChordRemoteInterface.class.getClassLoader(),
+                    new Class<?>[]{ChordRemoteInterface.class},
+                    this);
+        }
+
+        private boolean isHealthy() {
+            return consecutiveFailures.get() < MAX_FAILURES;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            long start = System.nanoTime();
+            inFlight.incrementAndGet();
+            try {
+                Object result = method.invoke(stub, args);
+                recordSuccess(start);
+                return result;
+            } catch (InvocationTargetException ite) {
+                Throwable cause = ite.getCause();
+                if (!isTransportFailure(cause)) {
+                    //errore applicativo: il nodo ha risposto, lo stub è sano
+                    recordSuccess(start);
+                    throw cause;
+                }
+                consecutiveFailures.incrementAndGet();
+                if (!isHealthy()) {
+                    stubs.remove(nodeId, this);
+                }
+                //lo stub in cache può essere vecchio (es. nodo riavviato): riprova una volta con uno nuovo
+                if (isSafeToRetry(cause) && lastSuccess != 0) {
+                    System.out.println("stale stub for node " + nodeId + ", resolving it again");
+                    try {
+                        return method.invoke(resolve(nodeId).stub, args);
+                    } catch (InvocationTargetException retryIte) {
+                        if (isTransportFailure(retryIte.getCause()))
+                            invalidate(nodeId);
+                        throw retryIte.getCause();
+                    } catch (Exception e) {
+                        throw cause;
+                    }
+                }
+                throw cause;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private void recordSuccess(long startNanos) {
+            double elapsed = (System.nanoTime() - startNanos) / 1_000_000.0;
+            latencyMillis = latencyMillis == 0 ? elapsed : 0.8 * latencyMillis + 0.2 * elapsed;
+            consecutiveFailures.set(0);
+            lastSuccess = System.currentTimeMillis();
+        }
     }
 }
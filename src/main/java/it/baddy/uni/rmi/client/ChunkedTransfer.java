@@ -0,0 +1,99 @@
+package it.baddy.uni.rmi.client;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+//download/upload a chunk: la sessione viene aperta tramite il routing del ring
+//e poi i chunk vengono scambiati direttamente con il nodo responsabile
+public final class ChunkedTransfer {
+
+    private ChunkedTransfer() {
+        // utility class
+    }
+
+    //scarica il file in target e restituisce i byte ricevuti
+    public static long download(ChordRemoteInterface entryNode, String fileName, Path target) throws Exception {
+        TransferHandle handle = entryNode.openDownload(fileName);
+        ChordRemoteInterface owner = ownerOf(entryNode, handle);
+        long received = 0;
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        try (OutputStream out = Files.newOutputStream(target)) {
+            byte[] chunk;
+            while ((chunk = owner.readChunk(handle.getSessionId())).length > 0) {
+                out.write(chunk);
+                received += chunk.length;
+            }
+        } catch (Exception e) {
+            abortQuietly(owner, handle);
+            throw e;
+        }
+        return received;
+    }
+
+    //riprende un download interrotto: scarica solo i byte che mancano a target
+    public static long resumeDownload(ChordRemoteInterface entryNode, String fileName, Path target, int rangeSize) throws Exception {
+        long offset = Files.exists(target) ? Files.size(target) : 0;
+        long received = 0;
+        try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            byte[] range;
+            while ((range = entryNode.getFileRange(fileName, offset, rangeSize)).length > 0) {
+                out.write(range);
+                offset += range.length;
+                received += range.length;
+            }
+        }
+        return received;
+    }
+
+    //carica il file source con il nome indicato, ritorna true se è stato creato
+    public static boolean upload(ChordRemoteInterface entryNode, Path source, String fileName) throws Exception {
+        try (InputStream in = Files.newInputStream(source)) {
+            return upload(entryNode, in, fileName);
+        }
+    }
+
+    public static boolean upload(ChordRemoteInterface entryNode, InputStream in, String fileName) throws Exception {
+        TransferHandle handle = entryNode.openUpload(fileName);
+        return push(ownerOf(entryNode, handle), handle, in);
+    }
+
+    //invia il contenuto di in su una sessione di scrittura già aperta su owner e fa il commit
+    public static boolean push(ChordRemoteInterface owner, TransferHandle handle, InputStream in) throws Exception {
+        try {
+            byte[] buffer = new byte[handle.getChunkSize()];
+            int read;
+            while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                owner.writeChunk(handle.getSessionId(), read == buffer.length ? buffer : Arrays.copyOf(buffer, read));
+            }
+            return owner.commitUpload(handle.getSessionId());
+        } catch (Exception e) {
+            abortQuietly(owner, handle);
+            throw e;
+        }
+    }
+
+    private static ChordRemoteInterface ownerOf(ChordRemoteInterface entryNode, TransferHandle handle) throws Exception {
+        //se il nodo di ingresso è già il responsabile non serve un altro stub
+        if (entryNode.getNodeId() == handle.getOwnerId())
+            return entryNode;
+        return ChordRemoteClient.connect(handle.getOwnerId());
+    }
+
+    private static void abortQuietly(ChordRemoteInterface owner, TransferHandle handle) {
+        try {
+            owner.abortTransfer(handle.getSessionId());
+        } catch (IOException e) {
+            System.err.println("error aborting transfer session " + handle.getSessionId());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package it.baddy.uni.rmi.client;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+//nodi nella stessa JVM chiamati direttamente, senza serializzazione (argomenti e risultati
+//passano per riferimento); gli errori arrivano come con RMI: RemoteException del server
+//dentro ServerException e ConnectException verso i nodi non registrati o spenti
+public class LocalTransport implements Transport {
+
+    private final Map<Long, ChordRemoteInterface> nodes = new ConcurrentHashMap<>();
+    //ritardo aggiunto a ogni chiamata per simulare la rete
+    private final long delayNanos;
+
+    public LocalTransport() {
+        this(0);
+    }
+
+    public LocalTransport(long delayMicros) {
+        this.delayNanos = delayMicros * 1000;
+    }
+
+    public void register(long nodeId, ChordRemoteInterface node) {
+        nodes.put(nodeId, node);
+    }
+
+    //il nodo smette di rispondere, anche tramite gli stub già distribuiti
+    public void unregister(long nodeId) {
+        nodes.remove(nodeId);
+    }
+
+    public boolean isRegistered(long nodeId) {
+        return nodes.containsKey(nodeId);
+    }
+
+    @Override
+    public ChordRemoteInterface connect(long nodeId) throws Exception {
+        if (!nodes.containsKey(nodeId))
+            throw new ConnectException("node " + Long.toUnsignedString(nodeId) + " is not registered");
+        return (ChordRemoteInterface) Proxy.newProxyInstance(
+                ChordRemoteInterface.class.getClassLoader(),
+                new Class<?>[]{ChordRemoteInterface.class},
+                new LocalStub(nodeId));
+    }
+
+    private final class LocalStub implements InvocationHandler {
+        private final long nodeId;
+
+        private LocalStub(long nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            ChordRemoteInterface target = nodes.get(nodeId);
+            if (target == null)
+                throw new ConnectException("node " + Long.toUnsignedString(nodeId) + " is not reachable");
+            if (delayNanos > 0)
+                LockSupport.parkNanos(delayNanos);
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ite) {
+                Throwable cause = ite.getCause();
+                if (cause instanceof RemoteException re)
+                    throw new ServerException("RemoteException occurred in server thread", re);
+                if (cause instanceof Error error)
+                    throw new ServerError("Error occurred in server thread", error);
+                throw cause;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package it.baddy.uni.rmi.client;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.nio.NioClient;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.function.LongFunction;
+
+//stessa interfaccia dei nodi ma sul protocollo binario NIO invece che con RMI: una connessione
+//persistente per processo remoto, su cui viaggiano insieme le chiamate di tutti i thread
+public class NioTransport implements Transport, AutoCloseable {
+
+    private final LongFunction<String> hosts;
+    private final int port;
+    private final NioClient client = new NioClient();
+
+    public NioTransport(LongFunction<String> hosts, int port) {
+        this.hosts = hosts;
+        this.port = port;
+    }
+
+    //un container per nodo fisico: "node<id>":port, i nodi virtuali sulla connessione del loro processo
+    public static NioTransport containers(int port) {
+        return new NioTransport(id -> ChordRemoteClient.hostFor(NodeDirectory.physicalOf(id)), port);
+    }
+
+    //tutti i nodi serviti dallo stesso server locale
+    public static NioTransport loopback(int port) {
+        return new NioTransport(id -> "127.0.0.1", port);
+    }
+
+    @Override
+    public ChordRemoteInterface connect(long nodeId) throws Exception {
+        InetSocketAddress address = new InetSocketAddress(hosts.apply(nodeId), port);
+        //come la lookup sul registry: un nodo spento fallisce già qui
+        client.connect(address);
+        return (ChordRemoteInterface) Proxy.newProxyInstance(
+                ChordRemoteInterface.class.getClassLoader(),
+                new Class<?>[]{ChordRemoteInterface.class},
+                new NioStub(address, nodeId));
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    private final class NioStub implements InvocationHandler {
+        private final InetSocketAddress address;
+        private final long nodeId;
+
+        private NioStub(InetSocketAddress address, long nodeId) {
+            this.address = address;
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            return client.call(address, nodeId, method, args);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package it.baddy.uni.rmi.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//nodo virtuale -> processo (nodo fisico) che lo ospita: serve per raggiungere i nodi
+//virtuali, che non hanno un host proprio; un id senza voce è un nodo fisico
+public final class NodeDirectory {
+
+    private static final Map<Long, Long> hosts = new ConcurrentHashMap<>();
+
+    private NodeDirectory() {
+    }
+
+    public static void register(long nodeId, long physicalId) {
+        if (nodeId == physicalId)
+            return;
+        hosts.put(nodeId, physicalId);
+    }
+
+    public static long physicalOf(long nodeId) {
+        return hosts.getOrDefault(nodeId, nodeId);
+    }
+
+    public static boolean isVirtual(long nodeId) {
+        return hosts.containsKey(nodeId);
+    }
+
+    //voci ricevute da un altro nodo (join, stabilize)
+    public static void merge(Map<Long, Long> entries) {
+        entries.forEach(NodeDirectory::register);
+    }
+
+    public static Map<Long, Long> entries() {
+        return Map.copyOf(hosts);
+    }
+}
@@ -0,0 +1,36 @@
+package it.baddy.uni.rmi.client;
+
+import it.baddy.uni.rmi.bootstrap.RmiBootstrap;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+
+import java.util.function.LongFunction;
+
+//stub RMI presi dal registry del nodo: host e nome del binding dipendono dall'id
+public class RmiTransport implements Transport {
+
+    private final LongFunction<String> hosts;
+    private final int port;
+    private final LongFunction<String> bindings;
+
+    public RmiTransport(LongFunction<String> hosts, int port, LongFunction<String> bindings) {
+        this.hosts = hosts;
+        this.port = port;
+        this.bindings = bindings;
+    }
+
+    //un container per nodo fisico: "node<id>":1099, i nodi virtuali nel registry del loro processo
+    public static RmiTransport containers() {
+        return new RmiTransport(id -> ChordRemoteClient.hostFor(NodeDirectory.physicalOf(id)), ChordRemoteClient.DEFAULT_PORT,
+                id -> NodeDirectory.isVirtual(id) ? RmiBootstrap.bindingFor(id) : RmiBootstrap.BINDING_NAME);
+    }
+
+    //tutti i nodi registrati nello stesso registry locale, un binding per nodo
+    public static RmiTransport loopback(int port) {
+        return new RmiTransport(id -> "127.0.0.1", port, RmiBootstrap::bindingFor);
+    }
+
+    @Override
+    public ChordRemoteInterface connect(long nodeId) throws Exception {
+        return ChordRemoteClient.connect(hosts.apply(nodeId), port, bindings.apply(nodeId));
+    }
+}
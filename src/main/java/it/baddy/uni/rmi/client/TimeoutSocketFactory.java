@@ -0,0 +1,61 @@
+package it.baddy.uni.rmi.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMISocketFactory;
+
+import static it.baddy.uni.config.AppManagements.RMI_CONNECT_TIMEOUT_MS;
+import static it.baddy.uni.config.AppManagements.RMI_READ_TIMEOUT_MS;
+
+//socket RMI con timeout configurabili: senza, una chiamata a un nodo morto
+//aspetta il timeout di connessione del sistema operativo
+public class TimeoutSocketFactory extends RMISocketFactory {
+
+    private static boolean installed;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public TimeoutSocketFactory(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    //da chiamare prima di qualsiasi uso di RMI, le chiamate successive non fanno nulla
+    public static synchronized void install() {
+        if (installed)
+            return;
+        //anche il runtime RMI applica i timeout alle connessioni riusate
+        System.setProperty("sun.rmi.transport.tcp.responseTimeout", String.valueOf(RMI_READ_TIMEOUT_MS));
+        System.setProperty("sun.rmi.transport.tcp.handshakeTimeout", String.valueOf(RMI_CONNECT_TIMEOUT_MS));
+        try {
+            RMISocketFactory.setSocketFactory(new TimeoutSocketFactory(RMI_CONNECT_TIMEOUT_MS, RMI_READ_TIMEOUT_MS));
+            System.out.println("RMI timeouts: connect " + RMI_CONNECT_TIMEOUT_MS + " ms, read " + RMI_READ_TIMEOUT_MS + " ms");
+        } catch (IOException e) {
+            //già impostata da qualcun altro: restano i suoi timeout
+            System.err.println("cannot install RMI socket factory: " + e.getMessage());
+        }
+        installed = true;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            socket.setSoTimeout(readTimeoutMillis);
+            socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return new ServerSocket(port);
+    }
+}
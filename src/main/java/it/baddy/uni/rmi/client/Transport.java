@@ -0,0 +1,10 @@
+package it.baddy.uni.rmi.client;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+
+//come si raggiunge un nodo a partire dal suo id: RMI verso i container (default)
+//o in memoria per il simulatore; gli stub restituiti vengono messi in cache da ChordRemoteClient
+public interface Transport {
+
+    ChordRemoteInterface connect(long nodeId) throws Exception;
+}
@@ -0,0 +1,35 @@
+package it.baddy.uni.rmi.interfaces;
+
+import java.io.Serializable;
+
+//esito di una singola chiave dentro un'operazione batch: valore oppure errore
+public class BatchResult<T> implements Serializable {
+
+    private final T value;
+    private final String error;
+
+    private BatchResult(T value, String error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <T> BatchResult<T> ok(T value) {
+        return new BatchResult<>(value, null);
+    }
+
+    public static <T> BatchResult<T> failed(String error) {
+        return new BatchResult<>(null, error == null ? "unknown error" : error);
+    }
+
+    public boolean isOk() {
+        return error == null;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
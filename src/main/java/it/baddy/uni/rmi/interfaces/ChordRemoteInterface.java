@@ -2,25 +2,111 @@ package it.baddy.uni.rmi.interfaces;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 
 public interface ChordRemoteInterface extends Remote {
 
-    <T> T routeToResponsible(int keyId, NodeAction<T> action, String actionName) throws RemoteException;
+    <T> RouteResult<T> routeToResponsible(long keyId, NodeAction<T> action, String actionName) throws RemoteException;
 
-    int lookup(int id) throws RemoteException;
+    // esegue l'azione solo se il nodo è responsabile della chiave (rotte prese dalla location cache)
+    <T> RouteResult<T> executeIfResponsible(long keyId, NodeAction<T> action, String actionName) throws RemoteException;
+
+    long lookup(long id) throws RemoteException;
 
     byte[] getFile(String fileName) throws RemoteException;
 
+    // legge al più length byte del file a partire da offset (vuoto oltre la fine del file)
+    byte[] getFileRange(String fileName, long offset, int length) throws RemoteException;
+
     void uploadFile(String fileName, byte[] content) throws RemoteException;
 
     boolean updateFile(String fileName, byte[] content) throws RemoteException;
 
     void deleteFile(String fileName) throws RemoteException;
 
-    int getNodeId() throws RemoteException;
+    // operazioni su più chiavi: raggruppate per nodo responsabile, un batch per nodo in parallelo
+    Map<String, BatchResult<byte[]>> multiGet(List<String> fileNames) throws RemoteException;
+
+    Map<String, BatchResult<Boolean>> multiPut(Map<String, byte[]> files) throws RemoteException;
+
+    Map<String, BatchResult<Void>> multiDelete(List<String> fileNames) throws RemoteException;
+
+    // esegue un gruppo di azioni, inoltrando quelle di cui il nodo non è responsabile
+    <T> List<BatchResult<T>> executeBatch(long[] keyIds, List<NodeAction<T>> actions, String actionName) throws RemoteException;
+
+    // trasferimento a chunk: l'apertura viene instradata al nodo responsabile,
+    // i chunk vanno poi inviati direttamente a handle.getOwnerId()
+    TransferHandle openDownload(String fileName) throws RemoteException;
+
+    TransferHandle openUpload(String fileName) throws RemoteException;
+
+    byte[] readChunk(long sessionId) throws RemoteException;
+
+    void writeChunk(long sessionId, byte[] chunk) throws RemoteException;
+
+    boolean commitUpload(long sessionId) throws RemoteException;
+
+    void abortTransfer(long sessionId) throws RemoteException;
+
+    // catena di replica: il nodo salva la copia e la inoltra ad altri copies successori
+    boolean replicateWrite(String fileName, byte[] content, int copies) throws RemoteException;
+
+    void replicateDelete(String fileName, int copies) throws RemoteException;
+
+    TransferHandle openReplicaUpload(String fileName, int copies) throws RemoteException;
+
+    // legge la copia locale del file senza instradare (responsabile o replica)
+    byte[] readReplica(String fileName) throws RemoteException;
+
+    long getNodeId() throws RemoteException;
 
+    // il processo lascia la rete con tutti i suoi nodi virtuali
     void controlledLeave() throws RemoteException;
+
+    // ricezione delle chiavi di un nodo che lascia la rete: i file arrivano a chunk
+    // su più sessioni parallele e completeHandoff restituisce i nomi di quelli salvati
+    long beginHandoff(long fromNodeId, int expectedFiles) throws RemoteException;
+
+    TransferHandle openHandoffUpload(long handoffId, String fileName) throws RemoteException;
+
+    List<String> completeHandoff(long handoffId) throws RemoteException;
+
+    // heartbeat del failure detector
+    void ping() throws RemoteException;
+
+    // join dinamico: il nodo che entra chiede al bootstrap la vista del ring,
+    // poi il suo successore gli passa le chiavi (acceptJoin) e lo annuncia agli altri (notifyJoin);
+    // physicalId è il processo che ospita il nodo (uguale all'id senza nodi virtuali)
+    List<Long> getKnownNodes() throws RemoteException;
+
+    // nodi virtuali conosciuti -> processo che li ospita
+    Map<Long, Long> getNodeDirectory() throws RemoteException;
+
+    long getPredecessor() throws RemoteException;
+
+    int acceptJoin(long newNodeId, long physicalId) throws RemoteException;
+
+    void notifyJoin(long nodeId, long physicalId, long originId) throws RemoteException, Exception;
+
+    // notify del protocollo chord: candidateId pensa di essere il nostro predecessore
+    void notifyPredecessor(long candidateId, long physicalId) throws RemoteException;
+
+    // latenze per operazione, hop, byte e tempo su disco del nodo
+    MetricsSnapshot getMetrics() throws RemoteException;
+
     String printFingerTable() throws RemoteException;
+    String printLocationCache() throws RemoteException;
     // metodo per aggiornare puntatori
-    void notifyLeave(int nodeId, int originId) throws RemoteException, Exception;
+    void notifyLeave(long nodeId, long originId) throws RemoteException, Exception;
+
+    // elenco di tutti i file del ring a pagine: cursor 0 apre l'elenco, poi si passa il cursore
+    // della pagina precedente finché non torna 0
+    ListingPage listFiles(long cursor, int maxFiles) throws RemoteException;
+
+    // broadcast dell'elenco lungo le finger: il nodo apre la sua scansione e la chiede alle finger
+    // prima di limitId, restituisce nodo -> scansione per tutto l'arco
+    Map<Long, Long> openScan(long limitId) throws RemoteException;
+
+    List<FileInfo> scanPage(long scanId, int maxFiles) throws RemoteException;
 }
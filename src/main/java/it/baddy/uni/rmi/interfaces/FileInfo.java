@@ -0,0 +1,35 @@
+package it.baddy.uni.rmi.interfaces;
+
+import java.io.Serializable;
+
+//un file nell'elenco del ring: nome, dimensione su disco, id della chiave e nodo responsabile
+public class FileInfo implements Serializable {
+
+    private final String fileName;
+    private final long size;
+    private final long keyId;
+    private final long ownerId;
+
+    public FileInfo(String fileName, long size, long keyId, long ownerId) {
+        this.fileName = fileName;
+        this.size = size;
+        this.keyId = keyId;
+        this.ownerId = ownerId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getKeyId() {
+        return keyId;
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+}
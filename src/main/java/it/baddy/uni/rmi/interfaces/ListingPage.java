@@ -0,0 +1,36 @@
+package it.baddy.uni.rmi.interfaces;
+
+import java.io.Serializable;
+import java.util.List;
+
+//una pagina dell'elenco dei file: il cursore va passato alla richiesta successiva,
+//0 quando l'elenco è finito
+public class ListingPage implements Serializable {
+
+    private final List<FileInfo> files;
+    private final long cursor;
+    //qualche nodo non ha risposto: i suoi file mancano dall'elenco
+    private final boolean incomplete;
+
+    public ListingPage(List<FileInfo> files, long cursor, boolean incomplete) {
+        this.files = files;
+        this.cursor = cursor;
+        this.incomplete = incomplete;
+    }
+
+    public List<FileInfo> getFiles() {
+        return files;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public boolean isLast() {
+        return cursor == 0;
+    }
+
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+}
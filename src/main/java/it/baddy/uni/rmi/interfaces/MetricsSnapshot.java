@@ -0,0 +1,173 @@
+package it.baddy.uni.rmi.interfaces;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+//fotografia delle metriche di un nodo restituita da getMetrics
+public class MetricsSnapshot implements Serializable {
+
+    private final long nodeId;
+    private final long uptimeMillis;
+    private final Map<String, OperationStats> operations;
+    //hops[i] = richieste servite dopo i inoltri (l'ultima posizione comprende anche le più lunghe)
+    private final long[] hops;
+    private final long servedLocally;
+    private final long forwarded;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long diskReads;
+    private final long diskReadMicros;
+    private final long diskWrites;
+    private final long diskWriteMicros;
+    //hit e miss per cache (content sul responsabile, entry sul nodo di ingresso)
+    private final Map<String, Long> cacheHits;
+    private final Map<String, Long> cacheMisses;
+
+    public MetricsSnapshot(long nodeId, long uptimeMillis, Map<String, OperationStats> operations, long[] hops,
+                           long servedLocally, long forwarded, long bytesIn, long bytesOut,
+                           long diskReads, long diskReadMicros, long diskWrites, long diskWriteMicros,
+                           Map<String, Long> cacheHits, Map<String, Long> cacheMisses) {
+        this.nodeId = nodeId;
+        this.uptimeMillis = uptimeMillis;
+        this.operations = operations;
+        this.hops = hops;
+        this.servedLocally = servedLocally;
+        this.forwarded = forwarded;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.diskReads = diskReads;
+        this.diskReadMicros = diskReadMicros;
+        this.diskWrites = diskWrites;
+        this.diskWriteMicros = diskWriteMicros;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public long getUptimeMillis() {
+        return uptimeMillis;
+    }
+
+    public Map<String, OperationStats> getOperations() {
+        return operations;
+    }
+
+    public long[] getHops() {
+        return hops;
+    }
+
+    public long getServedLocally() {
+        return servedLocally;
+    }
+
+    public long getForwarded() {
+        return forwarded;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getDiskReads() {
+        return diskReads;
+    }
+
+    public long getDiskReadMicros() {
+        return diskReadMicros;
+    }
+
+    public long getDiskWrites() {
+        return diskWrites;
+    }
+
+    public long getDiskWriteMicros() {
+        return diskWriteMicros;
+    }
+
+    public Map<String, Long> getCacheHits() {
+        return cacheHits;
+    }
+
+    public Map<String, Long> getCacheMisses() {
+        return cacheMisses;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        double seconds = Math.max(1, uptimeMillis) / 1000.0;
+        sb.append("Metrics of node ").append(Long.toUnsignedString(nodeId))
+                .append(" (uptime ").append(uptimeMillis / 1000).append(" s)\n");
+        sb.append("-------------------------------------------\n");
+        operations.forEach((name, stats) -> sb.append(String.format(
+                "%-14s count=%d rate=%.1f/s mean=%.0fus p50=%dus p90=%dus p99=%dus max=%dus%n",
+                name, stats.getCount(), stats.getCount() / seconds, stats.getMeanMicros(),
+                stats.getP50Micros(), stats.getP90Micros(), stats.getP99Micros(), stats.getMaxMicros())));
+        sb.append("served locally: ").append(servedLocally).append(", forwarded: ").append(forwarded).append("\n");
+        sb.append("hops:");
+        for (int i = 0; i < hops.length; i++) {
+            if (hops[i] > 0)
+                sb.append(" ").append(i).append(i == hops.length - 1 ? "+" : "").append("=").append(hops[i]);
+        }
+        sb.append("\n");
+        sb.append("bytes in: ").append(bytesIn).append(", bytes out: ").append(bytesOut).append("\n");
+        sb.append("disk reads: ").append(diskReads).append(" (").append(diskReadMicros / 1000).append(" ms), ")
+                .append("disk writes: ").append(diskWrites).append(" (").append(diskWriteMicros / 1000).append(" ms)\n");
+        Set<String> caches = new TreeSet<>(cacheHits.keySet());
+        caches.addAll(cacheMisses.keySet());
+        caches.forEach(cache -> sb.append(cache).append(" cache: ").append(cacheHits.getOrDefault(cache, 0L)).append(" hits, ")
+                .append(cacheMisses.getOrDefault(cache, 0L)).append(" misses\n"));
+        return sb.toString();
+    }
+
+    public static class OperationStats implements Serializable {
+        private final long count;
+        private final double meanMicros;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        public OperationStats(long count, double meanMicros, long p50Micros, long p90Micros, long p99Micros, long maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+}
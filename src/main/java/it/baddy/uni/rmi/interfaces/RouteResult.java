@@ -0,0 +1,35 @@
+package it.baddy.uni.rmi.interfaces;
+
+import java.io.Serializable;
+
+//risultato di una richiesta instradata: oltre al valore riporta chi l'ha servita
+//e quanti hop sono serviti, così chi ha inoltrato può aggiornare la location cache
+public class RouteResult<T> implements Serializable {
+
+    private final T value;
+    private final long ownerId;
+    private final int hops;
+
+    public RouteResult(T value, long ownerId, int hops) {
+        this.value = value;
+        this.ownerId = ownerId;
+        this.hops = hops;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
+    public int getHops() {
+        return hops;
+    }
+
+    //lo stesso risultato visto da un nodo che ha fatto un hop in più
+    public RouteResult<T> forwarded() {
+        return new RouteResult<>(value, ownerId, hops + 1);
+    }
+}
@@ -0,0 +1,37 @@
+package it.baddy.uni.rmi.interfaces;
+
+import java.io.Serializable;
+
+//riferimento a una sessione di trasferimento aperta sul nodo responsabile:
+//i nodi intermedi inoltrano solo questo, i chunk vanno direttamente al proprietario
+public class TransferHandle implements Serializable {
+
+    private final long ownerId;
+    private final long sessionId;
+    private final long size;
+    private final int chunkSize;
+
+    public TransferHandle(long ownerId, long sessionId, long size, int chunkSize) {
+        this.ownerId = ownerId;
+        this.sessionId = sessionId;
+        this.size = size;
+        this.chunkSize = chunkSize;
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    //dimensione del file in lettura, -1 per le sessioni di scrittura
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+}
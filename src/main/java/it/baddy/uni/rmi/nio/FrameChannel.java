@@ -0,0 +1,195 @@
+package it.baddy.uni.rmi.nio;
+
+import it.baddy.uni.utils.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static it.baddy.uni.config.AppManagements.NIO_MAX_FRAME;
+
+//connessione non bloccante che riceve e spedisce frame; letture e scritture sul socket
+//le fa solo il thread del FrameLoop, gli altri thread accodano i frame da spedire.
+//I frame stanno in buffer del pool: quelli spediti tornano al pool dopo la scrittura,
+//quelli ricevuti li restituisce il Handler
+public class FrameChannel {
+
+    //un frame più grande viene rifiutato (chi lo riceve chiude la connessione, chi lo spedisce
+    //riceve un errore prima di mandarlo)
+    static final int MAX_FRAME = NIO_MAX_FRAME;
+    //frame scritti insieme con una sola chiamata al socket
+    private static final int MAX_GATHER = 64;
+
+    public interface Handler {
+        //il frame va chiuso dopo averlo letto
+        void onFrame(FrameChannel channel, BufferPool.Buffer frame);
+
+        void onClose(FrameChannel channel, IOException cause);
+    }
+
+    private final FrameLoop loop;
+    private final SocketChannel socket;
+    private volatile Handler handler;
+    private final Queue<BufferPool.Buffer> outgoing = new ConcurrentLinkedQueue<>();
+    //diretto: il socket ci legge senza passare da un buffer temporaneo della JVM
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final AtomicBoolean closed = new AtomicBoolean();
+    //frame in lettura, null mentre si aspetta la lunghezza del prossimo
+    private BufferPool.Buffer incomingFrame;
+    private ByteBuffer incoming;
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private SelectionKey key;
+
+    FrameChannel(FrameLoop loop, SocketChannel socket, Handler handler) {
+        this.loop = loop;
+        this.socket = socket;
+        this.handler = handler;
+    }
+
+    //thread safe: il frame viene scritto dal thread del loop appena il socket è pronto
+    //e poi restituito al pool (anche se la connessione si chiude prima)
+    public void send(BufferPool.Buffer frame) throws IOException {
+        if (closed.get()) {
+            frame.close();
+            throw new IOException("connection to " + remoteAddress() + " is closed");
+        }
+        outgoing.add(frame);
+        //chiusa mentre lo accodavamo: close potrebbe aver già svuotato la coda
+        if (closed.get())
+            releaseOutgoing();
+        loop.requestFlush(this);
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    public String remoteAddress() {
+        try {
+            return String.valueOf(socket.getRemoteAddress());
+        } catch (IOException e) {
+            return "closed socket";
+        }
+    }
+
+    public void close() {
+        close(null);
+    }
+
+    void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    //chiamati dal thread del loop
+
+    void read() {
+        try {
+            //resto di un frame grande: i byte vanno direttamente nel frame, senza copie
+            if (incoming != null && readBuffer.position() == 0 && incoming.remaining() >= readBuffer.capacity()) {
+                if (socket.read(incoming) < 0) {
+                    close(new IOException("connection closed by " + remoteAddress()));
+                    return;
+                }
+                if (!incoming.hasRemaining())
+                    deliver();
+                return;
+            }
+            int n = socket.read(readBuffer);
+            if (n < 0) {
+                close(new IOException("connection closed by " + remoteAddress()));
+                return;
+            }
+            readBuffer.flip();
+            while (true) {
+                if (incoming == null) {
+                    if (readBuffer.remaining() < Integer.BYTES)
+                        break;
+                    int length = readBuffer.getInt();
+                    if (length < 0 || length > MAX_FRAME)
+                        throw new IOException("invalid frame length " + length + " from " + remoteAddress());
+                    incomingFrame = BufferPool.shared().acquire(length);
+                    incoming = incomingFrame.buffer();
+                }
+                int count = Math.min(incoming.remaining(), readBuffer.remaining());
+                incoming.put(readBuffer.slice(readBuffer.position(), count));
+                readBuffer.position(readBuffer.position() + count);
+                if (incoming.hasRemaining())
+                    break;
+                deliver();
+            }
+            readBuffer.compact();
+        } catch (IOException e) {
+            close(e);
+        } catch (RuntimeException e) {
+            //frame illeggibile: lo stato della connessione non è più affidabile
+            close(new IOException("error reading from " + remoteAddress(), e));
+        }
+    }
+
+    private void deliver() {
+        BufferPool.Buffer frame = incomingFrame;
+        frame.buffer().flip();
+        incomingFrame = null;
+        incoming = null;
+        handler.onFrame(this, frame);
+    }
+
+    void flush() {
+        if (closed.get())
+            return;
+        try {
+            while (!outgoing.isEmpty()) {
+                int count = 0;
+                for (BufferPool.Buffer frame : outgoing) {
+                    gather[count++] = frame.buffer();
+                    if (count == MAX_GATHER)
+                        break;
+                }
+                socket.write(gather, 0, count);
+                //toglie dalla coda i frame scritti del tutto
+                for (int i = 0; i < count; i++) {
+                    if (gather[i].hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    outgoing.poll().close();
+                    gather[i] = null;
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    void close(IOException cause) {
+        if (!closed.compareAndSet(false, true))
+            return;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("error closing connection to " + remoteAddress());
+        }
+        releaseOutgoing();
+        if (incomingFrame != null) {
+            incomingFrame.close();
+            incomingFrame = null;
+            incoming = null;
+        }
+        handler.onClose(this, cause);
+    }
+
+    private void releaseOutgoing() {
+        BufferPool.Buffer frame;
+        while ((frame = outgoing.poll()) != null)
+            frame.close();
+    }
+}
@@ -0,0 +1,123 @@
+package it.baddy.uni.rmi.nio;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+//un solo thread per tutte le connessioni di un client o di un server: accetta, legge e
+//scrive con un selector; i frame ricevuti vengono passati all'handler della connessione
+public class FrameLoop implements AutoCloseable {
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public FrameLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //socket già connesso: da qui in poi è gestito dal loop
+    public FrameChannel register(SocketChannel socket, FrameChannel.Handler handler) throws IOException {
+        configure(socket);
+        FrameChannel channel = new FrameChannel(this, socket, handler);
+        execute(() -> attach(socket, channel));
+        return channel;
+    }
+
+    //le connessioni accettate ricevono l'handler creato da handlers
+    public void listen(ServerSocketChannel server, Function<FrameChannel, FrameChannel.Handler> handlers) throws IOException {
+        server.configureBlocking(false);
+        execute(() -> {
+            try {
+                server.register(selector, SelectionKey.OP_ACCEPT, handlers);
+            } catch (ClosedChannelException e) {
+                System.err.println("cannot listen on closed server socket");
+            }
+        });
+    }
+
+    void requestFlush(FrameChannel channel) {
+        execute(channel::flush);
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept(key);
+                        continue;
+                    }
+                    FrameChannel channel = (FrameChannel) key.attachment();
+                    if (key.isWritable())
+                        channel.flush();
+                    if (key.isValid() && key.isReadable())
+                        channel.read();
+                }
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (Exception e) {
+                //un errore su una connessione non deve fermare le altre
+                System.err.println("error in " + thread.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void accept(SelectionKey key) throws IOException {
+        SocketChannel socket = ((ServerSocketChannel) key.channel()).accept();
+        if (socket == null)
+            return;
+        configure(socket);
+        FrameChannel channel = new FrameChannel(this, socket, null);
+        channel.setHandler(((Function<FrameChannel, FrameChannel.Handler>) key.attachment()).apply(channel));
+        attach(socket, channel);
+    }
+
+    private void attach(SocketChannel socket, FrameChannel channel) {
+        try {
+            channel.attach(socket.register(selector, SelectionKey.OP_READ, channel));
+        } catch (ClosedChannelException e) {
+            channel.close(e);
+        }
+    }
+
+    private static void configure(SocketChannel socket) throws IOException {
+        socket.configureBlocking(false);
+        //frame piccoli e tante richieste in fila: niente attesa di Nagle
+        socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("error closing " + thread.getName());
+        }
+    }
+}
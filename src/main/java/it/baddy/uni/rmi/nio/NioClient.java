@@ -0,0 +1,195 @@
+package it.baddy.uni.rmi.nio;
+
+import it.baddy.uni.utils.BufferPool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static it.baddy.uni.config.AppManagements.RMI_CONNECT_TIMEOUT_MS;
+import static it.baddy.uni.config.AppManagements.RMI_READ_TIMEOUT_MS;
+
+//connessioni persistenti verso i server NIO, una per indirizzo (i nodi virtuali dello stesso
+//processo la condividono): più richieste viaggiano insieme e ogni risposta torna al suo
+//chiamante tramite l'id. Gli errori arrivano come con RMI: ConnectException se il nodo non
+//si raggiunge, le eccezioni del server dentro ServerException
+public class NioClient implements AutoCloseable {
+
+    private final FrameLoop loop;
+    private final Map<InetSocketAddress, Connection> connections = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    public NioClient() {
+        try {
+            this.loop = new FrameLoop("nio-client");
+        } catch (IOException e) {
+            throw new RuntimeException("Error starting NIO client", e);
+        }
+    }
+
+    //apre la connessione se non c'è già
+    public void connect(InetSocketAddress address) throws ConnectException {
+        connection(address);
+    }
+
+    public Object call(InetSocketAddress address, long nodeId, Method method, Object[] args) throws Throwable {
+        Connection connection = connection(address);
+        long requestId = nextRequestId.incrementAndGet();
+        WireWriter out = new WireWriter(estimateSize(args)).writeLong(requestId).writeLong(nodeId).writeByte(Protocol.opcode(method));
+        BufferPool.Buffer request;
+        try {
+            if (args != null) {
+                for (Object arg : args) {
+                    out.writeValue(arg);
+                }
+            }
+            request = out.finish();
+        } catch (RuntimeException e) {
+            out.discard();
+            throw e;
+        }
+        CompletableFuture<BufferPool.Buffer> reply = new CompletableFuture<>();
+        connection.pending.put(requestId, reply);
+        BufferPool.Buffer frame = null;
+        try {
+            try {
+                connection.channel.send(request);
+            } catch (IOException e) {
+                //il frame non è partito: si può riprovare come per una connessione rifiutata
+                throw new ConnectException("cannot send request to " + address, e);
+            }
+            frame = await(reply, nodeId);
+            WireReader in = new WireReader(frame.buffer());
+            in.readLong();
+            byte status = in.readByte();
+            if (status == Protocol.OK)
+                return in.readValue();
+            if (status == Protocol.NO_SUCH_NODE)
+                throw new NoSuchObjectException(in.readString());
+            Throwable cause = (Throwable) in.readValue();
+            if (cause instanceof RemoteException re)
+                throw new ServerException("RemoteException occurred in server thread", re);
+            if (cause instanceof Error error)
+                throw new ServerError("Error occurred in server thread", error);
+            throw cause;
+        } finally {
+            connection.pending.remove(requestId);
+            //i valori letti sono copie; dopo un timeout la risposta può ancora arrivare
+            if (frame != null)
+                frame.close();
+            else
+                reply.thenAccept(BufferPool.Buffer::close);
+        }
+    }
+
+    private static BufferPool.Buffer await(CompletableFuture<BufferPool.Buffer> reply, long nodeId) throws RemoteException {
+        try {
+            return RMI_READ_TIMEOUT_MS > 0 ? reply.get(RMI_READ_TIMEOUT_MS, TimeUnit.MILLISECONDS) : reply.get();
+        } catch (TimeoutException e) {
+            throw new UnmarshalException("no reply from node " + Long.toUnsignedString(nodeId) + " within " + RMI_READ_TIMEOUT_MS + " ms",
+                    new SocketTimeoutException());
+        } catch (ExecutionException e) {
+            throw (RemoteException) e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("interrupted waiting for node " + Long.toUnsignedString(nodeId), e);
+        }
+    }
+
+    //evita di far crescere il buffer più volte per il contenuto dei file
+    private static int estimateSize(Object[] args) {
+        int size = 64;
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof byte[] bytes)
+                    size += bytes.length + 8;
+            }
+        }
+        return size;
+    }
+
+    private Connection connection(InetSocketAddress address) throws ConnectException {
+        Connection connection = connections.get(address);
+        if (connection != null && connection.channel.isOpen())
+            return connection;
+        try {
+            //un solo tentativo di connessione per indirizzo alla volta
+            return connections.compute(address, (a, existing) ->
+                    existing != null && existing.channel.isOpen() ? existing : open(a));
+        } catch (UncheckedIOException e) {
+            throw new ConnectException("cannot connect to " + address, e.getCause());
+        }
+    }
+
+    private Connection open(InetSocketAddress address) {
+        SocketChannel socket = null;
+        try {
+            socket = SocketChannel.open();
+            socket.socket().connect(address, RMI_CONNECT_TIMEOUT_MS);
+            Connection connection = new Connection(address);
+            connection.channel = loop.register(socket, connection);
+            return connection;
+        } catch (IOException e) {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        loop.close();
+        connections.values().forEach(c -> c.failAll(new ConnectIOException("NIO client closed")));
+        connections.clear();
+    }
+
+    private final class Connection implements FrameChannel.Handler {
+        private final InetSocketAddress address;
+        private final Map<Long, CompletableFuture<BufferPool.Buffer>> pending = new ConcurrentHashMap<>();
+        private volatile FrameChannel channel;
+
+        private Connection(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        @Override
+        public void onFrame(FrameChannel channel, BufferPool.Buffer frame) {
+            CompletableFuture<BufferPool.Buffer> reply = pending.get(frame.buffer().getLong(0));
+            //risposta arrivata dopo il timeout: nessuno la aspetta più
+            if (reply == null || !reply.complete(frame))
+                frame.close();
+        }
+
+        @Override
+        public void onClose(FrameChannel channel, IOException cause) {
+            connections.remove(address, this);
+            //le richieste in volo potrebbero essere già state eseguite: non si possono ripetere
+            failAll(new ConnectIOException("connection to " + address + " lost", cause));
+        }
+
+        private void failAll(RemoteException cause) {
+            pending.values().forEach(reply -> reply.completeExceptionally(cause));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package it.baddy.uni.rmi.nio;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.utils.BufferPool;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static it.baddy.uni.config.AppManagements.NIO_MAX_IN_FLIGHT;
+import static it.baddy.uni.config.AppManagements.NODE_BUSY_EXCEPTION_STRING;
+
+//serve le chiamate degli altri nodi sul protocollo binario: un thread fa l'I/O di tutte le
+//connessioni e ogni richiesta gira su un virtual thread, così una richiesta lenta
+//(es. un inoltro lungo la rotta) non blocca quelle che arrivano dietro di lei. Ogni connessione
+//ha al massimo NIO_MAX_IN_FLIGHT richieste in esecuzione: le altre ricevono subito un errore
+public class NioServer implements AutoCloseable {
+
+    //nodi (anche virtuali) serviti da questo processo
+    private final Map<Long, ChordRemoteInterface> targets = new ConcurrentHashMap<>();
+    private final ServerSocketChannel server;
+    private final FrameLoop loop;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    private NioServer(ServerSocketChannel server, FrameLoop loop) {
+        this.server = server;
+        this.loop = loop;
+    }
+
+    public static NioServer start(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        NioServer nioServer = new NioServer(server, new FrameLoop("nio-server"));
+        nioServer.loop.listen(server, channel -> nioServer.new Dispatcher());
+        System.out.println("NIO transport listening on port " + port);
+        return nioServer;
+    }
+
+    public void register(long nodeId, ChordRemoteInterface target) {
+        targets.put(nodeId, target);
+    }
+
+    //le chiamate verso il nodo falliscono come verso un oggetto RMI non più esportato
+    public void unregister(long nodeId) {
+        targets.remove(nodeId);
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        loop.close();
+        workers.shutdownNow();
+    }
+
+    private final class Dispatcher implements FrameChannel.Handler {
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        @Override
+        public void onFrame(FrameChannel channel, BufferPool.Buffer frame) {
+            if (inFlight.incrementAndGet() > NIO_MAX_IN_FLIGHT) {
+                inFlight.decrementAndGet();
+                reject(channel, frame);
+                return;
+            }
+            workers.execute(() -> {
+                try {
+                    dispatch(channel, frame);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        }
+
+        @Override
+        public void onClose(FrameChannel channel, IOException cause) {
+            if (cause != null)
+                System.out.println("NIO connection from " + channel.remoteAddress() + " closed: " + cause.getMessage());
+        }
+    }
+
+    //dal thread del loop: nessun thread per la richiesta, il frame torna subito al pool
+    private static void reject(FrameChannel channel, BufferPool.Buffer frame) {
+        long requestId = new WireReader(frame.buffer()).readLong();
+        frame.close();
+        try {
+            channel.send(error(requestId, new RemoteException(NODE_BUSY_EXCEPTION_STRING)).finish());
+        } catch (IOException e) {
+            System.err.println("cannot reply to " + channel.remoteAddress() + ": " + e.getMessage());
+        }
+    }
+
+    private void dispatch(FrameChannel channel, BufferPool.Buffer frame) {
+        WireReader in = new WireReader(frame.buffer());
+        long requestId = in.readLong();
+        WireWriter out = null;
+        ChordRemoteInterface target = null;
+        Method method = null;
+        Object[] args = null;
+        try {
+            long nodeId = in.readLong();
+            method = Protocol.method(in.readByte());
+            target = targets.get(nodeId);
+            if (target == null) {
+                out = response(requestId, Protocol.NO_SUCH_NODE).writeString("node " + Long.toUnsignedString(nodeId) + " is not served here");
+            } else {
+                args = new Object[method.getParameterCount()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = in.readValue();
+                }
+            }
+        } catch (Exception e) {
+            //richiesta illeggibile
+            out = error(requestId, e);
+        } finally {
+            //gli argomenti letti sono copie: il frame torna al pool prima dell'esecuzione
+            //(un inoltro lungo la rotta non tiene occupato il buffer)
+            frame.close();
+        }
+        if (out == null)
+            out = invoke(requestId, target, method, args);
+        BufferPool.Buffer reply;
+        try {
+            reply = out.finish();
+        } catch (IllegalArgumentException e) {
+            //risposta troppo grande per un frame: al client arriva l'errore
+            reply = error(requestId, e).finish();
+        }
+        try {
+            channel.send(reply);
+        } catch (IOException e) {
+            System.err.println("cannot reply to " + channel.remoteAddress() + ": " + e.getMessage());
+        }
+    }
+
+    private static WireWriter invoke(long requestId, ChordRemoteInterface target, Method method, Object[] args) {
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            return error(requestId, e.getCause());
+        } catch (IllegalAccessException e) {
+            return error(requestId, e);
+        }
+        WireWriter out = response(requestId, Protocol.OK);
+        try {
+            return out.writeValue(result);
+        } catch (RuntimeException e) {
+            out.discard();
+            return error(requestId, e);
+        }
+    }
+
+    private static WireWriter response(long requestId, byte status) {
+        return new WireWriter(256).writeLong(requestId).writeByte(status);
+    }
+
+    //l'eccezione arriva al client serializzata; se non si può serializzare resta solo il messaggio
+    private static WireWriter error(long requestId, Throwable cause) {
+        WireWriter out = response(requestId, Protocol.ERROR);
+        try {
+            return out.writeValue(cause);
+        } catch (RuntimeException e) {
+            out.discard();
+            return response(requestId, Protocol.ERROR).writeValue(new RemoteException(String.valueOf(cause)));
+        }
+    }
+}
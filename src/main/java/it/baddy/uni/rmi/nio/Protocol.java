@@ -0,0 +1,65 @@
+package it.baddy.uni.rmi.nio;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+//protocollo binario tra i nodi: ogni frame è [int lunghezza][contenuto]
+//richiesta: [long id richiesta][long nodo destinatario][byte opcode][argomenti]
+//risposta:  [long id richiesta][byte esito][valore o eccezione]
+//le risposte possono tornare in un ordine diverso dalle richieste: l'id le abbina
+final class Protocol {
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+    //il destinatario non è (più) servito dal processo, come un oggetto RMI non esportato
+    static final byte NO_SUCH_NODE = 2;
+
+    //un opcode per metodo dell'interfaccia, in quest'ordine: i metodi nuovi vanno in fondo
+    private static final String[] METHODS = {
+            "routeToResponsible", "executeIfResponsible", "lookup", "getFile", "getFileRange",
+            "uploadFile", "updateFile", "deleteFile", "multiGet", "multiPut", "multiDelete", "executeBatch",
+            "openDownload", "openUpload", "readChunk", "writeChunk", "commitUpload", "abortTransfer",
+            "replicateWrite", "replicateDelete", "openReplicaUpload", "readReplica", "getNodeId",
+            "controlledLeave", "beginHandoff", "openHandoffUpload", "completeHandoff", "ping",
+            "getKnownNodes", "getNodeDirectory", "getPredecessor", "acceptJoin", "notifyJoin",
+            "notifyPredecessor", "getMetrics", "printFingerTable", "printLocationCache", "notifyLeave",
+            "listFiles", "openScan", "scanPage"
+    };
+
+    private static final Method[] BY_OPCODE = new Method[METHODS.length];
+    private static final Map<Method, Byte> OPCODES = new HashMap<>();
+
+    static {
+        Map<String, Method> byName = new HashMap<>();
+        for (Method method : ChordRemoteInterface.class.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()) && byName.put(method.getName(), method) != null)
+                throw new IllegalStateException("overloaded remote method " + method.getName());
+        }
+        for (int i = 0; i < METHODS.length; i++) {
+            Method method = byName.remove(METHODS[i]);
+            if (method == null)
+                throw new IllegalStateException("no remote method " + METHODS[i]);
+            BY_OPCODE[i] = method;
+            OPCODES.put(method, (byte) i);
+        }
+        if (!byName.isEmpty())
+            throw new IllegalStateException("remote methods without opcode: " + byName.keySet());
+    }
+
+    private Protocol() {
+    }
+
+    static byte opcode(Method method) {
+        return OPCODES.get(method);
+    }
+
+    static Method method(byte opcode) {
+        if (opcode < 0 || opcode >= BY_OPCODE.length)
+            throw new IllegalStateException("unknown opcode " + opcode);
+        return BY_OPCODE[opcode];
+    }
+}
@@ -0,0 +1,13 @@
+package it.baddy.uni.rmi.nio;
+
+import it.baddy.uni.rmi.interfaces.NodeAction;
+
+//azione con una codifica binaria propria: sul trasporto NIO viaggia come id + campi invece
+//che come lambda serializzata (le altre azioni usano la serializzazione java)
+public interface WireAction<T> extends NodeAction<T> {
+
+    //id registrato con WireReader.registerAction
+    byte actionId();
+
+    void writeFields(WireWriter out);
+}
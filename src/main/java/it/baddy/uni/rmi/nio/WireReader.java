@@ -0,0 +1,145 @@
+package it.baddy.uni.rmi.nio;
+
+import it.baddy.uni.rmi.interfaces.BatchResult;
+import it.baddy.uni.rmi.interfaces.FileInfo;
+import it.baddy.uni.rmi.interfaces.ListingPage;
+import it.baddy.uni.rmi.interfaces.NodeAction;
+import it.baddy.uni.rmi.interfaces.RouteResult;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import static it.baddy.uni.rmi.nio.WireWriter.*;
+
+//legge i valori scritti da WireWriter dal contenuto di un frame (senza la lunghezza)
+public class WireReader {
+
+    //decoder delle WireAction per id, registrati dalle classi che le definiscono
+    private static final AtomicReferenceArray<Function<WireReader, NodeAction<?>>> ACTIONS = new AtomicReferenceArray<>(256);
+
+    private final ByteBuffer buffer;
+
+    public WireReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public static synchronized void registerAction(byte id, Function<WireReader, NodeAction<?>> decoder) {
+        ACTIONS.set(id & 0xFF, decoder);
+    }
+
+    public byte readByte() {
+        return buffer.get();
+    }
+
+    public int readInt() {
+        return buffer.getInt();
+    }
+
+    public long readLong() {
+        return buffer.getLong();
+    }
+
+    //i valori letti sono sempre copie: il frame può tornare al pool subito dopo
+    public byte[] readBytes() {
+        return readBytes(buffer.getInt());
+    }
+
+    private byte[] readBytes(int length) {
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    public String readString() {
+        int length = buffer.getInt();
+        //i frame del pool sono buffer diretti, senza array
+        if (!buffer.hasArray())
+            return new String(readBytes(length), StandardCharsets.UTF_8);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    public Object readValue() {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case STRING:
+                return readString();
+            case BYTES:
+                return readBytes();
+            case LONGS: {
+                long[] values = new long[buffer.getInt()];
+                buffer.asLongBuffer().get(values);
+                buffer.position(buffer.position() + values.length * Long.BYTES);
+                return values;
+            }
+            case LIST: {
+                int size = buffer.getInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readValue());
+                return list;
+            }
+            case MAP: {
+                int size = buffer.getInt();
+                //stesso ordine del mittente (es. multiGet)
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++)
+                    map.put(readValue(), readValue());
+                return map;
+            }
+            case ROUTE_RESULT:
+                return new RouteResult<>(readValue(), buffer.getLong(), buffer.getInt());
+            case BATCH_RESULT:
+                return buffer.get() == TRUE ? BatchResult.ok(readValue()) : BatchResult.failed(readString());
+            case HANDLE:
+                return new TransferHandle(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt());
+            case ACTION: {
+                int id = buffer.get() & 0xFF;
+                Function<WireReader, NodeAction<?>> decoder = ACTIONS.get(id);
+                if (decoder == null)
+                    throw new IllegalStateException("unknown action " + id);
+                return decoder.apply(this);
+            }
+            case SERIALIZED:
+                return deserialize(readBytes());
+            case FILE_INFO:
+                return new FileInfo(readString(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+            case LISTING_PAGE: {
+                @SuppressWarnings("unchecked")
+                List<FileInfo> files = (List<FileInfo>) readValue();
+                return new ListingPage(files, buffer.getLong(), buffer.get() == TRUE);
+            }
+            default:
+                throw new IllegalStateException("unknown value tag " + tag);
+        }
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Error deserializing value", e);
+        }
+    }
+}
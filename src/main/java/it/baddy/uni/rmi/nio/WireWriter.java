@@ -0,0 +1,167 @@
+package it.baddy.uni.rmi.nio;
+
+import it.baddy.uni.rmi.interfaces.BatchResult;
+import it.baddy.uni.rmi.interfaces.FileInfo;
+import it.baddy.uni.rmi.interfaces.ListingPage;
+import it.baddy.uni.rmi.interfaces.RouteResult;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+import it.baddy.uni.utils.BufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+//costruisce un frame: lunghezza (int) seguita dal contenuto, in un buffer del pool che cresce
+//quando serve. I valori sono preceduti da un tag del tipo (vedi WireReader)
+public class WireWriter {
+
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte INT = 3;
+    static final byte LONG = 4;
+    static final byte STRING = 5;
+    static final byte BYTES = 6;
+    static final byte LONGS = 7;
+    static final byte LIST = 8;
+    static final byte MAP = 9;
+    static final byte ROUTE_RESULT = 10;
+    static final byte BATCH_RESULT = 11;
+    static final byte HANDLE = 12;
+    static final byte ACTION = 13;
+    //tutto il resto (metriche, eccezioni, lambda) con la serializzazione java
+    static final byte SERIALIZED = 14;
+    static final byte FILE_INFO = 15;
+    static final byte LISTING_PAGE = 16;
+
+    private BufferPool.Buffer frame;
+    private ByteBuffer buffer;
+
+    public WireWriter(int initialCapacity) {
+        frame = BufferPool.shared().acquire(Math.max(initialCapacity, 64));
+        //tutta la capacità della classe del pool
+        buffer = frame.buffer().clear();
+        buffer.putInt(0);
+    }
+
+    public WireWriter writeByte(byte value) {
+        ensure(1).put(value);
+        return this;
+    }
+
+    public WireWriter writeInt(int value) {
+        ensure(Integer.BYTES).putInt(value);
+        return this;
+    }
+
+    public WireWriter writeLong(long value) {
+        ensure(Long.BYTES).putLong(value);
+        return this;
+    }
+
+    public WireWriter writeBytes(byte[] value) {
+        ensure(Integer.BYTES + value.length).putInt(value.length).put(value);
+        return this;
+    }
+
+    public WireWriter writeString(String value) {
+        return writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public WireWriter writeValue(Object value) {
+        switch (value) {
+            case null -> writeByte(NULL);
+            case Boolean b -> writeByte(b ? TRUE : FALSE);
+            case Integer i -> writeByte(INT).writeInt(i);
+            case Long l -> writeByte(LONG).writeLong(l);
+            case String s -> writeByte(STRING).writeString(s);
+            case byte[] bytes -> writeByte(BYTES).writeBytes(bytes);
+            case long[] longs -> {
+                writeByte(LONGS).writeInt(longs.length);
+                ensure(longs.length * Long.BYTES).asLongBuffer().put(longs);
+                buffer.position(buffer.position() + longs.length * Long.BYTES);
+            }
+            case List<?> list -> {
+                writeByte(LIST).writeInt(list.size());
+                list.forEach(this::writeValue);
+            }
+            case Map<?, ?> map -> {
+                writeByte(MAP).writeInt(map.size());
+                map.forEach((k, v) -> writeValue(k).writeValue(v));
+            }
+            case RouteResult<?> result ->
+                    writeByte(ROUTE_RESULT).writeValue(result.getValue()).writeLong(result.getOwnerId()).writeInt(result.getHops());
+            case BatchResult<?> result -> {
+                writeByte(BATCH_RESULT);
+                if (result.isOk())
+                    writeByte(TRUE).writeValue(result.getValue());
+                else
+                    writeByte(FALSE).writeString(result.getError());
+            }
+            case TransferHandle handle -> writeByte(HANDLE).writeLong(handle.getOwnerId()).writeLong(handle.getSessionId())
+                    .writeLong(handle.getSize()).writeInt(handle.getChunkSize());
+            case FileInfo info -> writeByte(FILE_INFO).writeString(info.getFileName()).writeLong(info.getSize())
+                    .writeLong(info.getKeyId()).writeLong(info.getOwnerId());
+            case ListingPage page -> writeByte(LISTING_PAGE).writeValue(page.getFiles()).writeLong(page.getCursor())
+                    .writeByte(page.isIncomplete() ? TRUE : FALSE);
+            case WireAction<?> action -> {
+                writeByte(ACTION).writeByte(action.actionId());
+                action.writeFields(this);
+            }
+            default -> {
+                //prima la serializzazione: se fallisce il frame resta com'era
+                byte[] serialized = serialize(value);
+                writeByte(SERIALIZED).writeBytes(serialized);
+            }
+        }
+        return this;
+    }
+
+    //frame pronto per la scrittura sul canale, che lo restituisce al pool dopo averlo spedito;
+    //oltre FrameChannel.MAX_FRAME il frame viene scartato e la chiamata fallisce prima di partire
+    public BufferPool.Buffer finish() {
+        int length = buffer.position() - Integer.BYTES;
+        if (length > FrameChannel.MAX_FRAME) {
+            discard();
+            throw new IllegalArgumentException("frame of " + length + " bytes exceeds NIO_MAX_FRAME " + FrameChannel.MAX_FRAME
+                    + ", use a chunked transfer");
+        }
+        buffer.putInt(0, length);
+        buffer.flip();
+        return frame;
+    }
+
+    //frame che non verrà spedito (es. errore a metà della scrittura)
+    public void discard() {
+        frame.close();
+    }
+
+    private ByteBuffer ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+            BufferPool.Buffer bigger = BufferPool.shared().acquire(capacity);
+            ByteBuffer grown = bigger.buffer().clear().put(buffer.flip());
+            frame.close();
+            frame = bigger;
+            buffer = grown;
+        }
+        return buffer;
+    }
+
+    private static byte[] serialize(Object value) {
+        if (!(value instanceof Serializable))
+            throw new IllegalArgumentException(value.getClass().getName() + " cannot be sent");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new RuntimeException("Error serializing " + value.getClass().getName(), e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -1,88 +1,240 @@
 package it.baddy.uni.rmi.server;
 
+import it.baddy.uni.chord.BatchRouter;
 import it.baddy.uni.chord.ChordNode;
+import it.baddy.uni.chord.IdSpace;
+import it.baddy.uni.chord.KeyHandoff;
+import it.baddy.uni.chord.ListingManager;
+import it.baddy.uni.metrics.NodeMetrics;
 import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.NodeDirectory;
+import it.baddy.uni.rmi.interfaces.BatchResult;
 import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.interfaces.FileInfo;
+import it.baddy.uni.rmi.interfaces.ListingPage;
+import it.baddy.uni.rmi.interfaces.MetricsSnapshot;
 import it.baddy.uni.rmi.interfaces.NodeAction;
-import it.baddy.uni.utils.FileUtils;
+import it.baddy.uni.rmi.interfaces.RouteResult;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+import it.baddy.uni.storage.Blobs;
+import it.baddy.uni.storage.ContentCache;
+import it.baddy.uni.storage.FileEntry;
+import it.baddy.uni.utils.KeyHash;
 
-import java.math.BigInteger;
 import java.nio.file.Path;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static it.baddy.uni.config.AppManagements.ENTRY_CACHE_BYTES;
+import static it.baddy.uni.config.AppManagements.ENTRY_CACHE_TTL_MS;
 import static it.baddy.uni.config.AppManagements.FILE_NOT_FOUND_EXCEPTION_STRING;
+import static it.baddy.uni.config.AppManagements.HANDOFF_STREAMS;
+import static it.baddy.uni.config.AppManagements.LISTING_MAX_PAGE;
+import static it.baddy.uni.config.AppManagements.MAX_RANGE_SIZE;
+import static it.baddy.uni.config.AppManagements.NOT_RESPONSIBLE_EXCEPTION_STRING;
 
 public class ChordRemoteServer extends UnicastRemoteObject implements ChordRemoteInterface {
 
+    static {
+        FileActions.register();
+    }
+
     private final ChordNode chordNode;
+    private final BatchRouter batchRouter;
+    private final NodeMetrics metrics;
+    //handoff in ricezione: id -> file confermati
+    private final Map<Long, Set<String>> handoffs = new ConcurrentHashMap<>();
+    private final AtomicLong nextHandoffId = new AtomicLong();
+    //handoff di un join (arrivano dal successore, che resta replica): niente catena di repliche
+    private final Set<Long> joinHandoffs = ConcurrentHashMap.newKeySet();
+    //un join alla volta; lock e non synchronized perché il passaggio delle chiavi aspetta il nuovo
+    //nodo, e un virtual thread (server NIO) fermo dentro synchronized tiene occupato il suo carrier
+    private final ReentrantLock joinLock = new ReentrantLock();
+    //tutti i nodi virtuali del processo, chordNode compreso: escono insieme con controlledLeave
+    private final List<ChordNode> localNodes;
+    //letture recenti servite da questo nodo di ingresso, null se disattivata
+    private final ContentCache entryCache = ENTRY_CACHE_TTL_MS > 0 ? new ContentCache(ENTRY_CACHE_BYTES) : null;
+    //scritture passate da questo nodo, iniziate e finite: una lettura entra nella cache di ingresso
+    //solo se nessuna scrittura era in corso o è iniziata mentre veniva servita, altrimenti
+    //rimetterebbe in cache il contenuto vecchio dopo l'invalidazione
+    private final AtomicLong writesStarted = new AtomicLong();
+    private final AtomicLong writesFinished = new AtomicLong();
+    //scansioni ed elenchi dei file aperti su questo nodo
+    private final ListingManager listings;
+
     public ChordRemoteServer(ChordNode chordNode) throws RemoteException {
+        this(chordNode, List.of(chordNode));
+    }
+
+    public ChordRemoteServer(ChordNode chordNode, List<ChordNode> localNodes) throws RemoteException {
         super();
         this.chordNode = chordNode;
+        this.localNodes = List.copyOf(localNodes);
+        this.batchRouter = new BatchRouter(chordNode);
+        this.metrics = chordNode.getMetrics();
+        this.listings = new ListingManager(chordNode);
     }
 
     @Override
-    public <T> T routeToResponsible(int keyId, NodeAction<T> action, String actionName) throws RemoteException {
+    public <T> RouteResult<T> routeToResponsible(long keyId, NodeAction<T> action, String actionName) throws RemoteException {
         System.out.println("requested routeToResponsible for keyId: " + keyId + " and action: " + actionName + " from external node");
-        return chordNode.routeToResponsible(keyId, action, actionName, 0);
+        return chordNode.route(keyId, action, actionName, 0);
     }
 
     @Override
-    public int lookup(int id) throws RemoteException {
+    public <T> RouteResult<T> executeIfResponsible(long keyId, NodeAction<T> action, String actionName) throws RemoteException {
+        System.out.println("requested executeIfResponsible for keyId: " + keyId + " and action: " + actionName + " from external node");
+        return chordNode.executeIfResponsible(keyId, action, actionName);
+    }
+
+    @Override
+    public long lookup(long id) throws RemoteException {
         System.out.println("requested lookup for id: " + id + " from external node");
-        return chordNode.lookup(id);
+        long start = System.nanoTime();
+        try {
+            return chordNode.lookup(id);
+        } finally {
+            metrics.recordOperation(NodeMetrics.LOOKUP, start);
+        }
     }
 
     @Override
     public byte[] getFile(String fileName) throws RemoteException {
         System.out.println("requested file: " + fileName + " from external node");
+        long start = System.nanoTime();
+        try {
+            byte[] content = readFile(fileName);
+            metrics.bytesOut(content.length);
+            return content;
+        } finally {
+            metrics.recordOperation(NodeMetrics.GET_FILE, start);
+        }
+    }
+
+    private byte[] readFile(String fileName) throws RemoteException {
         // 1. Calcolo KeyID del file
-        BigInteger keyIdBig = FileUtils.hashFilename(fileName);
-        int keyId = keyIdBig.mod(BigInteger.valueOf(chordNode.getFingerTable().getRingSize())).intValue();
+        KeyHash key = KeyHash.of(fileName);
+        long keyId = chordNode.getIdSpace().ringId(key);
+
+        //letture recenti dello stesso file passate da questo nodo: niente routing
+        long epoch = entryEpoch();
+        long writes = writesStarted.get();
+        boolean cacheable = writesFinished.get() == writes;
+        if (entryCache != null) {
+            byte[] cached = entryCache.get(key, epoch);
+            if (cached != null) {
+                metrics.cacheHit(NodeMetrics.ENTRY_CACHE);
+                return cached;
+            }
+            metrics.cacheMiss(NodeMetrics.ENTRY_CACHE);
+        }
+
+        byte[] content = null;
+        //con la replica attiva la lettura può essere servita da una copia qualsiasi
+        if (chordNode.getReplicas().getReplicationFactor() > 1) {
+            content = chordNode.getReplicas().read(fileName, keyId, key);
+        }
+        if (content == null)
+            content = chordNode.routeToResponsible(keyId, new FileActions.Read(fileName), "GET_FILE", 0);
+        //il responsabile restituisce il file come è salvato, anche compresso
+        content = Blobs.decode(content);
+        if (entryCache != null && cacheable) {
+            //stesso lock di finishWrite: una scrittura che finisce dopo la put la invalida
+            synchronized (entryCache) {
+                if (writesStarted.get() == writes)
+                    entryCache.put(key, epoch, content);
+            }
+        }
+        return content;
+    }
 
+    //le copie della cache di ingresso valgono solo nell'epoca in cui sono state lette
+    private static long entryEpoch() {
+        return ENTRY_CACHE_TTL_MS > 0 ? System.currentTimeMillis() / ENTRY_CACHE_TTL_MS : 0;
+    }
+
+    //le scritture passate da questo nodo si vedono subito nelle sue letture: la copia in cache
+    //si toglie a scrittura finita (riuscita o no), quando una lettura non può più rimettere quella vecchia
+    private void startWrite() {
+        writesStarted.incrementAndGet();
+    }
 
-        return chordNode.routeToResponsible(keyId, node -> {
-                Map<BigInteger, Path> index = FileUtils.indexFiles(Path.of("/data"));
-                Path path = index.get(keyIdBig);
-                if (path == null)
-                    throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
-                return FileUtils.readFile(path);
-            }, "GET_FILE", 0);
+    private void finishWrite(Collection<String> fileNames) {
+        if (entryCache == null) {
+            writesFinished.incrementAndGet();
+            return;
+        }
+        synchronized (entryCache) {
+            fileNames.forEach(fileName -> entryCache.invalidate(KeyHash.of(fileName)));
+            writesFinished.incrementAndGet();
+        }
+    }
 
+    @Override
+    public byte[] getFileRange(String fileName, long offset, int length) throws RemoteException {
+        System.out.println("requested range [" + offset + ", +" + length + ") of file: " + fileName + " from external node");
+        if (length > MAX_RANGE_SIZE)
+            throw new IllegalArgumentException("range of " + length + " bytes exceeds limit " + MAX_RANGE_SIZE);
+        KeyHash key = KeyHash.of(fileName);
+        long keyId = chordNode.getIdSpace().ringId(key);
+
+        byte[] range = chordNode.routeToResponsible(keyId, new FileActions.ReadRange(fileName, offset, length), "GET_FILE_RANGE", 0);
+        metrics.bytesOut(range.length);
+        return range;
     }
 
     @Override
     public void uploadFile(String fileName, byte[] content) throws RemoteException {
         System.out.println("received file: " + fileName + " from external node");
-
-        BigInteger keyIdBig = FileUtils.hashFilename(fileName);
-        int keyId = keyIdBig.mod(BigInteger.valueOf(chordNode.getFingerTable().getRingSize())).intValue();
-
-        chordNode.routeToResponsible(keyId, node->{
-                // nodo responsabile: salva il file
-                Path fileCompleteName = Path.of("/data").resolve(fileName);
-                FileUtils.writeFile(fileCompleteName, content);
-                System.out.println("File " + fileName + " saved on node " + node.getFingerTable().getNodeId());
-                return null;
-            }, "UPLOAD_FILE", 0);
+        long start = System.nanoTime();
+        metrics.bytesIn(content.length);
+
+        KeyHash key = KeyHash.of(fileName);
+        long keyId = chordNode.getIdSpace().ringId(key);
+        //lungo la rotta e la catena delle repliche viaggia il contenuto già compresso
+        byte[] payload = Blobs.encode(content);
+
+        startWrite();
+        try {
+            chordNode.routeToResponsible(keyId, new FileActions.Write(fileName, payload), "UPLOAD_FILE", 0);
+        } finally {
+            finishWrite(List.of(fileName));
+            metrics.recordOperation(NodeMetrics.UPLOAD_FILE, start);
+        }
     }
 
     @Override
     public boolean updateFile(String fileName, byte[] content) throws RemoteException {
         System.out.println("update request for file: " + fileName);
+        long start = System.nanoTime();
+        metrics.bytesIn(content.length);
         boolean created = false;
-        BigInteger keyIdBig = FileUtils.hashFilename(fileName);
-        int keyId = keyIdBig.mod(BigInteger.valueOf(chordNode.getFingerTable().getRingSize())).intValue();
-
-        created = chordNode.routeToResponsible(keyId, node -> {
-                    // nodo responsabile: sovrascrive o crea il file
-                    Path fileCompleteName = Path.of("/data").resolve(fileName);
-
-                    boolean createdInner = FileUtils.updateFile(fileCompleteName, content);
-                    System.out.println("File " + fileName + " updated on node " + node.getFingerTable().getNodeId());
-                    return createdInner;
-                }, "UPDATE_FILE", 0);
+        KeyHash key = KeyHash.of(fileName);
+        long keyId = chordNode.getIdSpace().ringId(key);
+
+        startWrite();
+        try {
+            created = chordNode.routeToResponsible(keyId, new FileActions.Write(fileName, Blobs.encode(content)), "UPDATE_FILE", 0);
+        } finally {
+            finishWrite(List.of(fileName));
+            metrics.recordOperation(NodeMetrics.UPDATE_FILE, start);
+        }
         return created;
     }
 
@@ -90,77 +242,283 @@ public class ChordRemoteServer extends UnicastRemoteObject implements ChordRemot
     @Override
     public void deleteFile(String fileName) throws RemoteException {
         System.out.println("delete request for file: " + fileName);
+        long start = System.nanoTime();
 
-        BigInteger keyIdBig = FileUtils.hashFilename(fileName);
-        int keyId = keyIdBig.mod(BigInteger.valueOf(chordNode.getFingerTable().getRingSize())).intValue();
+        KeyHash key = KeyHash.of(fileName);
+        long keyId = chordNode.getIdSpace().ringId(key);
 
-        chordNode.routeToResponsible(keyId, node-> {
-                // nodo responsabile: cancella il file
-                Map<BigInteger, Path> index = FileUtils.indexFiles(Path.of("/data"));
-                Path path = index.get(keyIdBig);
-                if (path != null && FileUtils.deleteFile(path)) {
-                    System.out.println("File " + fileName + " deleted from node " + node.getFingerTable().getNodeId());
-                } else {
-                    throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
-                }
-                return null;
-            }, "DELETE_FILE", 0);
+        startWrite();
+        try {
+            chordNode.routeToResponsible(keyId, new FileActions.Delete(fileName), "DELETE_FILE", 0);
+        } finally {
+            finishWrite(List.of(fileName));
+            metrics.recordOperation(NodeMetrics.DELETE_FILE, start);
+        }
     }
 
+    @Override
+    public Map<String, BatchResult<byte[]>> multiGet(List<String> fileNames) throws RemoteException {
+        System.out.println("multiGet request for " + fileNames.size() + " files");
+        List<String> names = new ArrayList<>(new LinkedHashSet<>(fileNames));
+        List<NodeAction<byte[]>> actions = new ArrayList<>();
+        for (String fileName : names) {
+            actions.add(new FileActions.Read(fileName));
+        }
+        List<BatchResult<byte[]>> results = new ArrayList<>();
+        for (BatchResult<byte[]> result : batchRouter.route(keyIds(names), actions, "GET_FILE")) {
+            results.add(result.isOk() ? BatchResult.ok(Blobs.decode(result.getValue())) : result);
+        }
+        return toResultMap(names, results);
+    }
 
     @Override
-    public int getNodeId() throws RemoteException {
-        return chordNode.getFingerTable().getNodeId();
+    public Map<String, BatchResult<Boolean>> multiPut(Map<String, byte[]> files) throws RemoteException {
+        System.out.println("multiPut request for " + files.size() + " files");
+        List<String> names = new ArrayList<>(files.keySet());
+        List<NodeAction<Boolean>> actions = new ArrayList<>();
+        for (String fileName : names) {
+            actions.add(new FileActions.Write(fileName, Blobs.encode(files.get(fileName))));
+        }
+        startWrite();
+        try {
+            return toResultMap(names, batchRouter.route(keyIds(names), actions, "UPDATE_FILE"));
+        } finally {
+            finishWrite(names);
+        }
     }
 
+    @Override
+    public Map<String, BatchResult<Void>> multiDelete(List<String> fileNames) throws RemoteException {
+        System.out.println("multiDelete request for " + fileNames.size() + " files");
+        List<String> names = new ArrayList<>(new LinkedHashSet<>(fileNames));
+        List<NodeAction<Void>> actions = new ArrayList<>();
+        for (String fileName : names) {
+            actions.add(new FileActions.Delete(fileName));
+        }
+        startWrite();
+        try {
+            return toResultMap(names, batchRouter.route(keyIds(names), actions, "DELETE_FILE"));
+        } finally {
+            finishWrite(names);
+        }
+    }
 
     @Override
-    public void controlledLeave() throws RemoteException {
-        System.out.println("received controlled leave request");
+    public <T> List<BatchResult<T>> executeBatch(long[] keyIds, List<NodeAction<T>> actions, String actionName) throws RemoteException {
+        System.out.println("requested batch of " + keyIds.length + " " + actionName + " actions from external node");
+        return chordNode.executeBatch(keyIds, actions, actionName);
+    }
 
-        // ottieni i file dal proprio percorso per cui si è responsabili
-        Map<BigInteger, Path> responsibleFiles = chordNode.getResponsibleFiles(Path.of("/data"));
+    private long[] keyIds(List<String> fileNames) {
+        long[] keyIds = new long[fileNames.size()];
+        for (int i = 0; i < keyIds.length; i++) {
+            keyIds[i] = chordNode.getIdSpace().ringId(fileNames.get(i));
+        }
+        return keyIds;
+    }
 
-        try{
-            //di al proprio predecessore che stai lasciando la DHT
-            //hostname="node"+chordNode.getPredecessor();
-            //ChordRemoteClient.connect(hostname, 1099).notifyLeave(chordNode.getFingerTable().getNodeId());
+    private static <T> Map<String, BatchResult<T>> toResultMap(List<String> names, List<BatchResult<T>> results) {
+        Map<String, BatchResult<T>> byName = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            byName.put(names.get(i), results.get(i));
+        }
+        return byName;
+    }
 
+    @Override
+    public TransferHandle openDownload(String fileName) throws RemoteException {
+        System.out.println("chunked download request for file: " + fileName);
+        KeyHash key = KeyHash.of(fileName);
+        long keyId = chordNode.getIdSpace().ringId(key);
 
-            //definisci hostname del successore
-            String hostname="node"+chordNode.getFingerTable().getSuccessor();
-            //di al proprio successore che stai lasciando la DHT
-            int myId = chordNode.getFingerTable().getNodeId();
-            ChordRemoteClient.connect(hostname, 1099).notifyLeave(myId, myId);
+        return chordNode.routeToResponsible(keyId, new FileActions.OpenDownload(fileName), "OPEN_DOWNLOAD", 0);
+    }
 
+    @Override
+    public TransferHandle openUpload(String fileName) throws RemoteException {
+        System.out.println("chunked upload request for file: " + fileName);
+        //i chunk e il commit vanno direttamente al responsabile: questo nodo non sa quando l'upload
+        //finisce, la copia in cache si toglie subito e il nuovo contenuto si vede al più dopo ENTRY_CACHE_TTL_MS
+        startWrite();
+        finishWrite(List.of(fileName));
+        KeyHash key = KeyHash.of(fileName);
+        long keyId = chordNode.getIdSpace().ringId(key);
+
+        return chordNode.routeToResponsible(keyId, new FileActions.OpenUpload(fileName), "OPEN_UPLOAD", 0);
+    }
 
-            //dopo aver notificato il leave al successore lui accetterà le chiavi
-            for (Path file : responsibleFiles.values()) {
-                //ottieni il contenuto
-                byte[] content = FileUtils.readFile(file);
+    @Override
+    public byte[] readChunk(long sessionId) throws RemoteException {
+        byte[] chunk = chordNode.getStorage().getTransfers().readChunk(sessionId);
+        metrics.bytesOut(chunk.length);
+        return chunk;
+    }
 
-                //inviali al successore
-                ChordRemoteClient.connect(hostname, 1099).uploadFile(file.getFileName().toString(), content);
+    @Override
+    public void writeChunk(long sessionId, byte[] chunk) throws RemoteException {
+        metrics.bytesIn(chunk.length);
+        chordNode.getStorage().getTransfers().writeChunk(sessionId, chunk);
+    }
 
-            }
+    @Override
+    public boolean commitUpload(long sessionId) throws RemoteException {
+        return chordNode.getStorage().getTransfers().commit(sessionId);
+    }
+
+    @Override
+    public void abortTransfer(long sessionId) throws RemoteException {
+        System.out.println("aborting transfer session " + sessionId);
+        chordNode.getStorage().getTransfers().abort(sessionId);
+    }
 
+    @Override
+    public boolean replicateWrite(String fileName, byte[] content, int copies) throws RemoteException {
+        System.out.println("replica write of file: " + fileName + ", " + copies + " copies left in chain");
+        metrics.bytesIn(content.length);
+        return chordNode.getReplicas().write(fileName, content, copies);
+    }
 
-        } catch (RemoteException re){
-            System.err.println("error during remote execution, it is impossible leave the network now");
-            throw new RemoteException("Failed to contact successor or predessor node ", re);
-        } catch (Exception e) {
+    @Override
+    public void replicateDelete(String fileName, int copies) throws RemoteException {
+        System.out.println("replica delete of file: " + fileName + ", " + copies + " copies left in chain");
+        chordNode.getReplicas().delete(fileName, KeyHash.of(fileName), copies);
+    }
+
+    @Override
+    public TransferHandle openReplicaUpload(String fileName, int copies) throws RemoteException {
+        System.out.println("replica upload of file: " + fileName + ", " + copies + " copies left in chain");
+        return chordNode.getStorage().openWrite(fileName, chordNode.getReplicas().openChain(fileName, copies));
+    }
+
+    @Override
+    public byte[] readReplica(String fileName) throws RemoteException {
+        KeyHash key = KeyHash.of(fileName);
+        //chi legge ha calcolato la catena sulla sua vista: una copia fuori catena potrebbe essere vecchia
+        if (!chordNode.getReplicas().holdsCopy(chordNode.getIdSpace().ringId(key)))
+            throw new RemoteException(NOT_RESPONSIBLE_EXCEPTION_STRING);
+        byte[] content = chordNode.getStorage().read(key);
+        if (content == null)
+            throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
+        metrics.bytesOut(content.length);
+        return content;
+    }
+
+    @Override
+    public long getNodeId() throws RemoteException {
+        return chordNode.getFingerTable().getNodeId();
+    }
+
+
+    @Override
+    public void controlledLeave() throws RemoteException {
+        System.out.println("received controlled leave request");
+
+        //ogni nodo virtuale cede il suo intervallo al primo nodo di un altro processo:
+        //le chiavi del processo si spargono su più successori, in parallelo
+        List<Future<?>> leaves = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (ChordNode node : localNodes) {
+                leaves.add(pool.submit(() -> {
+                    leave(node);
+                    return null;
+                }));
+            }
+            for (Future<?> leave : leaves) {
+                leave.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteException re) {
+                System.err.println("error during remote execution, it is impossible leave the network now");
+                throw new RemoteException("Failed to contact successor or predessor node ", re);
+            }
             System.err.println("generic error during execution, the node cannot leave the network");
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
 
-        System.out.println("Node " + chordNode.getFingerTable().getNodeId() + " left network.");
+        System.out.println("Node " + chordNode.getPhysicalId() + " left network.");
 
         //fai davvero terminare il container
         System.exit(0);
     }
 
+    private static void leave(ChordNode node) throws Exception {
+        long myId = node.getFingerTable().getNodeId();
+        long target = node.nextHostSuccessor(myId, true);
+        if (target == myId)
+            return;
+
+        //stub del successore, risolto una sola volta per tutto il trasferimento
+        ChordRemoteInterface successor = ChordRemoteClient.connect(target);
+        KeyHandoff handoff = new KeyHandoff(myId, HANDOFF_STREAMS, node.getStorage());
+
+        //1. copia dei file di cui si è responsabili mentre il nodo li serve ancora: il successore
+        //non è ancora responsabile, quindi non riceve scritture che la copia potrebbe sovrascrivere
+        Map<KeyHash, Path> copied = node.getResponsibleFiles();
+        Map<KeyHash, Long> versions = new HashMap<>();
+        copied.keySet().forEach(key -> versions.put(key, lastModified(node, key)));
+        handoff.transferAll(successor, copied.values());
+
+        //2. a scritture ferme si rimandano i file cambiati, si cancellano quelli tolti durante la copia
+        //e solo dopo la conferma di tutto l'intervallo il successore viene avvisato del leave;
+        //se qualcosa fallisce il nodo resta nel ring con le sue chiavi
+        int handed = node.handOverRange(() -> {
+            Map<KeyHash, Path> current = node.getResponsibleFiles();
+            List<Path> changed = new ArrayList<>();
+            current.forEach((key, path) -> {
+                if (!Objects.equals(versions.get(key), lastModified(node, key)))
+                    changed.add(path);
+            });
+            if (!changed.isEmpty())
+                handoff.transferAll(successor, changed);
+            for (Map.Entry<KeyHash, Path> removed : copied.entrySet()) {
+                if (!current.containsKey(removed.getKey()))
+                    successor.replicateDelete(removed.getValue().getFileName().toString(), node.getReplicas().chainLength());
+            }
+            successor.notifyLeave(myId, myId);
+            return current.size();
+        });
+        System.out.println("virtual node " + myId + " handed " + handed + " keys to node " + target);
+    }
+
+    @Override
+    public long beginHandoff(long fromNodeId, int expectedFiles) throws RemoteException {
+        long handoffId = nextHandoffId.incrementAndGet();
+        handoffs.put(handoffId, ConcurrentHashMap.newKeySet());
+        if (fromNodeId == chordNode.getLiveSuccessor() && fromNodeId != chordNode.getFingerTable().getNodeId())
+            joinHandoffs.add(handoffId);
+        System.out.println("handoff " + handoffId + " started by node " + fromNodeId + " for " + expectedFiles + " files");
+        return handoffId;
+    }
+
+    @Override
+    public TransferHandle openHandoffUpload(long handoffId, String fileName) throws RemoteException {
+        Set<String> committed = handoffs.get(handoffId);
+        if (committed == null)
+            throw new RemoteException("unknown handoff " + handoffId);
+        //le chiavi ricevute diventano nostre: vanno anche sulle nostre repliche
+        //(nel join il mittente è il successore, che le ha già)
+        return chordNode.getStorage().openWrite(fileName,
+                joinHandoffs.contains(handoffId) ? null
+                        : chordNode.getReplicas().openChain(fileName, chordNode.getReplicas().chainLength()),
+                () -> committed.add(fileName));
+    }
+
     @Override
-    public void notifyLeave(int nodeId, int originId) throws RemoteException, Exception {
+    public List<String> completeHandoff(long handoffId) throws RemoteException {
+        Set<String> committed = handoffs.remove(handoffId);
+        joinHandoffs.remove(handoffId);
+        if (committed == null)
+            throw new RemoteException("unknown handoff " + handoffId);
+        System.out.println("handoff " + handoffId + " completed with " + committed.size() + " files");
+        return new ArrayList<>(committed);
+    }
+
+    @Override
+    public void notifyLeave(long nodeId, long originId) throws RemoteException, Exception {
         System.out.println("received notifyLeave request from node: " + nodeId + " with originId: " + originId);
         boolean to_send = true;
         //se il nodo origine è lo stesso del nodo che sta per lasciare la rete
@@ -169,24 +527,185 @@ public class ChordRemoteServer extends UnicastRemoteObject implements ChordRemot
         if(originId == nodeId)
             originId = chordNode.getFingerTable().getNodeId();
         //se l'origine è il mio successore allora posso fermarlo
-        else if(originId == chordNode.getFingerTable().getSuccessor())
+        else if(originId == chordNode.getLiveSuccessor())
             to_send = false;
 
         chordNode.checkNodesAndRemove(nodeId);
 
         //propaga verso il prossimo nodo
-        int successor = chordNode.getFingerTable().getSuccessor();
+        long successor = chordNode.getLiveSuccessor();
         if (to_send) {
             ChordRemoteClient
-                    .connect("node" + successor, 1099)
+                    .connect(successor)
                     .notifyLeave(nodeId, originId);
         }
     }
 
+    @Override
+    public void ping() throws RemoteException {
+    }
+
+    @Override
+    public List<Long> getKnownNodes() throws RemoteException {
+        return chordNode.getKnownNodes();
+    }
+
+    @Override
+    public Map<Long, Long> getNodeDirectory() throws RemoteException {
+        return NodeDirectory.entries();
+    }
+
+    @Override
+    public long getPredecessor() throws RemoteException {
+        return chordNode.getPredecessor();
+    }
+
+    @Override
+    public int acceptJoin(long newNodeId, long physicalId) throws RemoteException {
+        joinLock.lock();
+        try {
+            return acceptJoinLocked(newNodeId, physicalId);
+        } finally {
+            joinLock.unlock();
+        }
+    }
+
+    private int acceptJoinLocked(long newNodeId, long physicalId) throws RemoteException {
+        long myId = chordNode.getFingerTable().getNodeId();
+        long predecessor = chordNode.getPredecessor();
+        System.out.println("received join request from node: " + newNodeId + " hosted by " + physicalId);
+        if (newNodeId == myId || chordNode.isKnown(newNodeId) || !IdSpace.inInterval(newNodeId, predecessor, myId))
+            throw new RemoteException("node " + newNodeId + " cannot join between " + predecessor + " and " + myId);
+        NodeDirectory.register(newNodeId, physicalId);
+
+        try {
+            //nodo virtuale dello stesso processo: i file sono già nella cartella condivisa
+            if (physicalId == chordNode.getPhysicalId()) {
+                Map<KeyHash, Path> moved = chordNode.handOverRange(newNodeId, () -> chordNode.getFilesInRange(predecessor, newNodeId));
+                announceJoin(newNodeId, physicalId, myId);
+                return moved.size();
+            }
+
+            ChordRemoteInterface joining = ChordRemoteClient.connect(newNodeId);
+            KeyHandoff handoff = new KeyHandoff(myId, HANDOFF_STREAMS, chordNode.getStorage());
+
+            //1. copia delle chiavi (predecessor, newNodeId] mentre le serviamo ancora
+            Map<KeyHash, Path> moving = chordNode.getFilesInRange(predecessor, newNodeId);
+            Map<KeyHash, Long> copied = new HashMap<>();
+            moving.keySet().forEach(key -> copied.put(key, lastModified(key)));
+            if (!moving.isEmpty())
+                handoff.transferAll(joining, moving.values());
+
+            //2. a scritture ferme si rimandano i file cambiati durante la copia e si cede l'intervallo
+            Map<KeyHash, Path> moved = chordNode.handOverRange(newNodeId, () -> {
+                Map<KeyHash, Path> current = chordNode.getFilesInRange(predecessor, newNodeId);
+                List<Path> changed = new ArrayList<>();
+                current.forEach((key, path) -> {
+                    if (!Objects.equals(copied.get(key), lastModified(key)))
+                        changed.add(path);
+                });
+                if (!changed.isEmpty())
+                    handoff.transferAll(joining, changed);
+                return current;
+            });
+
+            //3. annuncio al resto del ring
+            announceJoin(newNodeId, physicalId, myId);
+
+            //4. le chiavi cedute restano qui solo se siamo una loro replica
+            if (chordNode.getReplicas().chainLength() == 0) {
+                moved.keySet().forEach(key -> chordNode.getStorage().delete(key));
+            }
+            System.out.println("node " + newNodeId + " joined, " + moved.size() + " keys handed over");
+            return moved.size();
+        } catch (RemoteException re) {
+            throw re;
+        } catch (Exception e) {
+            System.err.println("error during join of node " + newNodeId);
+            throw new RemoteException("join of node " + newNodeId + " failed", e);
+        }
+    }
+
+    //gli errori li sistema la stabilize
+    private void announceJoin(long newNodeId, long physicalId, long myId) {
+        try {
+            long successor = chordNode.getLiveSuccessor();
+            if (successor != myId)
+                ChordRemoteClient.connect(successor).notifyJoin(newNodeId, physicalId, myId);
+        } catch (Exception e) {
+            System.err.println("join of node " + newNodeId + " not propagated to the whole ring: " + e.getMessage());
+        }
+    }
+
+    private Long lastModified(KeyHash key) {
+        return lastModified(chordNode, key);
+    }
+
+    private static Long lastModified(ChordNode node, KeyHash key) {
+        FileEntry entry = node.getStorage().find(key);
+        return entry == null ? null : entry.getLastModified();
+    }
+
+    @Override
+    public void notifyJoin(long nodeId, long physicalId, long originId) throws RemoteException, Exception {
+        System.out.println("received notifyJoin request for node: " + nodeId + " with originId: " + originId);
+        NodeDirectory.register(nodeId, physicalId);
+        chordNode.checkNodesAndAdd(nodeId);
+        //l'origine è il successore del nuovo nodo: il giro si chiude quando torna a lui
+        long successor = chordNode.getLiveSuccessor();
+        if (successor != originId && successor != chordNode.getFingerTable().getNodeId()) {
+            ChordRemoteClient
+                    .connect(successor)
+                    .notifyJoin(nodeId, physicalId, originId);
+        }
+    }
+
+    @Override
+    public void notifyPredecessor(long candidateId, long physicalId) throws RemoteException {
+        NodeDirectory.register(candidateId, physicalId);
+        //un nodo vivo che non conosciamo: è entrato senza che il join ci arrivasse
+        if (chordNode.checkNodesAndAdd(candidateId)) {
+            System.out.println("notify: learned node " + candidateId + " as possible predecessor");
+        }
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() throws RemoteException {
+        return metrics.snapshot();
+    }
+
     @Override
     public String printFingerTable() throws RemoteException {
         return chordNode.getFingerTable().printRemote();
     }
 
+    @Override
+    public String printLocationCache() throws RemoteException {
+        return chordNode.getLocationCache().printStats();
+    }
 
+    @Override
+    public ListingPage listFiles(long cursor, int maxFiles) throws RemoteException {
+        if (cursor == 0)
+            System.out.println("listing request for all files");
+        try {
+            return listings.next(cursor, Math.min(maxFiles, LISTING_MAX_PAGE));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Map<Long, Long> openScan(long limitId) throws RemoteException {
+        return listings.openScan(limitId);
+    }
+
+    @Override
+    public List<FileInfo> scanPage(long scanId, int maxFiles) throws RemoteException {
+        if (maxFiles <= 0)
+            throw new IllegalArgumentException("invalid page size " + maxFiles);
+        //niente limite qui: il nodo di ingresso considera finita la scansione se la pagina è più corta
+        return listings.scanPage(scanId, maxFiles);
+    }
 }
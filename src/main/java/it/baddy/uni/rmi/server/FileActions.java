@@ -0,0 +1,202 @@
+package it.baddy.uni.rmi.server;
+
+import it.baddy.uni.chord.ChordNode;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+import it.baddy.uni.rmi.nio.WireAction;
+import it.baddy.uni.rmi.nio.WireReader;
+import it.baddy.uni.rmi.nio.WireWriter;
+import it.baddy.uni.utils.KeyHash;
+
+import java.rmi.RemoteException;
+
+import static it.baddy.uni.config.AppManagements.FILE_NOT_FOUND_EXCEPTION_STRING;
+
+//azioni sui file eseguite dal nodo responsabile, condivise tra operazioni singole e batch;
+//sono classi con nome e non lambda così il trasporto NIO le spedisce come id + campi
+//(con RMI vengono serializzate come prima)
+final class FileActions {
+
+    private static final byte READ = 1;
+    private static final byte WRITE = 2;
+    private static final byte DELETE = 3;
+    private static final byte READ_RANGE = 4;
+    private static final byte OPEN_DOWNLOAD = 5;
+    private static final byte OPEN_UPLOAD = 6;
+
+    private FileActions() {
+    }
+
+    //decoder usati dal server NIO per ricostruire le azioni ricevute
+    static void register() {
+        WireReader.registerAction(READ, in -> new Read(in.readString()));
+        WireReader.registerAction(WRITE, in -> new Write(in.readString(), in.readBytes()));
+        WireReader.registerAction(DELETE, in -> new Delete(in.readString()));
+        WireReader.registerAction(READ_RANGE, in -> new ReadRange(in.readString(), in.readLong(), in.readInt()));
+        WireReader.registerAction(OPEN_DOWNLOAD, in -> new OpenDownload(in.readString()));
+        WireReader.registerAction(OPEN_UPLOAD, in -> new OpenUpload(in.readString()));
+    }
+
+    //contenuto come è salvato, anche compresso
+    static final class Read implements WireAction<byte[]> {
+        private final String fileName;
+
+        Read(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        public byte[] execute(ChordNode node) throws RemoteException {
+            byte[] content = node.getStorage().read(KeyHash.of(fileName));
+            if (content == null)
+                throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
+            return content;
+        }
+
+        @Override
+        public byte actionId() {
+            return READ;
+        }
+
+        @Override
+        public void writeFields(WireWriter out) {
+            out.writeString(fileName);
+        }
+    }
+
+    //sovrascrive o crea il file e lo propaga alle repliche, true se è stato creato
+    static final class Write implements WireAction<Boolean> {
+        private final String fileName;
+        private final byte[] content;
+
+        Write(String fileName, byte[] content) {
+            this.fileName = fileName;
+            this.content = content;
+        }
+
+        @Override
+        public Boolean execute(ChordNode node) throws RemoteException {
+            boolean created = node.getReplicas().write(fileName, content, node.getReplicas().chainLength());
+            System.out.println("File " + fileName + " saved on node " + node.getFingerTable().getNodeId());
+            return created;
+        }
+
+        @Override
+        public byte actionId() {
+            return WRITE;
+        }
+
+        @Override
+        public void writeFields(WireWriter out) {
+            out.writeString(fileName).writeBytes(content);
+        }
+    }
+
+    //cancella il file, anche dalle repliche
+    static final class Delete implements WireAction<Void> {
+        private final String fileName;
+
+        Delete(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        public Void execute(ChordNode node) throws RemoteException {
+            boolean deleted = node.getReplicas().delete(fileName, KeyHash.of(fileName), node.getReplicas().chainLength());
+            if (!deleted)
+                throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
+            System.out.println("File " + fileName + " deleted from node " + node.getFingerTable().getNodeId());
+            return null;
+        }
+
+        @Override
+        public byte actionId() {
+            return DELETE;
+        }
+
+        @Override
+        public void writeFields(WireWriter out) {
+            out.writeString(fileName);
+        }
+    }
+
+    static final class ReadRange implements WireAction<byte[]> {
+        private final String fileName;
+        private final long offset;
+        private final int length;
+
+        ReadRange(String fileName, long offset, int length) {
+            this.fileName = fileName;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public byte[] execute(ChordNode node) throws RemoteException {
+            byte[] range = node.getStorage().readRange(KeyHash.of(fileName), offset, length);
+            if (range == null)
+                throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
+            return range;
+        }
+
+        @Override
+        public byte actionId() {
+            return READ_RANGE;
+        }
+
+        @Override
+        public void writeFields(WireWriter out) {
+            out.writeString(fileName).writeLong(offset).writeInt(length);
+        }
+    }
+
+    //lungo la rotta torna solo l'handle della sessione, non il contenuto
+    static final class OpenDownload implements WireAction<TransferHandle> {
+        private final String fileName;
+
+        OpenDownload(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        public TransferHandle execute(ChordNode node) throws RemoteException {
+            TransferHandle handle = node.getStorage().openRead(KeyHash.of(fileName));
+            if (handle == null)
+                throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
+            return handle;
+        }
+
+        @Override
+        public byte actionId() {
+            return OPEN_DOWNLOAD;
+        }
+
+        @Override
+        public void writeFields(WireWriter out) {
+            out.writeString(fileName);
+        }
+    }
+
+    //i chunk arrivano al responsabile e in parallelo scendono lungo la catena delle repliche
+    static final class OpenUpload implements WireAction<TransferHandle> {
+        private final String fileName;
+
+        OpenUpload(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        public TransferHandle execute(ChordNode node) {
+            return node.getStorage().openUpload(fileName, node.getReplicas().openChain(fileName, node.getReplicas().chainLength()));
+        }
+
+        @Override
+        public byte actionId() {
+            return OPEN_UPLOAD;
+        }
+
+        @Override
+        public void writeFields(WireWriter out) {
+            out.writeString(fileName);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package it.baddy.uni.simulation;
+
+import it.baddy.uni.chord.IdSpace;
+import it.baddy.uni.utils.BufferPool;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+//avvia un ring simulato in un solo processo ed esegue un Workload, es.
+//java -cp target/ChordFileSystem-1.0-SNAPSHOT.jar it.baddy.uni.simulation.RingSimulator --nodes 1000 --zipf 0.99
+public class RingSimulator {
+
+    private static final String USAGE = """
+            options (all optional):
+              --nodes N          nodes in the ring (default 256)
+              --vnodes V         virtual nodes per node (default 1)
+              --bits B           bits of the id space (default 32)
+              --transport T      local (in memory), rmi or nio (loopback) (default local)
+              --rmi-port P       registry or NIO server port with --transport rmi/nio (default 1099)
+              --delay-us D       delay added to every local call, in microseconds (default 0)
+              --keys K           files uploaded before the run (default 1000)
+              --ops O            requests of the run (default 10000)
+              --size S           file size in bytes (default 1024)
+              --reads R          fraction of reads (default 0.7)
+              --lookups L        fraction of lookups, the rest are updates (default 0.2)
+              --zipf Z           zipf exponent of the key popularity, 0 = uniform (default 0)
+              --threads T        concurrent clients (default 16)
+              --seed S           random seed (default 42)
+              --data DIR         parent of the node folders (default a temporary folder)
+              --verbose          keep the log of the nodes on stdout
+            """;
+
+    public static void main(String[] args) {
+        Map<String, String> options = parse(args);
+        if (options == null) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        PrintStream out = System.out;
+        //ogni nodo stampa ogni richiesta: con migliaia di nodi resta solo il report
+        if (!options.containsKey("verbose"))
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        int status = 0;
+        try {
+            int nodes = Integer.parseInt(options.getOrDefault("nodes", "256"));
+            int vnodes = Integer.parseInt(options.getOrDefault("vnodes", "1"));
+            IdSpace idSpace = IdSpace.ofBits(Integer.parseInt(options.getOrDefault("bits", "32")));
+            SimulatedRing.Mode mode = SimulatedRing.Mode.valueOf(options.getOrDefault("transport", "local").toUpperCase());
+            int rmiPort = Integer.parseInt(options.getOrDefault("rmi-port", "1099"));
+            long delayMicros = Long.parseLong(options.getOrDefault("delay-us", "0"));
+            Path data = options.containsKey("data") ? Path.of(options.get("data")) : Files.createTempDirectory("chord-sim");
+            Workload workload = new Workload()
+                    .keys(Integer.parseInt(options.getOrDefault("keys", "1000")))
+                    .operations(Integer.parseInt(options.getOrDefault("ops", "10000")))
+                    .fileSize(Integer.parseInt(options.getOrDefault("size", "1024")))
+                    .mix(Double.parseDouble(options.getOrDefault("reads", "0.7")),
+                            Double.parseDouble(options.getOrDefault("lookups", "0.2")))
+                    .zipf(Double.parseDouble(options.getOrDefault("zipf", "0")))
+                    .threads(Integer.parseInt(options.getOrDefault("threads", "16")))
+                    .seed(Long.parseLong(options.getOrDefault("seed", "42")));
+
+            out.println("starting " + nodes + " nodes (" + mode + ") in " + data);
+            long start = System.currentTimeMillis();
+            try (SimulatedRing ring = SimulatedRing.start(nodes, vnodes, idSpace, data, mode, rmiPort, delayMicros)) {
+                out.println("ring ready in " + (System.currentTimeMillis() - start) + " ms, running workload");
+                workload.run(ring).print(out);
+                if (BufferPool.shared().enabled())
+                    out.println(BufferPool.shared());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("invalid option: " + e.getMessage());
+            System.err.println(USAGE);
+            status = 1;
+        } catch (Exception e) {
+            System.err.println("simulation failed: " + e);
+            status = 1;
+        }
+        //i thread di RMI non sono daemon
+        System.exit(status);
+    }
+
+    //--nome valore, --verbose senza valore; null se gli argomenti non sono validi
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--"))
+                return null;
+            String name = args[i].substring(2);
+            if (name.equals("verbose")) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                return null;
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,239 @@
+package it.baddy.uni.simulation;
+
+import it.baddy.uni.chord.ChordNode;
+import it.baddy.uni.chord.IdSpace;
+import it.baddy.uni.chord.VirtualNodes;
+import it.baddy.uni.rmi.bootstrap.RmiBootstrap;
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.LocalTransport;
+import it.baddy.uni.rmi.client.NioTransport;
+import it.baddy.uni.rmi.client.RmiTransport;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.nio.NioServer;
+import it.baddy.uni.rmi.server.ChordRemoteServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.NoSuchObjectException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+//ring di processi nella stessa JVM, ognuno con la sua cartella dati e i suoi nodi virtuali: i nodi si chiamano
+//in memoria (LOCAL), con RMI in loopback su un registry condiviso (RMI) o con il protocollo binario
+//verso un server NIO condiviso (NIO)
+public class SimulatedRing implements AutoCloseable {
+
+    public enum Mode {LOCAL, RMI, NIO}
+
+    //tentativi massimi per trovare id liberi quando il ring è quasi pieno
+    private static final int ID_ATTEMPTS_PER_NODE = 64;
+
+    private final IdSpace idSpace;
+    private final Path dataRoot;
+    private final Map<Long, ChordNode> nodes = new LinkedHashMap<>();
+    private final Map<Long, ChordRemoteServer> servers = new LinkedHashMap<>();
+    //nodi virtuali di ogni processo simulato, il primo ha l'id del processo
+    private final Map<Long, List<ChordNode>> localNodes = new LinkedHashMap<>();
+    private final LocalTransport localTransport;
+    private final Registry registry;
+    private final NioServer nioServer;
+    private final NioTransport nioTransport;
+    private final long[] ids;
+
+    private SimulatedRing(IdSpace idSpace, Path dataRoot, long[] ids, LocalTransport localTransport, Registry registry,
+                          NioServer nioServer, NioTransport nioTransport) {
+        this.idSpace = idSpace;
+        this.dataRoot = dataRoot;
+        this.ids = ids;
+        this.localTransport = localTransport;
+        this.registry = registry;
+        this.nioServer = nioServer;
+        this.nioTransport = nioTransport;
+    }
+
+    public static SimulatedRing start(int count, IdSpace idSpace, Path dataRoot, Mode mode, int port, long delayMicros) throws Exception {
+        return start(count, 1, idSpace, dataRoot, mode, port, delayMicros);
+    }
+
+    //avvia count processi da virtualNodes posizioni ciascuno, con una vista completa del ring (niente join né stabilize);
+    //port è quella del registry RMI o del server NIO in loopback
+    public static SimulatedRing start(int count, int virtualNodes, IdSpace idSpace, Path dataRoot, Mode mode,
+                                      int port, long delayMicros) throws Exception {
+        long[] ids = nodeIds(count, idSpace);
+        List<Long> physicalIds = new ArrayList<>(count);
+        for (long id : ids)
+            physicalIds.add(id);
+        Map<Long, long[]> assignment = VirtualNodes.assign(physicalIds, virtualNodes, idSpace);
+        List<Long> allNodes = new ArrayList<>();
+        assignment.values().forEach(virtualIds -> Arrays.stream(virtualIds).forEach(allNodes::add));
+
+        LocalTransport local = null;
+        Registry registry = null;
+        NioServer nioServer = null;
+        NioTransport nioTransport = null;
+        if (mode == Mode.LOCAL) {
+            local = new LocalTransport(delayMicros);
+            ChordRemoteClient.setTransport(local);
+        } else if (mode == Mode.NIO) {
+            nioServer = NioServer.start(port);
+            //con port 0 il server sceglie una porta libera
+            nioTransport = NioTransport.loopback(nioServer.getPort());
+            ChordRemoteClient.setTransport(nioTransport);
+        } else {
+            System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+            registry = LocateRegistry.createRegistry(port);
+            ChordRemoteClient.setTransport(RmiTransport.loopback(port));
+        }
+
+        SimulatedRing ring = new SimulatedRing(idSpace, dataRoot, ids, local, registry, nioServer, nioTransport);
+        for (long id : ids) {
+            Path dir = dataRoot.resolve(Long.toUnsignedString(id));
+            Files.createDirectories(dir);
+            ChordNode primary = new ChordNode(id, allNodes, idSpace);
+            primary.initStorage(dir, false);
+            List<ChordNode> group = new ArrayList<>();
+            group.add(primary);
+            long[] virtualIds = assignment.get(id);
+            for (int i = 1; i < virtualIds.length; i++) {
+                ChordNode virtualNode = new ChordNode(virtualIds[i], id, allNodes, idSpace, primary.getMetrics());
+                virtualNode.useStorage(primary.getStorage());
+                group.add(virtualNode);
+            }
+            for (ChordNode node : group) {
+                long nodeId = node.getFingerTable().getNodeId();
+                ChordRemoteServer server = new ChordRemoteServer(node, group);
+                if (local != null)
+                    local.register(nodeId, server);
+                else if (nioServer != null)
+                    nioServer.register(nodeId, server);
+                else
+                    registry.rebind(RmiBootstrap.bindingFor(nodeId), server);
+                ring.nodes.put(nodeId, node);
+                ring.servers.put(nodeId, server);
+            }
+            ring.localNodes.put(id, List.copyOf(group));
+        }
+        return ring;
+    }
+
+    //id ricavati da "node-i" come farebbe l'hash di un nome, ordinati senza segno
+    static long[] nodeIds(int count, IdSpace idSpace) {
+        if (idSpace.getSize() != 0 && Long.compareUnsigned(count, idSpace.getSize()) > 0)
+            throw new IllegalArgumentException(count + " nodes do not fit in a ring of size " + idSpace.describeSize());
+        List<Long> ids = new ArrayList<>(count);
+        Set<Long> used = new HashSet<>();
+        for (long i = 0; ids.size() < count; i++) {
+            if (i >= (long) count * ID_ATTEMPTS_PER_NODE)
+                throw new IllegalArgumentException("could not find " + count + " distinct ids in a ring of size " + idSpace.describeSize());
+            long id = idSpace.ringId("node-" + i);
+            if (used.add(id))
+                ids.add(id);
+        }
+        ids.sort(Long::compareUnsigned);
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    public IdSpace getIdSpace() {
+        return idSpace;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long nodeIdAt(int index) {
+        return ids[index];
+    }
+
+    public ChordNode getNode(long nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    //tutti i nodi del ring, virtuali compresi
+    public List<ChordNode> getNodes() {
+        return List.copyOf(nodes.values());
+    }
+
+    //i nodi virtuali del processo, il primo è quello con l'id del processo
+    public List<ChordNode> getLocalNodes(long physicalId) {
+        return localNodes.getOrDefault(physicalId, List.of());
+    }
+
+    //stub con cui un client entra nel ring dal nodo indicato
+    public ChordRemoteInterface entry(long nodeId) throws Exception {
+        return ChordRemoteClient.connect(nodeId);
+    }
+
+    //il nodo cade senza avvisare: le chiamate verso di lui falliscono come con un container fermo
+    //con tutti i suoi nodi virtuali
+    public void kill(long physicalId) {
+        for (ChordNode node : getLocalNodes(physicalId)) {
+            long nodeId = node.getFingerTable().getNodeId();
+            if (localTransport != null) {
+                localTransport.unregister(nodeId);
+                continue;
+            }
+            if (nioServer != null) {
+                nioServer.unregister(nodeId);
+                continue;
+            }
+            try {
+                registry.unbind(RmiBootstrap.bindingFor(nodeId));
+                UnicastRemoteObject.unexportObject(servers.get(nodeId), true);
+            } catch (Exception e) {
+                System.err.println("error stopping simulated node " + nodeId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    //spegne i nodi e cancella le loro cartelle; il client torna al trasporto dei container
+    @Override
+    public void close() {
+        for (ChordRemoteServer server : servers.values()) {
+            try {
+                UnicastRemoteObject.unexportObject(server, true);
+            } catch (NoSuchObjectException ignored) {
+                //già spento con kill
+            }
+        }
+        //la cartella è condivisa dai nodi virtuali del processo
+        for (long id : ids) {
+            nodes.get(id).getStorage().close();
+        }
+        if (registry != null) {
+            try {
+                UnicastRemoteObject.unexportObject(registry, true);
+            } catch (NoSuchObjectException ignored) {
+            }
+        }
+        if (nioServer != null) {
+            nioServer.close();
+            nioTransport.close();
+        }
+        ChordRemoteClient.setTransport(RmiTransport.containers());
+        for (long id : ids) {
+            deleteRecursively(dataRoot.resolve(Long.toUnsignedString(id)));
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir))
+            return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("error deleting " + dir + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package it.baddy.uni.simulation;
+
+import it.baddy.uni.metrics.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+//risultato di un Workload: latenze viste dai client, distribuzione degli hop
+//e sbilanciamento di chiavi e richieste servite tra i nodi
+public class SimulationReport {
+
+    private final int nodes;
+    //posizioni sul ring, più dei nodi con i nodi virtuali
+    private final int positions;
+    private long durationNanos;
+    private int operations;
+    private long failures;
+    private long[] hops = new long[0];
+    private long[] load = new long[0];
+    private long[] keys = new long[0];
+    private Map<String, LatencyHistogram> latencies = Map.of();
+    //cache -> {hit, miss} durante il carico
+    private Map<String, long[]> caches = Map.of();
+
+    public SimulationReport(int nodes, int positions) {
+        this.nodes = nodes;
+        this.positions = positions;
+    }
+
+    void setDuration(long durationNanos, int operations) {
+        this.durationNanos = durationNanos;
+        this.operations = operations;
+    }
+
+    void setFailures(long failures) {
+        this.failures = failures;
+    }
+
+    void setHops(long[] hops) {
+        this.hops = hops;
+    }
+
+    void setLoad(long[] load) {
+        this.load = load;
+    }
+
+    void setKeys(long[] keys) {
+        this.keys = keys;
+    }
+
+    void setLatencies(Map<String, LatencyHistogram> latencies) {
+        this.latencies = new TreeMap<>(latencies);
+    }
+
+    void setCaches(Map<String, long[]> caches) {
+        this.caches = caches;
+    }
+
+    public Map<String, long[]> getCaches() {
+        return caches;
+    }
+
+    public long[] getHops() {
+        return hops;
+    }
+
+    public long[] getLoad() {
+        return load;
+    }
+
+    public long[] getKeys() {
+        return keys;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public LatencyHistogram getLatency(String operation) {
+        return latencies.get(operation);
+    }
+
+    public double getMeanHops() {
+        long count = 0;
+        long sum = 0;
+        for (int i = 0; i < hops.length; i++) {
+            count += hops[i];
+            sum += (long) i * hops[i];
+        }
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public void print(PrintStream out) {
+        double seconds = durationNanos / 1e9;
+        out.println("=================================");
+        out.println("Simulated ring of " + nodes + " nodes" + (positions > nodes ? " (" + positions + " virtual nodes)" : ""));
+        out.println("=================================");
+        out.printf("%d operations in %.2f s (%.0f ops/s), %d failed%n",
+                operations, seconds, seconds == 0 ? 0 : operations / seconds, failures);
+        latencies.forEach((name, h) -> {
+            if (h.getCount() > 0)
+                out.printf("%-14s count=%d mean=%.0fus p50=%dus p90=%dus p99=%dus max=%dus%n", name, h.getCount(),
+                        h.getMeanMicros(), h.percentile(0.5), h.percentile(0.9), h.percentile(0.99), h.getMaxMicros());
+        });
+        //in chord un lookup richiede in media circa log2(N)/2 hop, N posizioni sul ring
+        out.printf("hops: mean=%.2f (chord expects ~%.2f)%n", getMeanHops(), Math.log(positions) / Math.log(2) / 2);
+        long totalHops = 0;
+        for (long h : hops)
+            totalHops += h;
+        for (int i = 0; i < hops.length; i++) {
+            if (hops[i] > 0)
+                out.printf("  %2d%s %6.2f%% (%d)%n", i, i == hops.length - 1 ? "+" : " ", 100.0 * hops[i] / totalHops, hops[i]);
+        }
+        caches.forEach((cache, counts) -> {
+            long total = counts[0] + counts[1];
+            if (total > 0)
+                out.printf("%s cache: %d hits, %d misses (%.1f%% hit rate)%n", cache, counts[0], counts[1], 100.0 * counts[0] / total);
+        });
+        printSkew(out, "keys per node", keys);
+        printSkew(out, "requests served per node", load);
+    }
+
+    //max/mean è quanto il nodo più carico supera la media, cv la dispersione relativa
+    private static void printSkew(PrintStream out, String label, long[] values) {
+        if (values.length == 0)
+            return;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long sum = 0;
+        for (long v : values) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            sum += v;
+        }
+        double mean = (double) sum / values.length;
+        double variance = 0;
+        for (long v : values)
+            variance += (v - mean) * (v - mean);
+        double stddev = Math.sqrt(variance / values.length);
+        out.printf("%s: min=%d mean=%.1f max=%d max/mean=%.2f cv=%.2f%n", label, min, mean, max,
+                mean == 0 ? 0 : max / mean, mean == 0 ? 0 : stddev / mean);
+    }
+}
@@ -0,0 +1,235 @@
+package it.baddy.uni.simulation;
+
+import it.baddy.uni.chord.ChordNode;
+import it.baddy.uni.metrics.LatencyHistogram;
+import it.baddy.uni.metrics.NodeMetrics;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.interfaces.MetricsSnapshot;
+import it.baddy.uni.rmi.interfaces.NodeAction;
+import it.baddy.uni.rmi.interfaces.RouteResult;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//carico di prova sul ring simulato: prima carica keys file, poi esegue operations
+//richieste (letture, lookup e update) da client che entrano nel ring da nodi a caso
+public class Workload {
+
+    //solo il routing: l'azione non fa nulla sul nodo responsabile
+    private static final NodeAction<Void> PROBE = node -> null;
+    private static final int MAX_HOPS = 16;
+    //errori stampati per intero, gli altri vengono solo contati
+    private static final int PRINTED_ERRORS = 5;
+
+    private int keys = 1000;
+    private int operations = 10_000;
+    private int fileSize = 1024;
+    private double readRatio = 0.7;
+    private double lookupRatio = 0.2;
+    //esponente della distribuzione zipf delle chiavi, 0 per chiavi uniformi
+    private double zipf = 0;
+    private int threads = 16;
+    private long seed = 42;
+
+    public Workload keys(int keys) {
+        this.keys = keys;
+        return this;
+    }
+
+    public Workload operations(int operations) {
+        this.operations = operations;
+        return this;
+    }
+
+    public Workload fileSize(int fileSize) {
+        this.fileSize = fileSize;
+        return this;
+    }
+
+    //il resto delle operazioni sono update
+    public Workload mix(double readRatio, double lookupRatio) {
+        if (readRatio < 0 || lookupRatio < 0 || readRatio + lookupRatio > 1)
+            throw new IllegalArgumentException("read and lookup ratios must be between 0 and 1 in total");
+        this.readRatio = readRatio;
+        this.lookupRatio = lookupRatio;
+        return this;
+    }
+
+    public Workload zipf(double zipf) {
+        this.zipf = zipf;
+        return this;
+    }
+
+    public Workload threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public Workload seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public static String fileName(int key) {
+        return "sim-" + key + ".bin";
+    }
+
+    public SimulationReport run(SimulatedRing ring) throws Exception {
+        SimulationReport report = new SimulationReport(ring.size(), ring.getNodes().size());
+        Map<String, LatencyHistogram> latencies = new HashMap<>();
+        for (String op : List.of(NodeMetrics.UPLOAD_FILE, NodeMetrics.GET_FILE, NodeMetrics.UPDATE_FILE, NodeMetrics.LOOKUP))
+            latencies.put(op, new LatencyHistogram());
+        AtomicLongArray probeHops = new AtomicLongArray(MAX_HOPS + 1);
+        AtomicLong failures = new AtomicLong();
+        KeyChooser chooser = new KeyChooser(keys, zipf);
+
+        //caricamento iniziale, escluso dalle statistiche di hop e carico
+        runParallel(keys, seed, (i, random, content) -> {
+            long start = System.nanoTime();
+            entry(ring, random).uploadFile(fileName(i), content);
+            latencies.get(NodeMetrics.UPLOAD_FILE).record((System.nanoTime() - start) / 1000);
+        }, failures);
+        Map<Long, MetricsSnapshot> before = snapshots(ring);
+
+        long started = System.nanoTime();
+        runParallel(operations, seed + 1, (i, random, content) -> {
+            int key = chooser.next(random);
+            double p = random.nextDouble();
+            ChordRemoteInterface entry = entry(ring, random);
+            long start = System.nanoTime();
+            String op;
+            if (p < readRatio) {
+                op = NodeMetrics.GET_FILE;
+                entry.getFile(fileName(key));
+            } else if (p < readRatio + lookupRatio) {
+                op = NodeMetrics.LOOKUP;
+                RouteResult<Void> result = entry.routeToResponsible(ring.getIdSpace().ringId(fileName(key)), PROBE, "SIM_LOOKUP");
+                probeHops.incrementAndGet(Math.min(result.getHops(), MAX_HOPS));
+            } else {
+                op = NodeMetrics.UPDATE_FILE;
+                entry.updateFile(fileName(key), content);
+            }
+            latencies.get(op).record((System.nanoTime() - start) / 1000);
+        }, failures);
+        report.setDuration(System.nanoTime() - started, operations);
+
+        Map<Long, MetricsSnapshot> after = snapshots(ring);
+        long[] hops = new long[MAX_HOPS + 1];
+        long[] load = new long[ring.size()];
+        long[] keysPerNode = new long[ring.size()];
+        Map<String, long[]> caches = new TreeMap<>();
+        for (int n = 0; n < ring.size(); n++) {
+            long id = ring.nodeIdAt(n);
+            long[] hopsAfter = after.get(id).getHops();
+            long[] hopsBefore = before.get(id).getHops();
+            for (int h = 0; h < hops.length && h < hopsAfter.length; h++)
+                hops[h] += hopsAfter[h] - hopsBefore[h];
+            load[n] = after.get(id).getServedLocally() - before.get(id).getServedLocally();
+            MetricsSnapshot b = before.get(id);
+            MetricsSnapshot a = after.get(id);
+            a.getCacheHits().forEach((cache, hits) -> caches.computeIfAbsent(cache, c -> new long[2])[0]
+                    += hits - b.getCacheHits().getOrDefault(cache, 0L));
+            a.getCacheMisses().forEach((cache, misses) -> caches.computeIfAbsent(cache, c -> new long[2])[1]
+                    += misses - b.getCacheMisses().getOrDefault(cache, 0L));
+            for (ChordNode node : ring.getLocalNodes(id))
+                keysPerNode[n] += node.getResponsibleFiles().size();
+        }
+        for (int h = 0; h < hops.length; h++)
+            hops[h] += probeHops.get(h);
+        report.setHops(hops);
+        report.setLoad(load);
+        report.setKeys(keysPerNode);
+        report.setLatencies(latencies);
+        report.setCaches(caches);
+        report.setFailures(failures.get());
+        return report;
+    }
+
+    private static ChordRemoteInterface entry(SimulatedRing ring, SplittableRandom random) throws Exception {
+        return ring.entry(ring.nodeIdAt(random.nextInt(ring.size())));
+    }
+
+    //una per processo: i nodi virtuali condividono le metriche
+    private static Map<Long, MetricsSnapshot> snapshots(SimulatedRing ring) {
+        Map<Long, MetricsSnapshot> snapshots = new HashMap<>();
+        for (int n = 0; n < ring.size(); n++) {
+            long id = ring.nodeIdAt(n);
+            snapshots.put(id, ring.getNode(id).getMetrics().snapshot());
+        }
+        return snapshots;
+    }
+
+    private interface Step {
+        void run(int index, SplittableRandom random, byte[] content) throws Exception;
+    }
+
+    //count passi divisi tra i thread, ognuno con il suo generatore e il suo contenuto
+    //(il contenuto non viene mai modificato: in LOCAL il nodo lo riceve per riferimento)
+    private void runParallel(int count, long seed, Step step, AtomicLong failures) throws Exception {
+        AtomicLong next = new AtomicLong();
+        SplittableRandom root = new SplittableRandom(seed);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] workers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                SplittableRandom random = root.split();
+                byte[] content = new byte[fileSize];
+                random.nextBytes(content);
+                workers[t] = pool.submit(() -> {
+                    for (long i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        try {
+                            step.run((int) i, random, content);
+                        } catch (Exception e) {
+                            if (failures.incrementAndGet() <= PRINTED_ERRORS)
+                                System.err.println("simulated request failed: " + ChordNode.rootCause(e));
+                        }
+                    }
+                });
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    //sceglie le chiavi uniformi o secondo zipf (poche chiavi molto richieste)
+    static final class KeyChooser {
+        private final int keys;
+        private final double[] cdf;
+
+        KeyChooser(int keys, double exponent) {
+            this.keys = keys;
+            if (exponent <= 0) {
+                this.cdf = null;
+                return;
+            }
+            this.cdf = new double[keys];
+            double sum = 0;
+            for (int k = 0; k < keys; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < keys; k++)
+                cdf[k] /= sum;
+        }
+
+        int next(SplittableRandom random) {
+            if (cdf == null)
+                return random.nextInt(keys);
+            int idx = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(idx >= 0 ? idx : -idx - 1, keys - 1);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package it.baddy.uni.storage;
+
+import java.io.InputStream;
+
+//algoritmo di compressione dei file salvati dal nodo: l'id viene scritto
+//nell'intestazione del blob, così chi legge sa come decomprimerlo
+public interface BlobCodec {
+
+    //identificativo salvato su disco, non va mai cambiato per un codec esistente
+    byte id();
+
+    byte[] compress(byte[] raw, int offset, int length);
+
+    //rawLength è la dimensione originale letta dall'intestazione
+    byte[] decompress(byte[] data, int offset, int length, int rawLength);
+
+    //decompressione a stream per i file grandi: data parte subito dopo l'intestazione
+    InputStream decompress(InputStream data);
+}
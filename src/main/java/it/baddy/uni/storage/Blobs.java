@@ -0,0 +1,150 @@
+package it.baddy.uni.storage;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static it.baddy.uni.config.AppManagements.COMPRESSION_LEVEL;
+import static it.baddy.uni.config.AppManagements.COMPRESSION_MAX_RATIO;
+import static it.baddy.uni.config.AppManagements.COMPRESSION_MIN_SIZE;
+
+//formato dei contenuti compressi, uguale su disco e in rete: intestazione con magic,
+//id del codec e dimensione originale, poi i byte compressi. Tutto quello che non inizia
+//con il magic è un file normale e viene restituito così com'è; un file normale che inizia
+//per caso con il magic viene salvato dietro un'intestazione con il codec IDENTITY
+public final class Blobs {
+
+    //stile PNG: byte non ASCII e fine riga, un file di testo non inizia mai così
+    private static final byte[] MAGIC = {(byte) 0x89, 'C', 'H', 'Z', '\r', '\n', 0x1A, '\n'};
+    public static final int MAGIC_SIZE = MAGIC.length;
+    public static final int HEADER_SIZE = MAGIC_SIZE + 1 + Integer.BYTES;
+    //contenuto non compresso: la dimensione originale è quella del blob meno l'intestazione
+    public static final byte IDENTITY = 0;
+    //sui file grandi il rapporto viene stimato prima su un campione
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private static final BlobCodec[] CODECS = new BlobCodec[256];
+    //codec usato per le scritture, null se la compressione è disattivata
+    private static final BlobCodec CONFIGURED = COMPRESSION_LEVEL > 0 ? new DeflateCodec(COMPRESSION_LEVEL) : null;
+
+    static {
+        register(new DeflateCodec(6));
+    }
+
+    private Blobs() {
+        // utility class
+    }
+
+    //per la decompressione basta un'istanza qualsiasi del codec
+    public static synchronized void register(BlobCodec codec) {
+        CODECS[codec.id() & 0xFF] = codec;
+    }
+
+    public static boolean enabled() {
+        return CONFIGURED != null;
+    }
+
+    //comprime con il codec configurato, se attivo e se conviene
+    public static byte[] encode(byte[] raw) {
+        return CONFIGURED == null ? escape(raw) : encode(raw, CONFIGURED, COMPRESSION_MAX_RATIO);
+    }
+
+    //il contenuto viene salvato compresso solo se si riduce almeno a maxRatio percento,
+    //altrimenti (file piccoli, già compressi o casuali) resta com'è
+    public static byte[] encode(byte[] raw, BlobCodec codec, int maxRatio) {
+        if (raw.length < COMPRESSION_MIN_SIZE)
+            return escape(raw);
+        if (raw.length > 2 * SAMPLE_SIZE) {
+            byte[] sample = codec.compress(raw, 0, SAMPLE_SIZE);
+            if (sample.length * 100L > (long) SAMPLE_SIZE * maxRatio)
+                return escape(raw);
+        }
+        byte[] compressed = codec.compress(raw, 0, raw.length);
+        if ((compressed.length + HEADER_SIZE) * 100L > (long) raw.length * maxRatio)
+            return escape(raw);
+        ByteBuffer blob = ByteBuffer.allocate(HEADER_SIZE + compressed.length);
+        blob.put(MAGIC).put(codec.id()).putInt(raw.length).put(compressed);
+        return blob.array();
+    }
+
+    //contenuto lasciato in chiaro: se inizia con il magic gli serve l'intestazione IDENTITY
+    private static byte[] escape(byte[] raw) {
+        if (!startsWithMagic(raw))
+            return raw;
+        ByteBuffer blob = ByteBuffer.allocate(HEADER_SIZE + raw.length);
+        blob.put(identityHeader()).put(raw);
+        return blob.array();
+    }
+
+    //intestazione da mettere davanti a un contenuto in chiaro che inizia con il magic
+    public static byte[] identityHeader() {
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).put(IDENTITY).putInt(0).array();
+    }
+
+    //un upload a chunk va preceduto da identityHeader se i primi byte iniziano con il magic
+    public static boolean startsWithMagic(byte[] content) {
+        if (content.length < MAGIC_SIZE)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (content[i] != MAGIC[i])
+                return false;
+        }
+        return true;
+    }
+
+    //blob ricevuto da un altro nodo (già codificato) nel formato di salvataggio di questo nodo:
+    //viene decompresso solo se qui la compressione è disattivata, mai ricodificato due volte
+    public static byte[] store(byte[] blob) {
+        if (!isEncoded(blob))
+            return encode(blob);
+        if (enabled() || (blob[MAGIC.length] & 0xFF) == IDENTITY)
+            return blob;
+        return escape(decode(blob));
+    }
+
+    public static boolean isEncoded(byte[] content) {
+        return content != null && content.length >= HEADER_SIZE && startsWithMagic(content);
+    }
+
+    //contenuto originale; i file non compressi vengono restituiti senza copie
+    public static byte[] decode(byte[] content) {
+        if (!isEncoded(content))
+            return content;
+        ByteBuffer header = ByteBuffer.wrap(content, MAGIC.length, 1 + Integer.BYTES);
+        int codecId = header.get() & 0xFF;
+        int rawLength = header.getInt();
+        if (codecId == IDENTITY)
+            return Arrays.copyOfRange(content, HEADER_SIZE, content.length);
+        return codec(codecId).decompress(content, HEADER_SIZE, content.length - HEADER_SIZE, rawLength);
+    }
+
+    //contenuto originale letto a stream: header sono i primi HEADER_SIZE byte (già letti da payload)
+    public static InputStream decode(byte[] header, InputStream payload) {
+        if (!isEncoded(header))
+            throw new IllegalArgumentException("not an encoded blob");
+        if ((header[MAGIC.length] & 0xFF) == IDENTITY)
+            return payload;
+        return codec(header[MAGIC.length] & 0xFF).decompress(payload);
+    }
+
+    private static BlobCodec codec(int codecId) {
+        BlobCodec codec = CODECS[codecId];
+        if (codec == null)
+            throw new IllegalStateException("unknown codec " + codecId);
+        return codec;
+    }
+
+    //dimensione del contenuto originale
+    public static long rawLength(byte[] content) {
+        return rawLength(content, content.length);
+    }
+
+    //header sono almeno i primi HEADER_SIZE byte di un blob di storedSize byte
+    public static long rawLength(byte[] header, long storedSize) {
+        if (!isEncoded(header))
+            return storedSize;
+        if ((header[MAGIC.length] & 0xFF) == IDENTITY)
+            return storedSize - HEADER_SIZE;
+        return ByteBuffer.wrap(header, MAGIC.length + 1, Integer.BYTES).getInt();
+    }
+}
@@ -0,0 +1,121 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.utils.KeyHash;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//contenuto dei file più letti, limitato in byte: LRU segmentata, un file entra in prova
+//e passa nella parte protetta solo alla seconda lettura, così una scansione di file letti
+//una volta sola non scaccia quelli richiesti spesso; ogni voce vale solo per la versione
+//con cui è stata inserita (versione della entry dell'indice o epoca di scadenza).
+//Gli array restituiti sono condivisi: chi li riceve non deve modificarli
+public class ContentCache {
+
+    //quota della capacità riservata ai file letti almeno due volte
+    private static final double PROTECTED_SHARE = 0.8;
+    //un file più grande di questa frazione della capacità non viene messo in cache
+    private static final int MAX_ENTRY_FRACTION = 8;
+
+    private final long capacityBytes;
+    private final long protectedCapacity;
+    private final Map<KeyHash, Cached> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<KeyHash, Cached> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+
+    public ContentCache(long capacityBytes) {
+        this.capacityBytes = Math.max(0, capacityBytes);
+        this.protectedCapacity = (long) (this.capacityBytes * PROTECTED_SHARE);
+    }
+
+    //null se il file non è in cache o la copia è di un'altra versione
+    public synchronized byte[] get(KeyHash key, long version) {
+        Cached cached = protectedSegment.get(key);
+        if (cached != null) {
+            if (cached.version == version)
+                return cached.content;
+            removeProtected(key);
+            return null;
+        }
+        cached = probation.remove(key);
+        if (cached == null)
+            return null;
+        probationBytes -= cached.content.length;
+        if (cached.version != version)
+            return null;
+        //seconda lettura: il file passa nella parte protetta
+        protectedSegment.put(key, cached);
+        protectedBytes += cached.content.length;
+        demoteProtected();
+        return cached.content;
+    }
+
+    public synchronized void put(KeyHash key, long version, byte[] content) {
+        if (content.length > capacityBytes / MAX_ENTRY_FRACTION)
+            return;
+        invalidate(key);
+        probation.put(key, new Cached(version, content));
+        probationBytes += content.length;
+        evict();
+    }
+
+    public synchronized void invalidate(KeyHash key) {
+        removeProtected(key);
+        Cached cached = probation.remove(key);
+        if (cached != null)
+            probationBytes -= cached.content.length;
+    }
+
+    public synchronized long sizeBytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    private void removeProtected(KeyHash key) {
+        Cached cached = protectedSegment.remove(key);
+        if (cached != null)
+            protectedBytes -= cached.content.length;
+    }
+
+    //la parte protetta piena rimanda i suoi file meno recenti in prova
+    private void demoteProtected() {
+        Iterator<Map.Entry<KeyHash, Cached>> it = protectedSegment.entrySet().iterator();
+        while (protectedBytes > protectedCapacity && it.hasNext()) {
+            Map.Entry<KeyHash, Cached> eldest = it.next();
+            it.remove();
+            protectedBytes -= eldest.getValue().content.length;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationBytes += eldest.getValue().content.length;
+        }
+        evict();
+    }
+
+    //escono prima i file in prova meno recenti, poi quelli protetti
+    private void evict() {
+        Iterator<Cached> it = probation.values().iterator();
+        while (sizeBytes() > capacityBytes && it.hasNext()) {
+            probationBytes -= it.next().content.length;
+            it.remove();
+        }
+        it = protectedSegment.values().iterator();
+        while (sizeBytes() > capacityBytes && it.hasNext()) {
+            protectedBytes -= it.next().content.length;
+            it.remove();
+        }
+    }
+
+    private static final class Cached {
+        private final long version;
+        private final byte[] content;
+
+        private Cached(long version, byte[] content) {
+            this.version = version;
+            this.content = content;
+        }
+    }
+}
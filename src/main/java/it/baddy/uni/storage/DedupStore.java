@@ -0,0 +1,204 @@
+package it.baddy.uni.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static it.baddy.uni.config.AppManagements.INTERNAL_DIR;
+
+//file con lo stesso contenuto salvato condividono un solo blob su disco: il blob sta in
+//.chord/blobs/<sha-256> e ogni nome è un hard link allo stesso inode. I file vengono sempre
+//sostituiti con un rename e mai riscritti sul posto, altrimenti cambierebbero tutti i nomi
+//che condividono l'inode; un blob senza più nomi viene cancellato
+public class DedupStore {
+
+    private final Path blobsDir;
+    private final Path tmpDir;
+    private final int minSize;
+    //inode (fileKey) -> blob, per ritrovare il blob di un file sostituito o cancellato
+    private final Map<Object, Path> blobsByKey = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private final GroupCommit commits = GroupCommit.configured();
+
+    public DedupStore(Path root, int minSize) {
+        this.blobsDir = root.resolve(INTERNAL_DIR).resolve("blobs");
+        this.tmpDir = root.resolve(INTERNAL_DIR).resolve("tmp");
+        this.minSize = minSize;
+        try {
+            Files.createDirectories(blobsDir);
+            Files.createDirectories(tmpDir);
+        } catch (IOException e) {
+            throw new RuntimeException("Error creating " + blobsDir, e);
+        }
+        load();
+    }
+
+    //servono gli hard link e il numero di link dei file (attributi unix)
+    public static boolean supported(Path root) {
+        return root.getFileSystem().supportedFileAttributeViews().contains("unix");
+    }
+
+    //scrive (o sostituisce) il file, ritorna true se è stato creato
+    public boolean write(Path target, byte[] content) {
+        try {
+            Path parent = target.getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+            if (content.length < minSize) {
+                //troppo piccolo per valere un blob, ma va comunque sostituito con un rename
+                Path tmp = writeTemp(content);
+                boolean created = replace(tmp, target);
+                commits.syncDirectory(target.getParent());
+                return created;
+            }
+            String hash = sha256(content);
+            Path blob = blobsDir.resolve(hash);
+            //il contenuto nuovo viene scritto fuori dal lock, solo se il blob non c'è già
+            Path pending = Files.exists(blob) ? null : writeTemp(content);
+            boolean created;
+            synchronized (lock) {
+                if (pending != null) {
+                    if (Files.exists(blob)) {
+                        Files.delete(pending);
+                    } else {
+                        Files.move(pending, blob, StandardCopyOption.ATOMIC_MOVE);
+                        blobsByKey.put(fileKey(blob), blob);
+                    }
+                } else if (!Files.exists(blob)) {
+                    //raccolto da un altro thread tra il controllo e il lock
+                    Files.write(blob, content);
+                    blobsByKey.put(fileKey(blob), blob);
+                }
+                Path link = tmpDir.resolve("link-" + hash);
+                Files.deleteIfExists(link);
+                Files.createLink(link, blob);
+                created = replace(link, target);
+            }
+            //blob nuovo e rename persistenti prima di rispondere (fuori dal lock: la sync è di gruppo)
+            if (pending != null)
+                commits.syncDirectory(blobsDir);
+            commits.syncDirectory(target.getParent());
+            return created;
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing file " + target, e);
+        }
+    }
+
+    //false se il file non era presente
+    public boolean delete(Path target) {
+        synchronized (lock) {
+            try {
+                Object old = fileKeyIfExists(target);
+                boolean deleted = Files.deleteIfExists(target);
+                release(old);
+                return deleted;
+            } catch (IOException e) {
+                throw new RuntimeException("Error deleting file " + target, e);
+            }
+        }
+    }
+
+    //cancella i blob rimasti senza nomi, ad esempio per file sovrascritti da un upload a chunk
+    //o cancellati a mano dalla cartella (viene fatto all'avvio); ritorna quanti ne ha cancellati
+    public int collect() {
+        int removed = 0;
+        synchronized (lock) {
+            for (Map.Entry<Object, Path> entry : blobsByKey.entrySet()) {
+                if (release(entry.getKey()))
+                    removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int blobCount() {
+        return blobsByKey.size();
+    }
+
+    private boolean replace(Path source, Path target) throws IOException {
+        synchronized (lock) {
+            Object old = fileKeyIfExists(target);
+            //stesso contenuto già salvato: il rename tra due link dello stesso inode
+            //non fa nulla e lascerebbe source in giro
+            if (old != null && old.equals(fileKey(source))) {
+                Files.delete(source);
+                return false;
+            }
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (old != null && !old.equals(fileKey(target)))
+                release(old);
+            return old == null;
+        }
+    }
+
+    //il blob con un solo link è rimasto solo nella cartella dei blob
+    private boolean release(Object key) {
+        if (key == null)
+            return false;
+        Path blob = blobsByKey.get(key);
+        if (blob == null)
+            return false;
+        try {
+            if ((int) Files.getAttribute(blob, "unix:nlink") > 1)
+                return false;
+            Files.deleteIfExists(blob);
+        } catch (NoSuchFileException e) {
+            //già cancellato
+        } catch (IOException e) {
+            System.err.println("error releasing blob " + blob + ": " + e.getMessage());
+            return false;
+        }
+        blobsByKey.remove(key);
+        return true;
+    }
+
+    private void load() {
+        try (Stream<Path> blobs = Files.list(blobsDir)) {
+            blobs.forEach(blob -> blobsByKey.put(fileKey(blob), blob));
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading blobs from " + blobsDir, e);
+        }
+        int removed = collect();
+        System.out.println("loaded " + blobsByKey.size() + " deduplicated blobs, removed " + removed + " unused");
+    }
+
+    private Path writeTemp(byte[] content) throws IOException {
+        Path tmp = Files.createTempFile(tmpDir, "write-", ".part");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            if (commits.enabled())
+                channel.force(false);
+        }
+        return tmp;
+    }
+
+    private static Object fileKey(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading attributes of " + file, e);
+        }
+    }
+
+    private static Object fileKeyIfExists(Path file) {
+        return Files.exists(file, LinkOption.NOFOLLOW_LINKS) ? fileKey(file) : null;
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package it.baddy.uni.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+//deflate della JDK: con lo stesso livello lo stesso contenuto produce gli stessi byte,
+//quindi i blob compressi restano deduplicabili per hash
+public class DeflateCodec implements BlobCodec {
+
+    public static final byte ID = 1;
+
+    private final int level;
+
+    public DeflateCodec(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("invalid deflate level " + level);
+        this.level = level;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public byte[] compress(byte[] raw, int offset, int length) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw, offset, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            byte[] raw = new byte[rawLength];
+            int position = 0;
+            while (position < rawLength) {
+                int n = inflater.inflate(raw, position, rawLength - position);
+                //senza altri byte in ingresso il blob è troncato
+                if (n == 0 && (inflater.needsInput() || inflater.finished()))
+                    throw new IllegalStateException("truncated deflate blob: " + position + " of " + rawLength + " bytes");
+                position += n;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Corrupted deflate blob", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public InputStream decompress(InputStream data) {
+        return new InflaterInputStream(data);
+    }
+}
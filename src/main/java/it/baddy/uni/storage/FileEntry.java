@@ -0,0 +1,51 @@
+package it.baddy.uni.storage;
+
+import java.nio.file.Path;
+
+//metadati di un file indicizzato dal nodo
+public final class FileEntry {
+
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+    //cresce a ogni modifica del file vista dall'indice (anche con stesso lastModified)
+    private final long version;
+    //salvato in un segmento (path non esiste su disco, vedi SegmentStore)
+    private final boolean inSegment;
+
+    public FileEntry(Path path, long size, long lastModified, long version) {
+        this(path, size, lastModified, version, false);
+    }
+
+    public FileEntry(Path path, long size, long lastModified, long version, boolean inSegment) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.version = version;
+        this.inSegment = inSegment;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getFileName() {
+        return path.getFileName().toString();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isInSegment() {
+        return inSegment;
+    }
+}
@@ -0,0 +1,139 @@
+package it.baddy.uni.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static it.baddy.uni.config.AppManagements.COMMIT_INTERVAL_MS;
+
+//fsync raggruppati: chi scrive chiede la sync di un file condiviso (segmento) o di una cartella
+//(dopo un rename) e aspetta; il thread di commit raccoglie le richieste per intervalMs e fa
+//una sola sync per ogni file o cartella del gruppo, qualunque sia il numero di scritture
+public class GroupCommit {
+
+    //un solo committer per la JVM: il disco è lo stesso per tutti i nodi del processo
+    private static final GroupCommit CONFIGURED = new GroupCommit(COMMIT_INTERVAL_MS);
+
+    public interface SyncAction {
+        void sync() throws IOException;
+    }
+
+    private final long intervalMs;
+    private final Object lock = new Object();
+    private Map<Object, Pending> pending = new LinkedHashMap<>();
+    private Thread committer;
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+
+    //intervalMs 0: nessuna sync, le scritture restano solo atomiche
+    public GroupCommit(long intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    public static GroupCommit configured() {
+        return CONFIGURED;
+    }
+
+    public boolean enabled() {
+        return intervalMs > 0;
+    }
+
+    public void force(FileChannel channel) {
+        await(channel, () -> channel.force(false));
+    }
+
+    //rende persistenti i rename e le cancellazioni fatti nella cartella
+    public void syncDirectory(Path dir) {
+        await(dir.toAbsolutePath(), () -> syncDirectoryNow(dir));
+    }
+
+    public static void syncDirectoryNow(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    //aspetta la prossima sync del gruppo per target: le richieste con lo stesso target
+    //(oggetto usato come chiave) ne condividono una sola
+    public void await(Object target, SyncAction action) {
+        if (!enabled())
+            return;
+        requests.incrementAndGet();
+        CompletableFuture<Void> done;
+        synchronized (lock) {
+            done = pending.computeIfAbsent(target, t -> new Pending(action)).done;
+            if (committer == null) {
+                committer = new Thread(this::run, "group-commit");
+                committer.setDaemon(true);
+                committer.start();
+            }
+            lock.notifyAll();
+        }
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error syncing " + target, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for commit of " + target, e);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                synchronized (lock) {
+                    while (pending.isEmpty())
+                        lock.wait();
+                }
+                //lascia arrivare le altre scritture del gruppo
+                Thread.sleep(intervalMs);
+                Map<Object, Pending> group;
+                synchronized (lock) {
+                    group = pending;
+                    pending = new LinkedHashMap<>();
+                }
+                groups.incrementAndGet();
+                syncs.addAndGet(group.size());
+                for (Pending p : group.values()) {
+                    try {
+                        p.action.sync();
+                        p.done.complete(null);
+                    } catch (Throwable e) {
+                        p.done.completeExceptionally(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getGroups() {
+        return groups.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    private static final class Pending {
+        final SyncAction action;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(SyncAction action) {
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.utils.KeyHash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+//copia binaria dei file dell'indice (i record dei segmenti si rileggono dai segmenti): all'avvio
+//sostituisce la scansione completa della cartella, che KeyIndex.reconcile rifà poi in background.
+//Formato: magic, versione, watermark, poi per ogni file [1][chiave][path relativo][size][lastModified],
+//uno 0 finale e il crc32c di tutto quello che precede
+public final class IndexSnapshot {
+
+    private static final int MAGIC = 0x43484958;
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    //i file con lastModified precedente sono cambiati prima dello snapshot: se size e lastModified
+    //coincidono ancora con quelli salvati si possono considerare invariati
+    private final long watermark;
+    private final Map<KeyHash, FileEntry> entries;
+
+    private IndexSnapshot(long watermark, Map<KeyHash, FileEntry> entries) {
+        this.watermark = watermark;
+        this.entries = entries;
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public Map<KeyHash, FileEntry> getEntries() {
+        return entries;
+    }
+
+    //scrive un file temporaneo e lo sostituisce con un rename: un crash lascia lo snapshot precedente
+    public static int save(Path file, Path root, Map<KeyHash, FileEntry> entries, long watermark, boolean sync) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                CRC32C crc = new CRC32C();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), crc));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(watermark);
+                for (Map.Entry<KeyHash, FileEntry> e : entries.entrySet()) {
+                    FileEntry entry = e.getValue();
+                    if (entry.isInSegment())
+                        continue;
+                    out.writeByte(1);
+                    e.getKey().writeTo(out);
+                    out.writeUTF(root.relativize(entry.getPath()).toString());
+                    out.writeLong(entry.getSize());
+                    out.writeLong(entry.getLastModified());
+                    count++;
+                }
+                out.writeByte(0);
+                out.writeInt((int) crc.getValue());
+                out.flush();
+                if (sync)
+                    channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (sync)
+                GroupCommit.syncDirectoryNow(file.getParent());
+            return count;
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving index snapshot " + file, e);
+        }
+    }
+
+    //null se lo snapshot non c'è o è danneggiato: in quel caso si riscansiona la cartella
+    public static IndexSnapshot load(Path file, Path root, LongSupplier versions) {
+        CRC32C crc = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                System.err.println("index snapshot " + file + " has an unknown format, ignoring it");
+                return null;
+            }
+            long watermark = in.readLong();
+            Map<KeyHash, FileEntry> entries = new HashMap<>();
+            while (in.readByte() != 0) {
+                KeyHash key = KeyHash.readFrom(in);
+                Path path = root.resolve(in.readUTF());
+                entries.put(key, new FileEntry(path, in.readLong(), in.readLong(), versions.getAsLong()));
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                System.err.println("index snapshot " + file + " is damaged (checksum mismatch), ignoring it");
+                return null;
+            }
+            return new IndexSnapshot(watermark, entries);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (EOFException e) {
+            System.err.println("index snapshot " + file + " is truncated, ignoring it");
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("cannot read index snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.utils.KeyHash;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static it.baddy.uni.config.AppManagements.INTERNAL_DIR;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+//indice in memoria (KeyID SHA-1 completo -> file) dei file presenti sul nodo:
+//viene costruito una sola volta all'avvio (o caricato da uno snapshot e riconciliato in
+//background) e poi tenuto aggiornato dalle operazioni di upload/update/delete e da un
+//watcher per le modifiche fatte fuori dal nodo
+public class KeyIndex {
+
+    private static final String SNAPSHOT_FILE = "index.snapshot";
+
+    private final Path root;
+    private final Map<KeyHash, FileEntry> entries = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private WatchService watchService;
+    private Thread watcherThread;
+    //watermark dello snapshot caricato, finché la riconciliazione non è finita
+    private volatile IndexSnapshot loaded;
+
+    public KeyIndex(Path root) {
+        this.root = root;
+    }
+
+    // scansione completa della cartella, all'avvio e dopo un overflow del watcher: si costruisce
+    // una mappa nuova e poi si applicano solo le differenze, così durante la scansione le letture
+    // trovano sempre i file presenti (i file nei segmenti non sono nella cartella e restano)
+    public void build() {
+        long startVersion = versions.get();
+        Map<KeyHash, FileEntry> scanned = new HashMap<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(p -> !isInternal(p) && Files.isRegularFile(p)).forEach(file -> {
+                FileEntry entry = readEntry(file);
+                if (entry != null)
+                    scanned.put(KeyHash.of(file.getFileName().toString()), entry);
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Error indexing files in " + root, e);
+        }
+        //nuovi o cambiati; le voci aggiornate da un'operazione durante la scansione restano come sono
+        scanned.forEach((key, entry) -> entries.compute(key, (k, current) -> {
+            if (current == null)
+                return entry;
+            if (current.getVersion() > startVersion)
+                return current;
+            boolean unchanged = !current.isInSegment() && current.getPath().equals(entry.getPath())
+                    && current.getSize() == entry.getSize() && current.getLastModified() == entry.getLastModified();
+            return unchanged ? current : entry;
+        }));
+        //spariti dal disco
+        entries.forEach((key, entry) -> {
+            if (!entry.isInSegment() && entry.getVersion() <= startVersion && !scanned.containsKey(key))
+                entries.remove(key, entry);
+        });
+        System.out.println("indexed " + entries.size() + " files in " + root);
+    }
+
+    //false se non c'è uno snapshot valido: allora serve build()
+    public boolean loadSnapshot() {
+        IndexSnapshot snapshot = IndexSnapshot.load(snapshotFile(), root, versions::incrementAndGet);
+        if (snapshot == null)
+            return false;
+        entries.putAll(snapshot.getEntries());
+        loaded = snapshot;
+        System.out.println("loaded " + snapshot.getEntries().size() + " files of " + root + " from the index snapshot");
+        return true;
+    }
+
+    //non durante la riconciliazione: l'indice potrebbe avere ancora voci vecchie
+    public void saveSnapshot(boolean sync) {
+        if (loaded != null)
+            return;
+        //preso prima di leggere le voci: un file cambiato durante il salvataggio risulta più recente
+        long watermark = System.currentTimeMillis();
+        int count = IndexSnapshot.save(snapshotFile(), root, entries, watermark, sync);
+        System.out.println("saved index snapshot of " + count + " files in " + root);
+    }
+
+    private Path snapshotFile() {
+        return root.resolve(INTERNAL_DIR).resolve(SNAPSHOT_FILE);
+    }
+
+    public boolean isReconciling() {
+        return loaded != null;
+    }
+
+    //confronta lo snapshot caricato con la cartella: i file nuovi o cambiati (o troppo vicini al
+    //watermark per fidarsi) vengono reindicizzati, quelli spariti tolti. Le voci toccate dalle
+    //operazioni nel frattempo sono già aggiornate e restano come sono. shadowedSegment riceve i
+    //nomi che hanno sia un record in un segmento sia un file, che vince come in LocalStorage
+    public void reconcile(Consumer<String> shadowedSegment) {
+        IndexSnapshot snapshot = loaded;
+        if (snapshot == null)
+            return;
+        long start = System.currentTimeMillis();
+        long startVersion = versions.get();
+        //voci dello snapshot non ancora ritrovate su disco
+        Map<KeyHash, FileEntry> unconfirmed = new HashMap<>();
+        entries.forEach((key, entry) -> {
+            if (!entry.isInSegment())
+                unconfirmed.put(key, entry);
+        });
+        AtomicLong changed = new AtomicLong();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return isInternal(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile())
+                        return FileVisitResult.CONTINUE;
+                    String name = file.getFileName().toString();
+                    KeyHash key = KeyHash.of(name);
+                    FileEntry entry = entries.get(key);
+                    long modified = attrs.lastModifiedTime().toMillis();
+                    if (entry != null && entry.getVersion() > startVersion) {
+                        //aggiornata da un'operazione durante la riconciliazione
+                        unconfirmed.remove(key);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (entry != null && !entry.isInSegment() && entry.getPath().equals(file) && entry.getSize() == attrs.size()
+                            && entry.getLastModified() == modified && modified < snapshot.getWatermark()) {
+                        unconfirmed.remove(key);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    put(file);
+                    unconfirmed.remove(key);
+                    changed.incrementAndGet();
+                    if (entry != null && entry.isInSegment())
+                        shadowedSegment.accept(name);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    //cancellato durante la visita
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Error reconciling index of " + root, e);
+        }
+        //sparite dal disco: tolte solo se nessuno le ha sostituite nel frattempo
+        int removed = 0;
+        for (Map.Entry<KeyHash, FileEntry> e : unconfirmed.entrySet()) {
+            if (entries.remove(e.getKey(), e.getValue()))
+                removed++;
+        }
+        loaded = null;
+        System.out.println("reconciled index of " + root + " in " + (System.currentTimeMillis() - start) + " ms: "
+                + changed.get() + " files updated, " + removed + " removed, " + entries.size() + " indexed");
+    }
+
+    public FileEntry get(KeyHash key) {
+        return entries.get(key);
+    }
+
+    public FileEntry get(String fileName) {
+        return entries.get(KeyHash.of(fileName));
+    }
+
+    // aggiunge o aggiorna i metadati del file
+    public FileEntry put(Path file) {
+        FileEntry entry = readEntry(file);
+        if (entry == null) {
+            //il file è stato cancellato nel frattempo
+            remove(file);
+            return null;
+        }
+        entries.put(KeyHash.of(file.getFileName().toString()), entry);
+        return entry;
+    }
+
+    //null se il file non esiste più
+    private FileEntry readEntry(Path file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileEntry(file, attrs.size(), attrs.lastModifiedTime().toMillis(), versions.incrementAndGet());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading attributes of " + file, e);
+        }
+    }
+
+    // file salvato in un segmento: il path è solo il nome sotto la cartella del nodo
+    public FileEntry putSegment(String fileName, long size) {
+        FileEntry entry = new FileEntry(root.resolve(fileName), size, System.currentTimeMillis(), versions.incrementAndGet(), true);
+        entries.put(KeyHash.of(fileName), entry);
+        return entry;
+    }
+
+    public void remove(KeyHash key) {
+        entries.remove(key);
+    }
+
+    // rimuove la entry solo se punta ancora allo stesso file su disco
+    // (non a un segmento: il file viene cancellato anche quando il nome passa in un segmento)
+    public void remove(Path file) {
+        KeyHash key = KeyHash.of(file.getFileName().toString());
+        entries.computeIfPresent(key, (k, entry) -> !entry.isInSegment() && entry.getPath().equals(file) ? null : entry);
+    }
+
+    // rimuove tutti i file sotto una cartella cancellata
+    public void removeTree(Path dir) {
+        entries.values().removeIf(entry -> !entry.isInSegment() && entry.getPath().startsWith(dir));
+    }
+
+    public Map<KeyHash, FileEntry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    //i file nella cartella interna del nodo non sono chiavi del ring
+    public boolean isInternal(Path file) {
+        Path relative = root.relativize(file);
+        return relative.getNameCount() > 0 && relative.getName(0).toString().equals(INTERNAL_DIR);
+    }
+
+    // avvia un thread daemon che tiene l'indice allineato con le modifiche esterne
+    public synchronized void startWatcher() {
+        if (watcherThread != null)
+            return;
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            registerAll(root);
+        } catch (IOException e) {
+            throw new RuntimeException("Error starting watcher on " + root, e);
+        }
+        watcherThread = new Thread(this::watchLoop, "key-index-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    public synchronized void close() {
+        if (watcherThread == null)
+            return;
+        watcherThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("error closing watcher on " + root);
+        }
+        watcherThread = null;
+    }
+
+    private void registerAll(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path d : (Iterable<Path>) paths.filter(p -> !isInternal(p) && Files.isDirectory(p))::iterator) {
+                watchedDirs.put(d.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), d);
+            }
+        }
+    }
+
+    private void watchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    //eventi persi, l'unica cosa sicura è riscansionare
+                    System.out.println("watcher overflow, rebuilding index of " + root);
+                    build();
+                    continue;
+                }
+                if (dir == null)
+                    continue;
+                handleEvent(event.kind(), dir.resolve((Path) event.context()));
+            }
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private void handleEvent(WatchEvent.Kind<?> kind, Path changed) {
+        if (isInternal(changed))
+            return;
+        try {
+            if (kind == ENTRY_DELETE) {
+                //una cartella osservata porta via tutti i file che conteneva
+                if (watchedDirs.containsValue(changed))
+                    removeTree(changed);
+                else
+                    remove(changed);
+            } else if (Files.isDirectory(changed)) {
+                if (kind == ENTRY_CREATE) {
+                    //nuova sottocartella: registrala e indicizza quello che contiene già
+                    registerAll(changed);
+                    try (Stream<Path> paths = Files.walk(changed)) {
+                        paths.filter(Files::isRegularFile).forEach(this::put);
+                    }
+                }
+            } else if (Files.isRegularFile(changed)) {
+                put(changed);
+            }
+        } catch (Exception e) {
+            System.err.println("error updating index for " + changed + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.metrics.NodeMetrics;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+import it.baddy.uni.utils.FileUtils;
+import it.baddy.uni.utils.KeyHash;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static it.baddy.uni.config.AppManagements.CONTENT_CACHE_BYTES;
+import static it.baddy.uni.config.AppManagements.DEDUP_MIN_SIZE;
+import static it.baddy.uni.config.AppManagements.INDEX_SNAPSHOT_INTERVAL_SEC;
+import static it.baddy.uni.config.AppManagements.INTERNAL_DIR;
+import static it.baddy.uni.config.AppManagements.MAPPED_REGION_CACHE_SIZE;
+import static it.baddy.uni.config.AppManagements.MAPPED_WINDOW_SIZE;
+import static it.baddy.uni.config.AppManagements.SEGMENT_COMPACT_INTERVAL_SEC;
+import static it.baddy.uni.config.AppManagements.SEGMENT_COMPACT_PERCENT;
+import static it.baddy.uni.config.AppManagements.SEGMENT_MAX_RECORD;
+import static it.baddy.uni.config.AppManagements.SEGMENT_SIZE;
+import static it.baddy.uni.config.AppManagements.TRANSFER_CHUNK_SIZE;
+import static it.baddy.uni.config.AppManagements.TRANSFER_IDLE_TIMEOUT_SEC;
+
+//file memorizzati sul nodo: unico punto da cui passano letture, scritture e cancellazioni,
+//così indice, regioni mappate e sessioni di trasferimento restano coerenti
+public class LocalStorage {
+
+    //un solo thread per la JVM, come per la compattazione dei segmenti
+    private static final ScheduledExecutorService SNAPSHOTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "index-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path root;
+    private final KeyIndex index;
+    private final TransferManager transfers;
+    private final MappedRegionCache mappedRegions;
+    private final ContentCache contentCache = new ContentCache(CONTENT_CACHE_BYTES);
+    private final NodeMetrics metrics;
+    //null se la deduplicazione è disattivata
+    private final DedupStore dedup;
+    //file piccoli in coda ai segmenti, null se disattivati
+    private final SegmentStore segments;
+    private final GroupCommit commits = GroupCommit.configured();
+    private final Path tmpDir;
+    //null se gli snapshot dell'indice sono disattivati
+    private final ScheduledFuture<?> snapshots;
+
+    public LocalStorage(long nodeId, Path root) {
+        this(nodeId, root, new NodeMetrics(nodeId));
+    }
+
+    public LocalStorage(long nodeId, Path root, NodeMetrics metrics) {
+        this(nodeId, root, metrics, true);
+    }
+
+    //senza watcher l'indice segue solo le operazioni fatte dal nodo
+    //(il simulatore non può aprire un watch service per ognuno dei suoi nodi)
+    public LocalStorage(long nodeId, Path root, NodeMetrics metrics, boolean watchChanges) {
+        this.root = root;
+        this.tmpDir = root.resolve(INTERNAL_DIR).resolve("tmp");
+        this.metrics = metrics;
+        this.index = new KeyIndex(root);
+        //con uno snapshot valido il nodo parte subito e la cartella si ricontrolla in background
+        boolean fromSnapshot = INDEX_SNAPSHOT_INTERVAL_SEC > 0 && index.loadSnapshot();
+        if (!fromSnapshot) {
+            index.build();
+            if (watchChanges)
+                index.startWatcher();
+        }
+        this.transfers = new TransferManager(nodeId, index, TRANSFER_CHUNK_SIZE, TRANSFER_IDLE_TIMEOUT_SEC, metrics);
+        this.mappedRegions = new MappedRegionCache(MAPPED_REGION_CACHE_SIZE, MAPPED_WINDOW_SIZE);
+        this.dedup = createDedup(root);
+        this.segments = SEGMENT_MAX_RECORD > 0 ? openSegments() : null;
+        if (fromSnapshot)
+            startReconcile(watchChanges);
+        this.snapshots = INDEX_SNAPSHOT_INTERVAL_SEC > 0
+                ? SNAPSHOTS.scheduleWithFixedDelay(this::saveSnapshot, INDEX_SNAPSHOT_INTERVAL_SEC, INDEX_SNAPSHOT_INTERVAL_SEC, TimeUnit.SECONDS)
+                : null;
+    }
+
+    //il watcher parte prima della visita, così le modifiche esterne fatte durante non si perdono
+    private void startReconcile(boolean watchChanges) {
+        Thread reconcile = new Thread(() -> {
+            try {
+                if (watchChanges)
+                    index.startWatcher();
+                index.reconcile(fileName -> {
+                    if (segments != null)
+                        segments.delete(fileName);
+                });
+            } catch (Exception e) {
+                System.err.println("error reconciling index of " + root + ": " + e.getMessage());
+            }
+        }, "index-reconcile");
+        reconcile.setDaemon(true);
+        reconcile.start();
+    }
+
+    public void saveSnapshot() {
+        if (INDEX_SNAPSHOT_INTERVAL_SEC <= 0)
+            return;
+        try {
+            index.saveSnapshot(commits.enabled());
+        } catch (Exception e) {
+            System.err.println("error saving index snapshot of " + root + ": " + e.getMessage());
+        }
+    }
+
+    //i record dei segmenti entrano nell'indice accanto ai file; un file su disco con lo stesso
+    //nome è più recente (es. upload a chunk terminato prima di un crash) e il record viene scartato
+    private SegmentStore openSegments() {
+        SegmentStore store = new SegmentStore(root, SEGMENT_SIZE, SEGMENT_COMPACT_PERCENT, SEGMENT_COMPACT_INTERVAL_SEC);
+        List<String> stale = new ArrayList<>();
+        store.forEach((fileName, size) -> {
+            FileEntry existing = index.get(fileName);
+            //con l'indice da uno snapshot il file potrebbe non esserci più
+            if (existing != null && !existing.isInSegment() && Files.exists(existing.getPath()))
+                stale.add(fileName);
+            else
+                index.putSegment(fileName, size);
+        });
+        stale.forEach(store::delete);
+        return store;
+    }
+
+    private static DedupStore createDedup(Path root) {
+        if (DEDUP_MIN_SIZE <= 0)
+            return null;
+        if (!DedupStore.supported(root)) {
+            System.err.println("hard links not supported in " + root + ", deduplication disabled");
+            return null;
+        }
+        return new DedupStore(root, DEDUP_MIN_SIZE);
+    }
+
+    public FileEntry find(KeyHash key) {
+        return index.get(key);
+    }
+
+    //null se il file non è presente sul nodo; i file letti spesso arrivano dalla cache
+    //finché la versione nell'indice non cambia (l'array restituito non va modificato).
+    //Il contenuto è quello salvato, eventualmente compresso: chi lo consegna al client usa Blobs.decode
+    public byte[] read(KeyHash key) {
+        FileEntry entry = index.get(key);
+        if (entry == null)
+            return null;
+        byte[] cached = contentCache.get(key, entry.getVersion());
+        if (cached != null) {
+            metrics.cacheHit(NodeMetrics.CONTENT_CACHE);
+            return cached;
+        }
+        metrics.cacheMiss(NodeMetrics.CONTENT_CACHE);
+        long start = System.nanoTime();
+        byte[] content = entry.isInSegment() ? segments.get(entry.getFileName()) : FileUtils.readFile(entry.getPath());
+        metrics.diskRead(start);
+        if (content == null)
+            return null;
+        contentCache.put(key, entry.getVersion(), content);
+        return content;
+    }
+
+    public byte[] readRange(KeyHash key, long offset, int length) {
+        FileEntry entry = index.get(key);
+        if (entry == null)
+            return null;
+        if (entry.isInSegment() || isEncoded(entry)) {
+            //i file compressi e quelli nei segmenti vengono letti interi (passando dalla cache) e poi tagliati
+            byte[] content = read(key);
+            return content == null ? null : slice(Blobs.decode(content), offset, length);
+        }
+        long start = System.nanoTime();
+        byte[] range = mappedRegions.read(entry, offset, length);
+        metrics.diskRead(start);
+        return range;
+    }
+
+    private boolean isEncoded(FileEntry entry) {
+        return entry.getSize() >= Blobs.HEADER_SIZE && Blobs.isEncoded(mappedRegions.read(entry, 0, Blobs.HEADER_SIZE));
+    }
+
+    private static byte[] slice(byte[] content, long offset, int length) {
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException("invalid range offset=" + offset + " length=" + length);
+        long end = Math.min(content.length, offset + length);
+        return offset >= end ? new byte[0] : Arrays.copyOfRange(content, (int) offset, (int) end);
+    }
+
+    //scrive (o sovrascrive) il file, ritorna true se è stato creato; il contenuto arriva già
+    //codificato dal nodo di ingresso (Blobs.encode) e viene salvato secondo la configurazione di questo nodo
+    public boolean write(String fileName, byte[] content) {
+        Path file = root.resolve(fileName);
+        //le regioni mappate e la copia in cache del vecchio contenuto non sono più valide
+        mappedRegions.invalidate(file);
+        contentCache.invalidate(KeyHash.of(fileName));
+        byte[] stored = Blobs.store(content);
+        FileEntry previous = index.get(fileName);
+        long start = System.nanoTime();
+        boolean created;
+        if (segments != null && stored.length <= SEGMENT_MAX_RECORD) {
+            segments.put(fileName, stored);
+            index.putSegment(fileName, stored.length);
+            //il nome passa da un file al segmento: il file non serve più
+            if (previous != null && !previous.isInSegment())
+                deleteFile(previous.getPath());
+            created = previous == null;
+        } else {
+            created = dedup != null ? dedup.write(file, stored) : replaceFile(file, stored);
+            index.put(file);
+            if (previous != null && previous.isInSegment()) {
+                segments.delete(fileName);
+                created = false;
+            }
+        }
+        metrics.diskWrite(start);
+        return created;
+    }
+
+    //il contenuto va in un file temporaneo (con fsync se attivo) che sostituisce il file con un rename:
+    //dopo un crash c'è la versione vecchia o quella nuova, mai un file a metà
+    private boolean replaceFile(Path file, byte[] content) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(tmpDir);
+            tmp = Files.createTempFile(tmpDir, "write-", ".part");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                if (commits.enabled())
+                    channel.force(false);
+            }
+            Path parent = file.getParent();
+            Files.createDirectories(parent);
+            boolean created = !Files.exists(file);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            //il rename diventa persistente con la sync della cartella, condivisa con le altre scritture
+            commits.syncDirectory(parent);
+            System.out.println((created ? "created file " : "updated file ") + file);
+            return created;
+        } catch (IOException e) {
+            if (tmp != null)
+                FileUtils.deleteFile(tmp);
+            throw new RuntimeException("Error writing file " + file, e);
+        }
+    }
+
+    private boolean deleteFile(Path file) {
+        boolean deleted = dedup != null ? dedup.delete(file) : FileUtils.deleteFile(file);
+        if (deleted)
+            commits.syncDirectory(file.getParent());
+        return deleted;
+    }
+
+    //false se il file non era presente
+    public boolean delete(KeyHash key) {
+        FileEntry entry = index.get(key);
+        if (entry == null)
+            return false;
+        mappedRegions.invalidate(entry.getPath());
+        contentCache.invalidate(key);
+        if (entry.isInSegment()) {
+            boolean deleted = segments.delete(entry.getFileName());
+            index.remove(key);
+            return deleted;
+        }
+        boolean deleted = deleteFile(entry.getPath());
+        //la entry va tolta comunque: se il file non c'era più era già obsoleta
+        index.remove(entry.getPath());
+        return deleted;
+    }
+
+    public TransferHandle openRead(KeyHash key) {
+        FileEntry entry = index.get(key);
+        if (entry == null)
+            return null;
+        //i chunk di un file compresso partono già decompressi
+        if (entry.isInSegment()) {
+            //i record dei segmenti sono piccoli, si decodificano in memoria
+            byte[] content = read(key);
+            if (content == null)
+                return null;
+            byte[] raw = Blobs.decode(content);
+            return transfers.openRead(entry, new ByteArrayInputStream(raw), raw.length);
+        }
+        if (isEncoded(entry))
+            return openDecoded(entry);
+        return transfers.openRead(entry);
+    }
+
+    //file compresso letto a stream: in memoria c'è solo il chunk che si sta decomprimendo
+    private TransferHandle openDecoded(FileEntry entry) {
+        try {
+            InputStream in = Files.newInputStream(entry.getPath());
+            byte[] header;
+            try {
+                header = in.readNBytes(Blobs.HEADER_SIZE);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            //il file è stato sostituito dopo il controllo: si legge com'è ora
+            if (!Blobs.isEncoded(header)) {
+                in.close();
+                return transfers.openRead(entry);
+            }
+            return transfers.openRead(entry, Blobs.decode(header, in), Blobs.rawLength(header, entry.getSize()));
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening " + entry.getPath(), e);
+        }
+    }
+
+    //upload a chunk di un client: il contenuto arriva in chiaro (vedi TransferManager.openUpload)
+    public TransferHandle openUpload(String fileName, ReplicaSink downstream) {
+        return openWrite(fileName, downstream, null, true);
+    }
+
+    //chunk già nel formato salvato (repliche, passaggio delle chiavi)
+    public TransferHandle openWrite(String fileName, ReplicaSink downstream) {
+        return openWrite(fileName, downstream, null);
+    }
+
+    public TransferHandle openWrite(String fileName, ReplicaSink downstream, Runnable onCommit) {
+        return openWrite(fileName, downstream, onCommit, false);
+    }
+
+    private TransferHandle openWrite(String fileName, ReplicaSink downstream, Runnable onCommit, boolean raw) {
+        Path file = root.resolve(fileName);
+        mappedRegions.invalidate(file);
+        contentCache.invalidate(KeyHash.of(fileName));
+        //il file può esistere anche solo come record di un segmento: lo dice l'indice
+        BooleanSupplier exists = () -> index.get(fileName) != null;
+        if (segments == null)
+            return transfers.openWrite(file, downstream, onCommit, raw, exists);
+        //gli upload a chunk finiscono sempre in un file: l'eventuale record nel segmento è superato
+        return transfers.openWrite(file, downstream, () -> {
+            segments.delete(fileName);
+            if (onCommit != null)
+                onCommit.run();
+        }, raw, exists);
+    }
+
+    //contenuto salvato di un file del nodo (su disco o in un segmento), per il passaggio delle chiavi
+    public InputStream openStream(Path file) throws IOException {
+        FileEntry entry = index.get(file.getFileName().toString());
+        if (entry != null && entry.isInSegment()) {
+            byte[] content = segments.get(entry.getFileName());
+            if (content == null)
+                throw new NoSuchFileException(file.toString());
+            return new ByteArrayInputStream(content);
+        }
+        return Files.newInputStream(file);
+    }
+
+    public long sizeOf(Path file) throws IOException {
+        FileEntry entry = index.get(file.getFileName().toString());
+        return entry != null && entry.isInSegment() ? entry.getSize() : Files.size(file);
+    }
+
+    public SegmentStore getSegments() {
+        return segments;
+    }
+
+    public DedupStore getDedup() {
+        return dedup;
+    }
+
+    public ContentCache getContentCache() {
+        return contentCache;
+    }
+
+    public KeyIndex getIndex() {
+        return index;
+    }
+
+    public TransferManager getTransfers() {
+        return transfers;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    //salva lo snapshot dell'indice: al prossimo avvio la cartella non va riscansionata
+    public void close() {
+        if (snapshots != null)
+            snapshots.cancel(false);
+        saveSnapshot();
+        index.close();
+        transfers.shutdown();
+        if (segments != null)
+            segments.close();
+    }
+}
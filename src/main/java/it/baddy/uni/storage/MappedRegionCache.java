@@ -0,0 +1,128 @@
+package it.baddy.uni.storage;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+//letture di intervalli di byte tramite FileChannel.map: le regioni mappate dei file
+//più letti restano in una piccola cache LRU e i dati non passano mai per un read intero
+public class MappedRegionCache {
+
+    private final int capacity;
+    private final long windowSize;
+    private final Map<RegionKey, Region> regions = new LinkedHashMap<>(16, 0.75f, true);
+
+    public MappedRegionCache(int capacity, long windowSize) {
+        this.capacity = capacity;
+        this.windowSize = windowSize;
+    }
+
+    //legge al più length byte a partire da offset, meno se il file finisce prima
+    public byte[] read(FileEntry entry, long offset, int length) {
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException("invalid range offset=" + offset + " length=" + length);
+        long end = Math.min(entry.getSize(), offset + length);
+        if (offset >= end)
+            return new byte[0];
+
+        byte[] out = new byte[(int) (end - offset)];
+        long position = offset;
+        while (position < end) {
+            long window = position / windowSize;
+            MappedByteBuffer buffer = region(entry, window);
+            int inWindow = (int) (position - window * windowSize);
+            int count = (int) Math.min(end - position, buffer.capacity() - inWindow);
+            //slice: la posizione del buffer condiviso non viene toccata
+            buffer.slice(inWindow, count).get(out, (int) (position - offset), count);
+            position += count;
+        }
+        return out;
+    }
+
+    public synchronized void invalidate(Path file) {
+        regions.keySet().removeIf(key -> key.path.equals(file));
+    }
+
+    public synchronized int size() {
+        return regions.size();
+    }
+
+    private synchronized MappedByteBuffer region(FileEntry entry, long window) {
+        RegionKey key = new RegionKey(entry.getPath(), window);
+        Region region = regions.get(key);
+        //il file è cambiato dopo che la regione è stata mappata
+        if (region != null && (region.size != entry.getSize() || region.lastModified != entry.getLastModified())) {
+            invalidate(entry.getPath());
+            region = null;
+        }
+        if (region == null) {
+            region = map(entry, window);
+            regions.put(key, region);
+            evict();
+        }
+        return region.buffer;
+    }
+
+    private Region map(FileEntry entry, long window) {
+        long start = window * windowSize;
+        try (FileChannel channel = FileChannel.open(entry.getPath(), StandardOpenOption.READ)) {
+            //mai oltre la fine reale del file, anche se l'indice non è ancora aggiornato
+            long length = Math.min(windowSize, Math.min(entry.getSize(), channel.size()) - start);
+            if (length <= 0)
+                throw new IllegalStateException("file " + entry.getPath() + " shrank while reading");
+            //la mappatura resta valida anche dopo la chiusura del canale
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            return new Region(buffer, entry.getSize(), entry.getLastModified());
+        } catch (IOException e) {
+            throw new RuntimeException("Error mapping " + entry.getPath(), e);
+        }
+    }
+
+    private void evict() {
+        Iterator<RegionKey> it = regions.keySet().iterator();
+        while (regions.size() > capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static final class Region {
+        private final MappedByteBuffer buffer;
+        private final long size;
+        private final long lastModified;
+
+        private Region(MappedByteBuffer buffer, long size, long lastModified) {
+            this.buffer = buffer;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static final class RegionKey {
+        private final Path path;
+        private final long window;
+
+        private RegionKey(Path path, long window) {
+            this.path = path;
+            this.window = window;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RegionKey other))
+                return false;
+            return window == other.window && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, window);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package it.baddy.uni.storage;
+
+//destinazione a valle di una scrittura a chunk (la replica successiva della catena):
+//riceve ogni chunk mentre il nodo lo scrive in locale
+public interface ReplicaSink {
+
+    void write(byte[] chunk) throws Exception;
+
+    void commit() throws Exception;
+
+    void abort();
+
+    //la copia a valle non è arrivata (scrittura o commit falliti) e il file è stato salvato in locale:
+    //chi ha aperto la catena deve farla recuperare
+    default void lost() {
+    }
+}
@@ -0,0 +1,427 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.utils.BufferPool;
+import it.baddy.uni.utils.KeyHash;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static it.baddy.uni.config.AppManagements.INTERNAL_DIR;
+
+//file piccoli salvati in coda a pochi file grandi (segmenti) invece di un file ciascuno:
+//una scrittura è un append sequenziale, una lettura un solo pread alla posizione tenuta in memoria.
+//Un record sovrascritto o cancellato resta nel suo segmento finché la compattazione non copia
+//in coda quelli ancora validi e cancella il segmento; all'avvio i segmenti vengono riletti in ordine
+public class SegmentStore {
+
+    //crc, lunghezza del nome, lunghezza del contenuto (-1 per una cancellazione)
+    private static final int HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+    private static final int MAX_NAME_LENGTH = 4096;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    //un solo thread per la JVM, come lo sweeper delle sessioni di trasferimento
+    private static final ScheduledExecutorService COMPACTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "segment-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path dir;
+    private final long segmentSize;
+    private final int compactPercent;
+    private final Map<KeyHash, Location> locations = new ConcurrentHashMap<>();
+    //segmenti per id crescente: l'ultimo è quello in scrittura
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    //append, sovrascritture e spostamenti della compattazione passano da qui uno alla volta
+    private final Object appendLock = new Object();
+    private volatile Segment active;
+    private final ScheduledFuture<?> compaction;
+    //un append è confermato dopo la sync del segmento, condivisa dalle scritture dello stesso gruppo
+    private final GroupCommit commits = GroupCommit.configured();
+
+    public SegmentStore(Path root, long segmentSize, int compactPercent, int compactIntervalSec) {
+        this.dir = root.resolve(INTERNAL_DIR).resolve("segments");
+        this.segmentSize = segmentSize;
+        this.compactPercent = compactPercent;
+        try {
+            Files.createDirectories(dir);
+            load();
+            if (active == null)
+                roll();
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening segments in " + dir, e);
+        }
+        this.compaction = compactIntervalSec > 0
+                ? COMPACTOR.scheduleWithFixedDelay(this::compact, compactIntervalSec, compactIntervalSec, TimeUnit.SECONDS)
+                : null;
+    }
+
+    //rilegge i segmenti in ordine: vince l'ultimo record di ogni nome
+    private void load() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().startsWith(PREFIX)).sorted().toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            String name = file.getFileName().toString();
+            long id = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            Segment segment = new Segment(id, file);
+            segments.put(id, segment);
+            long valid = scan(segment, (offset, record) -> apply(segment, offset, record));
+            if (valid < segment.channel.size()) {
+                //record scritto a metà (crash durante un append): quello che segue non è leggibile
+                System.err.println("segment " + file + " truncated at " + valid + " of " + segment.channel.size() + " bytes");
+                if (i == files.size() - 1)
+                    segment.channel.truncate(valid);
+            }
+            segment.size = valid;
+            active = segment;
+        }
+        System.out.println("loaded " + locations.size() + " records from " + files.size() + " segments in " + dir);
+    }
+
+    private void apply(Segment segment, long offset, Record record) {
+        KeyHash key = KeyHash.of(record.name);
+        if (record.length == TOMBSTONE) {
+            segment.deadBytes.addAndGet(record.size());
+            Location old = locations.remove(key);
+            if (old != null)
+                old.segment.deadBytes.addAndGet(old.recordSize);
+        } else {
+            Location old = locations.put(key, new Location(record.name, segment, offset + record.contentOffset(), record.length, record.size()));
+            if (old != null)
+                old.segment.deadBytes.addAndGet(old.recordSize);
+        }
+    }
+
+    //null se il nome non è nei segmenti
+    public byte[] get(String name) {
+        KeyHash key = KeyHash.of(name);
+        Location location = locations.get(key);
+        while (location != null) {
+            try {
+                return read(location);
+            } catch (ClosedChannelException e) {
+                //segmento compattato nel frattempo (il record ora è altrove) o canale chiuso da un interrupt
+                Location moved = locations.get(key);
+                if (moved == location) {
+                    if (location.segment.deleted)
+                        throw new IllegalStateException("record " + name + " points to a deleted segment");
+                    location.segment.reopen();
+                }
+                location = moved;
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading " + name + " from " + location.segment.path, e);
+            }
+        }
+        return null;
+    }
+
+    public boolean contains(String name) {
+        return locations.containsKey(KeyHash.of(name));
+    }
+
+    //i record validi (nome, lunghezza), per l'indice del nodo all'avvio
+    public void forEach(BiConsumer<String, Integer> action) {
+        locations.values().forEach(location -> action.accept(location.name, location.length));
+    }
+
+    //scrive (o sostituisce) il contenuto del nome, ritorna true se è stato creato
+    public boolean put(String name, byte[] content) {
+        KeyHash key = KeyHash.of(name);
+        Location location;
+        Location old;
+        try (BufferPool.Buffer record = encode(name, content)) {
+            synchronized (appendLock) {
+                location = append(name, record.buffer(), content.length);
+                old = locations.put(key, location);
+                if (old != null)
+                    old.segment.deadBytes.addAndGet(old.recordSize);
+            }
+        }
+        sync(location.segment);
+        return old == null;
+    }
+
+    private void sync(Segment segment) {
+        commits.await(segment, segment::force);
+    }
+
+    //false se il nome non era nei segmenti
+    public boolean delete(String name) {
+        KeyHash key = KeyHash.of(name);
+        Location location;
+        synchronized (appendLock) {
+            if (!locations.containsKey(key))
+                return false;
+            try (BufferPool.Buffer tombstone = encode(name, null)) {
+                location = append(name, tombstone.buffer(), TOMBSTONE);
+            }
+            location.segment.deadBytes.addAndGet(location.recordSize);
+            Location old = locations.remove(key);
+            old.segment.deadBytes.addAndGet(old.recordSize);
+        }
+        sync(location.segment);
+        return true;
+    }
+
+    private Location append(String name, ByteBuffer record, int length) {
+        int recordSize = record.remaining();
+        try {
+            if (active.size > 0 && active.size + recordSize > segmentSize)
+                roll();
+            Segment segment = active;
+            long offset = segment.size;
+            while (record.hasRemaining()) {
+                try {
+                    segment.channel.write(record, offset + record.position());
+                } catch (ClosedChannelException e) {
+                    //canale chiuso da un thread interrotto: il record si riscrive da capo
+                    segment.reopen();
+                    record.rewind();
+                }
+            }
+            segment.size = offset + recordSize;
+            return new Location(name, segment, offset + recordSize - Math.max(length, 0), length, recordSize);
+        } catch (IOException e) {
+            throw new RuntimeException("Error appending " + name + " to " + active.path, e);
+        }
+    }
+
+    private void roll() throws IOException {
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment segment = new Segment(id, dir.resolve(String.format("%s%016d%s", PREFIX, id, SUFFIX)));
+        segments.put(id, segment);
+        //il file nuovo deve esistere dopo un crash prima che i suoi record vengano confermati
+        if (commits.enabled())
+            GroupCommit.syncDirectoryNow(dir);
+        if (active != null)
+            System.out.println("segment " + active.path.getFileName() + " sealed at " + active.size + " bytes");
+        active = segment;
+    }
+
+    //il canale legge in un buffer diretto del pool, poi una sola copia nel contenuto restituito
+    private static byte[] read(Location location) throws IOException {
+        try (BufferPool.Buffer pooled = BufferPool.shared().acquire(location.length)) {
+            ByteBuffer content = pooled.buffer();
+            while (content.hasRemaining()) {
+                if (location.segment.channel.read(content, location.offset + content.position()) < 0)
+                    throw new IOException("segment ends inside a record");
+            }
+            byte[] bytes = new byte[location.length];
+            content.flip().get(bytes);
+            return bytes;
+        }
+    }
+
+    //record in un buffer del pool, da chiudere dopo l'append
+    private static BufferPool.Buffer encode(String name, byte[] content) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        BufferPool.Buffer pooled = BufferPool.shared().acquire(HEADER_SIZE + nameBytes.length + (content == null ? 0 : content.length));
+        ByteBuffer record = pooled.buffer();
+        record.putInt(0).putInt(nameBytes.length).putInt(content == null ? TOMBSTONE : content.length).put(nameBytes);
+        if (content != null)
+            record.put(content);
+        CRC32C crc = new CRC32C();
+        crc.update(record.flip().position(Integer.BYTES));
+        record.putInt(0, (int) crc.getValue()).rewind();
+        return pooled;
+    }
+
+    //legge il segmento dall'inizio e restituisce dove finiscono i record integri
+    private static long scan(Segment segment, RecordVisitor visitor) throws IOException {
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path), 1 << 20))) {
+            while (true) {
+                byte[] header = in.readNBytes(HEADER_SIZE);
+                if (header.length < HEADER_SIZE)
+                    return offset;
+                ByteBuffer fields = ByteBuffer.wrap(header);
+                int crc = fields.getInt();
+                int nameLength = fields.getInt();
+                int length = fields.getInt();
+                if (nameLength <= 0 || nameLength > MAX_NAME_LENGTH || length < TOMBSTONE)
+                    return offset;
+                byte[] name = in.readNBytes(nameLength);
+                byte[] content = in.readNBytes(Math.max(length, 0));
+                if (name.length < nameLength || content.length < Math.max(length, 0))
+                    return offset;
+                CRC32C check = new CRC32C();
+                check.update(header, Integer.BYTES, HEADER_SIZE - Integer.BYTES);
+                check.update(name);
+                check.update(content);
+                if ((int) check.getValue() != crc)
+                    return offset;
+                Record record = new Record(new String(name, StandardCharsets.UTF_8), nameLength, length);
+                visitor.visit(offset, record);
+                offset += record.size();
+            }
+        }
+    }
+
+    //compatta i segmenti chiusi con abbastanza spazio superato
+    public void compact() {
+        for (Segment segment : segments.values()) {
+            if (segment == active || segment.deadBytes.get() * 100 < segment.size * compactPercent)
+                continue;
+            try {
+                compact(segment);
+            } catch (Exception e) {
+                System.err.println("compaction of " + segment.path + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        AtomicLong moved = new AtomicLong();
+        AtomicLong movedBytes = new AtomicLong();
+        //le cancellazioni servono finché un segmento più vecchio può contenere il record cancellato
+        boolean olderSegments = segments.firstKey() < segment.id;
+        scan(segment, (offset, record) -> {
+            KeyHash key = KeyHash.of(record.name);
+            if (record.length == TOMBSTONE) {
+                if (!olderSegments)
+                    return;
+                synchronized (appendLock) {
+                    if (!locations.containsKey(key)) {
+                        try (BufferPool.Buffer tombstone = encode(record.name, null)) {
+                            Location copy = append(record.name, tombstone.buffer(), TOMBSTONE);
+                            copy.segment.deadBytes.addAndGet(copy.recordSize);
+                        }
+                    }
+                }
+                return;
+            }
+            Location location = locations.get(key);
+            if (location == null || location.segment != segment || location.offset != offset + record.contentOffset())
+                return;
+            try (BufferPool.Buffer copy = encode(record.name, read(location))) {
+                synchronized (appendLock) {
+                    //sovrascritto o cancellato mentre lo leggevamo: la versione nuova è già più avanti
+                    if (locations.get(key) != location)
+                        return;
+                    locations.put(key, append(record.name, copy.buffer(), record.length));
+                }
+            }
+            moved.incrementAndGet();
+            movedBytes.addAndGet(record.size());
+        });
+        //le copie devono essere su disco prima di cancellare gli originali
+        if (commits.enabled())
+            active.force();
+        segments.remove(segment.id);
+        segment.deleted = true;
+        segment.channel.close();
+        Files.delete(segment.path);
+        System.out.println("compacted segment " + segment.path.getFileName() + ": " + moved.get() + " records moved, "
+                + (segment.size - movedBytes.get()) + " bytes freed");
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    //byte occupati da record superati in tutti i segmenti
+    public long deadBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.deadBytes.get()).sum();
+    }
+
+    public void close() {
+        if (compaction != null)
+            compaction.cancel(false);
+        synchronized (appendLock) {
+            for (Segment segment : segments.values()) {
+                try {
+                    segment.channel.close();
+                } catch (IOException e) {
+                    System.err.println("error closing segment " + segment.path);
+                }
+            }
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(long offset, Record record) throws IOException;
+    }
+
+    private record Record(String name, int nameLength, int length) {
+        int contentOffset() {
+            return HEADER_SIZE + nameLength;
+        }
+
+        int size() {
+            return contentOffset() + Math.max(length, 0);
+        }
+    }
+
+    //offset è l'inizio del contenuto nel segmento
+    private record Location(String name, Segment segment, long offset, int length, int recordSize) {
+    }
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        volatile FileChannel channel;
+        //fine dei record scritti, cambia solo sotto appendLock
+        volatile long size;
+        final AtomicLong deadBytes = new AtomicLong();
+        volatile boolean deleted;
+
+        Segment(long id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = open();
+        }
+
+        private FileChannel open() throws IOException {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        void force() throws IOException {
+            //segmento compattato: i record sono già stati copiati (e sincronizzati) altrove
+            if (deleted)
+                return;
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                //chiuso da un interrupt: i dati scritti sono comunque nel file
+                reopen();
+                channel.force(false);
+            }
+        }
+
+        //un thread interrotto durante l'I/O chiude il canale per tutti
+        synchronized void reopen() {
+            if (deleted || channel.isOpen())
+                return;
+            try {
+                channel = open();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reopening " + path, e);
+            }
+        }
+    }
+}
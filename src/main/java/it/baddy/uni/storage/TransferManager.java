@@ -0,0 +1,431 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.metrics.NodeMetrics;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import static it.baddy.uni.config.AppManagements.INTERNAL_DIR;
+
+//sessioni di trasferimento a chunk servite dal nodo responsabile: ogni sessione
+//tiene al massimo un paio di chunk in memoria qualunque sia la dimensione del file
+public class TransferManager {
+
+    private final long nodeId;
+    private final NodeMetrics metrics;
+    private final KeyIndex keyIndex;
+    private final int chunkSize;
+    private final long idleTimeoutMillis;
+    private final Path tmpDir;
+    private final GroupCommit commits = GroupCommit.configured();
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE / 2));
+    //I/O su disco fatto in background per sovrapporlo al traffico di rete
+    private final ExecutorService ioExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "transfer-io");
+        t.setDaemon(true);
+        return t;
+    });
+    //un solo thread per la JVM: con il simulatore ci sono migliaia di nodi nello stesso processo
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "transfer-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledFuture<?> sweep;
+
+    public TransferManager(long nodeId, KeyIndex keyIndex, int chunkSize, int idleTimeoutSec) {
+        this(nodeId, keyIndex, chunkSize, idleTimeoutSec, new NodeMetrics(nodeId));
+    }
+
+    public TransferManager(long nodeId, KeyIndex keyIndex, int chunkSize, int idleTimeoutSec, NodeMetrics metrics) {
+        this.nodeId = nodeId;
+        this.metrics = metrics;
+        this.keyIndex = keyIndex;
+        this.chunkSize = chunkSize;
+        this.idleTimeoutMillis = idleTimeoutSec * 1000L;
+        this.tmpDir = keyIndex.getRoot().resolve(INTERNAL_DIR).resolve("tmp");
+        this.sweep = SWEEPER.scheduleAtFixedRate(this::closeIdleSessions, idleTimeoutSec, idleTimeoutSec, TimeUnit.SECONDS);
+    }
+
+    public TransferHandle openRead(FileEntry entry) {
+        try {
+            FileChannel channel = FileChannel.open(entry.getPath(), StandardOpenOption.READ);
+            return openRead(entry, channel, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening " + entry.getPath(), e);
+        }
+    }
+
+    //sessione sul contenuto già decompresso del file (size byte): viene letto dallo stream
+    //un chunk alla volta, come per i file normali, e lo stream si chiude con la sessione
+    public TransferHandle openRead(FileEntry entry, InputStream content, long size) {
+        return openRead(entry, Channels.newChannel(content), size);
+    }
+
+    private TransferHandle openRead(FileEntry entry, ReadableByteChannel channel, long size) {
+        ReadSession session = new ReadSession(nextId.getAndIncrement(), channel);
+        session.prefetch();
+        sessions.put(session.id, session);
+        System.out.println("opened read session " + session.id + " for " + entry.getPath());
+        return new TransferHandle(nodeId, session.id, size, chunkSize);
+    }
+
+    public TransferHandle openWrite(Path target) {
+        return openWrite(target, null);
+    }
+
+    public TransferHandle openWrite(Path target, ReplicaSink downstream) {
+        return openWrite(target, downstream, null);
+    }
+
+    //downstream (opzionale) riceve gli stessi chunk in parallelo alla scrittura locale,
+    //onCommit (opzionale) viene eseguito quando il file è diventato visibile
+    public TransferHandle openWrite(Path target, ReplicaSink downstream, Runnable onCommit) {
+        return openWrite(target, downstream, onCommit, false);
+    }
+
+    //raw: i chunk sono il contenuto in chiaro di un client e non nel formato salvato (Blobs);
+    //se il file inizia con il magic dei blob viene preceduto da un'intestazione IDENTITY,
+    //scritta anche a valle, così le repliche ricevono già il formato salvato
+    public TransferHandle openWrite(Path target, ReplicaSink downstream, Runnable onCommit, boolean raw) {
+        return openWrite(target, downstream, onCommit, raw, () -> Files.exists(target));
+    }
+
+    //exists dice al commit se il nome c'era già: chi salva anche fuori dai file (segmenti) lo ricava dall'indice
+    public TransferHandle openWrite(Path target, ReplicaSink downstream, Runnable onCommit, boolean raw,
+                                    BooleanSupplier exists) {
+        try {
+            Files.createDirectories(tmpDir);
+            Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+            FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            WriteSession session = new WriteSession(nextId.getAndIncrement(), channel, tmp, target, downstream, onCommit, raw, exists);
+            sessions.put(session.id, session);
+            System.out.println("opened write session " + session.id + " for " + target);
+            return new TransferHandle(nodeId, session.id, -1, chunkSize);
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening upload for " + target, e);
+        }
+    }
+
+    //restituisce il prossimo chunk, un array vuoto a fine file (e la sessione viene chiusa)
+    public byte[] readChunk(long sessionId) {
+        ReadSession session = session(sessionId, ReadSession.class);
+        byte[] chunk = session.next();
+        if (chunk.length == 0) {
+            close(sessionId);
+        }
+        return chunk;
+    }
+
+    public void writeChunk(long sessionId, byte[] chunk) {
+        if (chunk.length > chunkSize)
+            throw new IllegalArgumentException("chunk of " + chunk.length + " bytes exceeds limit " + chunkSize);
+        session(sessionId, WriteSession.class).write(chunk);
+    }
+
+    //rende visibile il file caricato, ritorna true se è stato creato
+    public boolean commit(long sessionId) {
+        WriteSession session = session(sessionId, WriteSession.class);
+        sessions.remove(sessionId);
+        try {
+            session.finish();
+            session.commitDownstream();
+            boolean created = !session.exists.getAsBoolean();
+            Path parent = session.target.getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+            Files.move(session.tmp, session.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            //i dati sono già su disco (finish), manca il rename
+            commits.syncDirectory(session.target.getParent());
+            keyIndex.put(session.target);
+            System.out.println("committed write session " + sessionId + " to " + session.target);
+            if (session.onCommit != null)
+                session.onCommit.run();
+            session.reportLostDownstream();
+            return created;
+        } catch (IOException e) {
+            throw new RuntimeException("Error committing upload to " + session.target, e);
+        } finally {
+            //con qualunque errore (anche non di I/O) il canale si chiude e il file temporaneo
+            //viene cancellato; dopo il rename non c'è più e close non fa nulla
+            session.close();
+        }
+    }
+
+    public void abort(long sessionId) {
+        close(sessionId);
+    }
+
+    public int openSessions() {
+        return sessions.size();
+    }
+
+    public void shutdown() {
+        sessions.keySet().forEach(this::close);
+        sweep.cancel(false);
+        ioExecutor.shutdownNow();
+    }
+
+    private void close(long sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session != null)
+            session.close();
+    }
+
+    private void closeIdleSessions() {
+        long now = System.currentTimeMillis();
+        sessions.forEach((id, session) -> {
+            if (now - session.lastAccess > idleTimeoutMillis) {
+                System.out.println("closing idle transfer session " + id);
+                close(id);
+            }
+        });
+    }
+
+    private <S extends Session> S session(long sessionId, Class<S> type) {
+        Session session = sessions.get(sessionId);
+        if (!type.isInstance(session))
+            throw new IllegalStateException("unknown transfer session " + sessionId);
+        session.lastAccess = System.currentTimeMillis();
+        return type.cast(session);
+    }
+
+    private abstract static class Session {
+        final long id;
+        final Channel channel;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Session(long id, Channel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("error closing transfer session " + id);
+            }
+        }
+    }
+
+    private final class ReadSession extends Session {
+        //chunk successivo letto in anticipo mentre il precedente viaggia in rete
+        private Future<byte[]> pending;
+        private final ReadableByteChannel in;
+
+        ReadSession(long id, ReadableByteChannel in) {
+            super(id, in);
+            this.in = in;
+        }
+
+        void prefetch() {
+            pending = ioExecutor.submit(this::readNext);
+        }
+
+        synchronized byte[] next() {
+            try {
+                byte[] chunk = pending.get();
+                if (chunk.length > 0)
+                    prefetch();
+                return chunk;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted reading session " + id, e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error reading session " + id, e.getCause());
+            }
+        }
+
+        //lettura direttamente nell'array che viene restituito: si ricopia solo l'ultimo chunk, più corto
+        private byte[] readNext() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+            long start = System.nanoTime();
+            while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                //continua finché il buffer è pieno o il file è finito
+            }
+            metrics.diskRead(start);
+            return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+        }
+    }
+
+    private final class WriteSession extends Session {
+        final FileChannel out;
+        final Path tmp;
+        final Path target;
+        //scrittura precedente ancora in corso: al massimo un chunk in volo
+        private Future<?> pending;
+        final Runnable onCommit;
+        final BooleanSupplier exists;
+        private ReplicaSink downstream;
+        private Future<?> pendingDownstream;
+        //copia a valle fallita durante il trasferimento, da segnalare dopo il commit locale
+        private ReplicaSink lostDownstream;
+        //lock e non synchronized: si aspetta la replica a valle, e un virtual thread fermo
+        //dentro synchronized tiene occupato il suo carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        //upload in chiaro: primi byte tenuti finché non si sa se iniziano con il magic, null dopo
+        private byte[] head;
+
+        WriteSession(long id, FileChannel channel, Path tmp, Path target, ReplicaSink downstream, Runnable onCommit,
+                     boolean raw, BooleanSupplier exists) {
+            super(id, channel);
+            this.out = channel;
+            this.tmp = tmp;
+            this.target = target;
+            this.downstream = downstream;
+            this.onCommit = onCommit;
+            this.exists = exists;
+            this.head = raw ? new byte[0] : null;
+        }
+
+        void write(byte[] chunk) {
+            lock.lock();
+            try {
+                writeLocked(chunk);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void writeLocked(byte[] chunk) {
+            if (head != null) {
+                byte[] start = Arrays.copyOf(head, head.length + chunk.length);
+                System.arraycopy(chunk, 0, start, head.length, chunk.length);
+                if (start.length < Blobs.MAGIC_SIZE) {
+                    head = start;
+                    return;
+                }
+                if (Blobs.startsWithMagic(start))
+                    submit(Blobs.identityHeader());
+                if (head.length > 0)
+                    submit(head);
+                head = null;
+            }
+            submit(chunk.clone());
+        }
+
+        //le scritture finiscono dopo il ritorno: si usa una copia del chunk, perché chi chiama
+        //(ChunkedTransfer, il trasporto locale) può riempire subito lo stesso array con il successivo
+        private void submit(byte[] copy) {
+            awaitPending();
+            pending = ioExecutor.submit(() -> {
+                ByteBuffer buffer = ByteBuffer.wrap(copy);
+                long start = System.nanoTime();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                metrics.diskWrite(start);
+                return null;
+            });
+            if (downstream != null) {
+                ReplicaSink sink = downstream;
+                pendingDownstream = ioExecutor.submit(() -> {
+                    sink.write(copy);
+                    return null;
+                });
+            }
+        }
+
+        //se la copia a valle fallisce la scrittura locale prosegue senza: dopo il commit
+        //la sink viene avvisata (lost) per far recuperare la replica
+        void commitDownstream() {
+            lock.lock();
+            try {
+                if (downstream == null)
+                    return;
+                try {
+                    downstream.commit();
+                } catch (Exception e) {
+                    System.err.println("replica commit of session " + id + " failed: " + e.getMessage());
+                    downstream.abort();
+                    lostDownstream = downstream;
+                }
+                downstream = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void reportLostDownstream() {
+            lock.lock();
+            try {
+                if (lostDownstream != null)
+                    lostDownstream.lost();
+                lostDownstream = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void finish() throws IOException {
+            lock.lock();
+            try {
+                //file più corto del magic: resta com'è
+                if (head != null && head.length > 0)
+                    submit(head);
+                head = null;
+                awaitPending();
+                out.force(true);
+                out.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void awaitPending() {
+            if (pendingDownstream != null) {
+                try {
+                    pendingDownstream.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted writing session " + id, e);
+                } catch (ExecutionException e) {
+                    System.err.println("replica write of session " + id + " failed: " + e.getCause().getMessage());
+                    downstream.abort();
+                    lostDownstream = downstream;
+                    downstream = null;
+                }
+                pendingDownstream = null;
+            }
+            if (pending == null)
+                return;
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted writing session " + id, e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error writing session " + id, e.getCause());
+            }
+        }
+
+        @Override
+        void close() {
+            super.close();
+            if (downstream != null) {
+                downstream.abort();
+                downstream = null;
+            }
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                System.err.println("error deleting temp file " + tmp);
+            }
+        }
+    }
+}
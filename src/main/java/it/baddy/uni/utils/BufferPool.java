@@ -0,0 +1,178 @@
+package it.baddy.uni.utils;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static it.baddy.uni.config.AppManagements.BUFFER_POOL_BYTES;
+
+//buffer diretti (fuori dall'heap) riusati per l'I/O di rete e di disco, così i trasferimenti
+//non riempiono l'old gen di array grandi. Le richieste sono arrotondate alla potenza di due
+//successiva (da 4 KiB a 16 MiB) e ogni classe ha la sua lista di buffer liberi; le richieste
+//più grandi, o con il pool disattivato, ricevono un buffer nell'heap che non torna al pool
+public class BufferPool {
+
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 24;
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final BufferPool SHARED = new BufferPool(BUFFER_POOL_BYTES);
+
+    private final long maxPooledBytes;
+    private final List<ArrayDeque<ByteBuffer>> free = new ArrayList<>(MAX_SHIFT - MIN_SHIFT + 1);
+    //byte liberi nelle liste e byte diretti allocati dal pool ancora vivi (liberi o in uso)
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong directBytes = new AtomicLong();
+    private final AtomicLong inUse = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    //maxPooledBytes: byte liberi tenuti al massimo nelle liste, 0 per usare sempre l'heap
+    public BufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        for (int i = MIN_SHIFT; i <= MAX_SHIFT; i++)
+            free.add(new ArrayDeque<>());
+    }
+
+    //un solo pool per la JVM, come per GroupCommit
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    public boolean enabled() {
+        return maxPooledBytes > 0;
+    }
+
+    //buffer con position 0 e limit size (la capacità può essere maggiore); va chiuso quando
+    //non serve più, dopo la chiusura non si deve più usare
+    public Buffer acquire(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("negative buffer size " + size);
+        if (!enabled() || size > 1 << MAX_SHIFT)
+            return new Buffer(ByteBuffer.allocate(size), null);
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer;
+        ArrayDeque<ByteBuffer> list = free.get(sizeClass);
+        synchronized (list) {
+            buffer = list.poll();
+        }
+        if (buffer != null) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            hits.increment();
+        } else {
+            buffer = ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SHIFT));
+            directBytes.addAndGet(buffer.capacity());
+            misses.increment();
+        }
+        inUse.incrementAndGet();
+        buffer.clear().limit(size);
+        return new Buffer(buffer, new Tracker(this, buffer.capacity(), Thread.currentThread().getName()));
+    }
+
+    private static int sizeClass(int size) {
+        return Math.max(0, Integer.SIZE - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT);
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        inUse.decrementAndGet();
+        //pool pieno: il buffer viene liberato dal GC
+        if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            directBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+        ArrayDeque<ByteBuffer> list = free.get(sizeClass(buffer.capacity()));
+        synchronized (list) {
+            list.push(buffer);
+        }
+    }
+
+    //il buffer non torna nel pool: chi l'ha perso potrebbe averne ancora una vista
+    private void leaked(int capacity, String owner) {
+        inUse.decrementAndGet();
+        directBytes.addAndGet(-capacity);
+        leaks.increment();
+        System.err.println("buffer of " + capacity + " bytes acquired by thread " + owner + " was never released");
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getDirectBytes() {
+        return directBytes.get();
+    }
+
+    public long getInUse() {
+        return inUse.get();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getLeaks() {
+        return leaks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "buffer pool: " + directBytes.get() / 1024 + " KiB direct (" + pooledBytes.get() / 1024 + " KiB free), "
+                + inUse.get() + " in use, " + hits.sum() + " hits, " + misses.sum() + " misses, " + leaks.sum() + " leaks";
+    }
+
+    //buffer preso dal pool: close lo restituisce (una volta sola). Se viene perso senza chiuderlo
+    //il Cleaner se ne accorge quando il GC lo raccoglie e lo conta come leak
+    public static final class Buffer implements AutoCloseable {
+        private final ByteBuffer buffer;
+        private final Tracker tracker;
+        private final Cleaner.Cleanable cleanable;
+
+        private Buffer(ByteBuffer buffer, Tracker tracker) {
+            this.buffer = buffer;
+            this.tracker = tracker;
+            this.cleanable = tracker == null ? null : CLEANER.register(this, tracker);
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            if (tracker == null || !tracker.released.compareAndSet(false, true))
+                return;
+            tracker.pool.recycle(buffer);
+            cleanable.clean();
+        }
+    }
+
+    //non deve riferire il Buffer, altrimenti non diventerebbe mai irraggiungibile
+    private static final class Tracker implements Runnable {
+        final BufferPool pool;
+        final int capacity;
+        final String owner;
+        final AtomicBoolean released = new AtomicBoolean();
+
+        Tracker(BufferPool pool, int capacity, String owner) {
+            this.pool = pool;
+            this.capacity = capacity;
+            this.owner = owner;
+        }
+
+        @Override
+        public void run() {
+            if (released.compareAndSet(false, true))
+                pool.leaked(capacity, owner);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package it.baddy.uni.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+//digest SHA-1 completo (160 bit) di un nome file tenuto in tre primitive:
+//è la chiave dell'indice locale e da qui si ricava la posizione sul ring
+public final class KeyHash implements Serializable {
+
+    public static final int LENGTH = 20;
+
+    //un digest e un buffer per thread, nessuna allocazione per ogni hash
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 not available", e);
+        }
+    });
+    private static final ThreadLocal<byte[]> OUTPUT = ThreadLocal.withInitial(() -> new byte[LENGTH]);
+
+    //byte 0-7, 8-15 e 16-19 del digest (big endian)
+    private final long high;
+    private final long middle;
+    private final int low;
+
+    private KeyHash(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    public static KeyHash of(String fileName) {
+        MessageDigest digest = DIGEST.get();
+        byte[] out = OUTPUT.get();
+        digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+        try {
+            digest.digest(out, 0, LENGTH);
+        } catch (java.security.DigestException e) {
+            throw new RuntimeException("SHA-1 digest failed", e);
+        }
+        return new KeyHash(readLong(out, 0), readLong(out, 8), (int) readInt(out, 16));
+    }
+
+    //i 20 byte del digest, per ricaricare una chiave senza ricalcolare lo SHA-1 (snapshot dell'indice)
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(high);
+        out.writeLong(middle);
+        out.writeInt(low);
+    }
+
+    public static KeyHash readFrom(DataInput in) throws IOException {
+        return new KeyHash(in.readLong(), in.readLong(), in.readInt());
+    }
+
+    //ultimi 64 bit del digest, cioè il digest mod 2^64
+    public long low64() {
+        return (middle << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    //i-esimo byte del digest, senza segno
+    public int byteAt(int i) {
+        if (i < 8)
+            return (int) (high >>> (56 - 8 * i)) & 0xFF;
+        if (i < 16)
+            return (int) (middle >>> (56 - 8 * (i - 8))) & 0xFF;
+        return (low >>> (24 - 8 * (i - 16))) & 0xFF;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof KeyHash other))
+            return false;
+        return high == other.high && middle == other.middle && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        //i bit del digest sono già uniformi
+        return (int) high;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(LENGTH * 2);
+        for (int i = 0; i < LENGTH; i++) {
+            sb.append(Character.forDigit(byteAt(i) >> 4, 16)).append(Character.forDigit(byteAt(i) & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static long readLong(byte[] b, int off) {
+        return (readInt(b, off) << 32) | readInt(b, off + 4);
+    }
+
+    private static long readInt(byte[] b, int off) {
+        return ((b[off] & 0xFFL) << 24) | ((b[off + 1] & 0xFFL) << 16) | ((b[off + 2] & 0xFFL) << 8) | (b[off + 3] & 0xFFL);
+    }
+}
@@ -0,0 +1,186 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.Transport;
+import it.baddy.uni.rmi.interfaces.BatchResult;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.simulation.SimulatedRing;
+import it.baddy.uni.utils.KeyHash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static it.baddy.uni.config.AppManagements.FILE_NOT_FOUND_EXCEPTION_STRING;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRouterTest {
+
+    private static final int FILES = 60;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keysAreGroupedByOwnerWithoutLookups() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(8, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordRemoteInterface entry = ring.entry(ring.nodeIdAt(0));
+            Map<String, byte[]> files = files();
+            CallCounter calls = CallCounter.install(Set.of());
+
+            //nomi mescolati con file che non esistono: i risultati seguono l'ordine della richiesta
+            Map<String, BatchResult<Boolean>> put = entry.multiPut(files);
+            assertTrue(put.values().stream().allMatch(r -> r.isOk() && r.getValue()));
+            List<String> names = new ArrayList<>();
+            for (int i = FILES - 1; i >= 0; i--) {
+                names.add(name(i));
+                if (i % 10 == 0)
+                    names.add("missing-" + i + ".txt");
+            }
+            Map<String, BatchResult<byte[]>> get = entry.multiGet(names);
+            assertEquals(names, new ArrayList<>(get.keySet()));
+            for (String fileName : names) {
+                BatchResult<byte[]> result = get.get(fileName);
+                if (fileName.startsWith("missing")) {
+                    assertEquals(FILE_NOT_FOUND_EXCEPTION_STRING, result.getError());
+                } else {
+                    assertArrayEquals(files.get(fileName), result.getValue(), fileName);
+                }
+            }
+
+            //un solo batch per responsabile e nessuna lookup remota
+            Set<Long> owners = new HashSet<>();
+            for (String fileName : files.keySet())
+                owners.add(ring.getNode(ring.nodeIdAt(0)).ownerInView(ring.getIdSpace().ringId(fileName)));
+            assertTrue(owners.size() > 1);
+            assertEquals(0, calls.count("lookup"));
+            assertTrue(calls.count("executeBatch") <= 2 * owners.size());
+
+            //ogni file sta sul suo responsabile
+            for (String fileName : files.keySet()) {
+                ChordNode owner = ring.getNode(ring.getNode(ring.nodeIdAt(0)).ownerInView(ring.getIdSpace().ringId(fileName)));
+                assertNotNull(owner.getStorage().find(KeyHash.of(fileName)), fileName);
+            }
+        }
+    }
+
+    @Test
+    void deadOwnerFailsOnlyItsKeys() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(8, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode node = ring.getNode(ring.nodeIdAt(0));
+            ChordRemoteInterface entry = ring.entry(ring.nodeIdAt(0));
+            Map<String, byte[]> files = files();
+            entry.multiPut(files);
+
+            long victim = remoteOwner(ring, files);
+            ring.kill(victim);
+            //batch non consegnato: le chiavi passano al routing normale, fallisce solo chi era del nodo caduto
+            Map<String, BatchResult<byte[]>> get = entry.multiGet(new ArrayList<>(files.keySet()));
+            for (Map.Entry<String, BatchResult<byte[]>> e : get.entrySet()) {
+                boolean lost = node.ownerInView(ring.getIdSpace().ringId(e.getKey())) == victim;
+                assertEquals(!lost, e.getValue().isOk(), e.getKey());
+            }
+            assertTrue(node.getFailureDetector().isUnreachable(victim));
+        }
+    }
+
+    @Test
+    void batchThatMayHaveRunIsNotReplayed() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(8, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode node = ring.getNode(ring.nodeIdAt(0));
+            ChordRemoteInterface entry = ring.entry(ring.nodeIdAt(0));
+            Map<String, byte[]> files = files();
+            entry.multiPut(files);
+
+            //il nodo esegue il batch ma la risposta va persa
+            long slow = remoteOwner(ring, files);
+            CallCounter.install(Set.of(slow));
+            Map<String, BatchResult<Void>> deleted = ring.entry(ring.nodeIdAt(0)).multiDelete(new ArrayList<>(files.keySet()));
+            for (Map.Entry<String, BatchResult<Void>> e : deleted.entrySet()) {
+                long owner = node.ownerInView(ring.getIdSpace().ringId(e.getKey()));
+                if (owner == slow) {
+                    //niente replay in locale: l'errore è quello vero, non "File not found"
+                    assertEquals("reply lost", e.getValue().getError(), e.getKey());
+                    assertNull(ring.getNode(slow).getStorage().find(KeyHash.of(e.getKey())));
+                } else {
+                    assertTrue(e.getValue().isOk(), e.getKey());
+                }
+            }
+        }
+    }
+
+    //un responsabile di qualche file diverso dal nodo di ingresso
+    private static long remoteOwner(SimulatedRing ring, Map<String, byte[]> files) {
+        ChordNode node = ring.getNode(ring.nodeIdAt(0));
+        for (String fileName : files.keySet()) {
+            long owner = node.ownerInView(ring.getIdSpace().ringId(fileName));
+            if (owner != ring.nodeIdAt(0))
+                return owner;
+        }
+        throw new IllegalStateException("every file is on the entry node");
+    }
+
+    private static Map<String, byte[]> files() {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < FILES; i++)
+            files.put(name(i), ("content " + i).getBytes());
+        return files;
+    }
+
+    private static String name(int i) {
+        return "file-" + i + ".txt";
+    }
+
+    //transport che conta le chiamate tra i nodi; gli executeBatch verso lostReplies vengono
+    //eseguiti ma il chiamante riceve un errore di trasporto, come per una risposta persa
+    private static final class CallCounter implements Transport {
+        private final Transport delegate;
+        private final Set<Long> lostReplies;
+        private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+        private CallCounter(Transport delegate, Set<Long> lostReplies) {
+            this.delegate = delegate;
+            this.lostReplies = lostReplies;
+        }
+
+        static CallCounter install(Set<Long> lostReplies) {
+            CallCounter counter = new CallCounter(ChordRemoteClient.getTransport(), lostReplies);
+            ChordRemoteClient.setTransport(counter);
+            return counter;
+        }
+
+        int count(String method) {
+            AtomicInteger count = calls.get(method);
+            return count == null ? 0 : count.get();
+        }
+
+        @Override
+        public ChordRemoteInterface connect(long nodeId) throws Exception {
+            ChordRemoteInterface stub = delegate.connect(nodeId);
+            return (ChordRemoteInterface) Proxy.newProxyInstance(ChordRemoteInterface.class.getClassLoader(),
+                    new Class<?>[]{ChordRemoteInterface.class}, (proxy, method, args) -> {
+                        calls.computeIfAbsent(method.getName(), m -> new AtomicInteger()).incrementAndGet();
+                        Object result;
+                        try {
+                            result = method.invoke(stub, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                        if (method.getName().equals("executeBatch") && lostReplies.contains(nodeId))
+                            throw new UnmarshalException("reply lost");
+                        return result;
+                    });
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package it.baddy.uni.chord;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChordNodeTest {
+
+    @Test
+    void addedNodeBecomesPredecessorAndFinger() {
+        ChordNode node = new ChordNode(10, List.of(0L, 10L, 20L), IdSpace.ofSize(40));
+        assertEquals(0, node.getPredecessor());
+        assertEquals(20, node.getFingerTable().getSuccessor());
+
+        assertTrue(node.checkNodesAndAdd(5));
+        assertTrue(node.checkNodesAndAdd(12));
+        assertFalse(node.checkNodesAndAdd(12));
+
+        assertEquals(List.of(0L, 5L, 10L, 12L, 20L), node.getKnownNodes());
+        assertEquals(5, node.getPredecessor());
+        assertEquals(12, node.getFingerTable().getSuccessor());
+        //le chiavi (5, 10] restano sue, quelle fino a 5 passano al nuovo nodo
+        assertEquals(10, node.lookup(7));
+        assertEquals(12, node.lookup(11));
+    }
+
+    @Test
+    void singleNodeOwnsWholeRing() {
+        ChordNode node = new ChordNode(7, List.of(), IdSpace.ofBits(64));
+        assertEquals(7, node.getPredecessor());
+        assertEquals(7, node.lookup(-1L));
+        assertEquals(7, node.lookup(3));
+    }
+
+    @Test
+    void suspectNodesAreSkipped() {
+        ChordNode node = new ChordNode(10, List.of(0L, 10L, 20L), IdSpace.ofSize(40));
+        assertFalse(node.getFailureDetector().isSuspect(20));
+        assertEquals(20, node.lookup(15));
+
+        //successore che non risponde: le sue chiavi vanno al prossimo della lista,
+        //ma non è sospetto finché phi non supera la soglia
+        node.getFailureDetector().reportFailure(20);
+        assertTrue(node.getFailureDetector().isUnreachable(20));
+        assertFalse(node.getFailureDetector().isSuspect(20));
+        assertEquals(0, node.getLiveSuccessor());
+        assertEquals(0, node.lookup(15));
+
+        //predecessore che non risponde: il suo intervallo resta suo finché non viene tolto dalla vista
+        node.getFailureDetector().reportFailure(0);
+        assertFalse(node.isResponsible(38));
+        node.checkNodesAndRemove(0);
+        assertTrue(node.isResponsible(38));
+    }
+}
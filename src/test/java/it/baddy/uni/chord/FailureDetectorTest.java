@@ -0,0 +1,103 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.interfaces.NodeAction;
+import it.baddy.uni.simulation.SimulatedRing;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.function.BooleanSupplier;
+
+import static it.baddy.uni.config.AppManagements.FILE_NOT_FOUND_EXCEPTION_STRING;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FailureDetectorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void deadNodeBecomesSuspectAndIsRemoved() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(4, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode node = ring.getNode(ring.nodeIdAt(0));
+            long victim = ring.nodeIdAt(1);
+            FailureDetector detector = new FailureDetector(node, 20, 3, 200);
+            detector.start();
+            try {
+                //con tutti i nodi vivi nessuno diventa sospetto
+                Thread.sleep(300);
+                for (int i = 1; i < ring.size(); i++)
+                    assertFalse(detector.isUnreachable(ring.nodeIdAt(i)));
+
+                ring.kill(victim);
+                assertTrue(await(() -> detector.isSuspect(victim)), "victim never became suspect");
+                assertTrue(await(() -> !node.isKnown(victim)), "victim was never removed");
+                //i nodi vivi restano nella vista e il successore prende il posto del nodo caduto
+                assertTrue(node.isKnown(ring.nodeIdAt(2)));
+                assertTrue(node.isKnown(ring.nodeIdAt(3)));
+                assertFalse(detector.isSuspect(ring.nodeIdAt(2)));
+                assertEquals(ring.nodeIdAt(2), node.getFingerTable().getSuccessor());
+            } finally {
+                detector.stop();
+            }
+        }
+    }
+
+    @Test
+    void transportFailureIsForgottenWhenTheNodeAnswers() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(4, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode node = ring.getNode(ring.nodeIdAt(0));
+            long slow = ring.nodeIdAt(2);
+            FailureDetector detector = new FailureDetector(node, 20, 3, 200);
+            detector.start();
+            try {
+                detector.reportFailure(slow);
+                //il routing lo salta, ma non è sospetto e non viene tolto dalla vista
+                assertTrue(detector.isUnreachable(slow));
+                assertFalse(detector.isSuspect(slow));
+                assertTrue(await(() -> !detector.isUnreachable(slow)), "node answering pings stayed unreachable");
+                assertTrue(node.isKnown(slow));
+            } finally {
+                detector.stop();
+            }
+        }
+    }
+
+    @Test
+    void routingReportsOnlyTransportFailures() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(4, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode node = ring.getNode(ring.nodeIdAt(0));
+            long victim = ring.nodeIdAt(1);
+            long owner = ring.nodeIdAt(2);
+            //chiave di owner che node raggiunge passando dal finger verso victim
+            long keyId = owner - 1;
+            assertTrue(IdSpace.inInterval(keyId, victim, owner) && keyId != victim);
+
+            ring.kill(victim);
+            NodeAction<Long> whoServed = served -> served.getFingerTable().getNodeId();
+            assertEquals(owner, node.route(keyId, whoServed, "TEST", 0).getValue());
+            //il nodo caduto viene saltato ma resta nella vista finché phi non lo rende sospetto
+            assertTrue(node.getFailureDetector().isUnreachable(victim));
+            assertFalse(node.getFailureDetector().isSuspect(victim));
+            assertTrue(node.isKnown(victim));
+
+            //un errore applicativo arriva al chiamante e il nodo che l'ha dato resta raggiungibile
+            NodeAction<Long> missing = served -> {
+                throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
+            };
+            assertThrows(RemoteException.class, () -> node.route(keyId, missing, "TEST", 0));
+            assertFalse(node.getFailureDetector().isUnreachable(owner));
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline)
+                return false;
+            Thread.sleep(5);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,43 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.utils.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdSpaceTest {
+
+    private static final String[] NAMES = {"a.txt", "b.txt", "photo.png", "report-2024.pdf", "è unicode.txt"};
+
+    @Test
+    void ringIdMatchesBigIntegerModulo() {
+        IdSpace[] spaces = {IdSpace.ofSize(40), IdSpace.ofSize(1000003), IdSpace.ofBits(16), IdSpace.ofBits(64)};
+        for (IdSpace space : spaces) {
+            BigInteger size = space.getSize() == 0 ? BigInteger.ONE.shiftLeft(64) : BigInteger.valueOf(space.getSize());
+            for (String name : NAMES) {
+                BigInteger expected = FileUtils.hashFilename(name).mod(size);
+                assertEquals(expected, new BigInteger(Long.toUnsignedString(space.ringId(name))), space.describeSize() + " " + name);
+            }
+        }
+    }
+
+    @Test
+    void intervalUsesUnsignedOrder() {
+        long high = 0xF000_0000_0000_0000L;
+        assertTrue(IdSpace.inInterval(high + 1, high, -1L));
+        assertFalse(IdSpace.inInterval(5, high, -1L));
+        //intervallo che fa il giro del ring
+        assertTrue(IdSpace.inInterval(3, high, 10));
+        assertTrue(IdSpace.inInterval(-1L, high, 10));
+        assertFalse(IdSpace.inInterval(20, high, 10));
+    }
+
+    @Test
+    void fingerStartWrapsAround() {
+        IdSpace ring = IdSpace.ofSize(40);
+        assertEquals(4, ring.fingerStart(36, 3));
+        assertEquals(0, IdSpace.ofBits(64).fingerStart(-1L, 0));
+    }
+}
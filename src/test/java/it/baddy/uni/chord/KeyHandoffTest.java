@@ -0,0 +1,159 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.simulation.SimulatedRing;
+import it.baddy.uni.storage.Blobs;
+import it.baddy.uni.utils.KeyHash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.rmi.ConnectException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyHandoffTest {
+
+    private static final int FILES = 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedUploadsAreRetriedAndCounted() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(2, IdSpace.ofBits(16), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode from = ring.getNode(ring.nodeIdAt(0));
+            ChordNode to = ring.getNode(ring.nodeIdAt(1));
+            List<Path> files = writeFiles(from);
+
+            //la prima apertura di ogni file fallisce come per un errore di rete, la seconda passa
+            Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+            ChordRemoteInterface successor = wrap(ring.entry(ring.nodeIdAt(1)), (target, method, args) -> {
+                if (method.getName().equals("openHandoffUpload") && failedOnce.add((String) args[1]))
+                    throw new ConnectException("connection refused");
+                return forward(target, method, args);
+            });
+            new KeyHandoff(ring.nodeIdAt(0), 4, from.getStorage()).transferAll(successor, files);
+
+            assertEquals(FILES, failedOnce.size());
+            for (int i = 0; i < FILES; i++)
+                assertArrayEquals(content(i), Blobs.decode(to.getStorage().read(KeyHash.of(name(i)))));
+        }
+    }
+
+    @Test
+    void fileThatKeepsFailingAbortsTheHandoff() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(2, IdSpace.ofBits(16), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode from = ring.getNode(ring.nodeIdAt(0));
+            List<Path> files = writeFiles(from);
+
+            AtomicInteger completed = new AtomicInteger();
+            ChordRemoteInterface successor = wrap(ring.entry(ring.nodeIdAt(1)), (target, method, args) -> {
+                if (method.getName().equals("openHandoffUpload") && args[1].equals(name(3)))
+                    throw new ConnectException("connection refused");
+                if (method.getName().equals("completeHandoff"))
+                    completed.incrementAndGet();
+                return forward(target, method, args);
+            });
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> new KeyHandoff(ring.nodeIdAt(0), 4, from.getStorage()).transferAll(successor, files));
+
+            assertEquals("successor acknowledged " + (FILES - 1) + " of " + FILES + " files, first missing: " + name(3),
+                    e.getMessage());
+            //la conferma chiude comunque l'handoff sul successore
+            assertEquals(1, completed.get());
+        }
+    }
+
+    @Test
+    void missingAcknowledgementsAbortTheHandoff() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(2, IdSpace.ofBits(16), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode from = ring.getNode(ring.nodeIdAt(0));
+            List<Path> files = writeFiles(from);
+
+            //il successore ha perso un file dopo averlo ricevuto
+            ChordRemoteInterface successor = wrap(ring.entry(ring.nodeIdAt(1)), (target, method, args) -> {
+                Object result = forward(target, method, args);
+                if (!method.getName().equals("completeHandoff"))
+                    return result;
+                List<Object> saved = new ArrayList<>((List<?>) result);
+                saved.remove(name(7));
+                return saved;
+            });
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> new KeyHandoff(ring.nodeIdAt(0), 4, from.getStorage()).transferAll(successor, files));
+
+            assertEquals("successor acknowledged " + (FILES - 1) + " of " + FILES + " files, first missing: " + name(7),
+                    e.getMessage());
+        }
+    }
+
+    @Test
+    void commitWithLostReplyIsNotRepeated() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(2, IdSpace.ofBits(16), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordNode from = ring.getNode(ring.nodeIdAt(0));
+            List<Path> files = writeFiles(from);
+
+            //il commit di un file arriva ma la risposta va persa: ripeterlo lo conterebbe due volte
+            AtomicInteger commits = new AtomicInteger();
+            AtomicInteger lost = new AtomicInteger();
+            ChordRemoteInterface successor = wrap(ring.entry(ring.nodeIdAt(1)), (target, method, args) -> {
+                Object result = forward(target, method, args);
+                if (method.getName().equals("commitUpload") && commits.incrementAndGet() == 5 && lost.incrementAndGet() == 1)
+                    throw new UnmarshalException("reply lost");
+                return result;
+            });
+            new KeyHandoff(ring.nodeIdAt(0), 4, from.getStorage()).transferAll(successor, files);
+
+            assertEquals(FILES, commits.get());
+            assertEquals(1, lost.get());
+        }
+    }
+
+    private static List<Path> writeFiles(ChordNode node) {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            node.getStorage().write(name(i), content(i));
+            files.add(node.getStorage().find(KeyHash.of(name(i))).getPath());
+        }
+        return files;
+    }
+
+    private static String name(int i) {
+        return "file-" + i + ".txt";
+    }
+
+    private static byte[] content(int i) {
+        return ("content of file " + i).repeat(i + 1).getBytes();
+    }
+
+    @FunctionalInterface
+    private interface Intercept {
+        Object invoke(ChordRemoteInterface target, Method method, Object[] args) throws Throwable;
+    }
+
+    //stub del successore con le chiamate che passano da intercept
+    private static ChordRemoteInterface wrap(ChordRemoteInterface target, Intercept intercept) {
+        InvocationHandler handler = (proxy, method, args) -> intercept.invoke(target, method, args);
+        return (ChordRemoteInterface) Proxy.newProxyInstance(ChordRemoteInterface.class.getClassLoader(),
+                new Class<?>[]{ChordRemoteInterface.class}, handler);
+    }
+
+    private static Object forward(ChordRemoteInterface target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
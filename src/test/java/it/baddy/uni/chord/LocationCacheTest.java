@@ -0,0 +1,55 @@
+package it.baddy.uni.chord;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocationCacheTest {
+
+    @Test
+    void findsOwnerOfCachedRange() {
+        LocationCache cache = new LocationCache(10);
+        cache.put(10, 15);
+
+        assertEquals(15, cache.get(12));
+        assertEquals(15, cache.get(15));
+        assertNull(cache.get(10));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void handlesRangeWrappingAroundTheRing() {
+        LocationCache cache = new LocationCache(10);
+        cache.put(35, 0);
+
+        assertEquals(0, cache.get(38));
+        assertEquals(0, cache.get(0));
+        assertNull(cache.get(5));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedRange() {
+        LocationCache cache = new LocationCache(2);
+        cache.put(0, 5);
+        cache.put(5, 10);
+        //5 diventa il più recente, quindi viene scartato 10
+        cache.get(3);
+        cache.put(10, 15);
+
+        assertEquals(2, cache.size());
+        assertEquals(5, cache.get(3));
+        assertNull(cache.get(8));
+        assertEquals(15, cache.get(12));
+    }
+
+    @Test
+    void invalidateOwnerRemovesRange() {
+        LocationCache cache = new LocationCache(10);
+        cache.put(0, 5);
+        cache.recordMisdirected(5);
+
+        assertNull(cache.get(3));
+        assertEquals(1, cache.getMisdirected());
+    }
+}
@@ -0,0 +1,37 @@
+package it.baddy.uni.chord;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MembershipTest {
+
+    @Test
+    void searchesWithUnsignedOrder() {
+        //-5 senza segno è il più grande
+        Membership members = Membership.of(List.of(20L, -5L, 3L, 20L));
+        assertEquals(List.of(3L, 20L, -5L), members.asList());
+
+        assertEquals(3, members.successor(0));
+        assertEquals(20, members.successor(20));
+        assertEquals(-5L, members.successor(21));
+        //dopo l'ultimo si riparte dall'inizio
+        assertEquals(3, members.successor(-1L));
+        assertEquals(-5L, members.predecessor(3));
+        assertEquals(20, members.predecessor(-6L));
+        assertEquals(-1, members.indexOf(4));
+    }
+
+    @Test
+    void updatesReturnNewViews() {
+        Membership members = Membership.of(List.of(10L, 30L));
+        Membership added = members.with(20);
+        assertEquals(List.of(10L, 30L), members.asList());
+        assertEquals(List.of(10L, 20L, 30L), added.asList());
+        assertSame(added, added.with(20));
+        assertEquals(List.of(10L, 30L), added.without(20).asList());
+        assertSame(members, members.without(20));
+    }
+}
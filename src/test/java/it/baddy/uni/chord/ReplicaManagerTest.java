@@ -0,0 +1,196 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.ChunkedTransfer;
+import it.baddy.uni.rmi.client.Transport;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.simulation.SimulatedRing;
+import it.baddy.uni.storage.Blobs;
+import it.baddy.uni.utils.KeyHash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.rmi.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaManagerTest {
+
+    private static final int FACTOR = 3;
+    private static final int FILES = 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesReachTheWholeChain() throws Exception {
+        try (SimulatedRing ring = start()) {
+            ChordRemoteInterface entry = ring.entry(ring.nodeIdAt(0));
+            for (int i = 0; i < FILES; i++)
+                entry.uploadFile(name(i), content(i));
+
+            //ogni file sta sul responsabile e sui due successori, e solo lì
+            for (int i = 0; i < FILES; i++) {
+                List<Long> chain = chain(ring, name(i));
+                for (ChordNode node : ring.getNodes()) {
+                    long nodeId = node.getFingerTable().getNodeId();
+                    byte[] stored = node.getStorage().read(KeyHash.of(name(i)));
+                    if (chain.contains(nodeId))
+                        assertArrayEquals(content(i), Blobs.decode(stored), name(i) + " on " + nodeId);
+                    else
+                        assertNull(stored, name(i) + " on " + nodeId);
+                }
+            }
+
+            entry.deleteFile(name(0));
+            for (ChordNode node : ring.getNodes())
+                assertNull(node.getStorage().find(KeyHash.of(name(0))));
+        }
+    }
+
+    @Test
+    void readsAreServedByReplicasAfterTheOwnerIsKilled() throws Exception {
+        try (SimulatedRing ring = start()) {
+            ChordRemoteInterface entry = ring.entry(ring.nodeIdAt(0));
+            for (int i = 0; i < FILES; i++)
+                entry.uploadFile(name(i), content(i));
+
+            //un responsabile diverso dal nodo di ingresso
+            long victim = -1;
+            for (int i = 0; i < FILES && victim == -1; i++) {
+                long owner = chain(ring, name(i)).get(0);
+                if (owner != ring.nodeIdAt(0))
+                    victim = owner;
+            }
+            assertNotEquals(-1, victim);
+            ring.kill(victim);
+
+            //il nodo caduto resta nella vista: le sue chiavi arrivano dalle altre copie della catena
+            for (int i = 0; i < FILES; i++)
+                assertArrayEquals(content(i), entry.getFile(name(i)), name(i));
+            assertTrue(ring.getNode(ring.nodeIdAt(0)).isKnown(victim));
+        }
+    }
+
+    @Test
+    void readFallsBackToRoutingWhenNoReplicaHasTheFile() throws Exception {
+        try (SimulatedRing ring = start()) {
+            //file scritto solo sul responsabile, fuori dalla catena
+            String fileName = "owner-only.txt";
+            ChordNode owner = ring.getNode(chain(ring, fileName).get(0));
+            owner.getStorage().write(fileName, "only here".getBytes());
+
+            for (int i = 0; i < ring.size(); i++)
+                assertArrayEquals("only here".getBytes(), ring.entry(ring.nodeIdAt(i)).getFile(fileName));
+        }
+    }
+
+    @Test
+    void operationsTheChainMissedAreRepaired() throws Exception {
+        try (SimulatedRing ring = start()) {
+            ChordRemoteInterface entry = ring.entry(ring.nodeIdAt(0));
+            entry.uploadFile("deleted.txt", "old".getBytes());
+
+            //nessuna replica riceve le operazioni: scritture, upload a chunk e cancellazioni restano solo sul responsabile
+            ReplicaOutage outage = ReplicaOutage.install();
+            entry.uploadFile("written.txt", "written".getBytes());
+            assertTrue(ChunkedTransfer.upload(entry, new ByteArrayInputStream("streamed".getBytes()), "streamed.txt"));
+            entry.deleteFile("deleted.txt");
+
+            for (String fileName : List.of("written.txt", "streamed.txt", "deleted.txt")) {
+                List<Long> chain = chain(ring, fileName);
+                assertTrue(ring.getNode(chain.get(0)).getReplicas().pendingRepairs() > 0, fileName);
+                assertEquals(fileName.equals("deleted.txt"),
+                        ring.getNode(chain.get(1)).getStorage().find(KeyHash.of(fileName)) != null, fileName);
+            }
+
+            //tornate le repliche, i responsabili rimandano lo stato che la catena non ha ricevuto
+            outage.down = false;
+            assertTrue(await(() -> ring.getNodes().stream().allMatch(node -> node.getReplicas().pendingRepairs() == 0)),
+                    "repairs never completed");
+            for (long nodeId : chain(ring, "written.txt"))
+                assertArrayEquals("written".getBytes(), Blobs.decode(ring.getNode(nodeId).getStorage().read(KeyHash.of("written.txt"))));
+            for (long nodeId : chain(ring, "streamed.txt"))
+                assertArrayEquals("streamed".getBytes(), Blobs.decode(ring.getNode(nodeId).getStorage().read(KeyHash.of("streamed.txt"))));
+            for (ChordNode node : ring.getNodes())
+                assertNull(node.getStorage().find(KeyHash.of("deleted.txt")));
+        }
+    }
+
+    private SimulatedRing start() throws Exception {
+        SimulatedRing ring = SimulatedRing.start(4, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0);
+        for (ChordNode node : ring.getNodes())
+            node.useReplicas(new ReplicaManager(node, FACTOR, 20));
+        return ring;
+    }
+
+    //responsabile e repliche del file secondo la vista (completa) del primo nodo
+    private static List<Long> chain(SimulatedRing ring, String fileName) {
+        ChordNode node = ring.getNode(ring.nodeIdAt(0));
+        List<Long> chain = new ArrayList<>();
+        long id = node.ownerInView(ring.getIdSpace().ringId(fileName));
+        for (int i = 0; i < FACTOR; i++) {
+            chain.add(id);
+            id = node.nextHostSuccessor(id, false);
+        }
+        return chain;
+    }
+
+    private static String name(int i) {
+        return "file-" + i + ".txt";
+    }
+
+    private static byte[] content(int i) {
+        return ("replicated content " + i).getBytes();
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline)
+                return false;
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    //transport in cui, finché down, le chiamate della catena di replica falliscono come verso un nodo irraggiungibile
+    private static final class ReplicaOutage implements Transport {
+        private static final Set<String> CHAIN_CALLS = Set.of("replicateWrite", "replicateDelete", "openReplicaUpload");
+        private final Transport delegate;
+        volatile boolean down = true;
+
+        private ReplicaOutage(Transport delegate) {
+            this.delegate = delegate;
+        }
+
+        static ReplicaOutage install() {
+            ReplicaOutage outage = new ReplicaOutage(ChordRemoteClient.getTransport());
+            ChordRemoteClient.setTransport(outage);
+            return outage;
+        }
+
+        @Override
+        public ChordRemoteInterface connect(long nodeId) throws Exception {
+            ChordRemoteInterface stub = delegate.connect(nodeId);
+            return (ChordRemoteInterface) Proxy.newProxyInstance(ChordRemoteInterface.class.getClassLoader(),
+                    new Class<?>[]{ChordRemoteInterface.class}, (proxy, method, args) -> {
+                        if (down && CHAIN_CALLS.contains(method.getName()))
+                            throw new ConnectException("replica " + nodeId + " unreachable");
+                        try {
+                            return method.invoke(stub, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.rmi.client.ChordRemoteClient;
+import it.baddy.uni.rmi.client.LocalTransport;
+import it.baddy.uni.rmi.server.ChordRemoteServer;
+import it.baddy.uni.simulation.SimulatedRing;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StabilizerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void joinedNodeIsLearnedThroughStabilizeAndFixFingers() throws Exception {
+        IdSpace idSpace = IdSpace.ofBits(32);
+        try (SimulatedRing ring = SimulatedRing.start(8, idSpace, dir.resolve("ring"), SimulatedRing.Mode.LOCAL, 0, 0)) {
+            //il nuovo nodo entra all'inizio dell'ultima finger di un nodo, così fix_fingers deve trovarlo
+            ChordNode watcher = null;
+            long joinerId = 0;
+            for (ChordNode node : ring.getNodes()) {
+                long start = idSpace.fingerStart(node.getFingerTable().getNodeId(), idSpace.getBits() - 1);
+                long predecessor = ownerBefore(ring, start);
+                if (!node.isKnown(start) && predecessor != node.getFingerTable().getNodeId()) {
+                    watcher = node;
+                    joinerId = start;
+                    break;
+                }
+            }
+            assertNotNull(watcher);
+
+            Files.createDirectories(dir.resolve("joiner"));
+            ChordNode joiner = new ChordNode(joinerId, List.of(), idSpace);
+            joiner.initStorage(dir.resolve("joiner"), false);
+            ChordRemoteServer server = new ChordRemoteServer(joiner);
+            ((LocalTransport) ChordRemoteClient.getTransport()).register(joinerId, server);
+            try {
+                long successor = joiner.join(ring.entry(ring.nodeIdAt(0)));
+                long predecessor = joiner.getPredecessor();
+                assertEquals(ring.getNodes().size() + 1, joiner.getKnownNodes().size());
+                assertTrue(IdSpace.inInterval(joinerId, predecessor, successor));
+                //il join non avvisa nessuno: il ring lo scopre con la manutenzione periodica
+                assertFalse(ring.getNode(successor).isKnown(joinerId));
+                assertFalse(ring.getNode(predecessor).isKnown(joinerId));
+
+                //il nuovo nodo si presenta al successore con notify
+                new Stabilizer(joiner, 1000).stabilize();
+                assertEquals(joinerId, ring.getNode(successor).getPredecessor());
+
+                //il predecessore lo trova chiedendo al suo successore chi lo precede
+                new Stabilizer(ring.getNode(predecessor), 1000).stabilize();
+                assertEquals(joinerId, ring.getNode(predecessor).getFingerTable().getSuccessor());
+
+                //un nodo lontano lo impara solo da fix_fingers, tramite le lookup
+                assertFalse(watcher.isKnown(joinerId));
+                Stabilizer fixer = new Stabilizer(watcher, 1000);
+                for (int i = 0; i < idSpace.getBits(); i++)
+                    fixer.fixFingers();
+                assertTrue(watcher.isKnown(joinerId));
+                assertEquals(joinerId, watcher.getFingerTable().getFingers()[idSpace.getBits() - 1]);
+
+                //da qualunque nodo le chiavi del nuovo intervallo arrivano al nuovo nodo
+                for (ChordNode node : ring.getNodes())
+                    assertEquals(joinerId, node.lookup(joinerId), "lookup from " + node.getFingerTable().getNodeId());
+            } finally {
+                UnicastRemoteObject.unexportObject(server, true);
+                joiner.getStorage().close();
+            }
+        }
+    }
+
+    //nodo del ring che precede id (id escluso)
+    private static long ownerBefore(SimulatedRing ring, long id) {
+        List<Long> ids = ring.getNodes().get(0).getKnownNodes();
+        return Membership.of(ids).predecessor(id);
+    }
+}
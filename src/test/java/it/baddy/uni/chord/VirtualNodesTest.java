@@ -0,0 +1,58 @@
+package it.baddy.uni.chord;
+
+import it.baddy.uni.metrics.NodeMetrics;
+import it.baddy.uni.rmi.client.NodeDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualNodesTest {
+
+    @Test
+    void assignmentIsDeterministicAndDistinct() {
+        IdSpace idSpace = IdSpace.ofBits(16);
+        Map<Long, long[]> first = VirtualNodes.assign(List.of(300L, 100L, 200L), 8, idSpace);
+        Map<Long, long[]> second = VirtualNodes.assign(List.of(100L, 200L, 300L), 8, idSpace);
+
+        Set<Long> all = new HashSet<>();
+        for (long physical : List.of(100L, 200L, 300L)) {
+            assertArrayEquals(first.get(physical), second.get(physical));
+            //la prima posizione è l'id del processo
+            assertEquals(physical, first.get(physical)[0]);
+            for (long id : first.get(physical))
+                assertTrue(all.add(id));
+        }
+        assertEquals(24, all.size());
+    }
+
+    @Test
+    void smallRingGetsFewerVirtualNodes() {
+        Map<Long, long[]> assignment = VirtualNodes.assign(List.of(0L, 5L), 8, IdSpace.ofSize(10));
+        assertEquals(10, assignment.values().stream().mapToInt(ids -> ids.length).sum());
+    }
+
+    @Test
+    void nextHostSuccessorSkipsSiblings() {
+        //processo 1000 con i nodi virtuali 10 e 30, processo 2000 con 20 e 40
+        NodeDirectory.register(10, 1000);
+        NodeDirectory.register(30, 1000);
+        NodeDirectory.register(20, 2000);
+        NodeDirectory.register(40, 2000);
+        List<Long> ring = new ArrayList<>(List.of(10L, 20L, 30L, 40L));
+        ChordNode node = new ChordNode(10, 1000, ring, IdSpace.ofBits(16), new NodeMetrics(1000));
+
+        assertEquals(20, node.nextHostSuccessor(10, false));
+        assertEquals(40, node.nextHostSuccessor(30, false));
+        assertEquals(30, node.nextHostSuccessor(20, false));
+        assertEquals(10, node.nextHostSuccessor(40, false));
+        assertEquals(2, node.getPhysicalCount());
+        //con replica 3 su due processi c'è spazio solo per una copia in più
+        assertEquals(1, new ReplicaManager(node, 3).chainLength());
+    }
+}
@@ -0,0 +1,34 @@
+package it.baddy.uni.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void everyValueFallsInsideItsBucket() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123_456, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.upperBound(bucket), "value " + value);
+            if (bucket > 0)
+                assertTrue(value > LatencyHistogram.upperBound(bucket - 1), "value " + value);
+        }
+    }
+
+    @Test
+    void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMaxMicros());
+        assertEquals(500.5, histogram.getMeanMicros(), 0.001);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 >= 990 && p99 <= 990 * 1.125, "p99 " + p99);
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p50 >= 500 && p50 <= 500 * 1.125, "p50 " + p50);
+        assertEquals(1000, histogram.countAtMost(Long.MAX_VALUE));
+    }
+}
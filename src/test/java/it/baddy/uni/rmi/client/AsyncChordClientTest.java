@@ -0,0 +1,101 @@
+package it.baddy.uni.rmi.client;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static it.baddy.uni.config.AppManagements.FILE_NOT_FOUND_EXCEPTION_STRING;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncChordClientTest {
+
+    private final LocalTransport local = new LocalTransport();
+    //getFile resta fermo finché il test non lo sblocca
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @BeforeEach
+    void startNode() {
+        ChordRemoteClient.setTransport(local);
+        local.register(1, (ChordRemoteInterface) Proxy.newProxyInstance(ChordRemoteInterface.class.getClassLoader(),
+                new Class<?>[]{ChordRemoteInterface.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getFile" -> blockingRead((String) args[0]);
+                    case "lookup" -> args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+
+    @AfterEach
+    void restoreTransport() {
+        release.countDown();
+        ChordRemoteClient.setTransport(RmiTransport.containers());
+    }
+
+    @Test
+    void inFlightRequestsAreBounded() throws Exception {
+        try (AsyncChordClient client = new AsyncChordClient(ChordRemoteClient.connect(1), 3)) {
+            List<CompletableFuture<byte[]>> reads = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+                reads.add(client.get("file-" + i + ".txt"));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (running.get() < 3 && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            //le altre richieste aspettano il permesso senza arrivare al nodo
+            Thread.sleep(100);
+            assertEquals(3, running.get());
+            assertEquals(3, client.getInFlight());
+            assertTrue(reads.stream().noneMatch(CompletableFuture::isDone));
+
+            release.countDown();
+            CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            assertArrayEquals("file-7.txt".getBytes(), reads.get(7).get());
+            assertEquals(3, maxRunning.get());
+            assertEquals(0, client.getInFlight());
+        }
+    }
+
+    @Test
+    void failedRequestsReleaseTheirPermit() throws Exception {
+        try (AsyncChordClient client = new AsyncChordClient(ChordRemoteClient.connect(1), 1)) {
+            for (int i = 0; i < 5; i++) {
+                ExecutionException e = assertThrows(ExecutionException.class,
+                        () -> client.get("missing.txt").get(10, TimeUnit.SECONDS));
+                assertInstanceOf(ServerException.class, e.getCause());
+            }
+            assertEquals(42L, client.lookup(42).get(10, TimeUnit.SECONDS));
+            assertEquals(0, client.getInFlight());
+            //una callback può fare un'altra richiesta anche con un solo permesso
+            assertEquals(7L, client.lookup(1).thenCompose(id -> client.lookup(7)).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private byte[] blockingRead(String fileName) throws RemoteException {
+        if (fileName.equals("missing.txt"))
+            throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            if (!release.await(10, TimeUnit.SECONDS))
+                throw new RemoteException("read not released");
+            return fileName.getBytes();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("interrupted", e);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+}
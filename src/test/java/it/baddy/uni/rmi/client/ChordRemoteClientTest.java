@@ -0,0 +1,124 @@
+package it.baddy.uni.rmi.client;
+
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static it.baddy.uni.config.AppManagements.FILE_NOT_FOUND_EXCEPTION_STRING;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChordRemoteClientTest {
+
+    private final LocalTransport local = new LocalTransport();
+    //risoluzioni fatte dal client e "riavvii" dei nodi: gli stub dati prima di un riavvio
+    //rispondono NoSuchObjectException, come uno stub RMI di un oggetto non più esportato
+    private final AtomicInteger connects = new AtomicInteger();
+    private final AtomicInteger restarts = new AtomicInteger();
+
+    @BeforeEach
+    void useLocalTransport() {
+        ChordRemoteClient.setTransport(nodeId -> {
+            connects.incrementAndGet();
+            ChordRemoteInterface stub = local.connect(nodeId);
+            int issued = restarts.get();
+            return (ChordRemoteInterface) Proxy.newProxyInstance(ChordRemoteInterface.class.getClassLoader(),
+                    new Class<?>[]{ChordRemoteInterface.class}, (proxy, method, args) -> {
+                        if (issued != restarts.get())
+                            throw new NoSuchObjectException("no such object in table");
+                        try {
+                            return method.invoke(stub, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        });
+    }
+
+    @AfterEach
+    void restoreTransport() {
+        ChordRemoteClient.setTransport(RmiTransport.containers());
+    }
+
+    @Test
+    void stubsAreResolvedOnce() throws Exception {
+        local.register(1, node(1));
+        assertEquals(1, ChordRemoteClient.connect(1).getNodeId());
+        assertEquals(1, ChordRemoteClient.connect(1).getNodeId());
+        assertTrue(ChordRemoteClient.isCached(1));
+        assertEquals(1, connects.get());
+    }
+
+    @Test
+    void staleStubIsResolvedAgainAndRetriedOnce() throws Exception {
+        local.register(1, node(1));
+        ChordRemoteInterface stub = ChordRemoteClient.connect(1);
+        assertEquals(1, stub.getNodeId());
+
+        //il nodo si è riavviato: la chiamata riesce con uno stub nuovo, chi la fa non se ne accorge
+        restarts.incrementAndGet();
+        assertEquals(1, stub.getNodeId());
+        assertEquals(2, connects.get());
+        assertTrue(ChordRemoteClient.isCached(1));
+        assertEquals(1, ChordRemoteClient.connect(1).getNodeId());
+        assertEquals(2, connects.get());
+    }
+
+    @Test
+    void stubThatNeverAnsweredIsNotRetried() throws Exception {
+        local.register(1, node(1));
+        ChordRemoteInterface stub = ChordRemoteClient.connect(1);
+        restarts.incrementAndGet();
+
+        assertThrows(NoSuchObjectException.class, stub::getNodeId);
+        assertEquals(1, connects.get());
+        assertFalse(ChordRemoteClient.isCached(1));
+        //la connect successiva risolve uno stub nuovo
+        assertEquals(1, ChordRemoteClient.connect(1).getNodeId());
+        assertEquals(2, connects.get());
+    }
+
+    @Test
+    void applicationErrorsKeepTheStub() throws Exception {
+        local.register(1, node(1));
+        ChordRemoteInterface stub = ChordRemoteClient.connect(1);
+
+        RemoteException e = assertThrows(ServerException.class, () -> stub.getFile("missing.txt"));
+        assertEquals(FILE_NOT_FOUND_EXCEPTION_STRING, e.detail.getMessage());
+        assertFalse(ChordRemoteClient.isTransportFailure(e));
+        assertTrue(ChordRemoteClient.isCached(1));
+        assertEquals(1, connects.get());
+    }
+
+    @Test
+    void deadNodeIsDroppedAfterOneRetry() throws Exception {
+        local.register(1, node(1));
+        ChordRemoteInterface stub = ChordRemoteClient.connect(1);
+        assertEquals(1, stub.getNodeId());
+
+        local.unregister(1);
+        assertThrows(ConnectException.class, stub::getNodeId);
+        //un solo tentativo di risolvere di nuovo lo stub, poi il nodo non è più in cache
+        assertEquals(2, connects.get());
+        assertFalse(ChordRemoteClient.isCached(1));
+        assertThrows(ConnectException.class, () -> ChordRemoteClient.connect(1));
+    }
+
+    //nodo finto: risponde solo a getNodeId, getFile fallisce come per un file che non c'è
+    private static ChordRemoteInterface node(long id) {
+        return (ChordRemoteInterface) Proxy.newProxyInstance(ChordRemoteInterface.class.getClassLoader(),
+                new Class<?>[]{ChordRemoteInterface.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getNodeId" -> id;
+                    case "getFile" -> throw new RemoteException(FILE_NOT_FOUND_EXCEPTION_STRING);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
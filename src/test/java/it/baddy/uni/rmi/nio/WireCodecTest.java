@@ -0,0 +1,67 @@
+package it.baddy.uni.rmi.nio;
+
+import it.baddy.uni.rmi.interfaces.BatchResult;
+import it.baddy.uni.rmi.interfaces.RouteResult;
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+import it.baddy.uni.utils.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireCodecTest {
+
+    private static Object roundTrip(Object value) {
+        try (BufferPool.Buffer pooled = new WireWriter(8).writeValue(value).finish()) {
+            ByteBuffer frame = pooled.buffer();
+            assertEquals(frame.remaining() - Integer.BYTES, frame.getInt());
+            return new WireReader(frame.slice()).readValue();
+        }
+    }
+
+    @Test
+    void valuesSurviveRoundTrip() {
+        assertNull(roundTrip(null));
+        assertEquals(true, roundTrip(true));
+        assertEquals(42, roundTrip(42));
+        assertEquals(-1L, roundTrip(-1L));
+        assertEquals("città", roundTrip("città"));
+        assertArrayEquals(new byte[100_000], (byte[]) roundTrip(new byte[100_000]));
+        assertArrayEquals(new long[]{1, -2, 3}, (long[]) roundTrip(new long[]{1, -2, 3}));
+        assertEquals(List.of(1L, "x"), roundTrip(List.of(1L, "x")));
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("b", BatchResult.failed("File not found"));
+        map.put("a", BatchResult.ok(7));
+        @SuppressWarnings("unchecked")
+        Map<String, BatchResult<?>> decoded = (Map<String, BatchResult<?>>) roundTrip(map);
+        assertEquals(List.of("b", "a"), List.copyOf(decoded.keySet()));
+        assertEquals("File not found", decoded.get("b").getError());
+        assertEquals(7, decoded.get("a").getValue());
+
+        RouteResult<?> route = (RouteResult<?>) roundTrip(new RouteResult<>(new TransferHandle(5, 6, 7, 8), 5, 3));
+        assertEquals(5, route.getOwnerId());
+        assertEquals(3, route.getHops());
+        assertEquals(6, ((TransferHandle) route.getValue()).getSessionId());
+    }
+
+    @Test
+    void otherObjectsAreSerialized() {
+        RemoteException e = (RemoteException) roundTrip(new RemoteException("File not found"));
+        assertEquals("File not found", e.getMessage());
+        WireWriter writer = new WireWriter(8);
+        assertThrows(IllegalArgumentException.class, () -> writer.writeValue(new Object()));
+        writer.discard();
+    }
+
+    @Test
+    void oversizedFramesAreRejectedBeforeSending() {
+        WireWriter writer = new WireWriter(64).writeValue(new byte[FrameChannel.MAX_FRAME]);
+        assertThrows(IllegalArgumentException.class, writer::finish);
+    }
+}
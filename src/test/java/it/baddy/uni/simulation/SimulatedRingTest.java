@@ -0,0 +1,122 @@
+package it.baddy.uni.simulation;
+
+import it.baddy.uni.chord.IdSpace;
+import it.baddy.uni.metrics.NodeMetrics;
+import it.baddy.uni.rmi.interfaces.ChordRemoteInterface;
+import it.baddy.uni.rmi.interfaces.FileInfo;
+import it.baddy.uni.rmi.interfaces.ListingPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatedRingTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void workloadRunsOnLocalRing() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(32, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            SimulationReport report = new Workload().keys(100).operations(500).threads(4).run(ring);
+
+            assertEquals(0, report.getFailures());
+            //ogni file ha un solo responsabile
+            assertEquals(100, Arrays.stream(report.getKeys()).sum());
+            assertEquals(500, report.getLatency(NodeMetrics.GET_FILE).getCount()
+                    + report.getLatency(NodeMetrics.LOOKUP).getCount()
+                    + report.getLatency(NodeMetrics.UPDATE_FILE).getCount());
+            assertTrue(Arrays.stream(report.getHops()).sum() > 0);
+        }
+    }
+
+    @Test
+    void virtualNodesShareStorageWithoutDuplicates() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(8, 4, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            assertEquals(32, ring.getNodes().size());
+            SimulationReport report = new Workload().keys(200).operations(200).threads(4).run(ring);
+
+            assertEquals(0, report.getFailures());
+            //ogni file ha un solo nodo virtuale responsabile
+            assertEquals(200, Arrays.stream(report.getKeys()).sum());
+        }
+    }
+
+    @Test
+    void listingReturnsEveryFileOnce() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(8, 4, IdSpace.ofBits(32), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            ChordRemoteInterface entry = ring.entry(ring.nodeIdAt(5));
+            for (int i = 0; i < 200; i++)
+                entry.uploadFile("file-" + i + ".txt", ("content " + i).getBytes());
+
+            //pagine piccole: ogni nodo viene letto più volte
+            Set<String> names = new HashSet<>();
+            int pages = 0;
+            long cursor = 0;
+            do {
+                ListingPage page = entry.listFiles(cursor, 7);
+                assertFalse(page.isIncomplete());
+                assertTrue(page.getFiles().size() <= 7);
+                for (FileInfo file : page.getFiles())
+                    assertTrue(names.add(file.getFileName()), "duplicate " + file.getFileName());
+                cursor = page.getCursor();
+                pages++;
+            } while (cursor != 0);
+
+            assertEquals(200, names.size());
+            assertTrue(pages >= 200 / 7);
+        }
+    }
+
+    @Test
+    void killedNodeIsUnreachable() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(4, IdSpace.ofBits(16), dir, SimulatedRing.Mode.LOCAL, 0, 0)) {
+            long victim = ring.nodeIdAt(1);
+            assertEquals(victim, ring.entry(victim).getNodeId());
+            ring.kill(victim);
+            assertThrows(ConnectException.class, () -> ring.entry(victim).getNodeId());
+        }
+    }
+
+    @Test
+    void fileOperationsOverNio() throws Exception {
+        try (SimulatedRing ring = SimulatedRing.start(8, IdSpace.ofBits(16), dir, SimulatedRing.Mode.NIO, 0, 0)) {
+            ChordRemoteInterface entry = ring.entry(ring.nodeIdAt(0));
+            byte[] content = "hello over nio".getBytes();
+            entry.uploadFile("a.txt", content);
+            assertArrayEquals(content, entry.getFile("a.txt"));
+            assertArrayEquals("over".getBytes(), entry.getFileRange("a.txt", 6, 4));
+            assertTrue(entry.multiGet(List.of("a.txt", "missing.txt")).get("a.txt").isOk());
+            assertFalse(entry.multiGet(List.of("missing.txt")).get("missing.txt").isOk());
+
+            ListingPage listing = entry.listFiles(0, 10);
+            assertEquals("a.txt", listing.getFiles().get(0).getFileName());
+            assertTrue(listing.isLast());
+
+            entry.deleteFile("a.txt");
+            assertThrows(RemoteException.class, () -> entry.getFile("a.txt"));
+
+            long victim = ring.nodeIdAt(1);
+            assertEquals(victim, ring.entry(victim).getNodeId());
+            ring.kill(victim);
+            assertThrows(RemoteException.class, () -> ring.entry(victim).getNodeId());
+        }
+    }
+
+    @Test
+    void nodeIdsAreDistinctAndSorted() {
+        long[] ids = SimulatedRing.nodeIds(200, IdSpace.ofBits(10));
+        assertEquals(200, Arrays.stream(ids).distinct().count());
+        for (int i = 1; i < ids.length; i++)
+            assertTrue(Long.compareUnsigned(ids[i - 1], ids[i]) < 0);
+        assertThrows(IllegalArgumentException.class, () -> SimulatedRing.nodeIds(5, IdSpace.ofSize(4)));
+    }
+}
@@ -0,0 +1,61 @@
+package it.baddy.uni.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobsTest {
+
+    private static byte[] text(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("line ").append(i % 10).append(" of a very redundant text file\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void redundantTextIsCompressedAndRestored() {
+        byte[] raw = text(5000);
+        byte[] blob = Blobs.encode(raw, new DeflateCodec(6), 90);
+        assertTrue(Blobs.isEncoded(blob));
+        assertTrue(blob.length * 10 < raw.length);
+        assertEquals(raw.length, Blobs.rawLength(blob));
+        assertArrayEquals(raw, Blobs.decode(blob));
+        //un blob ricevuto da un altro nodo si salva secondo la configurazione locale, con lo stesso contenuto
+        assertArrayEquals(raw, Blobs.decode(Blobs.store(blob)));
+    }
+
+    @Test
+    void incompressibleAndSmallFilesStayPlain() {
+        byte[] random = new byte[512 * 1024];
+        new SplittableRandom(1).nextBytes(random);
+        assertSame(random, Blobs.encode(random, new DeflateCodec(6), 90));
+        byte[] small = "hello".getBytes(StandardCharsets.UTF_8);
+        assertSame(small, Blobs.encode(small, new DeflateCodec(6), 90));
+        //i file normali passano da decode senza copie
+        assertSame(random, Blobs.decode(random));
+    }
+
+    @Test
+    void rawContentStartingWithMagicRoundTrips() {
+        //un file del client che inizia per caso con il magic, seguito da byte non validi per deflate
+        byte[] raw = new byte[64];
+        System.arraycopy(Blobs.identityHeader(), 0, raw, 0, Blobs.MAGIC_SIZE);
+        raw[Blobs.MAGIC_SIZE] = DeflateCodec.ID;
+        raw[raw.length - 1] = 42;
+
+        byte[] blob = Blobs.encode(raw);
+        assertTrue(Blobs.isEncoded(blob));
+        assertEquals(raw.length + Blobs.HEADER_SIZE, blob.length);
+        assertEquals(raw.length, Blobs.rawLength(blob));
+        assertArrayEquals(raw, Blobs.decode(blob));
+        //anche quando non conviene comprimerlo resta distinguibile da un blob compresso
+        assertArrayEquals(raw, Blobs.decode(Blobs.encode(raw, new DeflateCodec(6), 90)));
+        //il nodo responsabile lo salva così com'è, senza decodificarlo
+        assertSame(blob, Blobs.store(blob));
+    }
+}
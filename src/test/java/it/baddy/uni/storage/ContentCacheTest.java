@@ -0,0 +1,76 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.metrics.NodeMetrics;
+import it.baddy.uni.utils.KeyHash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static KeyHash key(int i) {
+        return KeyHash.of("file-" + i);
+    }
+
+    @Test
+    void otherVersionIsAMiss() {
+        ContentCache cache = new ContentCache(1024);
+        cache.put(key(1), 1, new byte[10]);
+        assertNotNull(cache.get(key(1), 1));
+        assertNull(cache.get(key(1), 2));
+        //la copia vecchia viene anche tolta
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void staysWithinCapacityAndSkipsLargeFiles() {
+        ContentCache cache = new ContentCache(1000);
+        for (int i = 0; i < 50; i++) {
+            cache.put(key(i), 1, new byte[100]);
+        }
+        assertTrue(cache.sizeBytes() <= 1000);
+        //più di 1/8 della capacità
+        cache.put(key(99), 1, new byte[200]);
+        assertNull(cache.get(key(99), 1));
+    }
+
+    @Test
+    void scanDoesNotEvictFrequentFiles() {
+        ContentCache cache = new ContentCache(1000);
+        cache.put(key(0), 1, new byte[100]);
+        cache.put(key(1), 1, new byte[100]);
+        assertNotNull(cache.get(key(0), 1));
+        assertNotNull(cache.get(key(1), 1));
+        //file letti una volta sola: scacciano solo quelli in prova
+        for (int i = 10; i < 100; i++) {
+            cache.put(key(i), 1, new byte[100]);
+        }
+        assertNotNull(cache.get(key(0), 1));
+        assertNotNull(cache.get(key(1), 1));
+    }
+
+    @Test
+    void storageReadsAreCachedUntilTheFileChanges() {
+        NodeMetrics metrics = new NodeMetrics(0);
+        LocalStorage storage = new LocalStorage(0, tempDir, metrics, false);
+        try {
+            storage.write("a.txt", "one".getBytes());
+            assertEquals("one", new String(storage.read(KeyHash.of("a.txt"))));
+            assertEquals("one", new String(storage.read(KeyHash.of("a.txt"))));
+            assertEquals(1, metrics.snapshot().getDiskReads());
+
+            storage.write("a.txt", "two".getBytes());
+            assertEquals("two", new String(storage.read(KeyHash.of("a.txt"))));
+            storage.delete(KeyHash.of("a.txt"));
+            assertNull(storage.read(KeyHash.of("a.txt")));
+        } finally {
+            storage.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package it.baddy.uni.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DedupStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] content(char c) {
+        return String.valueOf(c).repeat(100).getBytes();
+    }
+
+    @Test
+    void identicalContentsShareOneBlob() throws Exception {
+        DedupStore store = new DedupStore(tempDir, 10);
+        assertTrue(store.write(tempDir.resolve("a.txt"), content('x')));
+        assertTrue(store.write(tempDir.resolve("b.txt"), content('x')));
+        assertEquals(1, store.blobCount());
+        assertTrue(Files.isSameFile(tempDir.resolve("a.txt"), tempDir.resolve("b.txt")));
+
+        //sovrascrivere un nome non cambia l'altro
+        assertFalse(store.write(tempDir.resolve("a.txt"), content('y')));
+        assertArrayEquals(content('x'), Files.readAllBytes(tempDir.resolve("b.txt")));
+        assertEquals(2, store.blobCount());
+
+        //il blob senza più nomi viene cancellato
+        assertTrue(store.delete(tempDir.resolve("b.txt")));
+        assertEquals(1, store.blobCount());
+        assertArrayEquals(content('y'), Files.readAllBytes(tempDir.resolve("a.txt")));
+    }
+
+    @Test
+    void rewritingTheSameContentLeavesNoLinkBehind() throws Exception {
+        DedupStore store = new DedupStore(tempDir, 10);
+        assertTrue(store.write(tempDir.resolve("a.txt"), content('x')));
+        assertFalse(store.write(tempDir.resolve("a.txt"), content('x')));
+        assertArrayEquals(content('x'), Files.readAllBytes(tempDir.resolve("a.txt")));
+        assertEquals(1, store.blobCount());
+        try (Stream<Path> tmp = Files.list(tempDir.resolve(".chord").resolve("tmp"))) {
+            assertEquals(0, tmp.count());
+        }
+    }
+
+    @Test
+    void unusedBlobsAreCollectedOnRestart() throws Exception {
+        DedupStore store = new DedupStore(tempDir, 10);
+        store.write(tempDir.resolve("a.txt"), content('x'));
+        Files.delete(tempDir.resolve("a.txt"));
+        assertEquals(0, new DedupStore(tempDir, 10).blobCount());
+    }
+}
@@ -0,0 +1,59 @@
+package it.baddy.uni.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void concurrentRequestsShareOneSync() throws Exception {
+        GroupCommit commits = new GroupCommit(20);
+        AtomicInteger synced = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < 16; i++)
+                writers.add(pool.submit(() -> commits.await("segment", synced::incrementAndGet)));
+            for (Future<?> writer : writers)
+                writer.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(16, commits.getRequests());
+        //tutti aspettano una sync, ma ne servono molte meno delle richieste
+        assertTrue(synced.get() >= 1 && synced.get() < 16, "syncs: " + synced.get());
+        assertEquals(synced.get(), commits.getSyncs());
+
+        commits.syncDirectory(tempDir);
+        assertEquals(synced.get() + 1, commits.getSyncs());
+    }
+
+    @Test
+    void failedSyncReachesTheWriter() {
+        GroupCommit commits = new GroupCommit(1);
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> commits.await("file", () -> { throw new IOException("disk full"); }));
+        assertEquals("disk full", e.getCause().getMessage());
+    }
+
+    @Test
+    void disabledDoesNothing() {
+        GroupCommit commits = new GroupCommit(0);
+        commits.await("file", () -> fail("sync with commits disabled"));
+        assertEquals(0, commits.getRequests());
+    }
+}
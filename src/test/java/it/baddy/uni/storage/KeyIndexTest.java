@@ -0,0 +1,150 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.utils.FileUtils;
+import it.baddy.uni.utils.KeyHash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void buildIndexesExistingFiles() throws Exception {
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+        Path sub = Files.createDirectory(tempDir.resolve("sub"));
+        Files.writeString(sub.resolve("b.txt"), "bb");
+
+        KeyIndex index = new KeyIndex(tempDir);
+        index.build();
+
+        assertEquals(2, index.size());
+        FileEntry entry = index.get(KeyHash.of("b.txt"));
+        assertNotNull(entry);
+        assertEquals(2, entry.getSize());
+    }
+
+    @Test
+    void rebuildOnlyAppliesDifferences() throws Exception {
+        Files.writeString(tempDir.resolve("same.txt"), "s");
+        Files.writeString(tempDir.resolve("gone.txt"), "g");
+        KeyIndex index = new KeyIndex(tempDir);
+        index.build();
+        index.putSegment("small.txt", 3);
+        FileEntry same = index.get("same.txt");
+
+        Files.delete(tempDir.resolve("gone.txt"));
+        Files.writeString(tempDir.resolve("new.txt"), "n");
+        index.build();
+
+        //la voce invariata resta la stessa (con la sua versione), le altre seguono la cartella
+        assertSame(same, index.get("same.txt"));
+        assertNull(index.get("gone.txt"));
+        assertNotNull(index.get("new.txt"));
+        assertTrue(index.get("small.txt").isInSegment());
+    }
+
+    @Test
+    void putAndRemoveKeepIndexUpdated() throws Exception {
+        KeyIndex index = new KeyIndex(tempDir);
+        index.build();
+
+        Path file = tempDir.resolve("c.txt");
+        FileUtils.writeFile(file, "hello".getBytes());
+        index.put(file);
+        assertEquals(5, index.get("c.txt").getSize());
+
+        FileUtils.deleteFile(file);
+        index.remove(file);
+        assertNull(index.get("c.txt"));
+    }
+
+    @Test
+    void watcherSeesOutOfBandChanges() throws Exception {
+        KeyIndex index = new KeyIndex(tempDir);
+        index.build();
+        index.startWatcher();
+        try {
+            Files.writeString(tempDir.resolve("external.txt"), "x");
+            assertTrue(waitFor(() -> index.get("external.txt") != null));
+
+            Files.delete(tempDir.resolve("external.txt"));
+            assertTrue(waitFor(() -> index.get("external.txt") == null));
+
+            //una cartella spostata fuori porta via i file che contiene
+            Path sub = Files.createDirectory(tempDir.resolve("sub"));
+            Files.writeString(sub.resolve("inner.txt"), "i");
+            assertTrue(waitFor(() -> index.get("inner.txt") != null));
+            Path outside = Files.createTempDirectory("moved");
+            Files.move(sub, outside.resolve("sub"));
+            assertTrue(waitFor(() -> index.get("inner.txt") == null));
+            FileUtils.deleteFile(outside.resolve("sub").resolve("inner.txt"));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    void snapshotIsReconciledWithTheFolder() throws Exception {
+        Files.writeString(tempDir.resolve("kept.txt"), "k");
+        Files.writeString(tempDir.resolve("deleted.txt"), "d");
+        Files.writeString(tempDir.resolve("changed.txt"), "c");
+        KeyIndex index = new KeyIndex(tempDir);
+        index.build();
+        index.putSegment("segment.txt", 3);
+        index.saveSnapshot(false);
+
+        //modifiche mentre il nodo è spento
+        Files.delete(tempDir.resolve("deleted.txt"));
+        Files.writeString(tempDir.resolve("changed.txt"), "changed");
+        Files.writeString(tempDir.resolve("added.txt"), "a");
+
+        KeyIndex restored = new KeyIndex(tempDir);
+        assertTrue(restored.loadSnapshot());
+        assertTrue(restored.isReconciling());
+        //i record dei segmenti non sono nello snapshot
+        assertNull(restored.get("segment.txt"));
+        assertNotNull(restored.get("deleted.txt"));
+        assertNull(restored.get("added.txt"));
+
+        restored.reconcile(name -> fail("no segment records"));
+        assertFalse(restored.isReconciling());
+        assertEquals(3, restored.size());
+        assertNull(restored.get("deleted.txt"));
+        assertEquals(7, restored.get("changed.txt").getSize());
+        assertEquals(1, restored.get("added.txt").getSize());
+        assertEquals(1, restored.get("kept.txt").getSize());
+    }
+
+    @Test
+    void damagedSnapshotIsIgnored() throws Exception {
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+        KeyIndex index = new KeyIndex(tempDir);
+        index.build();
+        index.saveSnapshot(false);
+
+        Path snapshot = tempDir.resolve(".chord").resolve("index.snapshot");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+        assertFalse(new KeyIndex(tempDir).loadSnapshot());
+
+        Files.delete(snapshot);
+        assertFalse(new KeyIndex(tempDir).loadSnapshot());
+    }
+
+    private boolean waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (condition.getAsBoolean())
+                return true;
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
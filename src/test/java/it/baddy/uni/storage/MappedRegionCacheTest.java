@@ -0,0 +1,48 @@
+package it.baddy.uni.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedRegionCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsRangesAcrossWindows() throws Exception {
+        Path file = tempDir.resolve("a.txt");
+        Files.writeString(file, "0123456789");
+        KeyIndex index = new KeyIndex(tempDir);
+        index.build();
+
+        //finestre da 4 byte: la lettura attraversa tre regioni
+        MappedRegionCache cache = new MappedRegionCache(2, 4);
+        FileEntry entry = index.get("a.txt");
+
+        assertEquals("234567", new String(cache.read(entry, 2, 6)));
+        assertEquals("89", new String(cache.read(entry, 8, 100)));
+        assertEquals(0, cache.read(entry, 10, 5).length);
+        assertTrue(cache.size() <= 2);
+    }
+
+    @Test
+    void remapsWhenFileChanges() throws Exception {
+        Path file = tempDir.resolve("b.txt");
+        Files.writeString(file, "old content");
+        KeyIndex index = new KeyIndex(tempDir);
+        index.build();
+        MappedRegionCache cache = new MappedRegionCache(4, 1024);
+
+        assertEquals("old", new String(cache.read(index.get("b.txt"), 0, 3)));
+
+        cache.invalidate(file);
+        Files.writeString(file, "new content!");
+        index.put(file);
+        assertEquals("new content!", new String(cache.read(index.get("b.txt"), 0, 100)));
+    }
+}
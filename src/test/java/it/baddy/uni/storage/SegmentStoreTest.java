@@ -0,0 +1,100 @@
+package it.baddy.uni.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] content(String name, int size) {
+        return (name + ":").repeat(size / (name.length() + 1) + 1).substring(0, size).getBytes();
+    }
+
+    @Test
+    void recordsSurviveRestart() {
+        SegmentStore store = new SegmentStore(tempDir, 1024, 50, 0);
+        assertTrue(store.put("a.txt", content("a", 100)));
+        assertTrue(store.put("b.txt", content("b", 100)));
+        assertFalse(store.put("a.txt", content("A", 50)));
+        assertTrue(store.delete("b.txt"));
+        assertFalse(store.delete("b.txt"));
+        assertArrayEquals(content("A", 50), store.get("a.txt"));
+        assertNull(store.get("b.txt"));
+        store.close();
+
+        SegmentStore reopened = new SegmentStore(tempDir, 1024, 50, 0);
+        Map<String, Integer> records = new HashMap<>();
+        reopened.forEach(records::put);
+        assertEquals(Map.of("a.txt", 50), records);
+        assertArrayEquals(content("A", 50), reopened.get("a.txt"));
+        reopened.close();
+    }
+
+    @Test
+    void compactionKeepsLiveRecordsAndDeletes() {
+        SegmentStore store = new SegmentStore(tempDir, 1024, 50, 0);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++)
+                store.put("file-" + i, content("r" + round + "-" + i, 200));
+        }
+        store.put("deleted", content("d", 10));
+        store.delete("deleted");
+        int before = store.segmentCount();
+        assertTrue(before > 5);
+
+        store.compact();
+        assertTrue(store.segmentCount() < before);
+        for (int i = 0; i < 10; i++)
+            assertArrayEquals(content("r4-" + i, 200), store.get("file-" + i));
+        assertNull(store.get("deleted"));
+        store.close();
+
+        //dopo la compattazione la cancellazione vale ancora al riavvio
+        SegmentStore reopened = new SegmentStore(tempDir, 1024, 50, 0);
+        assertNull(reopened.get("deleted"));
+        assertArrayEquals(content("r4-3", 200), reopened.get("file-3"));
+        reopened.close();
+    }
+
+    @Test
+    void tornTailIsDiscarded() throws Exception {
+        SegmentStore store = new SegmentStore(tempDir, 1 << 20, 50, 0);
+        store.put("a.txt", content("a", 100));
+        store.put("b.txt", content("b", 100));
+        store.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(tempDir.resolve(".chord").resolve("segments"))) {
+            List<Path> all = files.toList();
+            assertEquals(1, all.size());
+            segment = all.getFirst();
+        }
+        //crash a metà dell'ultimo append
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        SegmentStore reopened = new SegmentStore(tempDir, 1 << 20, 50, 0);
+        assertArrayEquals(content("a", 100), reopened.get("a.txt"));
+        assertNull(reopened.get("b.txt"));
+        reopened.put("c.txt", content("c", 10));
+        reopened.close();
+
+        SegmentStore again = new SegmentStore(tempDir, 1 << 20, 50, 0);
+        assertArrayEquals(content("c", 10), again.get("c.txt"));
+        again.close();
+    }
+}
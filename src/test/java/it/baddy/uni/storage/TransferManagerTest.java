@@ -0,0 +1,175 @@
+package it.baddy.uni.storage;
+
+import it.baddy.uni.rmi.interfaces.TransferHandle;
+import it.baddy.uni.utils.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private KeyIndex index;
+    private TransferManager transfers;
+
+    @BeforeEach
+    void setUp() {
+        index = new KeyIndex(tempDir);
+        index.build();
+        transfers = new TransferManager(5, index, 4, 60);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transfers.shutdown();
+    }
+
+    @Test
+    void uploadInChunksAndCommit() {
+        Path target = tempDir.resolve("big.txt");
+        TransferHandle handle = transfers.openWrite(target);
+        transfers.writeChunk(handle.getSessionId(), "hell".getBytes());
+        transfers.writeChunk(handle.getSessionId(), "o ch".getBytes());
+        transfers.writeChunk(handle.getSessionId(), "ord".getBytes());
+
+        //prima del commit il file non è visibile
+        assertFalse(Files.exists(target));
+        assertTrue(transfers.commit(handle.getSessionId()));
+
+        assertArrayEquals("hello chord".getBytes(), FileUtils.readFile(target));
+        assertNotNull(index.get("big.txt"));
+        assertEquals(0, transfers.openSessions());
+    }
+
+    @Test
+    void fileKnownOnlyToTheIndexIsNotCreated() {
+        //il nome esiste come record di un segmento: nessun file su disco ma c'è nell'indice
+        index.putSegment("small.txt", 3);
+        Path target = tempDir.resolve("small.txt");
+        TransferHandle handle = transfers.openWrite(target, null, null, false, () -> index.get("small.txt") != null);
+        transfers.writeChunk(handle.getSessionId(), "new".getBytes());
+        assertFalse(transfers.commit(handle.getSessionId()));
+        assertArrayEquals("new".getBytes(), FileUtils.readFile(target));
+    }
+
+    @Test
+    void downloadInChunks() throws Exception {
+        Path file = tempDir.resolve("a.txt");
+        Files.writeString(file, "hello chord");
+        index.put(file);
+
+        TransferHandle handle = transfers.openRead(index.get("a.txt"));
+        assertEquals(11, handle.getSize());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk;
+        while ((chunk = transfers.readChunk(handle.getSessionId())).length > 0) {
+            assertTrue(chunk.length <= 4);
+            out.write(chunk);
+        }
+        assertEquals("hello chord", out.toString());
+        assertEquals(0, transfers.openSessions());
+    }
+
+    @Test
+    void callerCanReuseChunkBuffer() throws Exception {
+        ByteArrayOutputStream replica = new ByteArrayOutputStream();
+        ReplicaSink sink = new ReplicaSink() {
+            @Override
+            public void write(byte[] chunk) throws Exception {
+                //la replica è lenta: il chiamante ha già riempito il buffer con il chunk dopo
+                Thread.sleep(20);
+                replica.write(chunk);
+            }
+
+            @Override
+            public void commit() {
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+        Path target = tempDir.resolve("reused.txt");
+        TransferHandle handle = transfers.openWrite(target, sink);
+        //come ChunkedTransfer.push passato dal trasporto locale: lo stesso array per ogni chunk
+        byte[] buffer = new byte[4];
+        for (String part : new String[]{"aaaa", "bbbb", "cccc"}) {
+            System.arraycopy(part.getBytes(), 0, buffer, 0, 4);
+            transfers.writeChunk(handle.getSessionId(), buffer);
+            Arrays.fill(buffer, (byte) 'x');
+        }
+        assertTrue(transfers.commit(handle.getSessionId()));
+
+        assertEquals("aaaabbbbcccc", Files.readString(target));
+        assertEquals("aaaabbbbcccc", replica.toString());
+    }
+
+    @Test
+    void compressedFileIsDownloadedDecodedInChunks() throws Exception {
+        byte[] raw = "chord ".repeat(500).getBytes();
+        byte[] blob = Blobs.encode(raw, new DeflateCodec(6), 90);
+        Path file = tempDir.resolve("c.txt");
+        Files.write(file, blob);
+        index.put(file);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(blob);
+        byte[] header = in.readNBytes(Blobs.HEADER_SIZE);
+        TransferHandle handle = transfers.openRead(index.get("c.txt"), Blobs.decode(header, in), Blobs.rawLength(header));
+        assertEquals(raw.length, handle.getSize());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk;
+        while ((chunk = transfers.readChunk(handle.getSessionId())).length > 0) {
+            assertTrue(chunk.length <= 4);
+            out.write(chunk);
+        }
+        assertArrayEquals(raw, out.toByteArray());
+        assertEquals(0, transfers.openSessions());
+    }
+
+    @Test
+    void rawUploadStartingWithMagicIsEscaped() throws Exception {
+        byte[] raw = new byte[20];
+        System.arraycopy(Blobs.identityHeader(), 0, raw, 0, Blobs.MAGIC_SIZE);
+        Path target = tempDir.resolve("magic.bin");
+        TransferHandle handle = transfers.openWrite(target, null, null, true);
+        //il magic arriva spezzato su più chunk
+        for (int i = 0; i < raw.length; i += 3)
+            transfers.writeChunk(handle.getSessionId(), Arrays.copyOfRange(raw, i, Math.min(raw.length, i + 3)));
+        transfers.commit(handle.getSessionId());
+
+        byte[] stored = Files.readAllBytes(target);
+        assertEquals(raw.length + Blobs.HEADER_SIZE, stored.length);
+        assertArrayEquals(raw, Blobs.decode(stored));
+
+        //un file corto e normale resta com'è
+        TransferHandle plain = transfers.openWrite(tempDir.resolve("short.txt"), null, null, true);
+        transfers.writeChunk(plain.getSessionId(), "hi".getBytes());
+        transfers.commit(plain.getSessionId());
+        assertEquals("hi", Files.readString(tempDir.resolve("short.txt")));
+    }
+
+    @Test
+    void abortDiscardsPartialUpload() {
+        TransferHandle handle = transfers.openWrite(tempDir.resolve("partial.txt"));
+        transfers.writeChunk(handle.getSessionId(), "abc".getBytes());
+        transfers.abort(handle.getSessionId());
+
+        assertFalse(Files.exists(tempDir.resolve("partial.txt")));
+        assertThrows(IllegalStateException.class, () -> transfers.commit(handle.getSessionId()));
+        assertThrows(IllegalArgumentException.class,
+                () -> transfers.writeChunk(transfers.openWrite(tempDir.resolve("x")).getSessionId(), new byte[5]));
+    }
+}
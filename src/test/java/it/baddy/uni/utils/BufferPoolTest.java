@@ -0,0 +1,85 @@
+package it.baddy.uni.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    @Test
+    void buffersAreReusedBySizeClass() {
+        BufferPool pool = new BufferPool(1 << 20);
+        ByteBuffer first;
+        try (BufferPool.Buffer buffer = pool.acquire(5000)) {
+            first = buffer.buffer();
+            assertTrue(first.isDirect());
+            assertEquals(8192, first.capacity());
+            assertEquals(5000, first.remaining());
+            assertEquals(1, pool.getInUse());
+        }
+        assertEquals(0, pool.getInUse());
+        assertEquals(8192, pool.getPooledBytes());
+
+        //stessa classe: torna lo stesso buffer, pulito
+        try (BufferPool.Buffer buffer = pool.acquire(8000)) {
+            assertSame(first, buffer.buffer());
+            assertEquals(0, buffer.buffer().position());
+            assertEquals(8000, buffer.buffer().limit());
+        }
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        //chiudere due volte non lo rimette due volte nel pool
+        BufferPool.Buffer twice = pool.acquire(100);
+        twice.close();
+        twice.close();
+        assertEquals(0, pool.getInUse());
+        assertEquals(8192 + 4096, pool.getPooledBytes());
+    }
+
+    @Test
+    void largeOrDisabledBuffersStayOnTheHeap() {
+        BufferPool pool = new BufferPool(1 << 20);
+        try (BufferPool.Buffer buffer = pool.acquire(32 << 20)) {
+            assertFalse(buffer.buffer().isDirect());
+        }
+        assertEquals(0, pool.getDirectBytes());
+
+        BufferPool disabled = new BufferPool(0);
+        try (BufferPool.Buffer buffer = disabled.acquire(100)) {
+            assertFalse(buffer.buffer().isDirect());
+            assertEquals(100, buffer.buffer().capacity());
+        }
+    }
+
+    @Test
+    void fullPoolDropsReleasedBuffers() {
+        BufferPool pool = new BufferPool(4096);
+        BufferPool.Buffer a = pool.acquire(4096);
+        BufferPool.Buffer b = pool.acquire(4096);
+        a.close();
+        b.close();
+        assertEquals(4096, pool.getPooledBytes());
+        assertEquals(4096, pool.getDirectBytes());
+    }
+
+    @Test
+    void lostBuffersAreReportedAsLeaks() throws InterruptedException {
+        BufferPool pool = new BufferPool(1 << 20);
+        acquireAndForget(pool);
+        for (int i = 0; i < 100 && pool.getLeaks() == 0; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(1, pool.getLeaks());
+        assertEquals(0, pool.getInUse());
+        //il buffer perso non torna nel pool
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    private static void acquireAndForget(BufferPool pool) {
+        pool.acquire(1000).buffer().putInt(1);
+    }
+}